@@ -98,6 +98,40 @@ public class Constants {
 	public static final String PEAK_PARAM_NAME = "Peaks";
 	public static final String PEAK_PARAM_TOOLTIP = "The peaks to extract sequences for";
 	
+	public static final String INTERSECT_NAME = "Intersect peaks";
+	public static final String INTERSECT_TOOLTIP = "This function finds the regions where the first group of peaks overlaps the second.";
+	public static final String SUBTRACT_NAME = "Subtract peaks";
+	public static final String SUBTRACT_TOOLTIP = "This function removes the regions covered by the second group of peaks from the first.";
+	public static final String WINDOW_NAME = "Peaks within window";
+	public static final String WINDOW_TOOLTIP = "This function finds the peaks of the first group lying within a window of a peak of the second.";
+	public static final String CLOSEST_NAME = "Closest peaks";
+	public static final String CLOSEST_TOOLTIP = "This function finds the closest peak of the second group for each peak of the first.";
+	public static final String PEAKS_A_PARAM_NAME = "Peaks A";
+	public static final String PEAKS_A_PARAM_TOOLTIP = "The peaks to compare";
+	public static final String PEAKS_B_PARAM_NAME = "Peaks B";
+	public static final String PEAKS_B_PARAM_TOOLTIP = "The peaks to compare against";
+	public static final String WINDOW_SIZE_PARAM_NAME = "Window";
+	public static final String WINDOW_SIZE_PARAM_TOOLTIP = "Number of bases on either side of a peak to search";
+	public static final int DEFAULT_WINDOW_SIZE = 1000;
+	
+	public static final String MERGE_NAME = "Merge peaks";
+	public static final String MERGE_TOOLTIP = "This function merges overlapping or nearby peaks into single peaks.";
+	public static final String MERGE_PEAKS_PARAM_TOOLTIP = "The peaks to merge";
+	public static final String MERGE_DISTANCE_PARAM_NAME = "Distance";
+	public static final String MERGE_DISTANCE_PARAM_TOOLTIP = "Peaks separated by at most this many bases are merged";
+	public static final int DEFAULT_MERGE_DISTANCE = 0;
+	public static final String AGGREGATE_PARAM_NAME = "Aggregate";
+	public static final String AGGREGATE_PARAM_TOOLTIP = "How the signal, p and q values of merged peaks are combined";
+	
+	public static final String ANNOTATE_NAME = "Annotate peaks";
+	public static final String ANNOTATE_TOOLTIP = "This function finds the nearest feature to each peak and the distance from its TSS to the peak.";
+	public static final String ANNOTATE_PEAKS_PARAM_TOOLTIP = "The peaks to annotate";
+	public static final String ANNOTATIONS_PARAM_NAME = "Annotations";
+	public static final String ANNOTATIONS_PARAM_TOOLTIP = "The features to annotate the peaks with";
+	public static final String FEATURE_TYPE_PARAM_NAME = "Feature type";
+	public static final String FEATURE_TYPE_PARAM_TOOLTIP = "Type of the features to use, such as gene or transcript. * uses every feature.";
+	public static final String DEFAULT_FEATURE_TYPE = "gene";
+	
 	public static final String FILE_WILDCARD = "*";
 	
 	public static final int NUM_PEAK_FIELDS = 10;
@@ -115,6 +149,35 @@ public class Constants {
 		"peak"
 	};
 	
+	public static final int NUM_ANNOTATED_PEAK_FIELDS = NUM_PEAK_FIELDS + 3;
+	public static final String ANNOTATED_PEAKS_TOOLTIP = "A peak group annotated with the nearest feature to each peak";
+	public static final String[] ANNOTATED_PEAK_HEADER = new String[]{
+		"chrom",
+		"chromStart",
+		"chromEnd",
+		"name",
+		"score",
+		"strand",
+		"signalValue",
+		"pValue",
+		"qValue",
+		"peak",
+		"feature",
+		"featureType",
+		"distanceToTSS"
+	};
+	
+	public static final int NUM_ANNOTATION_FIELDS = 6;
+	public static final String ANNOTATIONS_TOOLTIP = "A group of genomic features, such as genes";
+	public static final String[] ANNOTATION_HEADER = new String[]{
+		"chrom",
+		"start",
+		"end",
+		"strand",
+		"feature",
+		"name"
+	};
+	
 	public static final int NUM_PEAK_SEQ_FIELDS = PeakSequence.ELEMENTS;
 	public static final String PEAK_SEQ_TOOLTIP = "A group of peak sequences";
 	public static final String[] PEAK_SEQ_HEADER = new String[]{
@@ -160,5 +223,12 @@ public class Constants {
 	public static final String POINT_SOURCE_FIELD_TOOLTIP = "Point-source called for this peak; 0-based offset from chromStart. -1 if no point-source called.";
 	public static final int POINT_SOURCE_MIN = -1;
 	
+	public static final String WINDOW_SIZE_FIELD_TOOLTIP = "A number of bases";
+	public static final int WINDOW_SIZE_MIN = 0;
+	
+	public static final String AGGREGATE_FIELD_TOOLTIP = "max, mean or sum";
+	
+	public static final String TSS_DISTANCE_FIELD_TOOLTIP = "Distance from the TSS, negative upstream of it";
+	
 	
 }
@@ -1,6 +1,10 @@
 package chiptools.jprobe;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import jprobe.services.JProbeCore;
+import jprobe.services.function.FunctionPrototype;
 
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleActivator;
@@ -9,11 +13,18 @@ import org.osgi.framework.ServiceReference;
 import org.osgi.framework.ServiceRegistration;
 
 import plugins.genome.services.GenomeFunction;
+import chiptools.jprobe.data.AnnotatedPeakWriter;
+import chiptools.jprobe.data.AnnotatedPeaks;
+import chiptools.jprobe.data.AnnotationReader;
+import chiptools.jprobe.data.Annotations;
 import chiptools.jprobe.data.PeakReaderWriter;
 import chiptools.jprobe.data.PeakSequenceReaderWriter;
 import chiptools.jprobe.data.PeakSequences;
 import chiptools.jprobe.data.Peaks;
 import chiptools.jprobe.function.GenomePeakFinder;
+import chiptools.jprobe.function.PeakAnnotationPrototype;
+import chiptools.jprobe.function.PeakMergePrototype;
+import chiptools.jprobe.function.PeakOverlapPrototype;
 
 public class ChiptoolsActivator implements BundleActivator{
 	
@@ -26,8 +37,11 @@ public class ChiptoolsActivator implements BundleActivator{
 	private JProbeCore m_Core = null;
 	private PeakReaderWriter m_PeakRW = new PeakReaderWriter();
 	private PeakSequenceReaderWriter m_PeakSeqRW = new PeakSequenceReaderWriter();
+	private AnnotationReader m_AnnotationReader = new AnnotationReader();
+	private AnnotatedPeakWriter m_AnnotatedPeakWriter = new AnnotatedPeakWriter();
 	private ServiceRegistration<GenomeFunction> m_PeakFinderReg = null;
 	private CommandProvider m_CmdProvider = new CommandProvider();
+	private List<FunctionPrototype> m_Functions = new ArrayList<FunctionPrototype>();
 	
 	@Override
 	public void start(BundleContext c) throws Exception {
@@ -38,7 +52,20 @@ public class ChiptoolsActivator implements BundleActivator{
 		m_Core.getDataManager().addDataWriter(Peaks.class, m_PeakRW, c.getBundle());
 		m_Core.getDataManager().addDataReader(PeakSequences.class, m_PeakSeqRW, c.getBundle());
 		m_Core.getDataManager().addDataWriter(PeakSequences.class, m_PeakSeqRW, c.getBundle());
+		m_Core.getDataManager().addDataReader(Annotations.class, m_AnnotationReader, c.getBundle());
+		m_Core.getDataManager().addDataWriter(AnnotatedPeaks.class, m_AnnotatedPeakWriter, c.getBundle());
 		m_PeakFinderReg = c.registerService(GenomeFunction.class, new GenomePeakFinder(), null);
+		for(PeakOverlapPrototype.Operation op : PeakOverlapPrototype.Operation.values()){
+			FunctionPrototype f = new PeakOverlapPrototype(op);
+			m_Core.getFunctionManager().addFunctionPrototype(f, c.getBundle());
+			m_Functions.add(f);
+		}
+		FunctionPrototype merge = new PeakMergePrototype();
+		m_Core.getFunctionManager().addFunctionPrototype(merge, c.getBundle());
+		m_Functions.add(merge);
+		FunctionPrototype annotate = new PeakAnnotationPrototype();
+		m_Core.getFunctionManager().addFunctionPrototype(annotate, c.getBundle());
+		m_Functions.add(annotate);
 		m_CmdProvider.start(c);
 	}
 
@@ -49,6 +76,12 @@ public class ChiptoolsActivator implements BundleActivator{
 			m_Core.getDataManager().removeDataWriter(m_PeakRW, c.getBundle());
 			m_Core.getDataManager().removeDataReader(m_PeakSeqRW, c.getBundle());
 			m_Core.getDataManager().removeDataWriter(m_PeakSeqRW, c.getBundle());
+			m_Core.getDataManager().removeDataReader(m_AnnotationReader, c.getBundle());
+			m_Core.getDataManager().removeDataWriter(m_AnnotatedPeakWriter, c.getBundle());
+			for(FunctionPrototype f : m_Functions){
+				m_Core.getFunctionManager().removeFunctionPrototype(f, c.getBundle());
+			}
+			m_Functions.clear();
 			m_Core = null;
 		}
 		if(m_PeakFinderReg != null){
@@ -153,7 +153,7 @@ public class PeakFinder implements Command{
 			return;
 		}
 		File genome = config.GENOME;
-		PeakGroup peaks = PeakGroup.parsePeakGroup(System.in);
+		PeakGroup peaks = PeakGroup.parsePeakGroup(System.in, Runtime.getRuntime().availableProcessors());
 		Collection<ProgressListener> l = new HashSet<ProgressListener>();
 		if(!config.SUPPRESS){
 			l.add(new ProgressListener(){
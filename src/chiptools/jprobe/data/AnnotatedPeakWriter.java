@@ -0,0 +1,41 @@
+package chiptools.jprobe.data;
+
+import java.io.BufferedWriter;
+
+import javax.swing.filechooser.FileNameExtensionFilter;
+
+import util.genome.peak.PeakGroup;
+import jprobe.services.data.Data;
+import jprobe.services.data.DataWriter;
+
+public class AnnotatedPeakWriter implements DataWriter{
+	
+	private static final FileNameExtensionFilter[] WRITE_FILTERS = new FileNameExtensionFilter[]{
+		new FileNameExtensionFilter("Annotated peaks (.txt, .*)", "txt", "*")
+	};
+
+	@Override
+	public FileNameExtensionFilter[] getValidWriteFormats() {
+		return WRITE_FILTERS;
+	}
+
+	@Override
+	public void write(Data data, FileNameExtensionFilter format, BufferedWriter out) throws Exception {
+		AnnotatedPeaks annotated = (AnnotatedPeaks) data;
+		PeakGroup peaks = annotated.getPeaks();
+		StringBuilder line = new StringBuilder();
+		for(int i=0; i<peaks.size(); i++){
+			line.setLength(0);
+			peaks.getPeak(i).appendTo(line);
+			line.append('\t').append(annotated.getFeatureName(i)).append('\t').append(annotated.getFeatureType(i)).append('\t');
+			if(annotated.hasFeature(i)){
+				line.append(annotated.getDistanceToTSS(i));
+			}else{
+				line.append(AnnotatedPeaks.NO_FEATURE);
+			}
+			line.append('\n');
+			out.append(line);
+		}
+	}
+
+}
@@ -0,0 +1,82 @@
+package chiptools.jprobe.data;
+
+import java.util.Arrays;
+
+import chiptools.Constants;
+import chiptools.jprobe.field.StringField;
+import chiptools.jprobe.field.TSSDistanceField;
+import util.genome.annotation.FeatureIndex;
+import util.genome.peak.PeakGroup;
+import jprobe.services.data.Field;
+
+/**
+ * Peaks with the name and type of their nearest feature and the distance from its TSS to the peak summit
+ */
+public class AnnotatedPeaks extends Peaks{
+	private static final long serialVersionUID = 1L;
+	
+	public static final String NO_FEATURE = ".";
+	
+	//null for peaks without a feature on their chromosome
+	private final String[] m_Names;
+	private final String[] m_Types;
+	private final long[] m_Distances;
+	
+	/**
+	 * @param nearest - index of the nearest feature to each peak, as given by {@link FeatureIndex#nearest(PeakGroup)}
+	 */
+	public AnnotatedPeaks(PeakGroup peaks, FeatureIndex features, int[] nearest){
+		super(peaks);
+		m_Names = new String[peaks.size()];
+		m_Types = new String[peaks.size()];
+		m_Distances = new long[peaks.size()];
+		for(int i=0; i<nearest.length; i++){
+			if(nearest[i] != FeatureIndex.NONE){
+				m_Names[i] = features.getName(nearest[i]);
+				m_Types[i] = features.getType(nearest[i]);
+				m_Distances[i] = features.distanceToTSS(nearest[i], peaks.getSummit(i));
+			}
+		}
+	}
+	
+	public boolean hasFeature(int row){
+		return m_Names[row] != null;
+	}
+	
+	public String getFeatureName(int row){
+		return this.hasFeature(row) ? m_Names[row] : NO_FEATURE;
+	}
+	
+	public String getFeatureType(int row){
+		return this.hasFeature(row) ? m_Types[row] : NO_FEATURE;
+	}
+	
+	public long getDistanceToTSS(int row){
+		return m_Distances[row];
+	}
+	
+	@Override
+	protected Field[] generatePeakFields(PeakGroup peaks, int row){
+		Field[] fields = Arrays.copyOf(super.generatePeakFields(peaks, row), Constants.NUM_ANNOTATED_PEAK_FIELDS);
+		fields[Constants.NUM_PEAK_FIELDS] = new StringField(this.getFeatureName(row));
+		fields[Constants.NUM_PEAK_FIELDS + 1] = new StringField(this.getFeatureType(row));
+		fields[Constants.NUM_PEAK_FIELDS + 2] = this.hasFeature(row) ? new TSSDistanceField(m_Distances[row]) : new StringField(NO_FEATURE);
+		return fields;
+	}
+
+	@Override
+	public int getNumCols() {
+		return Constants.NUM_ANNOTATED_PEAK_FIELDS;
+	}
+
+	@Override
+	public String getTooltip() {
+		return Constants.ANNOTATED_PEAKS_TOOLTIP;
+	}
+
+	@Override
+	public String[] getHeaders() {
+		return Constants.ANNOTATED_PEAK_HEADER;
+	}
+
+}
@@ -0,0 +1,34 @@
+package chiptools.jprobe.data;
+
+import java.io.InputStream;
+
+import javax.swing.filechooser.FileFilter;
+import javax.swing.filechooser.FileNameExtensionFilter;
+
+import util.genome.annotation.FeatureIndex;
+import jprobe.services.data.Data;
+import jprobe.services.data.DataReader;
+
+public class AnnotationReader implements DataReader{
+	
+	private static final FileFilter[] READ_FILTERS = generateReadFilters();
+	
+	private static FileFilter[] generateReadFilters(){
+		FileFilter[] filters = new FileFilter[FeatureIndex.FORMATS.length];
+		for(int i=0; i<filters.length; i++){
+			filters[i] = new FileNameExtensionFilter(FeatureIndex.FORMATS[i][0], FeatureIndex.FORMATS[i][1]);
+		}
+		return filters;
+	}
+
+	@Override
+	public FileFilter[] getValidReadFormats() {
+		return READ_FILTERS;
+	}
+
+	@Override
+	public Data read(FileFilter format, InputStream s) throws Exception {
+		return new Annotations(FeatureIndex.parseFeatures(s));
+	}
+
+}
@@ -0,0 +1,107 @@
+package chiptools.jprobe.data;
+
+import chiptools.Constants;
+import chiptools.jprobe.field.ChromosomeBaseField;
+import chiptools.jprobe.field.ChromosomeField;
+import chiptools.jprobe.field.StrandField;
+import chiptools.jprobe.field.StringField;
+import util.genome.Chromosome;
+import util.genome.annotation.FeatureIndex;
+import jprobe.services.data.Data;
+import jprobe.services.data.DataListener;
+import jprobe.services.data.Field;
+
+public class Annotations implements Data{
+	private static final long serialVersionUID = 1L;
+	
+	private final FeatureIndex m_Features;
+	//fields are created from the features when viewed
+	private transient LazyTable m_Table = null;
+	
+	public Annotations(FeatureIndex features){
+		m_Features = features;
+	}
+	
+	private synchronized LazyTable getTable(){
+		if(m_Table == null){
+			m_Table = new LazyTable(LazyTable.DEFAULT_CACHED_ROWS){
+
+				@Override
+				protected Field[] createRow(int row) {
+					return generateFeatureFields(row);
+				}
+				
+			};
+		}
+		return m_Table;
+	}
+	
+	public FeatureIndex getFeatures(){
+		return m_Features;
+	}
+	
+	private Field[] generateFeatureFields(int row){
+		Chromosome chr = m_Features.getChrom(row);
+		Field[] fields = new Field[Constants.NUM_ANNOTATION_FIELDS];
+		fields[0] = new ChromosomeField(chr);
+		fields[1] = new ChromosomeBaseField(chr, m_Features.getStart(row));
+		fields[2] = new ChromosomeBaseField(chr, m_Features.getEnd(row));
+		fields[3] = new StrandField(m_Features.getStrand(row));
+		fields[4] = new StringField(m_Features.getType(row));
+		fields[5] = new StringField(m_Features.getName(row));
+		return fields;
+	}
+
+	@Override
+	public void addDataListener(DataListener listener) {
+		//do nothing, this data type is final
+	}
+
+	@Override
+	public void removeDataListener(DataListener listener) {
+		//do nothing, this data type is final
+	}
+
+	@Override
+	public boolean isModifiable(int row, int col) {
+		//always false, data is final
+		return false;
+	}
+
+	@Override
+	public Field[][] toTable() {
+		return this.getTable().toTable(this.getNumRows());
+	}
+
+	@Override
+	public boolean setValue(int row, int col, Field value) {
+		//this is final
+		return false;
+	}
+
+	@Override
+	public Field getValue(int row, int col) {
+		return this.getTable().getValue(row, col);
+	}
+
+	@Override
+	public int getNumRows() {
+		return m_Features.size();
+	}
+
+	@Override
+	public int getNumCols() {
+		return Constants.NUM_ANNOTATION_FIELDS;
+	}
+
+	@Override
+	public String getTooltip() {
+		return Constants.ANNOTATIONS_TOOLTIP;
+	}
+
+	@Override
+	public String[] getHeaders() {
+		return Constants.ANNOTATION_HEADER;
+	}
+
+}
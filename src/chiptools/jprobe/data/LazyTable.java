@@ -0,0 +1,64 @@
+package chiptools.jprobe.data;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import jprobe.services.data.Field;
+
+/**
+ * Table whose rows of Fields are only created when they are looked at. The most recently viewed rows are kept
+ * in a bounded cache, so scrolling through a table does not create its rows over and over.
+ */
+abstract class LazyTable {
+
+	static final int DEFAULT_CACHED_ROWS = 1024;
+
+	private final int m_CachedRows;
+	private final Map<Integer, Field[]> m_Rows;
+
+	/**
+	 * @param cachedRows - number of recently viewed rows to keep, or 0 to create rows on every lookup
+	 */
+	LazyTable(final int cachedRows){
+		m_CachedRows = cachedRows;
+		m_Rows = new LinkedHashMap<Integer, Field[]>(16, 0.75f, true){
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, Field[]> eldest){
+				return this.size() > cachedRows;
+			}
+
+		};
+	}
+
+	protected abstract Field[] createRow(int row);
+
+	synchronized Field[] getRow(int row){
+		Field[] fields = m_Rows.get(row);
+		if(fields == null){
+			fields = this.createRow(row);
+			if(m_CachedRows > 0){
+				m_Rows.put(row, fields);
+			}
+		}
+		return fields;
+	}
+
+	Field getValue(int row, int col){
+		return this.getRow(row)[col];
+	}
+
+	/**
+	 * Creates every row of the table, without caching them
+	 */
+	synchronized Field[][] toTable(int numRows){
+		Field[][] table = new Field[numRows][];
+		for(int i=0; i<numRows; i++){
+			Field[] fields = m_Rows.get(i);
+			table[i] = fields != null ? fields : this.createRow(i);
+		}
+		return table;
+	}
+
+}
@@ -55,7 +55,7 @@ public class PeakReaderWriter implements DataReader, DataWriter{
 	@Override
 	public void write(Data data, FileNameExtensionFilter format, BufferedWriter out) throws Exception {
 		Peaks p = (Peaks) data;
-		out.write(p.toString());
+		p.getPeaks().write(out);
 	}
 
 	@Override
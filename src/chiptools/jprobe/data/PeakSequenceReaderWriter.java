@@ -65,7 +65,7 @@ public class PeakSequenceReaderWriter implements DataReader, DataWriter{
 	@Override
 	public void write(Data data, FileNameExtensionFilter format, BufferedWriter out) throws Exception {
 		PeakSequences peakSeqs = (PeakSequences) data;
-		out.write(peakSeqs.toString());
+		peakSeqs.getPeakSeqs().write(out);
 	}
 
 	@Override
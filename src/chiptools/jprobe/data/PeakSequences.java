@@ -1,5 +1,8 @@
 package chiptools.jprobe.data;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+
 import chiptools.Constants;
 import chiptools.jprobe.field.*;
 import util.genome.peak.PeakSequence;
@@ -12,14 +15,40 @@ public class PeakSequences implements Data{
 	private static final long serialVersionUID = 1L;
 
 	private final PeakSequenceGroup m_PeakSeqs;
-	private final Field[][] m_Table;
+	//not saved, data read back from a workspace uses the default
+	private transient int m_CachedRows;
+	//fields are created from the peak sequences when viewed
+	private transient LazyTable m_Table = null;
 	
 	public PeakSequences(PeakSequenceGroup peakSeqs){
+		this(peakSeqs, LazyTable.DEFAULT_CACHED_ROWS);
+	}
+	
+	/**
+	 * @param cachedRows - number of recently viewed table rows to keep
+	 */
+	public PeakSequences(PeakSequenceGroup peakSeqs, int cachedRows){
 		m_PeakSeqs = peakSeqs;
-		m_Table = new Field[m_PeakSeqs.size()][];
-		for(int i=0; i<m_Table.length; i++){
-			m_Table[i] = this.generatePeakSeqFields(m_PeakSeqs.getPeakSequence(i));
+		m_CachedRows = cachedRows;
+	}
+	
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException{
+		in.defaultReadObject();
+		m_CachedRows = LazyTable.DEFAULT_CACHED_ROWS;
+	}
+	
+	private synchronized LazyTable getTable(){
+		if(m_Table == null){
+			m_Table = new LazyTable(m_CachedRows){
+
+				@Override
+				protected Field[] createRow(int row) {
+					return generatePeakSeqFields(m_PeakSeqs.getPeakSequence(row));
+				}
+				
+			};
 		}
+		return m_Table;
 	}
 	
 	public PeakSequenceGroup getPeakSeqs(){
@@ -68,7 +97,7 @@ public class PeakSequences implements Data{
 
 	@Override
 	public Field[][] toTable() {
-		return m_Table;
+		return this.getTable().toTable(this.getNumRows());
 	}
 
 	@Override
@@ -79,12 +108,12 @@ public class PeakSequences implements Data{
 
 	@Override
 	public Field getValue(int row, int col) {
-		return m_Table[row][col];
+		return this.getTable().getValue(row, col);
 	}
 
 	@Override
 	public int getNumRows() {
-		return m_Table.length;
+		return m_PeakSeqs.size();
 	}
 
 	@Override
@@ -1,8 +1,11 @@
 package chiptools.jprobe.data;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+
 import chiptools.Constants;
 import chiptools.jprobe.field.*;
-import util.genome.peak.Peak;
+import util.genome.Chromosome;
 import util.genome.peak.PeakGroup;
 import jprobe.services.data.Data;
 import jprobe.services.data.DataListener;
@@ -12,14 +15,40 @@ public class Peaks implements Data{
 	private static final long serialVersionUID = 1L;
 	
 	private final PeakGroup m_Peaks;
-	private final Field[][] m_Table;
+	//not saved, data read back from a workspace uses the default
+	private transient int m_CachedRows;
+	//fields are created from the peaks when viewed
+	private transient LazyTable m_Table = null;
 	
 	public Peaks(PeakGroup peaks){
+		this(peaks, LazyTable.DEFAULT_CACHED_ROWS);
+	}
+	
+	/**
+	 * @param cachedRows - number of recently viewed table rows to keep
+	 */
+	public Peaks(PeakGroup peaks, int cachedRows){
 		m_Peaks = peaks;
-		m_Table = new Field[m_Peaks.size()][];
-		for(int i=0; i<m_Table.length; i++){
-			m_Table[i] = this.generatePeakFields(m_Peaks.getPeak(i));
+		m_CachedRows = cachedRows;
+	}
+	
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException{
+		in.defaultReadObject();
+		m_CachedRows = LazyTable.DEFAULT_CACHED_ROWS;
+	}
+	
+	private synchronized LazyTable getTable(){
+		if(m_Table == null){
+			m_Table = new LazyTable(m_CachedRows){
+
+				@Override
+				protected Field[] createRow(int row) {
+					return generatePeakFields(m_Peaks, row);
+				}
+				
+			};
 		}
+		return m_Table;
 	}
 	
 	public PeakGroup getPeaks(){
@@ -31,18 +60,19 @@ public class Peaks implements Data{
 		return m_Peaks.toString();
 	}
 	
-	protected Field[] generatePeakFields(Peak p){
+	protected Field[] generatePeakFields(PeakGroup peaks, int row){
+		Chromosome chr = peaks.getChrom(row);
 		Field[] fields = new Field[Constants.NUM_PEAK_FIELDS];
-		fields[0] = new ChromosomeField(p.getChrom());
-		fields[1] = new ChromosomeBaseField(p.getChrom(), p.getChromStart());
-		fields[2] = new ChromosomeBaseField(p.getChrom(), p.getChromEnd());
-		fields[3] = new StringField(p.getName());
-		fields[4] = new UCSCScoreField((short) p.getScore());
-		fields[5] = new StrandField(p.getStrand());
-		fields[6] = new SignalValueField(p.getSignalVal());
-		fields[7] = new PValueField(p.getPVal());
-		fields[8] = new QValueField(p.getQVal());
-		fields[9] = new PointSourceField(p.getPointSource(), p.getRegion());
+		fields[0] = new ChromosomeField(chr);
+		fields[1] = new ChromosomeBaseField(chr, peaks.getChromStart(row));
+		fields[2] = new ChromosomeBaseField(chr, peaks.getChromEnd(row));
+		fields[3] = new StringField(peaks.getName(row));
+		fields[4] = new UCSCScoreField((short) peaks.getScore(row));
+		fields[5] = new StrandField(peaks.getStrand(row));
+		fields[6] = new SignalValueField(peaks.getSignalVal(row));
+		fields[7] = new PValueField(peaks.getPVal(row));
+		fields[8] = new QValueField(peaks.getQVal(row));
+		fields[9] = new PointSourceField(peaks.getPointSource(row), peaks.getPeak(row).getRegion());
 		return fields;
 	}
 
@@ -64,7 +94,7 @@ public class Peaks implements Data{
 
 	@Override
 	public Field[][] toTable() {
-		return m_Table;
+		return this.getTable().toTable(this.getNumRows());
 	}
 
 	@Override
@@ -75,12 +105,12 @@ public class Peaks implements Data{
 
 	@Override
 	public Field getValue(int row, int col) {
-		return m_Table[row][col];
+		return this.getTable().getValue(row, col);
 	}
 
 	@Override
 	public int getNumRows() {
-		return m_Table.length;
+		return m_Peaks.size();
 	}
 
 	@Override
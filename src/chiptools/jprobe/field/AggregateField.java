@@ -0,0 +1,53 @@
+package chiptools.jprobe.field;
+
+import chiptools.Constants;
+import util.genome.peak.PeakOverlaps.Aggregate;
+import jprobe.services.data.Field;
+
+public class AggregateField implements Field{
+	private static final long serialVersionUID = 1L;
+	
+	private final Aggregate m_Aggregate;
+	
+	public AggregateField(Aggregate aggregate){
+		m_Aggregate = aggregate;
+	}
+	
+	public Aggregate getValue(){
+		return m_Aggregate;
+	}
+
+	@Override
+	public String asString() {
+		return m_Aggregate.name().toLowerCase();
+	}
+
+	@Override
+	public Field parseString(String s) throws Exception {
+		if(!this.isValid(s)){
+			throw new RuntimeException("Error: "+s+" is not one of "+Constants.AGGREGATE_FIELD_TOOLTIP);
+		}
+		return new AggregateField(Aggregate.valueOf(s.trim().toUpperCase()));
+	}
+
+	@Override
+	public boolean isValid(String s) {
+		for(Aggregate a : Aggregate.values()){
+			if(a.name().equalsIgnoreCase(s.trim())){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public boolean isCharacterAllowed(char c) {
+		return Character.isLetter(c);
+	}
+
+	@Override
+	public String getTooltip() {
+		return Constants.AGGREGATE_FIELD_TOOLTIP;
+	}
+
+}
@@ -0,0 +1,49 @@
+package chiptools.jprobe.field;
+
+import chiptools.Constants;
+import jprobe.services.data.Field;
+
+public class TSSDistanceField implements Field{
+	private static final long serialVersionUID = 1L;
+	
+	private final long m_Distance;
+	
+	public TSSDistanceField(long distance){
+		m_Distance = distance;
+	}
+	
+	public long getValue(){
+		return m_Distance;
+	}
+
+	@Override
+	public String asString() {
+		return String.valueOf(m_Distance);
+	}
+
+	@Override
+	public Field parseString(String s) throws Exception {
+		return new TSSDistanceField(Long.parseLong(s.trim()));
+	}
+
+	@Override
+	public boolean isValid(String s) {
+		try{
+			Long.parseLong(s.trim());
+			return true;
+		} catch (NumberFormatException e){
+			return false;
+		}
+	}
+
+	@Override
+	public boolean isCharacterAllowed(char c) {
+		return Character.isDigit(c) || c == '-';
+	}
+
+	@Override
+	public String getTooltip() {
+		return Constants.TSS_DISTANCE_FIELD_TOOLTIP;
+	}
+
+}
@@ -0,0 +1,53 @@
+package chiptools.jprobe.field;
+
+import chiptools.Constants;
+import jprobe.services.data.IntegerField;
+
+public class WindowSizeField extends IntegerField{
+	private static final long serialVersionUID = 1L;
+	
+	private final int m_Size;
+	
+	public WindowSizeField(int size){
+		if(!this.isValid(size)){
+			throw new RuntimeException("Error: window size out of bounds. Size="+size+", min="+Constants.WINDOW_SIZE_MIN);
+		}
+		m_Size = size;
+	}
+
+	@Override
+	public String getTooltip() {
+		return Constants.WINDOW_SIZE_FIELD_TOOLTIP;
+	}
+
+	@Override
+	public int getValue() {
+		return m_Size;
+	}
+
+	@Override
+	public boolean isValid(int value) {
+		return value >= Constants.WINDOW_SIZE_MIN;
+	}
+
+	@Override
+	public int getMin() {
+		return Constants.WINDOW_SIZE_MIN;
+	}
+
+	@Override
+	public int getMax() {
+		return Integer.MAX_VALUE;
+	}
+
+	@Override
+	public int getIncrement() {
+		return 1;
+	}
+
+	@Override
+	public IntegerField parseInt(int value) throws Exception {
+		return new WindowSizeField(value);
+	}
+
+}
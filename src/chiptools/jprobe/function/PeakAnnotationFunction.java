@@ -0,0 +1,66 @@
+package chiptools.jprobe.function;
+
+import chiptools.Constants;
+import chiptools.jprobe.data.AnnotatedPeaks;
+import jprobe.services.data.Data;
+import jprobe.services.function.Function;
+import util.genome.annotation.FeatureIndex;
+import util.genome.peak.PeakGroup;
+import util.progress.ProgressListener;
+
+public class PeakAnnotationFunction implements Function{
+	
+	private final PeakGroup m_Peaks;
+	private final FeatureIndex m_Features;
+	private final String m_Type;
+	
+	/**
+	 * @param type - type of the features to annotate the peaks with, or an empty String or {@link Constants#FILE_WILDCARD}
+	 * for every feature
+	 */
+	public PeakAnnotationFunction(PeakGroup peaks, FeatureIndex features, String type){
+		m_Peaks = peaks;
+		m_Features = features;
+		m_Type = type;
+	}
+
+	@Override
+	public String getName() {
+		return Constants.ANNOTATE_NAME;
+	}
+
+	@Override
+	public String getDescription() {
+		return Constants.ANNOTATE_TOOLTIP;
+	}
+
+	@Override
+	public boolean isProgressTrackable() {
+		return false;
+	}
+
+	@Override
+	public int getProgressLength() {
+		return 0;
+	}
+
+	@Override
+	public void addListener(ProgressListener listener) {
+		//do nothing
+	}
+
+	@Override
+	public void removeListener(ProgressListener listener) {
+		//do nothing
+	}
+
+	@Override
+	public Data run() throws Exception {
+		FeatureIndex features = m_Features;
+		if(!m_Type.isEmpty() && !m_Type.equals(Constants.FILE_WILDCARD)){
+			features = features.select(m_Type);
+		}
+		return new AnnotatedPeaks(m_Peaks, features, features.nearest(m_Peaks));
+	}
+
+}
@@ -0,0 +1,59 @@
+package chiptools.jprobe.function;
+
+import chiptools.Constants;
+import chiptools.jprobe.data.Annotations;
+import chiptools.jprobe.data.Peaks;
+import chiptools.jprobe.field.StringField;
+import jprobe.services.data.Data;
+import jprobe.services.data.Field;
+import jprobe.services.function.BasicDataParameter;
+import jprobe.services.function.BasicFieldParameter;
+import jprobe.services.function.DataParameter;
+import jprobe.services.function.FieldParameter;
+import jprobe.services.function.Function;
+import jprobe.services.function.FunctionPrototype;
+import jprobe.services.function.InvalidArgumentsException;
+
+public class PeakAnnotationPrototype implements FunctionPrototype{
+	
+	private static final DataParameter[] DATA_PARAMS = new DataParameter[]{
+		new BasicDataParameter(Constants.PEAK_PARAM_NAME, Constants.ANNOTATE_PEAKS_PARAM_TOOLTIP, false, Peaks.class),
+		new BasicDataParameter(Constants.ANNOTATIONS_PARAM_NAME, Constants.ANNOTATIONS_PARAM_TOOLTIP, false, Annotations.class)
+	};
+	
+	private static final FieldParameter[] FIELD_PARAMS = new FieldParameter[]{
+		new BasicFieldParameter(Constants.FEATURE_TYPE_PARAM_NAME, Constants.FEATURE_TYPE_PARAM_TOOLTIP, false,
+				new StringField(Constants.DEFAULT_FEATURE_TYPE))
+	};
+
+	@Override
+	public String getFunctionName() {
+		return Constants.ANNOTATE_NAME;
+	}
+
+	@Override
+	public String getFunctionDescription() {
+		return Constants.ANNOTATE_TOOLTIP;
+	}
+
+	@Override
+	public DataParameter[] getDataParameters() {
+		return DATA_PARAMS;
+	}
+
+	@Override
+	public FieldParameter[] getFieldParameters() {
+		return FIELD_PARAMS;
+	}
+
+	@Override
+	public Function newInstance(Data[] dataArgs, Field[] fieldArgs) throws InvalidArgumentsException {
+		try{
+			return new PeakAnnotationFunction(((Peaks)dataArgs[0]).getPeaks(), ((Annotations)dataArgs[1]).getFeatures(),
+					fieldArgs[0].asString().trim());
+		} catch (Exception e){
+			throw new InvalidArgumentsException(e);
+		}
+	}
+
+}
@@ -0,0 +1,61 @@
+package chiptools.jprobe.function;
+
+import chiptools.Constants;
+import chiptools.jprobe.data.Peaks;
+import jprobe.services.data.Data;
+import jprobe.services.function.Function;
+import util.genome.peak.PeakGroup;
+import util.genome.peak.PeakOverlaps;
+import util.genome.peak.PeakOverlaps.Aggregate;
+import util.progress.ProgressListener;
+
+public class PeakMergeFunction implements Function{
+	
+	private final PeakGroup m_Peaks;
+	private final int m_Distance;
+	private final Aggregate m_Aggregate;
+	
+	public PeakMergeFunction(PeakGroup peaks, int distance, Aggregate aggregate){
+		m_Peaks = peaks;
+		m_Distance = distance;
+		m_Aggregate = aggregate;
+	}
+
+	@Override
+	public String getName() {
+		return Constants.MERGE_NAME;
+	}
+
+	@Override
+	public String getDescription() {
+		return Constants.MERGE_TOOLTIP;
+	}
+
+	@Override
+	public boolean isProgressTrackable() {
+		return false;
+	}
+
+	@Override
+	public int getProgressLength() {
+		return 0;
+	}
+
+	@Override
+	public void addListener(ProgressListener listener) {
+		//do nothing
+	}
+
+	@Override
+	public void removeListener(ProgressListener listener) {
+		//do nothing
+	}
+
+	@Override
+	public Data run() throws Exception {
+		//chromosomes are merged in parallel
+		int threads = Runtime.getRuntime().availableProcessors();
+		return new Peaks(PeakOverlaps.merge(m_Peaks, m_Distance, m_Aggregate, threads));
+	}
+
+}
@@ -0,0 +1,61 @@
+package chiptools.jprobe.function;
+
+import chiptools.Constants;
+import chiptools.jprobe.data.Peaks;
+import chiptools.jprobe.field.AggregateField;
+import chiptools.jprobe.field.WindowSizeField;
+import jprobe.services.data.Data;
+import jprobe.services.data.Field;
+import jprobe.services.data.IntegerField;
+import jprobe.services.function.BasicDataParameter;
+import jprobe.services.function.BasicFieldParameter;
+import jprobe.services.function.DataParameter;
+import jprobe.services.function.FieldParameter;
+import jprobe.services.function.Function;
+import jprobe.services.function.FunctionPrototype;
+import jprobe.services.function.InvalidArgumentsException;
+import util.genome.peak.PeakOverlaps.Aggregate;
+
+public class PeakMergePrototype implements FunctionPrototype{
+	
+	private static final DataParameter[] DATA_PARAMS = new DataParameter[]{
+		new BasicDataParameter(Constants.PEAK_PARAM_NAME, Constants.MERGE_PEAKS_PARAM_TOOLTIP, false, Peaks.class)
+	};
+	
+	private static final FieldParameter[] FIELD_PARAMS = new FieldParameter[]{
+		new BasicFieldParameter(Constants.MERGE_DISTANCE_PARAM_NAME, Constants.MERGE_DISTANCE_PARAM_TOOLTIP, false,
+				new WindowSizeField(Constants.DEFAULT_MERGE_DISTANCE)),
+		new BasicFieldParameter(Constants.AGGREGATE_PARAM_NAME, Constants.AGGREGATE_PARAM_TOOLTIP, false, new AggregateField(Aggregate.MAX))
+	};
+
+	@Override
+	public String getFunctionName() {
+		return Constants.MERGE_NAME;
+	}
+
+	@Override
+	public String getFunctionDescription() {
+		return Constants.MERGE_TOOLTIP;
+	}
+
+	@Override
+	public DataParameter[] getDataParameters() {
+		return DATA_PARAMS;
+	}
+
+	@Override
+	public FieldParameter[] getFieldParameters() {
+		return FIELD_PARAMS;
+	}
+
+	@Override
+	public Function newInstance(Data[] dataArgs, Field[] fieldArgs) throws InvalidArgumentsException {
+		try{
+			return new PeakMergeFunction(((Peaks)dataArgs[0]).getPeaks(), ((IntegerField)fieldArgs[0]).getValue(),
+					((AggregateField)fieldArgs[1]).getValue());
+		} catch (Exception e){
+			throw new InvalidArgumentsException(e);
+		}
+	}
+
+}
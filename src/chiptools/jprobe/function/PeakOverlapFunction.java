@@ -0,0 +1,73 @@
+package chiptools.jprobe.function;
+
+import chiptools.jprobe.data.Peaks;
+import chiptools.jprobe.function.PeakOverlapPrototype.Operation;
+import jprobe.services.data.Data;
+import jprobe.services.function.Function;
+import util.genome.peak.PeakGroup;
+import util.genome.peak.PeakOverlaps;
+import util.progress.ProgressListener;
+
+public class PeakOverlapFunction implements Function{
+	
+	private final Operation m_Op;
+	private final PeakGroup m_A;
+	private final PeakGroup m_B;
+	private final int m_Window;
+	
+	public PeakOverlapFunction(Operation op, PeakGroup a, PeakGroup b, int window){
+		m_Op = op;
+		m_A = a;
+		m_B = b;
+		m_Window = window;
+	}
+
+	@Override
+	public String getName() {
+		return m_Op.getName();
+	}
+
+	@Override
+	public String getDescription() {
+		return m_Op.getDescription();
+	}
+
+	@Override
+	public boolean isProgressTrackable() {
+		return false;
+	}
+
+	@Override
+	public int getProgressLength() {
+		return 0;
+	}
+
+	@Override
+	public void addListener(ProgressListener listener) {
+		//do nothing
+	}
+
+	@Override
+	public void removeListener(ProgressListener listener) {
+		//do nothing
+	}
+
+	@Override
+	public Data run() throws Exception {
+		//chromosomes are swept in parallel
+		int threads = Runtime.getRuntime().availableProcessors();
+		switch(m_Op){
+		case INTERSECT:
+			return new Peaks(PeakOverlaps.intersect(m_A, m_B, threads));
+		case SUBTRACT:
+			return new Peaks(PeakOverlaps.subtract(m_A, m_B, threads));
+		case WINDOW:
+			return new Peaks(PeakOverlaps.window(m_A, m_B, m_Window, threads));
+		case CLOSEST:
+			return new Peaks(PeakOverlaps.closest(m_A, m_B, threads));
+		default:
+			throw new RuntimeException("Error: unknown operation "+m_Op);
+		}
+	}
+
+}
@@ -0,0 +1,88 @@
+package chiptools.jprobe.function;
+
+import chiptools.Constants;
+import chiptools.jprobe.data.Peaks;
+import chiptools.jprobe.field.WindowSizeField;
+import jprobe.services.data.Data;
+import jprobe.services.data.Field;
+import jprobe.services.data.IntegerField;
+import jprobe.services.function.BasicDataParameter;
+import jprobe.services.function.BasicFieldParameter;
+import jprobe.services.function.DataParameter;
+import jprobe.services.function.FieldParameter;
+import jprobe.services.function.Function;
+import jprobe.services.function.FunctionPrototype;
+import jprobe.services.function.InvalidArgumentsException;
+
+public class PeakOverlapPrototype implements FunctionPrototype{
+	
+	public enum Operation{
+		INTERSECT(Constants.INTERSECT_NAME, Constants.INTERSECT_TOOLTIP),
+		SUBTRACT(Constants.SUBTRACT_NAME, Constants.SUBTRACT_TOOLTIP),
+		WINDOW(Constants.WINDOW_NAME, Constants.WINDOW_TOOLTIP),
+		CLOSEST(Constants.CLOSEST_NAME, Constants.CLOSEST_TOOLTIP);
+		
+		private final String m_Name;
+		private final String m_Description;
+		
+		private Operation(String name, String description){
+			m_Name = name;
+			m_Description = description;
+		}
+		
+		public String getName(){
+			return m_Name;
+		}
+		
+		public String getDescription(){
+			return m_Description;
+		}
+	}
+	
+	private static final DataParameter[] DATA_PARAMS = new DataParameter[]{
+		new BasicDataParameter(Constants.PEAKS_A_PARAM_NAME, Constants.PEAKS_A_PARAM_TOOLTIP, false, Peaks.class),
+		new BasicDataParameter(Constants.PEAKS_B_PARAM_NAME, Constants.PEAKS_B_PARAM_TOOLTIP, false, Peaks.class)
+	};
+	
+	private static final FieldParameter[] WINDOW_PARAMS = new FieldParameter[]{
+		new BasicFieldParameter(Constants.WINDOW_SIZE_PARAM_NAME, Constants.WINDOW_SIZE_PARAM_TOOLTIP, false,
+				new WindowSizeField(Constants.DEFAULT_WINDOW_SIZE))
+	};
+	
+	private final Operation m_Op;
+	
+	public PeakOverlapPrototype(Operation op){
+		m_Op = op;
+	}
+
+	@Override
+	public String getFunctionName() {
+		return m_Op.getName();
+	}
+
+	@Override
+	public String getFunctionDescription() {
+		return m_Op.getDescription();
+	}
+
+	@Override
+	public DataParameter[] getDataParameters() {
+		return DATA_PARAMS;
+	}
+
+	@Override
+	public FieldParameter[] getFieldParameters() {
+		return m_Op == Operation.WINDOW ? WINDOW_PARAMS : new FieldParameter[]{};
+	}
+
+	@Override
+	public Function newInstance(Data[] dataArgs, Field[] fieldArgs) throws InvalidArgumentsException {
+		try{
+			int window = m_Op == Operation.WINDOW ? ((IntegerField)fieldArgs[0]).getValue() : 0;
+			return new PeakOverlapFunction(m_Op, ((Peaks)dataArgs[0]).getPeaks(), ((Peaks)dataArgs[1]).getPeaks(), window);
+		} catch (Exception e){
+			throw new InvalidArgumentsException(e);
+		}
+	}
+
+}
@@ -7,6 +7,7 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.util.Scanner;
 
+import jprobe.save.Compression;
 import jprobe.services.Debug;
 import jprobe.services.ErrorHandler;
 import jprobe.services.JProbeCore.Mode;
@@ -31,6 +32,8 @@ public class Configuration {
 	private static final String DEFAULT_AUTODEPLOY_DIRECTORY = "plugins";
 	private static final String DEFAULT_LOG_FILE = "jprobe.log";
 	private static final String DEFAULT_ERROR_LOG_FILE = "jprobe_error.log";
+	private static final Compression DEFAULT_WORKSPACE_COMPRESSION = Compression.FAST;
+	private static final boolean DEFAULT_LAZY_LOADING = true;
 		
 	public static final String TAG_DEBUG_LEVEL = "debug";
 	public static final String TAG_MODE = "default_mode";
@@ -38,11 +41,17 @@ public class Configuration {
 	public static final String TAG_AUTODEPLOY_DIRECTORY = "autodeploy_plugin_directory";
 	public static final String TAG_LOG_FILE = "log_file";
 	public static final String TAG_ERROR_LOG_FILE = "error_log_file";
+	public static final String TAG_WORKSPACE_COMPRESSION = "workspace_compression";
+	public static final String TAG_LAZY_LOADING = "lazy_loading";
 	
 	private static final String DEFAULT_FILE = "//debug values: 0=off, 1=log, 2=full\n"+TAG_DEBUG_LEVEL+": "+
 	DEFAULT_DEBUG_LEVEL+"\n"+ "//the mode that jprobe will be started in when no arguments are passed\n//values: "+Mode.COMMAND+
 	" or "+Mode.INTERACTIVE +"\n"+ TAG_MODE+": "+ DEFAULT_MODE+"\n"+TAG_AUTODEPLOY_DIRECTORY+": "+DEFAULT_AUTODEPLOY_DIRECTORY+"\n"+TAG_STORAGE_CLEAN+
-	": "+DEFAULT_STORAGE_CLEAN+"\n"+TAG_LOG_FILE+": "+DEFAULT_LOG_FILE+"\n"+TAG_ERROR_LOG_FILE+": "+DEFAULT_ERROR_LOG_FILE;
+	": "+DEFAULT_STORAGE_CLEAN+"\n"+TAG_LOG_FILE+": "+DEFAULT_LOG_FILE+"\n"+TAG_ERROR_LOG_FILE+": "+DEFAULT_ERROR_LOG_FILE+"\n"+
+	"//compression of the data saved in workspaces\n//values: "+Compression.NONE+", "+Compression.FAST+" or "+Compression.DEFLATE+"\n"+
+	TAG_WORKSPACE_COMPRESSION+": "+DEFAULT_WORKSPACE_COMPRESSION+"\n"+
+	"//whether data in a loaded workspace is only read once it is used\n//values: true or false\n"+
+	TAG_LAZY_LOADING+": "+DEFAULT_LAZY_LOADING;
 	
 	private enum Tag{
 		DEBUG,
@@ -51,6 +60,8 @@ public class Configuration {
 		AUTODEPLOY,
 		LOG_FILE,
 		ERROR_FILE,
+		WORKSPACE_COMPRESSION,
+		LAZY_LOADING,
 		OTHER;
 		
 		public static Tag fromString(String s){
@@ -72,6 +83,12 @@ public class Configuration {
 			if(s.equalsIgnoreCase(TAG_STORAGE_CLEAN)){
 				return STORAGE_CLEAN;
 			}
+			if(s.equalsIgnoreCase(TAG_WORKSPACE_COMPRESSION)){
+				return WORKSPACE_COMPRESSION;
+			}
+			if(s.equalsIgnoreCase(TAG_LAZY_LOADING)){
+				return LAZY_LOADING;
+			}
 			return OTHER;
 		}
 	}
@@ -84,6 +101,8 @@ public class Configuration {
 	private String logFile = DEFAULT_LOG_FILE;
 	private String errorLogFile = DEFAULT_ERROR_LOG_FILE;
 	private Mode mode = DEFAULT_MODE;
+	private Compression workspaceCompression = DEFAULT_WORKSPACE_COMPRESSION;
+	private boolean lazyLoading = DEFAULT_LAZY_LOADING;
 	
 	public Configuration(File configFile, String[] args){
 		cmdLineArgs = args;
@@ -131,6 +150,12 @@ public class Configuration {
 			case ERROR_FILE:
 				errorLogFile = value;
 				break;
+			case WORKSPACE_COMPRESSION:
+				workspaceCompression = Compression.fromString(value);
+				break;
+			case LAZY_LOADING:
+				lazyLoading = Boolean.parseBoolean(value);
+				break;
 			case MODE:
 				mode = value.equals(Mode.COMMAND.toString()) ? Mode.COMMAND : Mode.INTERACTIVE;
 				break;
@@ -172,4 +197,12 @@ public class Configuration {
 		return debugLevel;
 	}
 	
+	public Compression getWorkspaceCompression(){
+		return workspaceCompression;
+	}
+	
+	public boolean isLazyLoading(){
+		return lazyLoading;
+	}
+	
 }
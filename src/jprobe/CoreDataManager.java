@@ -1,20 +1,41 @@
 package jprobe;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.FileWriter;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.swing.filechooser.FileFilter;
 import javax.swing.filechooser.FileNameExtensionFilter;
 
@@ -23,18 +44,38 @@ import org.osgi.framework.BundleContext;
 
 import util.ClassLoaderObjectInputStream;
 import util.OSGIUtils;
+import jprobe.save.Compression;
+import jprobe.save.LazySaveable;
+import jprobe.save.SavedChunk;
 import jprobe.services.CoreEvent;
 import jprobe.services.CoreEvent.Type;
 import jprobe.services.data.Data;
+import jprobe.services.data.DataEvent;
+import jprobe.services.data.DataListener;
 import jprobe.services.data.DataReader;
 import jprobe.services.data.DataWriter;
+import jprobe.services.data.StoredDataUtils;
 import jprobe.services.CoreListener;
 import jprobe.services.DataManager;
 import jprobe.services.ErrorHandler;
 import jprobe.services.JProbeCore;
-import jprobe.services.Saveable;
 
-public class CoreDataManager implements DataManager, Saveable{
+public class CoreDataManager implements DataManager, LazySaveable{
+	
+	//"JPDM"
+	private static final int MAGIC = 0x4A50444D;
+	private static final int VERSION = 3;
+	//chunks end with the offset of their index since version 2
+	private static final int INDEX_VERSION = 2;
+	//record lengths are longs since version 3
+	private static final int LONG_LENGTH_VERSION = 3;
+	private static final int RECORD = 1;
+	private static final int END = 0;
+	private static final int REMOVE = 2;
+	private static final int RENAME = 3;
+	private static final int BUFFER_SIZE = 64*1024;
+	//bytes of serialized data held in memory while saving or loading, beyond which data goes through temp files
+	private static final long MAX_BUFFERED = 64L*1024*1024;
 	
 	private JProbeCore m_Core;
 	
@@ -50,7 +91,18 @@ public class CoreDataManager implements DataManager, Saveable{
 	private Map<DataReader, Class<? extends Data>> m_ReaderToType;
 	private Map<Class<? extends Data>, DataWriter> m_TypeToWriter;
 	private Map<DataWriter, Class<? extends Data>> m_WriterToType;
-	private boolean m_ChangesSinceLastSave;
+	//the name of each data object as of the last save or load
+	private Map<Data, String> m_Saved;
+	//the names m_Saved takes once the save being written is committed to the workspace
+	private Map<Data, String> m_PendingSaved = null;
+	//the data objects edited since the last save, and the edited ones written by a save that is not yet committed
+	private Set<Data> m_Edited;
+	private Set<Data> m_Writing;
+	private Map<Data, DataListener> m_EditListeners;
+	private Compression m_Compression = Compression.FAST;
+	private boolean m_LazyLoading = true;
+	//the records written by the last save, so stored data can be pointed at its new location
+	private List<Record> m_LastSaved = new ArrayList<Record>();
 	
 	public CoreDataManager(JProbeCore core, BundleContext context){
 		m_Core = core;
@@ -65,7 +117,10 @@ public class CoreDataManager implements DataManager, Saveable{
 		m_ReaderToType = new HashMap<DataReader, Class<? extends Data>>();
 		m_TypeToWriter = new HashMap<Class<? extends Data>, DataWriter>();
 		m_WriterToType = new HashMap<DataWriter, Class<? extends Data>>();
-		m_ChangesSinceLastSave = false;
+		m_Saved = new IdentityHashMap<Data, String>();
+		m_Edited = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<Data, Boolean>()));
+		m_Writing = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<Data, Boolean>()));
+		m_EditListeners = new IdentityHashMap<Data, DataListener>();
 	}
 	
 	public void setBundleContext(BundleContext context){
@@ -84,27 +139,27 @@ public class CoreDataManager implements DataManager, Saveable{
 	
 	private void notifyListeners(CoreEvent event){
 		for(CoreListener l : m_Listeners){
-			m_ChangesSinceLastSave = true;
 			l.update(event);
 		}
 	}
 	
 	private String assignName(Data d){
+		Class<? extends Data> type = StoredDataUtils.typeOf(d);
 		int count;
 		if(m_Counts.containsKey(d)){
-			count = m_Counts.get(d.getClass()) + 1;
+			count = m_Counts.get(type) + 1;
 		}else{
 			count = 1;
 		}
-		String name = d.getClass().getSimpleName()+String.valueOf(count);
+		String name = type.getSimpleName()+String.valueOf(count);
 		while(m_NameToData.containsKey(name)){
-			name = d.getClass().getSimpleName()+String.valueOf(++count);
+			name = type.getSimpleName()+String.valueOf(++count);
 		}
 		return name;
 	}
 	
 	public void addData(Data d, String name, Bundle responsible){
-		Class<? extends Data> clazz = d.getClass();
+		Class<? extends Data> clazz = StoredDataUtils.typeOf(d);
 		if(!m_Data.containsKey(clazz)){
 			List<Data> list = new ArrayList<Data>();
 			list.add(d);
@@ -123,19 +178,40 @@ public class CoreDataManager implements DataManager, Saveable{
 		}else{
 			m_NameToData.put(name, d);
 			m_DataToName.put(d, name);
+			this.listenForEdits(d);
 			notifyListeners(new CoreEvent(m_Core, Type.DATA_ADDED, responsible, d));
 		}
 	}
 	
+	/**
+	 * Marks the data object as edited whenever it changes, so the next save writes it again
+	 */
+	private void listenForEdits(final Data d){
+		DataListener listener = new DataListener(){
+			@Override
+			public void update(DataEvent event){
+				m_Edited.add(d);
+			}
+		};
+		m_EditListeners.put(d, listener);
+		d.addDataListener(listener);
+	}
+	
 	@Override
 	public void addData(Data d, Bundle responsible){
 		addData(d, assignName(d), responsible);
 	}
 	
 	private void removeData(String name, Data d, Bundle responsible){
-		m_Data.get(d.getClass()).remove(d);
+		m_Data.get(StoredDataUtils.typeOf(d)).remove(d);
 		m_NameToData.remove(name);
 		m_DataToName.remove(d);
+		DataListener listener = m_EditListeners.remove(d);
+		if(listener != null){
+			d.removeDataListener(listener);
+		}
+		m_Edited.remove(d);
+		m_Writing.remove(d);
 		notifyListeners(new CoreEvent(m_Core, Type.DATA_REMOVED, responsible, d));
 	}
 	
@@ -312,6 +388,7 @@ public class CoreDataManager implements DataManager, Saveable{
 
 	@Override
 	public void writeData(File file, Data data, FileNameExtensionFilter format) throws Exception {
+		data = StoredDataUtils.unwrap(data);
 		if(!this.isWritable(data.getClass())){
 			throw new Exception(data.getClass()+" not writable");
 		}
@@ -344,63 +421,877 @@ public class CoreDataManager implements DataManager, Saveable{
 		}
 	}
 	
+	/**
+	 * Returns the name of each data object, keyed by identity so that equal data objects are kept apart
+	 */
+	private Map<Data, String> currentNames(){
+		Map<Data, String> names = new IdentityHashMap<Data, String>();
+		for(Data d : m_DataToName.keySet()){
+			names.put(d, m_DataToName.get(d));
+		}
+		return names;
+	}
+	
 	@Override
 	public boolean changesSinceLastSave(){
-		return m_ChangesSinceLastSave;
+		return this.hasChanges();
 	}
-
+	
+	/**
+	 * Returns whether the data object was edited since it was last saved
+	 */
+	private boolean isEdited(Data d){
+		return m_Edited.contains(d) || m_Writing.contains(d) || (d instanceof SavedData && ((SavedData) d).isModified());
+	}
+	
+	/**
+	 * Moves the given edited data objects to those being written, returning them
+	 */
+	private Set<Data> startWriting(Collection<Data> edited){
+		Set<Data> writing = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<Data, Boolean>()));
+		writing.addAll(edited);
+		m_Edited.removeAll(edited);
+		m_Writing = writing;
+		return writing;
+	}
+	
+	/**
+	 * Takes the current data as saved, after a load
+	 */
+	private void loaded(){
+		m_Saved = this.currentNames();
+		m_PendingSaved = null;
+		m_Edited.clear();
+		m_Writing.clear();
+	}
+	
+	@Override
+	public boolean hasChanges(){
+		if(!m_Saved.equals(this.currentNames())){
+			return true;
+		}
+		for(Data d : m_DataToName.keySet()){
+			if(this.isEdited(d)){
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	public void setCompression(Compression compression){
+		m_Compression = compression;
+	}
+	
+	public Compression getCompression(){
+		return m_Compression;
+	}
+	
+	/**
+	 * Sets whether loading a workspace leaves the data in it until it is used
+	 */
+	public void setLazyLoading(boolean lazy){
+		m_LazyLoading = lazy;
+	}
+	
+	public boolean isLazyLoading(){
+		return m_LazyLoading;
+	}
+	
+	/**
+	 * A saved data object and where its chunk was written
+	 */
+	private static class Record{
+		
+		private final Data m_Data;
+		private final String m_Name;
+		private final String m_Bundle;
+		private final String m_Type;
+		private final Compression m_Compression;
+		private long m_Offset;
+		private long m_Length;
+		//null if the data is copied from the workspace as it was saved
+		private Future<SpillBuffer> m_Serialized = null;
+		
+		private Record(Data data, String name, String bundle, Compression compression){
+			m_Data = data;
+			m_Name = name;
+			m_Bundle = bundle;
+			m_Type = StoredDataUtils.typeOf(data).getName();
+			m_Compression = compression;
+		}
+		
+	}
+	
+	/**
+	 * Counts the bytes written, so the index can hold the offset of each chunk
+	 */
+	private static class CountingOutputStream extends FilterOutputStream{
+		
+		private long m_Count = 0;
+		
+		private CountingOutputStream(OutputStream out){
+			super(out);
+		}
+		
+		@Override
+		public void write(int b) throws IOException{
+			out.write(b);
+			m_Count++;
+		}
+		
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException{
+			out.write(b, off, len);
+			m_Count += len;
+		}
+		
+	}
+	
+	/**
+	 * Holds a serialized chunk in memory for as long as the buffers sharing its count hold less than MAX_BUFFERED
+	 * bytes, and in a temp file after that
+	 */
+	private static class SpillBuffer extends OutputStream{
+		
+		private final AtomicLong m_Buffered;
+		private ByteArrayOutputStream m_Bytes = new ByteArrayOutputStream();
+		private File m_File = null;
+		private OutputStream m_FileOut = null;
+		private long m_Length = 0;
+		
+		private SpillBuffer(AtomicLong buffered){
+			m_Buffered = buffered;
+		}
+		
+		@Override
+		public void write(int b) throws IOException{
+			this.write(new byte[]{(byte) b}, 0, 1);
+		}
+		
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException{
+			if(m_FileOut == null && m_Buffered.addAndGet(len) > MAX_BUFFERED){
+				m_Buffered.addAndGet(-len);
+				this.spill();
+			}
+			if(m_FileOut != null){
+				m_FileOut.write(b, off, len);
+			}else{
+				m_Bytes.write(b, off, len);
+			}
+			m_Length += len;
+		}
+		
+		private void spill() throws IOException{
+			m_File = File.createTempFile("jprobe", ".chunk");
+			m_File.deleteOnExit();
+			m_FileOut = new BufferedOutputStream(new FileOutputStream(m_File), BUFFER_SIZE);
+			m_Bytes.writeTo(m_FileOut);
+			m_Buffered.addAndGet(-m_Bytes.size());
+			m_Bytes = null;
+		}
+		
+		@Override
+		public void close() throws IOException{
+			if(m_FileOut != null){
+				m_FileOut.close();
+			}
+		}
+		
+		private long length(){
+			return m_Length;
+		}
+		
+		private void writeTo(OutputStream out) throws IOException{
+			if(m_File == null){
+				m_Bytes.writeTo(out);
+				return;
+			}
+			InputStream in = new FileInputStream(m_File);
+			try{
+				copy(in, out);
+			} finally {
+				in.close();
+			}
+		}
+		
+		/**
+		 * Frees the memory or temp file holding the chunk
+		 */
+		private void delete(){
+			if(m_Bytes != null){
+				m_Buffered.addAndGet(-m_Bytes.size());
+				m_Bytes = null;
+			}
+			if(m_File != null){
+				try {
+					m_FileOut.close();
+				} catch (IOException e) {
+					//do nothing
+				}
+				m_File.delete();
+			}
+		}
+		
+	}
+	
+	/**
+	 * View of the next bytes of a stream. Closing it skips whatever was not read and leaves the stream open.
+	 */
+	private static class BoundedInputStream extends FilterInputStream{
+		
+		private long m_Remaining;
+		
+		private BoundedInputStream(InputStream in, long length){
+			super(in);
+			m_Remaining = length;
+		}
+		
+		@Override
+		public int read() throws IOException{
+			if(m_Remaining <= 0){
+				return -1;
+			}
+			int b = in.read();
+			if(b >= 0){
+				m_Remaining--;
+			}
+			return b;
+		}
+		
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException{
+			if(m_Remaining <= 0){
+				return -1;
+			}
+			int read = in.read(b, off, (int) Math.min(len, m_Remaining));
+			if(read > 0){
+				m_Remaining -= read;
+			}
+			return read;
+		}
+		
+		@Override
+		public long skip(long n) throws IOException{
+			long skipped = in.skip(Math.min(n, m_Remaining));
+			m_Remaining -= skipped;
+			return skipped;
+		}
+		
+		@Override
+		public int available() throws IOException{
+			return (int) Math.min(in.available(), m_Remaining);
+		}
+		
+		@Override
+		public boolean markSupported(){
+			return false;
+		}
+		
+		@Override
+		public void close() throws IOException{
+			while(m_Remaining > 0){
+				if(this.skip(m_Remaining) <= 0 && this.read() < 0){
+					throw new EOFException("Error: saved data ends in the middle of a record");
+				}
+			}
+		}
+		
+	}
+	
+	static void copy(InputStream in, OutputStream out) throws IOException{
+		byte[] buffer = new byte[BUFFER_SIZE];
+		int read;
+		while((read = in.read(buffer)) >= 0){
+			out.write(buffer, 0, read);
+		}
+	}
+	
+	private static void serialize(Data data, Compression compression, OutputStream to) throws IOException{
+		ObjectOutputStream out = new ObjectOutputStream(compression.compress(to));
+		out.writeObject(data);
+		out.close();
+	}
+	
+	static Data deserialize(InputStream from, Compression compression, ClassLoader loader) throws IOException, ClassNotFoundException{
+		ObjectInputStream in = new ClassLoaderObjectInputStream(compression.decompress(from), loader);
+		try{
+			return (Data) in.readObject();
+		} finally {
+			in.close();
+		}
+	}
+	
+	private static int numThreads(){
+		return Runtime.getRuntime().availableProcessors();
+	}
+	
+	/**
+	 * Writes the chunk of the given record once it has been serialized and adds the record to the saved records
+	 */
+	private void writeRecord(DataOutputStream out, CountingOutputStream counter, Record r, List<Record> saved) throws IOException, InterruptedException{
+		SpillBuffer chunk = null;
+		long length;
+		if(r.m_Serialized == null){
+			length = ((SavedData) r.m_Data).getLength();
+		}else{
+			try {
+				chunk = r.m_Serialized.get();
+			} catch (ExecutionException e) {
+				//this data could not be serialized, report it and save the rest
+				ErrorHandler.getInstance().handleException(new Exception("Error: unable to save "+r.m_Name, e.getCause()), JProbeActivator.getBundle());
+				return;
+			}
+			length = chunk.length();
+		}
+		try{
+			out.writeByte(RECORD);
+			out.writeUTF(r.m_Name);
+			out.writeUTF(r.m_Bundle);
+			out.writeByte(r.m_Compression.getId());
+			out.writeLong(length);
+			out.flush();
+			r.m_Offset = counter.m_Count;
+			r.m_Length = length;
+			if(chunk == null){
+				((SavedData) r.m_Data).copyTo(out);
+			}else{
+				chunk.writeTo(out);
+			}
+		} finally {
+			if(chunk != null){
+				chunk.delete();
+			}
+		}
+		saved.add(r);
+	}
+	
+	/**
+	 * Returns the number of the given records still being serialized
+	 */
+	private static int serializing(Collection<Record> pending){
+		int n = 0;
+		for(Record r : pending){
+			if(r.m_Serialized != null && !r.m_Serialized.isDone()){
+				n++;
+			}
+		}
+		return n;
+	}
+	
+	/**
+	 * Frees the chunks of records that will not be written
+	 */
+	private static void discard(Collection<Record> pending){
+		for(Record r : pending){
+			//chunks still being serialized are left to the deletion of temp files on exit
+			if(r.m_Serialized != null && !r.m_Serialized.cancel(true) && r.m_Serialized.isDone()){
+				try {
+					r.m_Serialized.get().delete();
+				} catch (ExecutionException e) {
+					//do nothing, there is no chunk
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Writes one compressed chunk for each of the given data objects, then the end of the entries and an index of
+	 * the chunks. Data objects are serialized and compressed in parallel, but their chunks are written in order.
+	 * Serialized chunks are held in memory up to MAX_BUFFERED bytes in all and go through temp files beyond that.
+	 * Returns the records of the chunks that were written.
+	 */
+	private List<Record> writeRecords(DataOutputStream out, CountingOutputStream counter, List<Data> data) throws IOException, InterruptedException{
+		int threads = numThreads();
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		final AtomicLong buffered = new AtomicLong();
+		List<Record> saved = new ArrayList<Record>();
+		Deque<Record> pending = new ArrayDeque<Record>();
+		try{
+			for(final Data stored : data){
+				Record r;
+				if(stored instanceof SavedData && !this.isEdited(stored)){
+					//stored data is copied as it was saved when its turn comes, without reading it
+					r = new Record(stored, this.getDataName(stored), m_DataProviders.get(StoredDataUtils.typeOf(stored)), ((SavedData) stored).getCompression());
+				}else{
+					final Compression compression = m_Compression;
+					r = new Record(stored, this.getDataName(stored), m_DataProviders.get(StoredDataUtils.typeOf(stored)), compression);
+					r.m_Serialized = pool.submit(new Callable<SpillBuffer>(){
+						@Override
+						public SpillBuffer call() throws Exception {
+							SpillBuffer chunk = new SpillBuffer(buffered);
+							boolean serialized = false;
+							try{
+								serialize(StoredDataUtils.unwrap(stored), compression, chunk);
+								serialized = true;
+								return chunk;
+							} finally {
+								if(!serialized){
+									chunk.delete();
+								}
+							}
+						}
+					});
+				}
+				pending.add(r);
+				//write chunks once the serialized ones fill the memory bound or every thread has a chunk to serialize
+				while(!pending.isEmpty() && (buffered.get() >= MAX_BUFFERED || serializing(pending) >= threads)){
+					this.writeRecord(out, counter, pending.poll(), saved);
+				}
+			}
+			while(!pending.isEmpty()){
+				this.writeRecord(out, counter, pending.poll(), saved);
+			}
+		} finally {
+			pool.shutdownNow();
+			discard(pending);
+		}
+		out.writeByte(END);
+		out.flush();
+		long index = counter.m_Count;
+		out.writeInt(saved.size());
+		for(Record r : saved){
+			out.writeUTF(r.m_Name);
+			out.writeUTF(r.m_Bundle);
+			out.writeUTF(r.m_Type);
+			out.writeByte(r.m_Compression.getId());
+			out.writeLong(r.m_Offset);
+			out.writeLong(r.m_Length);
+		}
+		out.writeLong(index);
+		return saved;
+	}
+	
+	/**
+	 * Saves each data object as its own compressed chunk followed by an index of the chunks
+	 */
 	@Override
 	public void save(OutputStream out) {
+		m_LastSaved = new ArrayList<Record>();
+		m_PendingSaved = null;
 		try {
-			ObjectOutputStream oout = new ObjectOutputStream(out);
-			for(Data stored : this.getAllData()){
-				String name = this.getDataName(stored);
-				String bundle = m_DataProviders.get(stored.getClass());
-				oout.writeObject(name);
-				oout.writeObject(bundle);
-				oout.writeObject(stored);
-			}
-			oout.close();
+			List<Data> data = this.getAllData();
+			List<Data> edited = new ArrayList<Data>();
+			for(Data d : data){
+				if(this.isEdited(d)){
+					edited.add(d);
+				}
+			}
+			this.startWriting(edited);
+			CountingOutputStream counter = new CountingOutputStream(out);
+			DataOutputStream dout = new DataOutputStream(new BufferedOutputStream(counter, BUFFER_SIZE));
+			dout.writeInt(MAGIC);
+			dout.writeInt(VERSION);
+			List<Record> saved = this.writeRecords(dout, counter, data);
+			dout.close();
+			m_LastSaved = saved;
+			//the data is only saved once the workspace is committed, see saved
+			m_PendingSaved = new IdentityHashMap<Data, String>();
+			for(Record r : saved){
+				m_PendingSaved.put(r.m_Data, r.m_Name);
+			}
 		} catch (IOException e) {
 			ErrorHandler.getInstance().handleException(e, JProbeActivator.getBundle());
+		} catch (InterruptedException e) {
+			ErrorHandler.getInstance().handleException(e, JProbeActivator.getBundle());
 		}
 	}
-
+	
+	/**
+	 * Saves only what changed since the last save or load: the names of the saved data objects that were removed,
+	 * the saved data objects that were renamed and a chunk for each data object that was added. Saved data objects
+	 * that were edited are removed and added again.
+	 */
+	@Override
+	public void saveChanges(OutputStream out){
+		m_LastSaved = new ArrayList<Record>();
+		m_PendingSaved = null;
+		try {
+			Map<Data, String> current = this.currentNames();
+			List<Data> edited = new ArrayList<Data>();
+			for(Data d : current.keySet()){
+				if(this.isEdited(d)){
+					edited.add(d);
+				}
+			}
+			Set<Data> writing = this.startWriting(edited);
+			List<String> removed = new ArrayList<String>();
+			List<String> renamedFrom = new ArrayList<String>();
+			List<String> renamedTo = new ArrayList<String>();
+			for(Data d : m_Saved.keySet()){
+				if(!current.containsKey(d) || writing.contains(d)){
+					removed.add(m_Saved.get(d));
+				}else if(!current.get(d).equals(m_Saved.get(d))){
+					renamedFrom.add(m_Saved.get(d));
+					renamedTo.add(current.get(d));
+				}
+			}
+			List<Data> added = new ArrayList<Data>();
+			for(Data d : this.getAllData()){
+				if(!m_Saved.containsKey(d) || writing.contains(d)){
+					added.add(d);
+				}
+			}
+			CountingOutputStream counter = new CountingOutputStream(out);
+			DataOutputStream dout = new DataOutputStream(new BufferedOutputStream(counter, BUFFER_SIZE));
+			dout.writeInt(MAGIC);
+			dout.writeInt(VERSION);
+			for(String name : removed){
+				dout.writeByte(REMOVE);
+				dout.writeUTF(name);
+			}
+			if(!renamedFrom.isEmpty()){
+				//renames are replayed together, so names can be swapped
+				dout.writeByte(RENAME);
+				dout.writeInt(renamedFrom.size());
+				for(int i=0; i<renamedFrom.size(); i++){
+					dout.writeUTF(renamedFrom.get(i));
+					dout.writeUTF(renamedTo.get(i));
+				}
+			}
+			List<Record> saved = this.writeRecords(dout, counter, added);
+			dout.close();
+			m_LastSaved = saved;
+			//data that could not be saved is still a change, and edited data is no longer in the workspace
+			for(Data d : added){
+				current.remove(d);
+			}
+			for(Record r : saved){
+				current.put(r.m_Data, r.m_Name);
+			}
+			//the changes are only saved once the workspace is committed, see saved
+			m_PendingSaved = current;
+		} catch (IOException e) {
+			ErrorHandler.getInstance().handleException(e, JProbeActivator.getBundle());
+		} catch (InterruptedException e) {
+			ErrorHandler.getInstance().handleException(e, JProbeActivator.getBundle());
+		}
+	}
+	
+	private void addLoaded(String name, Future<Data> loaded) throws InterruptedException{
+		try {
+			this.addData(loaded.get(), name, JProbeActivator.getBundle());
+		} catch (ExecutionException e) {
+			if(!(e.getCause() instanceof ClassNotFoundException)){
+				ErrorHandler.getInstance().handleException(new Exception("Error: unable to load "+name, e.getCause()), JProbeActivator.getBundle());
+			}
+			//a missing class means the plugin that provides the data type is not loaded so simply proceed
+		}
+	}
+	
+	private void removeSaved(String name){
+		Data d = m_NameToData.get(name);
+		if(d != null){
+			this.removeData(name, d, JProbeActivator.getBundle());
+		}
+	}
+	
+	/**
+	 * Renames saved data objects all at once, so that no rename sees a name another rename is about to free
+	 */
+	private void renameSaved(List<String> from, List<String> to){
+		List<Data> renamed = new ArrayList<Data>();
+		for(String name : from){
+			renamed.add(m_NameToData.remove(name));
+		}
+		for(int i=0; i<renamed.size(); i++){
+			Data d = renamed.get(i);
+			if(d == null){
+				//the data was not loaded, so there is nothing to rename
+				continue;
+			}
+			String name = to.get(i);
+			if(m_NameToData.containsKey(name)){
+				this.removeData(name, JProbeActivator.getBundle());
+			}
+			m_NameToData.put(name, d);
+			m_DataToName.put(d, name);
+			notifyListeners(new CoreEvent(m_Core, Type.DATA_NAME_CHANGE, JProbeActivator.getBundle(), d, from.get(i), name));
+		}
+	}
+	
+	/**
+	 * Replays a removal or a set of renames
+	 */
+	private void readChange(int entry, DataInputStream in) throws IOException{
+		switch(entry){
+		case REMOVE:
+			this.removeSaved(in.readUTF());
+			break;
+		case RENAME:
+			int count = in.readInt();
+			List<String> from = new ArrayList<String>();
+			List<String> to = new ArrayList<String>();
+			for(int i=0; i<count; i++){
+				from.add(in.readUTF());
+				to.add(in.readUTF());
+			}
+			this.renameSaved(from, to);
+			break;
+		default:
+			throw new IOException("Error: unknown saved data entry "+entry);
+		}
+	}
+	
+	/**
+	 * Adds the data object read from the next bytes of the stream
+	 */
+	private void addInPlace(String name, InputStream in, Compression compression, ClassLoader loader) throws IOException{
+		try {
+			this.addData(deserialize(in, compression, loader), name, JProbeActivator.getBundle());
+		} catch (ClassNotFoundException e) {
+			//do nothing, this means the plugin that provides the data type is not loaded so simply proceed
+		}
+	}
+	
+	/**
+	 * Reads the entries written by save or saveChanges. Chunks are read in order, then decompressed and deserialized
+	 * in parallel, and the data objects are added in the order they were saved. Chunks are held in memory up to
+	 * MAX_BUFFERED bytes in all, and larger chunks are deserialized as they are read.
+	 */
+	private void readEntries(DataInputStream in) throws IOException, InterruptedException{
+		int version = in.readInt();
+		if(version > VERSION){
+			throw new IOException("Error: saved data version "+version+" is newer than this version of JProbe");
+		}
+		int threads = numThreads();
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try{
+			Deque<String> pendingNames = new ArrayDeque<String>();
+			Deque<Future<Data>> pendingData = new ArrayDeque<Future<Data>>();
+			Deque<Integer> pendingLengths = new ArrayDeque<Integer>();
+			long buffered = 0;
+			try{
+				int entry;
+				while((entry = in.readByte()) != END){
+					switch(entry){
+					case RECORD:
+						String name = in.readUTF();
+						String bundleName = in.readUTF();
+						final Compression compression = Compression.fromId(in.readByte());
+						long length = version >= LONG_LENGTH_VERSION ? in.readLong() : in.readInt();
+						Bundle bundle = OSGIUtils.getBundleWithName(bundleName, m_Context);
+						final ClassLoader loader = bundle != null ? OSGIUtils.getBundleClassLoader(bundle) : this.getClass().getClassLoader();
+						//make room for the chunk, or add everything before it if it is read in place
+						while(!pendingData.isEmpty() && (buffered + length > MAX_BUFFERED || pendingData.size() >= 2*threads)){
+							buffered -= pendingLengths.poll();
+							this.addLoaded(pendingNames.poll(), pendingData.poll());
+						}
+						if(length > MAX_BUFFERED){
+							this.addInPlace(name, new BoundedInputStream(in, length), compression, loader);
+							break;
+						}
+						final byte[] bytes = new byte[(int) length];
+						in.readFully(bytes);
+						pendingNames.add(name);
+						pendingLengths.add(bytes.length);
+						buffered += bytes.length;
+						pendingData.add(pool.submit(new Callable<Data>(){
+							@Override
+							public Data call() throws Exception {
+								return deserialize(new ByteArrayInputStream(bytes), compression, loader);
+							}
+						}));
+						break;
+					default:
+						this.readChange(entry, in);
+					}
+				}
+			} catch (EOFException e){
+				//the saved data was cut short, keep what was read completely
+			}
+			while(!pendingData.isEmpty()){
+				this.addLoaded(pendingNames.poll(), pendingData.poll());
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+	
+	/**
+	 * Loads the data written by save. Workspaces saved as a single object stream are still loaded.
+	 */
 	@Override
 	public void load(InputStream in) {
 		try {
 			this.clearData();
-			ClassLoaderObjectInputStream oin = new ClassLoaderObjectInputStream(in, this.getClass().getClassLoader());
-			boolean finished = false;
-			while(!finished){
+			BufferedInputStream bin = new BufferedInputStream(in, BUFFER_SIZE);
+			DataInputStream din = new DataInputStream(bin);
+			bin.mark(4);
+			if(din.readInt() == MAGIC){
+				this.readEntries(din);
+			}else{
+				bin.reset();
+				this.loadStream(bin);
+			}
+		} catch (IOException e) {
+			ErrorHandler.getInstance().handleException(e, JProbeActivator.getBundle());
+		} catch (InterruptedException e) {
+			ErrorHandler.getInstance().handleException(e, JProbeActivator.getBundle());
+		}
+		this.loaded();
+	}
+	
+	/**
+	 * Replays the changes written by saveChanges on top of the loaded data
+	 */
+	@Override
+	public void loadChanges(InputStream in){
+		try {
+			DataInputStream din = new DataInputStream(new BufferedInputStream(in, BUFFER_SIZE));
+			if(din.readInt() != MAGIC){
+				throw new IOException("Error: unrecognized saved changes");
+			}
+			this.readEntries(din);
+		} catch (IOException e) {
+			ErrorHandler.getInstance().handleException(e, JProbeActivator.getBundle());
+		} catch (InterruptedException e) {
+			ErrorHandler.getInstance().handleException(e, JProbeActivator.getBundle());
+		}
+		this.loaded();
+	}
+	
+	/**
+	 * Adds the data in a chunk written by save or saveChanges without reading it. The changes at the start of the
+	 * chunk are replayed, then a SavedData is added for each entry of the index at its end. Returns false if the
+	 * chunk has no index, in which case nothing was read.
+	 */
+	private boolean readIndex(SavedChunk chunk) throws IOException{
+		boolean longLengths;
+		DataInputStream in = new DataInputStream(chunk.open());
+		try{
+			if(in.readInt() != MAGIC){
+				return false;
+			}
+			int version = in.readInt();
+			if(version > VERSION){
+				throw new IOException("Error: saved data version "+version+" is newer than this version of JProbe");
+			}
+			if(version < INDEX_VERSION){
+				return false;
+			}
+			longLengths = version >= LONG_LENGTH_VERSION;
+			int entry;
+			while((entry = in.readByte()) != END && entry != RECORD){
+				this.readChange(entry, in);
+			}
+		} finally {
+			in.close();
+		}
+		long index;
+		in = new DataInputStream(chunk.open(chunk.getLength() - 8, 8));
+		try{
+			index = in.readLong();
+		} finally {
+			in.close();
+		}
+		in = new DataInputStream(chunk.open(index, chunk.getLength() - 8 - index));
+		try{
+			int count = in.readInt();
+			for(int i=0; i<count; i++){
+				String name = in.readUTF();
+				String bundleName = in.readUTF();
+				String type = in.readUTF();
+				Compression compression = Compression.fromId(in.readByte());
+				long offset = in.readLong();
+				long length = longLengths ? in.readLong() : in.readInt();
+				Bundle bundle = OSGIUtils.getBundleWithName(bundleName, m_Context);
+				ClassLoader loader = bundle != null ? OSGIUtils.getBundleClassLoader(bundle) : this.getClass().getClassLoader();
+				Class<? extends Data> clazz;
 				try {
-					oin.setClassLoader(this.getClass().getClassLoader());
-					String name = (String) oin.readObject();
-					String bundleName = (String) oin.readObject();
-					Bundle bundle = OSGIUtils.getBundleWithName(bundleName, m_Context);
-					if(bundle!=null){
-						oin.setClassLoader(OSGIUtils.getBundleClassLoader(bundle));
-					}
-					Data data = (Data) oin.readObject();
-					this.addData(data, name, JProbeActivator.getBundle());
+					clazz = Class.forName(type, false, loader).asSubclass(Data.class);
 				} catch (ClassNotFoundException e) {
 					//do nothing, this means the plugin that provides the data type is not loaded so simply proceed
 					continue;
-				} catch (Exception e){
-					finished = true;
+				}
+				this.addData(new SavedData(clazz, loader, chunk, offset, length, compression), name, JProbeActivator.getBundle());
+			}
+		} finally {
+			in.close();
+		}
+		return true;
+	}
+	
+	private void load(SavedChunk chunk, boolean changes){
+		try {
+			if(!m_LazyLoading || !this.readIndex(chunk)){
+				InputStream in = chunk.open();
+				try{
+					if(changes){
+						this.loadChanges(in);
+					}else{
+						this.load(in);
+					}
+				} finally {
+					in.close();
 				}
 			}
-			oin.close();
 		} catch (IOException e) {
 			ErrorHandler.getInstance().handleException(e, JProbeActivator.getBundle());
 		}
+		this.loaded();
 	}
 	
+	/**
+	 * Loads the data written by save. When loading lazily, each data object is read from the workspace the first
+	 * time it is used.
+	 */
+	@Override
+	public void load(SavedChunk chunk){
+		this.clearData();
+		this.load(chunk, false);
+	}
 	
+	@Override
+	public void loadChanges(SavedChunk chunk){
+		this.load(chunk, true);
+	}
 	
+	/**
+	 * Takes what was just written as saved and points the stored data at its new location
+	 */
+	@Override
+	public void saved(SavedChunk chunk){
+		for(Record r : m_LastSaved){
+			if(r.m_Data instanceof SavedData){
+				((SavedData) r.m_Data).moveTo(chunk, r.m_Offset, r.m_Length, r.m_Compression);
+			}
+		}
+		m_LastSaved = new ArrayList<Record>();
+		if(m_PendingSaved != null){
+			m_Saved = m_PendingSaved;
+			m_PendingSaved = null;
+		}
+		m_Writing.clear();
+	}
 	
-	
-	
-	
+	/**
+	 * Loads data saved as a single stream of names, bundles and data objects
+	 */
+	private void loadStream(InputStream in) throws IOException{
+		ClassLoaderObjectInputStream oin = new ClassLoaderObjectInputStream(in, this.getClass().getClassLoader());
+		boolean finished = false;
+		while(!finished){
+			try {
+				oin.setClassLoader(this.getClass().getClassLoader());
+				String name = (String) oin.readObject();
+				String bundleName = (String) oin.readObject();
+				Bundle bundle = OSGIUtils.getBundleWithName(bundleName, m_Context);
+				if(bundle!=null){
+					oin.setClassLoader(OSGIUtils.getBundleClassLoader(bundle));
+				}
+				Data data = (Data) oin.readObject();
+				this.addData(data, name, JProbeActivator.getBundle());
+			} catch (ClassNotFoundException e) {
+				//do nothing, this means the plugin that provides the data type is not loaded so simply proceed
+				continue;
+			} catch (Exception e){
+				finished = true;
+			}
+		}
+		oin.close();
+	}
 	
 }
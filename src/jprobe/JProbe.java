@@ -53,6 +53,8 @@ public class JProbe implements JProbeCore{
 			}
 		}
 		m_DataManager = new CoreDataManager(this, null);
+		m_DataManager.setCompression(config.getWorkspaceCompression());
+		m_DataManager.setLazyLoading(config.isLazyLoading());
 		m_FunctionManager = new CoreFunctionManager(this);
 		m_SaveManager = new SaveManager();
 		m_SaveManager.addSaveable(m_DataManager, "core");
@@ -71,6 +73,7 @@ public class JProbe implements JProbeCore{
 				+ "util.genome.reader.query;version=1.0.0,"
 				+ "util.genome.reader.threaded;version=1.0.0,"
 				+ "util.genome.peak;version=1.0.0,"
+				+ "util.genome.annotation;version=1.0.0,"
 				+ "util.xmlserializer;version=1.0.0");
 		felixConfig.put(Constants.FRAMEWORK_BOOTDELEGATION, "javax.swing,"
 				+ "javax.swing.*");
@@ -156,6 +159,24 @@ public class JProbe implements JProbeCore{
 		}
 	}
 	
+	@Override
+	public void saveChanges(File toFile){
+		try {
+			m_SaveManager.saveChanges(toFile);
+		} catch (SaveException e) {
+			ErrorHandler.getInstance().handleException(e, m_Activator.getBundleContext().getBundle());
+		}
+	}
+	
+	@Override
+	public void compact(File workspace){
+		try {
+			m_SaveManager.compact(workspace);
+		} catch (SaveException e) {
+			ErrorHandler.getInstance().handleException(e, m_Activator.getBundleContext().getBundle());
+		}
+	}
+	
 	@Override
 	public void load(File fromFile){
 		try {
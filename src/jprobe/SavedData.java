@@ -0,0 +1,201 @@
+package jprobe;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.ObjectStreamException;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.List;
+
+import jprobe.save.Compression;
+import jprobe.save.SavedChunk;
+import jprobe.services.data.Data;
+import jprobe.services.data.DataEvent;
+import jprobe.services.data.DataListener;
+import jprobe.services.data.Field;
+import jprobe.services.data.StoredData;
+
+/**
+ * Stands in for a Data object saved in a workspace. The Data object is read from the workspace the first time it
+ * is used and is only softly held after that, so it is dropped again when memory runs low and read back when it is
+ * next used. A Data object that was modified, through this or directly, is held until it is saved.
+ */
+class SavedData implements StoredData{
+	private static final long serialVersionUID = 1L;
+
+	private final Class<? extends Data> m_Type;
+	private final ClassLoader m_Loader;
+	private final List<DataListener> m_Listeners = new ArrayList<DataListener>();
+	private SavedChunk m_Chunk;
+	private long m_Offset;
+	private long m_Length;
+	private Compression m_Compression;
+	private SoftReference<Data> m_Cached = null;
+	private Data m_Modified = null;
+
+	SavedData(Class<? extends Data> type, ClassLoader loader, SavedChunk chunk, long offset, long length, Compression compression){
+		m_Type = type;
+		m_Loader = loader;
+		this.moveTo(chunk, offset, length, compression);
+	}
+
+	/**
+	 * Points this at the saved bytes of its Data object, which now hold any modifications
+	 */
+	synchronized void moveTo(SavedChunk chunk, long offset, long length, Compression compression){
+		m_Chunk = chunk;
+		m_Offset = offset;
+		m_Length = length;
+		m_Compression = compression;
+		if(m_Modified != null){
+			m_Cached = new SoftReference<Data>(m_Modified);
+			m_Modified = null;
+		}
+	}
+
+	synchronized boolean isModified(){
+		return m_Modified != null;
+	}
+
+	synchronized Compression getCompression(){
+		return m_Compression;
+	}
+
+	synchronized long getLength(){
+		return m_Length;
+	}
+
+	/**
+	 * Copies the saved bytes of the Data object, as compressed by getCompression, without holding them in memory
+	 */
+	synchronized void copyTo(OutputStream out) throws IOException{
+		InputStream in = m_Chunk.open(m_Offset, m_Length);
+		try{
+			CoreDataManager.copy(in, out);
+		} finally {
+			in.close();
+		}
+	}
+
+	private synchronized Data cached(){
+		if(m_Modified != null){
+			return m_Modified;
+		}
+		return m_Cached != null ? m_Cached.get() : null;
+	}
+
+	@Override
+	public synchronized Data getData(){
+		Data d = this.cached();
+		if(d == null){
+			try {
+				d = CoreDataManager.deserialize(m_Chunk.open(m_Offset, m_Length), m_Compression, m_Loader);
+			} catch (IOException e) {
+				throw new RuntimeException("Error: unable to read "+m_Type.getSimpleName()+" from "+m_Chunk.getFile(), e);
+			} catch (ClassNotFoundException e) {
+				throw new RuntimeException("Error: unable to read "+m_Type.getSimpleName()+" from "+m_Chunk.getFile(), e);
+			}
+			for(DataListener l : m_Listeners){
+				d.addDataListener(l);
+			}
+			this.holdOnEdit(d);
+			m_Cached = new SoftReference<Data>(d);
+		}
+		return d;
+	}
+
+	/**
+	 * Holds the read Data object once it is edited, so the edit is not dropped along with it
+	 */
+	private void holdOnEdit(final Data d){
+		d.addDataListener(new DataListener(){
+			@Override
+			public void update(DataEvent event){
+				synchronized(SavedData.this){
+					m_Modified = d;
+				}
+			}
+		});
+	}
+
+	@Override
+	public Class<? extends Data> getDataClass(){
+		return m_Type;
+	}
+
+	@Override
+	public boolean isLoaded(){
+		return this.cached() != null;
+	}
+
+	@Override
+	public synchronized void addDataListener(DataListener listener){
+		m_Listeners.add(listener);
+		Data d = this.cached();
+		if(d != null){
+			d.addDataListener(listener);
+		}
+	}
+
+	@Override
+	public synchronized void removeDataListener(DataListener listener){
+		m_Listeners.remove(listener);
+		Data d = this.cached();
+		if(d != null){
+			d.removeDataListener(listener);
+		}
+	}
+
+	@Override
+	public boolean isModifiable(int row, int col){
+		return this.getData().isModifiable(row, col);
+	}
+
+	@Override
+	public String[] getHeaders(){
+		return this.getData().getHeaders();
+	}
+
+	@Override
+	public Field[][] toTable(){
+		return this.getData().toTable();
+	}
+
+	@Override
+	public synchronized boolean setValue(int row, int col, Field value){
+		Data d = this.getData();
+		if(d.setValue(row, col, value)){
+			m_Modified = d;
+			return true;
+		}
+		return false;
+	}
+
+	@Override
+	public Field getValue(int row, int col){
+		return this.getData().getValue(row, col);
+	}
+
+	@Override
+	public int getNumRows(){
+		return this.getData().getNumRows();
+	}
+
+	@Override
+	public int getNumCols(){
+		return this.getData().getNumCols();
+	}
+
+	@Override
+	public String getTooltip(){
+		Data d = this.cached();
+		//reading the data just for a tooltip is not worth it
+		return d != null ? d.getTooltip() : m_Type.getSimpleName();
+	}
+
+	private Object writeReplace() throws ObjectStreamException{
+		return this.getData();
+	}
+
+}
@@ -0,0 +1,115 @@
+package jprobe.save;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Buffered view of the bytes [start, end) of a FileChannel. The view reads by position, so it does not move the
+ * channel and closing it leaves the channel open.
+ */
+class ChunkInputStream extends InputStream{
+	
+	private static final int BUFFER_SIZE = 1 << 16;
+	
+	private final FileChannel m_Channel;
+	private final long m_End;
+	private final ByteBuffer m_Buffer = ByteBuffer.allocate(BUFFER_SIZE);
+	//position in the channel of the first byte after the buffer
+	private long m_Pos;
+	
+	ChunkInputStream(FileChannel channel, long start, long end){
+		m_Channel = channel;
+		m_Pos = start;
+		m_End = end;
+		m_Buffer.flip();
+	}
+	
+	private long remaining(){
+		return m_End - m_Pos;
+	}
+	
+	/**
+	 * Reads into the given buffer from the current position, returning false at the end of the view
+	 */
+	private boolean fill(ByteBuffer into) throws IOException{
+		if(this.remaining() <= 0){
+			return false;
+		}
+		if(into.remaining() > this.remaining()){
+			into.limit(into.position() + (int) this.remaining());
+		}
+		int read = m_Channel.read(into, m_Pos);
+		if(read < 0){
+			throw new IOException("Error: chunk ends past the end of the file");
+		}
+		m_Pos += read;
+		return true;
+	}
+
+	@Override
+	public int read() throws IOException {
+		if(!m_Buffer.hasRemaining()){
+			m_Buffer.clear();
+			boolean filled = this.fill(m_Buffer);
+			m_Buffer.flip();
+			if(!filled){
+				return -1;
+			}
+		}
+		return m_Buffer.get() & 0xFF;
+	}
+	
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException{
+		if(len == 0){
+			return 0;
+		}
+		if(m_Buffer.hasRemaining()){
+			int n = Math.min(len, m_Buffer.remaining());
+			m_Buffer.get(b, off, n);
+			return n;
+		}
+		if(len >= BUFFER_SIZE){
+			//large reads skip the buffer
+			ByteBuffer into = ByteBuffer.wrap(b, off, len);
+			return this.fill(into) ? into.position() - off : -1;
+		}
+		int c = this.read();
+		if(c < 0){
+			return -1;
+		}
+		b[off] = (byte) c;
+		int n = Math.min(len - 1, m_Buffer.remaining());
+		m_Buffer.get(b, off + 1, n);
+		return n + 1;
+	}
+	
+	@Override
+	public long skip(long n) throws IOException{
+		if(n <= 0){
+			return 0;
+		}
+		if(n <= m_Buffer.remaining()){
+			m_Buffer.position(m_Buffer.position() + (int) n);
+			return n;
+		}
+		long skipped = m_Buffer.remaining() + Math.min(n - m_Buffer.remaining(), this.remaining());
+		m_Pos += skipped - m_Buffer.remaining();
+		m_Buffer.clear();
+		m_Buffer.flip();
+		return skipped;
+	}
+	
+	@Override
+	public int available() throws IOException{
+		return (int) Math.min(Integer.MAX_VALUE, m_Buffer.remaining() + this.remaining());
+	}
+	
+	@Override
+	public void close() throws IOException{
+		//do nothing, the channel belongs to the workspace
+	}
+
+}
@@ -0,0 +1,85 @@
+package jprobe.save;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Buffered stream writing straight to a FileChannel from a starting position. Closing the stream flushes it,
+ * but leaves the channel open for the chunks that follow.
+ */
+class ChunkOutputStream extends OutputStream{
+	
+	private static final int BUFFER_SIZE = 1 << 16;
+	
+	private final FileChannel m_Channel;
+	private final long m_Start;
+	private final ByteBuffer m_Buffer = ByteBuffer.allocate(BUFFER_SIZE);
+	private long m_Pos;
+	private boolean m_Closed = false;
+	
+	ChunkOutputStream(FileChannel channel, long start){
+		m_Channel = channel;
+		m_Start = start;
+		m_Pos = start;
+	}
+	
+	/**
+	 * Returns the number of bytes written to this stream
+	 */
+	long getLength(){
+		return m_Pos + m_Buffer.position() - m_Start;
+	}
+	
+	private void ensureOpen() throws IOException{
+		if(m_Closed){
+			throw new IOException("Error: chunk already closed");
+		}
+	}
+	
+	private void writeFully(ByteBuffer bytes) throws IOException{
+		while(bytes.hasRemaining()){
+			m_Pos += m_Channel.write(bytes, m_Pos);
+		}
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		this.ensureOpen();
+		if(!m_Buffer.hasRemaining()){
+			this.flush();
+		}
+		m_Buffer.put((byte) b);
+	}
+	
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException{
+		this.ensureOpen();
+		if(len > m_Buffer.remaining()){
+			this.flush();
+			if(len >= BUFFER_SIZE){
+				//large writes skip the buffer
+				this.writeFully(ByteBuffer.wrap(b, off, len));
+				return;
+			}
+		}
+		m_Buffer.put(b, off, len);
+	}
+	
+	@Override
+	public void flush() throws IOException{
+		m_Buffer.flip();
+		this.writeFully(m_Buffer);
+		m_Buffer.clear();
+	}
+	
+	@Override
+	public void close() throws IOException{
+		if(!m_Closed){
+			this.flush();
+			m_Closed = true;
+		}
+	}
+
+}
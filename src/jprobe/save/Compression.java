@@ -0,0 +1,102 @@
+package jprobe.save;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * The compression applied to a chunk of saved data. The id of the compression is what gets written to the
+ * workspace, so ids must never be reused.
+ */
+public enum Compression {
+
+	NONE(0, "none", Deflater.NO_COMPRESSION),
+	FAST(1, "fast", Deflater.BEST_SPEED),
+	DEFLATE(2, "deflate", Deflater.DEFAULT_COMPRESSION);
+
+	private static final int BUFFER_SIZE = 64*1024;
+
+	private final int m_Id;
+	private final String m_Name;
+	private final int m_Level;
+
+	private Compression(int id, String name, int level){
+		m_Id = id;
+		m_Name = name;
+		m_Level = level;
+	}
+
+	public int getId(){
+		return m_Id;
+	}
+
+	public static Compression fromId(int id){
+		for(Compression c : values()){
+			if(c.m_Id == id){
+				return c;
+			}
+		}
+		throw new IllegalArgumentException("Error: unknown compression id "+id);
+	}
+
+	public static Compression fromString(String s){
+		for(Compression c : values()){
+			if(c.m_Name.equalsIgnoreCase(s)){
+				return c;
+			}
+		}
+		throw new IllegalArgumentException("Error: unknown compression \""+s+"\"");
+	}
+
+	/**
+	 * Wraps the given stream so that bytes written to it are compressed. Closing the returned stream closes the
+	 * given stream.
+	 */
+	public OutputStream compress(OutputStream out){
+		if(this == NONE){
+			return out;
+		}
+		final Deflater deflater = new Deflater(m_Level);
+		return new DeflaterOutputStream(out, deflater, BUFFER_SIZE){
+			@Override
+			public void close() throws IOException{
+				try{
+					super.close();
+				} finally {
+					//a deflater that was passed in is not released by the stream
+					deflater.end();
+				}
+			}
+		};
+	}
+
+	/**
+	 * Wraps the given stream so that bytes read from it are decompressed
+	 */
+	public InputStream decompress(InputStream in){
+		if(this == NONE){
+			return in;
+		}
+		final Inflater inflater = new Inflater();
+		return new InflaterInputStream(in, inflater, BUFFER_SIZE){
+			@Override
+			public void close() throws IOException{
+				try{
+					super.close();
+				} finally {
+					inflater.end();
+				}
+			}
+		};
+	}
+
+	@Override
+	public String toString(){
+		return m_Name;
+	}
+
+}
@@ -0,0 +1,16 @@
+package jprobe.save;
+
+import jprobe.services.IncrementalSaveable;
+
+/**
+ * An IncrementalSaveable that loads from the location of its chunks rather than from a stream, so it can leave
+ * parts of them in the workspace until they are needed. It is told where each of its chunks was saved, as earlier
+ * locations are no longer valid once the workspace is overwritten.
+ */
+public interface LazySaveable extends IncrementalSaveable{
+	
+	public void load(SavedChunk chunk);
+	public void loadChanges(SavedChunk chunk);
+	public void saved(SavedChunk chunk);
+	
+}
@@ -1,53 +1,479 @@
 package jprobe.save;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
+import jprobe.services.IncrementalSaveable;
 import jprobe.services.Saveable;
 
+/**
+ * Saves the Saveables to a workspace file and loads them back. A workspace starts with a header holding the
+ * offset of its table of contents, followed by one chunk per Saveable: its tag, its length and then the bytes it
+ * saved. The table of contents at the end of the file lists the tag, offset and length of each chunk.
+ * <p>
+ * Saveables write straight to the file and read from a view of their chunk, so no chunk is held in memory, and
+ * chunks without a Saveable are never read. Workspaces saved before this format are still loaded.
+ * <p>
+ * Saving changes appends a chunk for each IncrementalSaveable that changed to the workspace that was last saved or
+ * loaded, then rewrites the table of contents. Other Saveables can not tell whether they changed, so they are saved
+ * again and their new chunk is only kept if its digest differs from that of their last chunk. On load, a chunk
+ * whose tag appeared earlier is loaded as changes by an IncrementalSaveable, and only the last chunk of every other
+ * Saveable is read. Saving the full workspace compacts it again.
+ * <p>
+ * A LazySaveable is given the location of its chunks instead of a stream, so it can read them when it needs to.
+ */
 public class SaveManager {
-	
+
+	//"JPWS"
+	static final int MAGIC = 0x4A505753;
+	static final int VERSION = 1;
+	//workspaces with appended changes can not be read by versions that only know full saves
+	static final int CHANGES_VERSION = 2;
+	//magic number, version and table of contents offset
+	private static final int HEADER_SIZE = 16;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final String DIGEST = "SHA-256";
+	private static final String TEMP_EXTENSION = ".saving";
+
+	private static class Chunk{
+
+		private final String m_Id;
+		private final long m_Offset;
+		private final long m_Length;
+
+		private Chunk(String id, long offset, long length){
+			m_Id = id;
+			m_Offset = offset;
+			m_Length = length;
+		}
+
+	}
+
 	private Map<String, Saveable> m_Saveables = new HashMap<String, Saveable>();
-	
+	//the workspace that was last saved or loaded, changes can only be appended to it while it is untouched
+	private File m_Workspace = null;
+	private List<Chunk> m_Chunks = null;
+	private long m_Length;
+	private long m_Modified;
+	//digest of the last chunk of each Saveable that is not incremental
+	private Map<String, byte[]> m_Digests = new HashMap<String, byte[]>();
+
 	public void addSaveable(Saveable s, String tag){
 		m_Saveables.put(tag, s);
 	}
-	
+
 	public void removeSaveable(Saveable s, String tag){
 		if(m_Saveables.containsKey(tag) && m_Saveables.get(tag) == s){
 			m_Saveables.remove(tag);
 		}
 	}
-	
+
+	private static void writeFully(FileChannel channel, ByteBuffer bytes, long pos) throws IOException{
+		bytes.flip();
+		while(bytes.hasRemaining()){
+			pos += channel.write(bytes, pos);
+		}
+	}
+
+	private static ByteBuffer readFully(FileChannel channel, int numBytes, long pos) throws IOException{
+		ByteBuffer bytes = ByteBuffer.allocate(numBytes);
+		while(bytes.hasRemaining()){
+			int read = channel.read(bytes, pos + bytes.position());
+			if(read < 0){
+				throw new IOException("Error: unexpected end of workspace");
+			}
+		}
+		bytes.flip();
+		return bytes;
+	}
+
+	private static MessageDigest newDigest(Saveable s){
+		if(s instanceof IncrementalSaveable){
+			return null;
+		}
+		try {
+			return MessageDigest.getInstance(DIGEST);
+		} catch (NoSuchAlgorithmException e) {
+			//every java platform supports SHA-256
+			throw new RuntimeException(e);
+		}
+	}
+
+	private void setWorkspace(File workspace, List<Chunk> chunks, Map<String, byte[]> digests){
+		m_Workspace = workspace.getAbsoluteFile();
+		m_Chunks = chunks;
+		m_Digests = digests;
+		m_Length = workspace.length();
+		m_Modified = workspace.lastModified();
+	}
+
+	private boolean isWorkspace(File f){
+		return m_Workspace != null && m_Workspace.equals(f.getAbsoluteFile()) && f.length() == m_Length && f.lastModified() == m_Modified;
+	}
+
+	private static void writeHeader(FileChannel channel, int version) throws IOException{
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.putInt(MAGIC).putInt(version).putLong(0);
+		writeFully(channel, header, 0);
+	}
+
+	/**
+	 * Writes the chunk of a Saveable at the given position, saving only its changes if requested. The bytes written
+	 * are added to the digest, if there is one.
+	 */
+	private static Chunk writeChunk(FileChannel channel, long pos, String tag, Saveable s, boolean changes, MessageDigest digest) throws IOException{
+		byte[] id = tag.getBytes(UTF8);
+		long start = pos + 2 + id.length + 8;
+		ChunkOutputStream out = new ChunkOutputStream(channel, start);
+		OutputStream target = digest != null ? new DigestOutputStream(out, digest) : out;
+		if(changes){
+			((IncrementalSaveable) s).saveChanges(target);
+		}else{
+			s.save(target);
+		}
+		target.close();
+		//the length is only known once the saveable is done
+		ByteBuffer chunkHeader = ByteBuffer.allocate(2 + id.length + 8);
+		chunkHeader.putShort((short) id.length).put(id).putLong(out.getLength());
+		writeFully(channel, chunkHeader, pos);
+		return new Chunk(tag, start, out.getLength());
+	}
+
+	/**
+	 * Writes the table of contents at the given position, drops anything after it and then fills in its offset.
+	 * The table of contents starts with an empty tag, so a scan of the chunks stops before it.
+	 */
+	private static void writeContents(FileChannel channel, long pos, List<Chunk> chunks) throws IOException{
+		ByteBuffer marker = ByteBuffer.allocate(2);
+		marker.putShort((short) 0);
+		writeFully(channel, marker, pos);
+		pos += 2;
+		long tocOffset = pos;
+		for(Chunk c : chunks){
+			byte[] id = c.m_Id.getBytes(UTF8);
+			ByteBuffer entry = ByteBuffer.allocate(2 + id.length + 16);
+			entry.putShort((short) id.length).put(id).putLong(c.m_Offset).putLong(c.m_Length);
+			writeFully(channel, entry, pos);
+			pos += entry.limit();
+		}
+		channel.truncate(pos);
+		//the offset is filled in last, so an interrupted save has no table of contents and is scanned instead
+		ByteBuffer offset = ByteBuffer.allocate(8);
+		offset.putLong(tocOffset);
+		writeFully(channel, offset, 8);
+	}
+
+	private static long end(List<Chunk> chunks){
+		if(chunks.isEmpty()){
+			return HEADER_SIZE;
+		}
+		Chunk last = chunks.get(chunks.size() - 1);
+		return last.m_Offset + last.m_Length;
+	}
+
+	/**
+	 * Tells each LazySaveable where its chunk was saved
+	 */
+	private void notifySaved(File workspace, List<Chunk> written){
+		for(Chunk c : written){
+			Saveable s = m_Saveables.get(c.m_Id);
+			if(s instanceof LazySaveable){
+				((LazySaveable) s).saved(new SavedChunk(workspace.getAbsoluteFile(), c.m_Offset, c.m_Length));
+			}
+		}
+	}
+
+	/**
+	 * Gives the file the permissions of the given file, if it exists and the file system has POSIX permissions
+	 */
+	private static void copyPermissions(File from, File to) throws IOException{
+		if(!from.exists()){
+			return;
+		}
+		try{
+			Files.setPosixFilePermissions(to.toPath(), Files.getPosixFilePermissions(from.toPath()));
+		} catch (UnsupportedOperationException e){
+			//do nothing
+		}
+	}
+
+	/**
+	 * Saves every Saveable to a new workspace. The workspace is written next to the file and then moved over it,
+	 * so the file can still be read while saving and is left as it was if saving fails. The new workspace keeps the
+	 * permissions of the file it replaces.
+	 */
 	public void save(File saveTo) throws SaveException{
+		m_Workspace = null;
+		File dir = saveTo.getAbsoluteFile().getParentFile();
+		File temp = null;
 		try {
-			ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(saveTo));
-			for(String tag : m_Saveables.keySet()){
-				ByteArrayOutputStream byteOut = new ByteArrayOutputStream();
-				m_Saveables.get(tag).save(byteOut);
-				Tag header = new Tag(tag, byteOut.size());
-				out.writeObject(header);
-				byteOut.writeTo(out);
-				byteOut.close();
+			//a plain file gets the default permissions, unlike a temp file which only its owner can read
+			temp = new File(dir, saveTo.getName()+TEMP_EXTENSION);
+			RandomAccessFile file = new RandomAccessFile(temp, "rw");
+			List<Chunk> chunks = new ArrayList<Chunk>();
+			Map<String, byte[]> digests = new HashMap<String, byte[]>();
+			try{
+				FileChannel channel = file.getChannel();
+				writeHeader(channel, VERSION);
+				long pos = HEADER_SIZE;
+				for(String tag : m_Saveables.keySet()){
+					Saveable s = m_Saveables.get(tag);
+					MessageDigest digest = newDigest(s);
+					Chunk c = writeChunk(channel, pos, tag, s, false, digest);
+					if(digest != null){
+						digests.put(tag, digest.digest());
+					}
+					chunks.add(c);
+					pos = c.m_Offset + c.m_Length;
+				}
+				writeContents(channel, pos, chunks);
+			} finally {
+				file.close();
 			}
-			out.close();
+			copyPermissions(saveTo, temp);
+			Files.move(temp.toPath(), saveTo.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			temp = null;
+			this.setWorkspace(saveTo, chunks, digests);
+			this.notifySaved(saveTo, chunks);
 		} catch (FileNotFoundException e) {
 			throw new SaveException(e);
 		} catch (IOException e) {
 			throw new SaveException(e);
+		} finally {
+			if(temp != null){
+				temp.delete();
+			}
 		}
 	}
-	
+
+	/**
+	 * Appends the changes since the last save or load to the workspace. If the workspace is not the one that was
+	 * last saved or loaded, or it was modified since, it is saved in full instead.
+	 */
+	public void saveChanges(File saveTo) throws SaveException{
+		if(!this.isWorkspace(saveTo)){
+			this.save(saveTo);
+			return;
+		}
+		List<Chunk> chunks = new ArrayList<Chunk>(m_Chunks);
+		List<Chunk> written = new ArrayList<Chunk>();
+		Map<String, byte[]> digests = new HashMap<String, byte[]>(m_Digests);
+		m_Workspace = null;
+		try {
+			RandomAccessFile file = new RandomAccessFile(saveTo, "rw");
+			try{
+				FileChannel channel = file.getChannel();
+				//clear the table of contents offset before touching anything, so an interrupted save is scanned
+				writeHeader(channel, CHANGES_VERSION);
+				long pos = end(chunks);
+				channel.truncate(pos);
+				Set<String> saved = new HashSet<String>();
+				for(Chunk c : chunks){
+					saved.add(c.m_Id);
+				}
+				for(String tag : m_Saveables.keySet()){
+					Saveable s = m_Saveables.get(tag);
+					boolean changes = s instanceof IncrementalSaveable && saved.contains(tag);
+					if(changes && !((IncrementalSaveable) s).hasChanges()){
+						continue;
+					}
+					MessageDigest digest = newDigest(s);
+					Chunk c = writeChunk(channel, pos, tag, s, changes, digest);
+					if(digest != null){
+						byte[] d = digest.digest();
+						if(Arrays.equals(d, digests.get(tag))){
+							//saved the same as its last chunk, so the chunk is written over by the next one
+							continue;
+						}
+						digests.put(tag, d);
+					}
+					chunks.add(c);
+					written.add(c);
+					pos = c.m_Offset + c.m_Length;
+				}
+				writeContents(channel, pos, chunks);
+			} finally {
+				file.close();
+			}
+			this.setWorkspace(saveTo, chunks, digests);
+			this.notifySaved(saveTo, written);
+		} catch (FileNotFoundException e) {
+			throw new SaveException(e);
+		} catch (IOException e) {
+			throw new SaveException(e);
+		}
+	}
+
+	/**
+	 * Rewrites the workspace as a full save, dropping the changes appended to it
+	 */
+	public void compact(File workspace) throws SaveException{
+		this.save(workspace);
+	}
+
+	/**
+	 * Reads the table of contents at the given offset, returning null if it does not fit in the file or lists a
+	 * chunk that does not
+	 */
+	private static List<Chunk> readContents(FileChannel channel, long pos) throws IOException{
+		List<Chunk> chunks = new ArrayList<Chunk>();
+		long size = channel.size();
+		if(pos < HEADER_SIZE || pos > size){
+			return null;
+		}
+		while(pos < size){
+			if(pos + 2 > size){
+				return null;
+			}
+			int idLength = readFully(channel, 2, pos).getShort() & 0xFFFF;
+			if(pos + 2 + idLength + 16 > size){
+				return null;
+			}
+			String id = new String(readFully(channel, idLength, pos + 2).array(), UTF8);
+			ByteBuffer entry = readFully(channel, 16, pos + 2 + idLength);
+			Chunk c = new Chunk(id, entry.getLong(), entry.getLong());
+			if(c.m_Offset < HEADER_SIZE || c.m_Length < 0 || c.m_Offset + c.m_Length > size){
+				return null;
+			}
+			chunks.add(c);
+			pos += 2 + idLength + 16;
+		}
+		return chunks;
+	}
+
+	/**
+	 * Finds the chunks of a workspace without a table of contents by following their lengths. Reading stops at
+	 * the first chunk that does not fit in the file.
+	 */
+	private static List<Chunk> scanChunks(FileChannel channel) throws IOException{
+		List<Chunk> chunks = new ArrayList<Chunk>();
+		long size = channel.size();
+		long pos = HEADER_SIZE;
+		while(pos + 2 <= size){
+			int idLength = readFully(channel, 2, pos).getShort() & 0xFFFF;
+			long start = pos + 2 + idLength + 8;
+			//tags are never empty, so an empty one is a chunk whose header was not written yet
+			if(idLength == 0 || start > size){
+				break;
+			}
+			String id = new String(readFully(channel, idLength, pos + 2).array(), UTF8);
+			long length = readFully(channel, 8, pos + 2 + idLength).getLong();
+			if(length < 0 || start + length > size){
+				break;
+			}
+			chunks.add(new Chunk(id, start, length));
+			pos = start + length;
+		}
+		return chunks;
+	}
+
 	public void load(File loadFrom) throws LoadException{
+		m_Workspace = null;
+		try {
+			RandomAccessFile file = new RandomAccessFile(loadFrom, "r");
+			List<Chunk> chunks;
+			Map<String, byte[]> digests = new HashMap<String, byte[]>();
+			try{
+				FileChannel channel = file.getChannel();
+				if(channel.size() < HEADER_SIZE || readFully(channel, 4, 0).getInt() != MAGIC){
+					file.close();
+					this.loadLegacy(loadFrom);
+					return;
+				}
+				ByteBuffer header = readFully(channel, HEADER_SIZE, 0);
+				header.getInt();
+				int version = header.getInt();
+				if(version > CHANGES_VERSION){
+					throw new LoadException("Error: workspace version "+version+" is newer than this version of JProbe");
+				}
+				long tocOffset = header.getLong();
+				chunks = tocOffset > 0 ? readContents(channel, tocOffset) : null;
+				if(chunks == null){
+					//the save was interrupted or the file was cut short, so find the chunks that were written
+					chunks = scanChunks(channel);
+				}
+				Map<String, Chunk> last = new HashMap<String, Chunk>();
+				for(Chunk c : chunks){
+					last.put(c.m_Id, c);
+				}
+				Set<String> loaded = new HashSet<String>();
+				for(Chunk c : chunks){
+					Saveable s = m_Saveables.get(c.m_Id);
+					if(s == null){
+						//there is no saveable loaded to read this data, so skip it
+						continue;
+					}
+					try{
+						if(s instanceof LazySaveable){
+							SavedChunk chunk = new SavedChunk(loadFrom.getAbsoluteFile(), c.m_Offset, c.m_Length);
+							if(loaded.contains(c.m_Id)){
+								((LazySaveable) s).loadChanges(chunk);
+							}else{
+								((LazySaveable) s).load(chunk);
+							}
+						}else if(s instanceof IncrementalSaveable){
+							InputStream in = new ChunkInputStream(channel, c.m_Offset, c.m_Offset + c.m_Length);
+							if(loaded.contains(c.m_Id)){
+								((IncrementalSaveable) s).loadChanges(in);
+							}else{
+								s.load(in);
+							}
+						}else if(last.get(c.m_Id) == c){
+							//earlier chunks of a saveable that is not incremental were replaced by its last one
+							MessageDigest digest = newDigest(s);
+							InputStream in = new DigestInputStream(new ChunkInputStream(channel, c.m_Offset, c.m_Offset + c.m_Length), digest);
+							s.load(in);
+							//the saveable may not have read all of its chunk
+							byte[] buffer = new byte[4096];
+							while(in.read(buffer) >= 0){
+								//do nothing
+							}
+							digests.put(c.m_Id, digest.digest());
+						}
+					} catch (Exception e){
+						//an error occurred in the saveable while loading, ignore it and move on
+					}
+					loaded.add(c.m_Id);
+				}
+			} finally {
+				file.close();
+			}
+			this.setWorkspace(loadFrom, chunks, digests);
+		} catch (FileNotFoundException e) {
+			throw new LoadException(e);
+		} catch (IOException e) {
+			throw new LoadException(e);
+		}
+	}
+
+	/**
+	 * Loads a workspace written as a stream of serialized Tags, each followed by the bytes of its Saveable
+	 */
+	private void loadLegacy(File loadFrom) throws LoadException{
 		try {
 			ObjectInputStream in = new ObjectInputStream(new FileInputStream(loadFrom));
 			boolean finished = false;
@@ -58,13 +484,9 @@ public class SaveManager {
 					String id = header.getId();
 					int size = header.getNumBytes();
 					if(m_Saveables.containsKey(id)){
-						//read the bytes into a new inputstream
-						ByteArrayOutputStream bytes = new ByteArrayOutputStream();
-						for(int i=0; i<size; i++){
-							bytes.write(in.read());
-						}
-						ByteArrayInputStream byteIn = new ByteArrayInputStream(bytes.toByteArray());
-						bytes.close();
+						byte[] bytes = new byte[size];
+						in.readFully(bytes);
+						InputStream byteIn = new ByteArrayInputStream(bytes);
 						//pass the new inputstream to the saveable for loading
 						try{
 							m_Saveables.get(id).load(byteIn);
@@ -74,8 +496,13 @@ public class SaveManager {
 						byteIn.close();
 					}else{
 						//there is no saveable loaded to read this data, so skip it
-						for(int i=0; i<size; i++){
-							in.read();
+						int skipped = 0;
+						while(skipped < size){
+							int n = in.skipBytes(size - skipped);
+							if(n <= 0){
+								throw new EOFException();
+							}
+							skipped += n;
 						}
 					}
 				} catch (Exception e) {
@@ -90,5 +517,5 @@ public class SaveManager {
 			throw new LoadException(e);
 		}
 	}
-	
+
 }
@@ -0,0 +1,56 @@
+package jprobe.save;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+
+/**
+ * The location of a chunk in a workspace file. Parts of the chunk can be read back at any time for as long as the
+ * workspace is not overwritten.
+ */
+public class SavedChunk {
+	
+	private final File m_File;
+	private final long m_Offset;
+	private final long m_Length;
+	
+	SavedChunk(File file, long offset, long length){
+		m_File = file;
+		m_Offset = offset;
+		m_Length = length;
+	}
+	
+	public File getFile(){
+		return m_File;
+	}
+	
+	public long getLength(){
+		return m_Length;
+	}
+	
+	/**
+	 * Opens the bytes [from, from+length) of this chunk. Closing the stream closes the workspace file.
+	 */
+	public InputStream open(long from, long length) throws IOException{
+		if(from < 0 || length < 0 || from + length > m_Length){
+			throw new IOException("Error: bytes "+from+" to "+(from+length)+" are outside of a chunk of "+m_Length+" bytes");
+		}
+		final RandomAccessFile file = new RandomAccessFile(m_File, "r");
+		return new ChunkInputStream(file.getChannel(), m_Offset + from, m_Offset + from + length){
+			@Override
+			public void close() throws IOException{
+				try{
+					super.close();
+				} finally {
+					file.close();
+				}
+			}
+		};
+	}
+	
+	public InputStream open() throws IOException{
+		return this.open(0, m_Length);
+	}
+	
+}
@@ -13,6 +13,13 @@ import jprobe.services.data.DataWriter;
 
 import org.osgi.framework.Bundle;
 
+/**
+ * Holds the Data objects of the workspace by name. Data objects loaded from a saved workspace are only read when
+ * first used, so the Data returned by this manager and carried by its CoreEvents may be a StoredData standing in
+ * for the Data object. Use {@link jprobe.services.data.StoredDataUtils#typeOf(Data)} to get the class of the Data
+ * object without reading it and {@link jprobe.services.data.StoredDataUtils#unwrap(Data)} to get the Data object
+ * itself, instead of checking or casting the returned Data directly.
+ */
 public interface DataManager {
 	
 	public void addListener(CoreListener listener);
@@ -38,13 +45,23 @@ public interface DataManager {
 	public void addData(Data data, Bundle responsible);
 	public void removeData(Data data, Bundle responsible);
 	public void removeData(String name, Bundle responsible);
+	/**
+	 * Returns all Data of the workspace, any of which may be StoredData
+	 */
 	public List<Data> getAllData();
 	public String[] getDataNames();
 	public void rename(Data data, String name, Bundle responsible);
 	public String getDataName(Data data);
+	/**
+	 * Returns the Data with the given name, which may be StoredData
+	 */
 	public Data getData(String name);
 	public boolean contains(String name);
 	public boolean contains(Data data);
+	/**
+	 * Returns the Data whose class is the given type, any of which may be StoredData standing in for a Data
+	 * object of that type
+	 */
 	public List<Data> getData(Class<? extends Data> type);
 	
 	public boolean changesSinceLastSave();
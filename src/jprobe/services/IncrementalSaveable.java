@@ -0,0 +1,16 @@
+package jprobe.services;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A Saveable that can save only what changed since it was last saved or loaded. Saved changes are appended to the
+ * workspace and replayed in order after the full save they follow.
+ */
+public interface IncrementalSaveable extends Saveable{
+	
+	public boolean hasChanges();
+	public void saveChanges(OutputStream out);
+	public void loadChanges(InputStream in);
+	
+}
@@ -36,6 +36,8 @@ public interface JProbeCore {
 	public FunctionManager getFunctionManager();
 	
 	public void save(File toFile);
+	public void saveChanges(File toFile);
+	public void compact(File workspace);
 	public void load(File fromFile);
 	
 	public void addSaveable(Saveable add, Bundle bundle);
@@ -8,6 +8,10 @@ import javax.swing.filechooser.FileNameExtensionFilter;
 public interface DataWriter {
 	
 	public FileNameExtensionFilter[] getValidWriteFormats();
+	/**
+	 * Writes the data in the given format. Data made of many records should be written one record at a time,
+	 * rather than formatted into a single String first.
+	 */
 	public void write(Data data, FileNameExtensionFilter format, BufferedWriter out) throws Exception;
 
 }
@@ -0,0 +1,14 @@
+package jprobe.services.data;
+
+/**
+ * Stands in for a Data object that is kept in a saved workspace until it is first used. The Data methods of a
+ * StoredData read the Data object it stands for, so callers that need the Data object itself, for instance to
+ * check its class or pass it to a function, should use getData.
+ */
+public interface StoredData extends Data{
+	
+	public Class<? extends Data> getDataClass();
+	public Data getData();
+	public boolean isLoaded();
+	
+}
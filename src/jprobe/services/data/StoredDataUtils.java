@@ -0,0 +1,28 @@
+package jprobe.services.data;
+
+/**
+ * Helpers for Data objects that may be StoredData standing in for a Data object that was not read yet
+ */
+public class StoredDataUtils {
+	
+	/**
+	 * Returns the class of the given data, or of the data it stands for if it is stored, without reading it
+	 */
+	public static Class<? extends Data> typeOf(Data d){
+		if(d instanceof StoredData){
+			return ((StoredData) d).getDataClass();
+		}
+		return d.getClass();
+	}
+	
+	/**
+	 * Returns the given data, or the data it stands for if it is stored, reading it if needed
+	 */
+	public static Data unwrap(Data d){
+		if(d instanceof StoredData){
+			return ((StoredData) d).getData();
+		}
+		return d;
+	}
+	
+}
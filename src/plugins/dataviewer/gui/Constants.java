@@ -16,4 +16,6 @@ public class Constants {
 	public static final String[] DATALIST_COL_HEADERS = new String[]{"Name", "Type"};
 	public static final int DATALIST_MIN_COL_WIDTH = 100;
 	
+	public static final String DATA_NOT_LOADED_TEXT = "Loading...";
+	
 }
@@ -7,12 +7,14 @@ import javax.swing.JLabel;
 import javax.swing.JList;
 import javax.swing.JScrollPane;
 import javax.swing.JTable;
+import javax.swing.SwingConstants;
 import javax.swing.ListCellRenderer;
 import javax.swing.UIManager;
 import javax.swing.table.JTableHeader;
 
 import plugins.dataviewer.gui.table.DataTable;
 import jprobe.services.data.Data;
+import jprobe.services.data.StoredData;
 
 public class DataTab extends JScrollPane{
 	private static final long serialVersionUID = 1L;
@@ -77,13 +79,29 @@ public class DataTab extends JScrollPane{
 	}
 	
 	private Data m_Data;
+	private boolean m_Shown = false;
 	
 	public DataTab(Data data){
 		super();
-		JTable table = new DataTable(data);
-		this.setViewportView(table);
 		m_Data = data;
-		this.setRowHeaderView(new DataHeader(data, table));
+		if(data instanceof StoredData && !((StoredData) data).isLoaded()){
+			//stored data is only read once its tab is shown
+			this.setViewportView(new JLabel(Constants.DATA_NOT_LOADED_TEXT, SwingConstants.CENTER));
+		}else{
+			this.showData();
+		}
+	}
+	
+	/**
+	 * Fills this tab with the table of its data, if it was not shown yet
+	 */
+	public void showData(){
+		if(!m_Shown){
+			JTable table = new DataTable(m_Data);
+			this.setViewportView(table);
+			this.setRowHeaderView(new DataHeader(m_Data, table));
+			m_Shown = true;
+		}
 	}
 	
 	public Data getData(){
@@ -1,5 +1,6 @@
 package plugins.dataviewer.gui;
 
+import java.awt.Component;
 import java.awt.Dimension;
 import java.awt.GridBagConstraints;
 import java.util.HashMap;
@@ -7,6 +8,8 @@ import java.util.Map;
 
 import javax.swing.JTabbedPane;
 import javax.swing.SwingUtilities;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 
 import plugins.dataviewer.gui.services.DataViewer;
 import jprobe.services.CoreEvent;
@@ -36,15 +39,19 @@ public class DataTabPane extends JTabbedPane implements CoreListener, DataViewer
 		m_Constraints.gridwidth = 3;
 		m_Tabs = new HashMap<Data, DataTab>();
 		m_TabLables = new HashMap<Data, DataTabLabel>();
+		//tabs only read their data once they are selected
+		this.addChangeListener(new ChangeListener(){
+			@Override
+			public void stateChanged(ChangeEvent e) {
+				Component selected = DataTabPane.this.getSelectedComponent();
+				if(selected instanceof DataTab){
+					((DataTab) selected).showData();
+				}
+			}
+		});
 		dataManager.addListener(this);
 		for(Data d : dataManager.getAllData()){
-			DataTab tab = new  DataTab(d);
-			m_Tabs.put(d, tab);
-			this.addTab("", tab);
-			int index = this.indexOfComponent(tab);
-			DataTabLabel lable = new DataTabLabel(this, tab, m_DataManager.getDataName(d));
-			m_TabLables.put(d, lable);
-			this.setTabComponentAt(index, lable);
+			this.displayData(d);
 		}
 		this.revalidate();
 	}
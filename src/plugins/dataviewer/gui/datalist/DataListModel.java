@@ -14,6 +14,7 @@ import jprobe.services.CoreListener;
 import jprobe.services.ErrorHandler;
 import jprobe.services.JProbeCore;
 import jprobe.services.data.Data;
+import jprobe.services.data.StoredDataUtils;
 
 public class DataListModel extends DefaultTableModel implements CoreListener{
 	private static final long serialVersionUID = 1L;
@@ -76,7 +77,8 @@ public class DataListModel extends DefaultTableModel implements CoreListener{
 	private void add(Data data){
 		String name = m_Core.getDataManager().getDataName(data);
 		m_Data.put(data, name);
-		this.addRow(new String[]{name, data.getClass().getSimpleName()});
+		Class<? extends Data> type = StoredDataUtils.typeOf(data);
+		this.addRow(new String[]{name, type.getSimpleName()});
 	}
 	
 	private void remove(Data data){
@@ -5,6 +5,7 @@ import java.awt.event.ActionEvent;
 import plugins.jprobe.gui.services.JProbeGUI;
 import jprobe.services.JProbeCore;
 import jprobe.services.data.Data;
+import jprobe.services.data.StoredDataUtils;
 
 
 public class ExportDataMenuItem extends AbstractDataMenuItem{
@@ -24,7 +25,7 @@ public class ExportDataMenuItem extends AbstractDataMenuItem{
 		if(data == null){
 			this.setVisible(false);
 		}else{
-			this.setVisible(m_Core.getDataManager().isWritable(data.getClass()));
+			this.setVisible(m_Core.getDataManager().isWritable(StoredDataUtils.typeOf(data)));
 		}
 	}
 	
@@ -34,7 +35,7 @@ public class ExportDataMenuItem extends AbstractDataMenuItem{
 		if(data == null){
 			this.setVisible(false);
 		}else{
-			this.setVisible(m_Core.getDataManager().isWritable(data.getClass()));
+			this.setVisible(m_Core.getDataManager().isWritable(StoredDataUtils.typeOf(data)));
 		}
 	}
 
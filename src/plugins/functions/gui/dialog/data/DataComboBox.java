@@ -18,6 +18,8 @@ import jprobe.services.CoreEvent;
 import jprobe.services.CoreListener;
 import jprobe.services.JProbeCore;
 import jprobe.services.data.Data;
+import jprobe.services.data.StoredData;
+import jprobe.services.data.StoredDataUtils;
 import jprobe.services.function.DataParameter;
 
 public class DataComboBox extends JComboBox<String> implements CoreListener, ValidStateNotifier{
@@ -29,7 +31,7 @@ public class DataComboBox extends JComboBox<String> implements CoreListener, Val
 		@Override
 		public void itemStateChanged(ItemEvent e) {
 			if(e.getStateChange() == ItemEvent.SELECTED){
-				m_Valid = m_DataParam.isValid(m_Displayed.get(getSelectedItem()));
+				m_Valid = m_DataParam.isValid(StoredDataUtils.unwrap(m_Displayed.get(getSelectedItem())));
 				notifyListeners();
 			}
 			if(e.getStateChange() == ItemEvent.DESELECTED){
@@ -75,7 +77,11 @@ public class DataComboBox extends JComboBox<String> implements CoreListener, Val
 	}
 	
 	private boolean isValid(Data d){
-		return d.getClass() == m_DataParam.getType() && m_DataParam.isValid(d);
+		if(StoredDataUtils.typeOf(d) != m_DataParam.getType()){
+			return false;
+		}
+		//stored data is only read once it is selected
+		return d instanceof StoredData || m_DataParam.isValid(d);
 	}
 	
 	private void addData(Data d){
@@ -137,7 +143,7 @@ public class DataComboBox extends JComboBox<String> implements CoreListener, Val
 	public void update(CoreEvent event) {
 		if(event.type() == CoreEvent.Type.DATA_ADDED){
 			Data added = event.getData();
-			if(added.getClass() == m_DataParam.getType() && m_DataParam.isValid(added)){
+			if(this.isValid(added)){
 				this.addData(added);
 			}
 		}
@@ -153,7 +159,7 @@ public class DataComboBox extends JComboBox<String> implements CoreListener, Val
 	}
 	
 	public Data getSelectedData(){
-		return m_Displayed.get(this.getSelectedItem());
+		return StoredDataUtils.unwrap(m_Displayed.get(this.getSelectedItem()));
 	}
 	
 	@Override
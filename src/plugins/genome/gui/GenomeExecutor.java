@@ -8,8 +8,8 @@ import javax.swing.SwingWorker;
 
 import plugins.genome.GenomeActivator;
 import plugins.genome.services.GenomeFunction;
-import util.genome.reader.BasicGenomeReader;
 import util.genome.reader.GenomeReader;
+import util.genome.reader.GenomeReaderFactory;
 import util.progress.ProgressListener;
 import util.progress.ProgressPanel;
 import util.progress.ProgressWindow;
@@ -80,7 +80,7 @@ public class GenomeExecutor extends SwingWorker<Data, Object>{
 			if(this.isCancelled()){
 				return null;
 			}
-			GenomeReader r = new BasicGenomeReader(m_GenomeFile, l);
+			GenomeReader r = GenomeReaderFactory.createGenomeReader(m_GenomeFile, l);
 			if(this.isCancelled()){
 				return null;
 			}
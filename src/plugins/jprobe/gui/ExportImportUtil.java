@@ -11,6 +11,7 @@ import javax.swing.filechooser.FileNameExtensionFilter;
 import jprobe.services.ErrorHandler;
 import jprobe.services.JProbeCore;
 import jprobe.services.data.Data;
+import jprobe.services.data.StoredDataUtils;
 
 public class ExportImportUtil {
 	
@@ -45,7 +46,8 @@ public class ExportImportUtil {
 
 	public static void exportData(Data data, JProbeCore core, JFileChooser exportChooser, Component parent){
 		//retreive file formats for this data object
-		FileFilter[] formats = core.getDataManager().getValidWriteFormats(data.getClass());
+		Class<? extends Data> type = StoredDataUtils.typeOf(data);
+		FileFilter[] formats = core.getDataManager().getValidWriteFormats(type);
 		//if there are none, then there is an error in the data writer. warn the user and return
 		if(formats.length <= 0){
 			JOptionPane.showMessageDialog(parent, "Warning: there are no writable formats for this data type.", "Export Warning", JOptionPane.WARNING_MESSAGE);
@@ -31,7 +31,15 @@ public class SaveLoadUtil {
 		if(LAST_SAVE_FILE == null){
 			saveAs(core, parent);
 		}else{
-			core.save(LAST_SAVE_FILE);
+			core.saveChanges(LAST_SAVE_FILE);
+		}
+	}
+	
+	public static void compact(JProbeCore core, Component parent){
+		if(LAST_SAVE_FILE == null){
+			saveAs(core, parent);
+		}else{
+			core.compact(LAST_SAVE_FILE);
 		}
 	}
 	
@@ -49,7 +57,8 @@ public class SaveLoadUtil {
 		SAVE_LOAD_CHOOSER.setFileFilter(Constants.SAVE_FILE_FILTER);
 		int returnVal = SAVE_LOAD_CHOOSER.showDialog(parent, "Load");
 		if(returnVal == JFileChooser.APPROVE_OPTION){
-			core.load(SAVE_LOAD_CHOOSER.getSelectedFile());
+			LAST_SAVE_FILE = SAVE_LOAD_CHOOSER.getSelectedFile();
+			core.load(LAST_SAVE_FILE);
 		}
 	}
 	
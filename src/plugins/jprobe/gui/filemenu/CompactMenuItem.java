@@ -0,0 +1,28 @@
+package plugins.jprobe.gui.filemenu;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+import javax.swing.JMenuItem;
+import javax.swing.SwingUtilities;
+
+import plugins.jprobe.gui.SaveLoadUtil;
+import jprobe.services.JProbeCore;
+
+public class CompactMenuItem extends JMenuItem implements ActionListener{
+	private static final long serialVersionUID = 1L;
+	
+	private JProbeCore m_Core;
+	
+	public CompactMenuItem(JProbeCore core){
+		super("Compact Workspace");
+		m_Core = core;
+		this.addActionListener(this);
+	}
+	
+	@Override
+	public void actionPerformed(ActionEvent arg0) {
+		SaveLoadUtil.compact(m_Core, SwingUtilities.getWindowAncestor(this));
+	}
+
+}
@@ -11,6 +11,7 @@ import jprobe.services.CoreEvent;
 import jprobe.services.CoreListener;
 import jprobe.services.JProbeCore;
 import jprobe.services.data.Data;
+import jprobe.services.data.StoredDataUtils;
 
 public class ExportMenu extends JMenu implements CoreListener{
 	private static final long serialVersionUID = 1L;
@@ -31,7 +32,7 @@ public class ExportMenu extends JMenu implements CoreListener{
 	
 	private void checkAllCoreData(){
 		for(Data data : m_Core.getDataManager().getAllData()){
-			if(m_Core.getDataManager().isWritable(data.getClass())){
+			if(m_Core.getDataManager().isWritable(StoredDataUtils.typeOf(data))){
 				this.addExportItem(data);
 			}else{
 				this.removeExportItem(data);
@@ -68,7 +69,7 @@ public class ExportMenu extends JMenu implements CoreListener{
 		switch(event.type()){
 		case DATA_ADDED:
 			Data added = event.getData();
-			if(m_Core.getDataManager().isWritable(added.getClass())){
+			if(m_Core.getDataManager().isWritable(StoredDataUtils.typeOf(added))){
 				this.addExportItem(added);
 			}
 			break;
@@ -12,6 +12,7 @@ public class FileMenu extends JMenu{
 		super("File");
 		this.add(new SaveMenuItem(core));
 		this.add(new SaveAsMenuItem(core));
+		this.add(new CompactMenuItem(core));
 		this.add(new LoadMenuItem(core));
 		this.addSeparator();
 		this.add(new ImportMenu(core, parentFrame.getImportChooser()));
@@ -1,5 +1,7 @@
 package plugins.testDataAndFunction;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.util.*;
 
 import javax.swing.filechooser.FileNameExtensionFilter;
@@ -19,7 +21,8 @@ public class TestData implements Data{
 	private IntField m_Integer;
 	private DecimalField m_Decimal;
 	private Field[][] m_Table;
-	private Collection<DataListener> m_Listeners = new HashSet<DataListener>();
+	//listeners are not saved with the data
+	private transient Collection<DataListener> m_Listeners = new HashSet<DataListener>();
 	
 	public TestData(String string, int integer, double decimal){
 		this.m_String = new StringField(string);
@@ -35,6 +38,11 @@ public class TestData implements Data{
 		this.fillTable();
 	}
 	
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException{
+		in.defaultReadObject();
+		m_Listeners = new HashSet<DataListener>();
+	}
+	
 	private void fillTable(){
 		m_Table = new Field[1][3];
 		m_Table[0][0] = m_String;
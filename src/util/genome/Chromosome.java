@@ -14,6 +14,8 @@ public class Chromosome implements Comparable<Chromosome>, Serializable{
 	private final String m_Id;
 	private final long m_Size;
 	private final GenomicContext m_Context;
+	//index of this chromosome in its genome or -1
+	private final int m_Index;
 	private final int m_HashCode;
 	
 	public Chromosome(String id){
@@ -25,7 +27,12 @@ public class Chromosome implements Comparable<Chromosome>, Serializable{
 	}
 	
 	public Chromosome(GenomicContext context, String id, long size){
+		this(context, id, size, -1);
+	}
+	
+	Chromosome(GenomicContext context, String id, long size, int index){
 		m_Context = context;
+		m_Index = index;
 		if(id.startsWith(CHR_TAG)){
 			m_Id = id.substring(CHR_TAG.length()).trim();
 		}else if(id.startsWith(FASTA_CHR_TAG)){
@@ -59,6 +66,10 @@ public class Chromosome implements Comparable<Chromosome>, Serializable{
 		return m_Context.prevChr(this);
 	}
 	
+	int getIndex(){
+		return m_Index;
+	}
+	
 	public String getId(){
 		return m_Id;
 	}
@@ -1,51 +1,329 @@
 package util.genome;
 
 import java.io.Serializable;
+import java.nio.charset.Charset;
+import java.util.Arrays;
 
 /**
  * A more memory efficient way of storing DNA sequences than strings.
- * 
+ * <p>
+ * Bases are packed 2 bits each, 4 to a byte. Characters other than A, C, G and T (N runs and other IUPAC codes)
+ * are kept in a list of exception runs and lowercase (soft-masked) bases in a list of mask runs, so that
+ * {@link #getBaseAt(long)} and {@link #subsequence(long, long)} give back exactly the characters that were stored.
+ *
  * @author Tristan Bepler
  *
  */
 public class DNASequence implements Serializable{
-	
-	private static final byte A = 00000000;
-	private static final byte T = 00000001;
-	private static final byte G = 00000010;
-	private static final byte C = 00000011;
-	
-	private static byte[] parseString(String seq){
-		byte[] bytes = new byte[seq.length() + Math.min(1, seq.length() % 4)];
-		for(int i=0; i<seq.length(); i++){
-			assign(bytes, seq.charAt(i), i);
-		}
-		return bytes;
-	}
-	
-	private static void assign(byte[] bytes, char base, int pos){
-		int index = pos/4;
-		byte b = bytes[index];
-		int offset = (pos % 4)*2;
-		if(base == 'a' || base == 'A'){
-			b = (byte) (b & ~(0x03 << offset));
-		}else if(base == 'c' || base == 'C'){
-			b = (byte) (b | (0x03 << offset));
-		}else if(base == 't' || base == 'T'){
-			b = (byte) (b | (0x01 << offset));
-			b = (byte) (b & ~(0x01 << (offset + 1)));
-		}else if(base == 'g' || base == 'G'){
-			b = (byte) (b & ~(0x01 << offset));
-			b = (byte) (b | (0x01 << (offset + 1)));
-		}else{
-			throw new RuntimeException("Error: "+base+" is not a DNA character!");
-		}
-		bytes[index] = b;
-	}
-	
-	private byte[] m_Sequence;
-	private long m_Length;
-	
-	
-	
+	private static final long serialVersionUID = 1L;
+
+	private static final byte A = 0x0;
+	private static final byte T = 0x1;
+	private static final byte G = 0x2;
+	private static final byte C = 0x3;
+
+	private static final byte[] BASES = new byte[]{'A', 'T', 'G', 'C'};
+	private static final byte[] CODES = createCodes();
+	private static final int CASE_BIT = 0x20;
+	private static final Charset ASCII = Charset.forName("ISO-8859-1");
+
+	private static byte[] createCodes(){
+		byte[] codes = new byte[256];
+		Arrays.fill(codes, (byte) -1);
+		codes['A'] = A;
+		codes['a'] = A;
+		codes['T'] = T;
+		codes['t'] = T;
+		codes['G'] = G;
+		codes['g'] = G;
+		codes['C'] = C;
+		codes['c'] = C;
+		return codes;
+	}
+
+	private static void assign(byte[] bytes, byte code, long pos){
+		int index = (int) (pos >>> 2);
+		int offset = (int) (pos & 3) * 2;
+		bytes[index] = (byte) ((bytes[index] & ~(0x03 << offset)) | (code << offset));
+	}
+
+	private static int decode(byte[] bytes, long pos){
+		return (bytes[(int) (pos >>> 2)] >>> ((int) (pos & 3) * 2)) & 0x03;
+	}
+
+	private static boolean isLowerCase(byte b){
+		return b >= 'a' && b <= 'z';
+	}
+
+	/**
+	 * Returns the index of the last run starting at or before pos, or -1 if there is none
+	 */
+	private static int floorRun(long[] starts, long pos){
+		int index = Arrays.binarySearch(starts, pos);
+		return index >= 0 ? index : -index - 2;
+	}
+
+	/**
+	 * Builds a DNASequence by appending bases to it
+	 */
+	public static class Builder{
+
+		private byte[] m_Sequence = new byte[1024];
+		private long m_Length = 0;
+
+		private long[] m_ExceptionStarts = new long[16];
+		private long[] m_ExceptionEnds = new long[16];
+		private byte[] m_ExceptionBases = new byte[16];
+		private int m_Exceptions = 0;
+
+		private long[] m_MaskStarts = new long[16];
+		private long[] m_MaskEnds = new long[16];
+		private int m_Masks = 0;
+
+		public Builder append(CharSequence bases){
+			byte[] bytes = new byte[bases.length()];
+			for(int i=0; i<bytes.length; i++){
+				bytes[i] = (byte) bases.charAt(i);
+			}
+			return this.append(bytes, 0, bytes.length);
+		}
+
+		public Builder append(byte[] bases, int offset, int length){
+			this.ensureCapacity(m_Length + length);
+			byte[] packed = m_Sequence;
+			long pos = m_Length;
+			for(int i=offset; i<offset+length; i++){
+				byte b = bases[i];
+				byte code = CODES[b & 0xFF];
+				if(code < 0){
+					//the case of letters is kept by the mask runs, other symbols are stored as they are
+					this.addException(pos, isLowerCase(b) ? (byte) (b & ~CASE_BIT) : b);
+					code = A;
+				}
+				if(isLowerCase(b)){
+					this.addMask(pos);
+				}
+				assign(packed, code, pos);
+				pos++;
+			}
+			m_Length = pos;
+			return this;
+		}
+
+		private void ensureCapacity(long length){
+			long bytes = (length + 3) >>> 2;
+			if(bytes > Integer.MAX_VALUE){
+				throw new RuntimeException("Error: sequence of "+length+" bases is too long to pack");
+			}
+			if(bytes > m_Sequence.length){
+				long grown = Math.max(bytes, Math.min((long) m_Sequence.length * 2, Integer.MAX_VALUE));
+				m_Sequence = Arrays.copyOf(m_Sequence, (int) grown);
+			}
+		}
+
+		private void addException(long pos, byte base){
+			int last = m_Exceptions - 1;
+			if(last >= 0 && m_ExceptionEnds[last] == pos && m_ExceptionBases[last] == base){
+				m_ExceptionEnds[last] = pos + 1;
+				return;
+			}
+			if(m_Exceptions == m_ExceptionStarts.length){
+				m_ExceptionStarts = Arrays.copyOf(m_ExceptionStarts, m_Exceptions * 2);
+				m_ExceptionEnds = Arrays.copyOf(m_ExceptionEnds, m_Exceptions * 2);
+				m_ExceptionBases = Arrays.copyOf(m_ExceptionBases, m_Exceptions * 2);
+			}
+			m_ExceptionStarts[m_Exceptions] = pos;
+			m_ExceptionEnds[m_Exceptions] = pos + 1;
+			m_ExceptionBases[m_Exceptions] = base;
+			m_Exceptions++;
+		}
+
+		private void addMask(long pos){
+			int last = m_Masks - 1;
+			if(last >= 0 && m_MaskEnds[last] == pos){
+				m_MaskEnds[last] = pos + 1;
+				return;
+			}
+			if(m_Masks == m_MaskStarts.length){
+				m_MaskStarts = Arrays.copyOf(m_MaskStarts, m_Masks * 2);
+				m_MaskEnds = Arrays.copyOf(m_MaskEnds, m_Masks * 2);
+			}
+			m_MaskStarts[m_Masks] = pos;
+			m_MaskEnds[m_Masks] = pos + 1;
+			m_Masks++;
+		}
+
+		public long length(){
+			return m_Length;
+		}
+
+		public DNASequence build(){
+			return new DNASequence(this);
+		}
+
+	}
+
+	private final byte[] m_Sequence;
+	private final long m_Length;
+	private final long[] m_ExceptionStarts;
+	private final long[] m_ExceptionEnds;
+	private final byte[] m_ExceptionBases;
+	private final long[] m_MaskStarts;
+	private final long[] m_MaskEnds;
+
+	public DNASequence(String seq){
+		this(new Builder().append(seq));
+	}
+
+	private DNASequence(Builder builder){
+		m_Length = builder.m_Length;
+		m_Sequence = Arrays.copyOf(builder.m_Sequence, (int) ((m_Length + 3) >>> 2));
+		m_ExceptionStarts = Arrays.copyOf(builder.m_ExceptionStarts, builder.m_Exceptions);
+		m_ExceptionEnds = Arrays.copyOf(builder.m_ExceptionEnds, builder.m_Exceptions);
+		m_ExceptionBases = Arrays.copyOf(builder.m_ExceptionBases, builder.m_Exceptions);
+		m_MaskStarts = Arrays.copyOf(builder.m_MaskStarts, builder.m_Masks);
+		m_MaskEnds = Arrays.copyOf(builder.m_MaskEnds, builder.m_Masks);
+	}
+
+	/**
+	 * Creates a sequence directly from its packed representation and run lists. The runs are [start, end) ranges
+	 * of 0-based indices, sorted by start and not overlapping.
+	 */
+	public DNASequence(byte[] packed, long length, long[] exceptionStarts, long[] exceptionEnds, byte[] exceptionBases, long[] maskStarts, long[] maskEnds){
+		if(packed.length < (length + 3) >>> 2){
+			throw new RuntimeException("Error: "+packed.length+" packed bytes cannot hold "+length+" bases");
+		}
+		m_Sequence = packed;
+		m_Length = length;
+		m_ExceptionStarts = exceptionStarts;
+		m_ExceptionEnds = exceptionEnds;
+		m_ExceptionBases = exceptionBases;
+		m_MaskStarts = maskStarts;
+		m_MaskEnds = maskEnds;
+	}
+
+	public long length(){
+		return m_Length;
+	}
+
+	/**
+	 * Returns the number of bytes used by the packed bases and the run lists
+	 */
+	public long getStorageSize(){
+		return m_Sequence.length + 17L * m_ExceptionStarts.length + 16L * m_MaskStarts.length;
+	}
+
+	private void checkIndex(long index){
+		if(index < 0 || index >= m_Length){
+			throw new IndexOutOfBoundsException("Error: index "+index+" is out of bounds for a sequence of length "+m_Length);
+		}
+	}
+
+	/**
+	 * Returns the base at the given 0-based index
+	 */
+	public char getBaseAt(long index){
+		this.checkIndex(index);
+		byte base = BASES[decode(m_Sequence, index)];
+		int run = floorRun(m_ExceptionStarts, index);
+		if(run >= 0 && index < m_ExceptionEnds[run]){
+			base = m_ExceptionBases[run];
+		}
+		if(this.isMasked(index)){
+			base = (byte) (base | CASE_BIT);
+		}
+		return (char) base;
+	}
+
+	/**
+	 * Tests whether the base at the given 0-based index is soft-masked (lowercase)
+	 */
+	public boolean isMasked(long index){
+		int run = floorRun(m_MaskStarts, index);
+		return run >= 0 && index < m_MaskEnds[run];
+	}
+
+	/**
+	 * Writes the bases [start, end) as ASCII characters to dest
+	 */
+	public void getBases(long start, long end, byte[] dest, int destOffset){
+		if(start > end){
+			throw new IllegalArgumentException("Error: start "+start+" is after end "+end);
+		}
+		if(start == end) return;
+		this.checkIndex(start);
+		this.checkIndex(end - 1);
+		byte[] packed = m_Sequence;
+		int d = destOffset;
+		long pos = start;
+		//unpack bases until aligned to a byte, then a whole byte at a time
+		while(pos < end && (pos & 3) != 0){
+			dest[d++] = BASES[decode(packed, pos++)];
+		}
+		while(end - pos >= 4){
+			int b = packed[(int) (pos >>> 2)];
+			dest[d++] = BASES[b & 0x03];
+			dest[d++] = BASES[(b >>> 2) & 0x03];
+			dest[d++] = BASES[(b >>> 4) & 0x03];
+			dest[d++] = BASES[(b >>> 6) & 0x03];
+			pos += 4;
+		}
+		while(pos < end){
+			dest[d++] = BASES[decode(packed, pos++)];
+		}
+		//apply the exception and mask runs overlapping the range
+		for(int run = Math.max(floorRun(m_ExceptionStarts, start), 0); run < m_ExceptionStarts.length && m_ExceptionStarts[run] < end; run++){
+			long from = Math.max(start, m_ExceptionStarts[run]);
+			long to = Math.min(end, m_ExceptionEnds[run]);
+			if(from < to){
+				Arrays.fill(dest, destOffset + (int) (from - start), destOffset + (int) (to - start), m_ExceptionBases[run]);
+			}
+		}
+		for(int run = Math.max(floorRun(m_MaskStarts, start), 0); run < m_MaskStarts.length && m_MaskStarts[run] < end; run++){
+			long from = Math.max(start, m_MaskStarts[run]);
+			long to = Math.min(end, m_MaskEnds[run]);
+			for(long i=from; i<to; i++){
+				int index = destOffset + (int) (i - start);
+				dest[index] = (byte) (dest[index] | CASE_BIT);
+			}
+		}
+	}
+
+	/**
+	 * Returns the bases [start, end) of this sequence as a String
+	 */
+	public String subsequence(long start, long end){
+		long length = end - start;
+		if(length > Integer.MAX_VALUE){
+			throw new RuntimeException("Error: subsequence of "+length+" bases is too long for a String");
+		}
+		byte[] bases = new byte[(int) length];
+		this.getBases(start, end, bases, 0);
+		return new String(bases, ASCII);
+	}
+
+	@Override
+	public String toString(){
+		return this.subsequence(0, m_Length);
+	}
+
+	@Override
+	public boolean equals(Object o){
+		if(o == null) return false;
+		if(this == o) return true;
+		if(o instanceof DNASequence){
+			DNASequence other = (DNASequence) o;
+			return m_Length == other.m_Length && Arrays.equals(m_Sequence, other.m_Sequence)
+					&& Arrays.equals(m_ExceptionStarts, other.m_ExceptionStarts) && Arrays.equals(m_ExceptionEnds, other.m_ExceptionEnds)
+					&& Arrays.equals(m_ExceptionBases, other.m_ExceptionBases)
+					&& Arrays.equals(m_MaskStarts, other.m_MaskStarts) && Arrays.equals(m_MaskEnds, other.m_MaskEnds);
+		}
+		return false;
+	}
+
+	@Override
+	public int hashCode(){
+		return 31 * Arrays.hashCode(m_Sequence) + (int) (m_Length ^ (m_Length >>> 32));
+	}
+
 }
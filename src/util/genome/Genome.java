@@ -4,15 +4,16 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.regex.Pattern;
 import util.progress.ProgressEvent;
 import util.progress.ProgressListener;
 import util.progress.ProgressEvent.Type;
@@ -22,113 +23,22 @@ public class Genome implements GenomicContext, Serializable{
 	
 	private static final String CHR_LINE = "^((>[Cc]hr)|(>[Cc]hromosome)).+$";
 	private static final String CHR_MARKER = "^((>[Cc]hr)|(>[Cc]hromosome))";
+	private static final Pattern CHR_PATTERN = Pattern.compile(CHR_LINE);
 	
-	private final Comparator<Chromosome> CHR_ASCENDING = new Comparator<Chromosome>(){
-
-		@Override
-		public int compare(Chromosome o1, Chromosome o2) {
-			return m_ChrPriority.get(o1) - m_ChrPriority.get(o2);
-		}
-		
-	};
-	
-	private final Comparator<Chromosome> CHR_DESCENDING = new Comparator<Chromosome>(){
-
-		@Override
-		public int compare(Chromosome o1, Chromosome o2) {
-			return m_ChrPriority.get(o2) - m_ChrPriority.get(o1);
-		}
-		
-	};
+	private transient Comparator<Chromosome> m_ChrAscending;
+	private transient Comparator<Chromosome> m_ChrDescending;
+	private transient Comparator<GenomicCoordinate> m_LocAscending;
+	private transient Comparator<GenomicCoordinate> m_LocDescending;
+	private transient Comparator<GenomicRegion> m_RegionStartAscending;
+	private transient Comparator<GenomicRegion> m_RegionStartDescending;
+	private transient Comparator<GenomicRegion> m_RegionEndAscending;
+	private transient Comparator<GenomicRegion> m_RegionEndDescending;
 	
-	private final Comparator<GenomicCoordinate> LOC_ASCENDING = new Comparator<GenomicCoordinate>(){
-
-		@Override
-		public int compare(GenomicCoordinate o1, GenomicCoordinate o2) {
-			if(o1.getChromosome().equals(o2.getChromosome())){
-				long base1 = o1.getBaseIndex();
-				long base2 = o2.getBaseIndex();
-				if(base1 < base2) return -1;
-				if(base1 > base2) return 1;
-				return 0;
-			}
-			return getChrAscendingComparator().compare(o1.getChromosome(), o2.getChromosome());
-		}
-		
-	};
-	
-	private final Comparator<GenomicCoordinate> LOC_DESCENDING = new Comparator<GenomicCoordinate>(){
-
-		@Override
-		public int compare(GenomicCoordinate o1, GenomicCoordinate o2) {
-			if(o1.getChromosome().equals(o2.getChromosome())){
-				long base1 = o1.getBaseIndex();
-				long base2 = o2.getBaseIndex();
-				if(base1 < base2) return 1;
-				if(base1 > base2) return -1;
-				return 0;
-			}
-			return getChrDescendingComparator().compare(o1.getChromosome(), o2.getChromosome());
-		}
-		
-	};
-	
-	private final Comparator<GenomicRegion> REGION_START_ASCENDING = new Comparator<GenomicRegion>(){
-
-		@Override
-		public int compare(GenomicRegion o1, GenomicRegion o2) {
-			Comparator<GenomicCoordinate> locComp = getLocationAscendingComparator();
-			if(o1.getStart().equals(o2.getStart())){
-				return locComp.compare(o1.getEnd(), o2.getEnd());
-			}
-			return locComp.compare(o1.getStart(), o2.getStart());
-		}
-		
-	};
-	
-	private final Comparator<GenomicRegion> REGION_START_DESCENDING = new Comparator<GenomicRegion>(){
-
-		@Override
-		public int compare(GenomicRegion o1, GenomicRegion o2) {
-			Comparator<GenomicCoordinate> locComp = getLocationDescendingComparator();
-			if(o1.getStart().equals(o2.getStart())){
-				return locComp.compare(o1.getEnd(), o2.getEnd());
-			}
-			return locComp.compare(o1.getStart(), o2.getStart());
-		}
-		
-	};
-	
-	private final Comparator<GenomicRegion> REGION_END_ASCENDING = new Comparator<GenomicRegion>(){
-
-		@Override
-		public int compare(GenomicRegion o1, GenomicRegion o2) {
-			Comparator<GenomicCoordinate> locComp = getLocationAscendingComparator();
-			if(o1.getEnd().equals(o2.getEnd())){
-				return locComp.compare(o1.getStart(), o2.getStart());
-			}
-			return locComp.compare(o1.getEnd(), o2.getEnd());
-		}
-	
-	};
-	
-	private final Comparator<GenomicRegion> REGION_END_DESCENDING = new Comparator<GenomicRegion>(){
-
-		@Override
-		public int compare(GenomicRegion o1, GenomicRegion o2) {
-			Comparator<GenomicCoordinate> locComp = getLocationDescendingComparator();
-			if(o1.getEnd().equals(o2.getEnd())){
-				return locComp.compare(o1.getStart(), o2.getStart());
-			}
-			return locComp.compare(o1.getEnd(), o2.getEnd());
-		}
-		
-	};
-	
-	private List<Chromosome> m_Chrs;
-	private Map<Chromosome, Integer> m_ChrPriority;
-	private Map<Chromosome, Chromosome> m_NextChr;
-	private Map<Chromosome, Chromosome> m_PrevChr;
+	//chromosomes by index and the index of each chromosome id
+	private final List<Chromosome> m_Chrs = new ArrayList<Chromosome>();
+	private transient Map<String, Integer> m_Ids = new HashMap<String, Integer>();
+	//packed position of the first base of each chromosome, followed by the size of the genome
+	private transient long[] m_Offsets;
 	private final String m_Name;
 	
 	public Genome(String name, InputStream genome){
@@ -137,23 +47,19 @@ public class Genome implements GenomicContext, Serializable{
 	
 	public Genome(Collection<ProgressListener> listeners, String name,  InputStream genome){
 		m_Name = name;
-		m_Chrs = new ArrayList<Chromosome>();
-		m_ChrPriority = new HashMap<Chromosome, Integer>();
-		m_NextChr = new HashMap<Chromosome, Chromosome>();
-		m_PrevChr = new HashMap<Chromosome, Chromosome>();
+		this.initComparators();
 		String curTag = null;
 		long count = 0;
+		List<Long> sizes = new ArrayList<Long>();
 		BufferedReader reader = new BufferedReader(new InputStreamReader(genome));
 		String line;
 		try {
 			while((line = reader.readLine()) != null){
 				if(isChrMarker(line)){
 					if(curTag != null){
-						Chromosome chr = new Chromosome(this, curTag, count);
-						m_Chrs.add(chr);
-						m_ChrPriority.put(chr, m_Chrs.size());
+						this.addChr(curTag, count, sizes);
 					}
-					curTag = line;
+					curTag = chrName(line);
 					if(listeners != null){
 						for(ProgressListener l : listeners){
 							l.update(new ProgressEvent(this, Type.UPDATE, 0, "Prereading "+name+": "+curTag, true));
@@ -167,13 +73,10 @@ public class Genome implements GenomicContext, Serializable{
 		} catch (IOException e) {
 			//do nothing
 		}
-		Chromosome prev = null;
-		for(Chromosome cur : m_Chrs){
-			m_NextChr.put(prev, cur);
-			m_PrevChr.put(cur, prev);
-			prev = cur;
+		if(curTag != null){
+			this.addChr(curTag, count, sizes);
 		}
-		m_NextChr.put(prev, null);
+		this.initOffsets(sizes);
 	}
 	
 	public Genome(String name, List<String> chrNames, List<Integer> chrSizes){
@@ -181,65 +84,207 @@ public class Genome implements GenomicContext, Serializable{
 			throw new RuntimeException("Error: unequal numbers of names and sizes. Names: "+chrNames.size()+", Sizes: "+chrSizes.size());
 		}
 		m_Name = name;
-		m_Chrs = new LinkedList<Chromosome>();
-		m_ChrPriority = new HashMap<Chromosome, Integer>();
-		m_NextChr = new HashMap<Chromosome, Chromosome>();
-		m_PrevChr = new HashMap<Chromosome, Chromosome>();
-		//initialize chromosomes and fill data structures
-		Chromosome prev = null;
+		this.initComparators();
+		List<Long> sizes = new ArrayList<Long>(chrSizes.size());
 		for(int i=0; i<chrNames.size(); i++){
-			Chromosome chr = new Chromosome(this, chrNames.get(i), chrSizes.get(i));
-			m_Chrs.add(chr);
-			m_ChrPriority.put(chr, i+1);
-			m_NextChr.put(prev, chr);
-			m_PrevChr.put(chr, prev);
-			prev = chr;
+			this.addChr(chrNames.get(i), chrSizes.get(i), sizes);
 		}
-		m_NextChr.put(prev, null);
+		this.initOffsets(sizes);
+	}
+	
+	private void initComparators(){
+		m_ChrAscending = new Comparator<Chromosome>(){
+
+			@Override
+			public int compare(Chromosome o1, Chromosome o2) {
+				return indexOfOrThrow(o1) - indexOfOrThrow(o2);
+			}
+		
+		};
+		
+		m_ChrDescending = new Comparator<Chromosome>(){
+
+			@Override
+			public int compare(Chromosome o1, Chromosome o2) {
+				return indexOfOrThrow(o2) - indexOfOrThrow(o1);
+			}
+		
+		};
+		
+		m_LocAscending = new Comparator<GenomicCoordinate>(){
+
+			@Override
+			public int compare(GenomicCoordinate o1, GenomicCoordinate o2) {
+				int chr = indexOfOrThrow(o1.getChromosome()) - indexOfOrThrow(o2.getChromosome());
+				if(chr != 0) return chr;
+				long base1 = o1.getBaseIndex();
+				long base2 = o2.getBaseIndex();
+				if(base1 < base2) return -1;
+				if(base1 > base2) return 1;
+				return 0;
+			}
+		
+		};
+		
+		m_LocDescending = new Comparator<GenomicCoordinate>(){
+
+			@Override
+			public int compare(GenomicCoordinate o1, GenomicCoordinate o2) {
+				int chr = indexOfOrThrow(o2.getChromosome()) - indexOfOrThrow(o1.getChromosome());
+				if(chr != 0) return chr;
+				long base1 = o1.getBaseIndex();
+				long base2 = o2.getBaseIndex();
+				if(base1 < base2) return 1;
+				if(base1 > base2) return -1;
+				return 0;
+			}
+		
+		};
+		
+		m_RegionStartAscending = new Comparator<GenomicRegion>(){
+
+			@Override
+			public int compare(GenomicRegion o1, GenomicRegion o2) {
+				Comparator<GenomicCoordinate> locComp = getLocationAscendingComparator();
+				if(o1.getStart().equals(o2.getStart())){
+					return locComp.compare(o1.getEnd(), o2.getEnd());
+				}
+				return locComp.compare(o1.getStart(), o2.getStart());
+			}
+		
+		};
+		
+		m_RegionStartDescending = new Comparator<GenomicRegion>(){
+
+			@Override
+			public int compare(GenomicRegion o1, GenomicRegion o2) {
+				Comparator<GenomicCoordinate> locComp = getLocationDescendingComparator();
+				if(o1.getStart().equals(o2.getStart())){
+					return locComp.compare(o1.getEnd(), o2.getEnd());
+				}
+				return locComp.compare(o1.getStart(), o2.getStart());
+			}
+		
+		};
+		
+		m_RegionEndAscending = new Comparator<GenomicRegion>(){
+
+			@Override
+			public int compare(GenomicRegion o1, GenomicRegion o2) {
+				Comparator<GenomicCoordinate> locComp = getLocationAscendingComparator();
+				if(o1.getEnd().equals(o2.getEnd())){
+					return locComp.compare(o1.getStart(), o2.getStart());
+				}
+				return locComp.compare(o1.getEnd(), o2.getEnd());
+			}
+		
+		};
+		
+		m_RegionEndDescending = new Comparator<GenomicRegion>(){
+
+			@Override
+			public int compare(GenomicRegion o1, GenomicRegion o2) {
+				Comparator<GenomicCoordinate> locComp = getLocationDescendingComparator();
+				if(o1.getEnd().equals(o2.getEnd())){
+					return locComp.compare(o1.getStart(), o2.getStart());
+				}
+				return locComp.compare(o1.getEnd(), o2.getEnd());
+			}
+		
+		};
+	}
+	
+	private void addChr(String tag, long size, List<Long> sizes){
+		Chromosome chr = new Chromosome(this, tag, size, m_Chrs.size());
+		if(!m_Ids.containsKey(chr.getId())){
+			//the first chromosome with an id is the one looked up by it
+			m_Ids.put(chr.getId(), m_Chrs.size());
+		}
+		m_Chrs.add(chr);
+		sizes.add(size);
+	}
+	
+	private void initOffsets(List<Long> sizes){
+		m_Offsets = new long[sizes.size() + 1];
+		for(int i=0; i<sizes.size(); i++){
+			m_Offsets[i+1] = m_Offsets[i] + Math.max(sizes.get(i), 0);
+		}
+	}
+	
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException{
+		in.defaultReadObject();
+		//only the chromosomes are saved, which also lets genomes saved before the ids and offsets were added be read
+		m_Ids = new HashMap<String, Integer>();
+		List<Long> sizes = new ArrayList<Long>(m_Chrs.size());
+		for(int i=0; i<m_Chrs.size(); i++){
+			Chromosome chr = m_Chrs.get(i);
+			if(!m_Ids.containsKey(chr.getId())){
+				m_Ids.put(chr.getId(), i);
+			}
+			sizes.add(chr.getSize());
+		}
+		this.initOffsets(sizes);
+		this.initComparators();
 	}
 	
 	private boolean isChrMarker(String line){
-		return line.matches(CHR_LINE);
+		return isChrHeader(line);
+	}
+	
+	/**
+	 * Tests whether the given FASTA header line starts a new chromosome of the genome. Sequences with other
+	 * headers are counted as part of the preceding chromosome.
+	 */
+	public static boolean isChrHeader(String line){
+		return CHR_PATTERN.matcher(line).matches();
+	}
+	
+	/**
+	 * Gets the name of the chromosome started by the given FASTA header line. Like samtools, this is the first
+	 * word of the header, so every genome reader and .fai index names a chromosome the same way.
+	 */
+	public static String chrName(String header){
+		return header.trim().split("\\s+")[0];
 	}
 
 	@Override
 	public Comparator<Chromosome> getChrAscendingComparator() {
-		return CHR_ASCENDING;
+		return m_ChrAscending;
 	}
 
 	@Override
 	public Comparator<Chromosome> getChrDescendingComparator() {
-		return CHR_DESCENDING;
+		return m_ChrDescending;
 	}
 
 	@Override
 	public Comparator<GenomicCoordinate> getLocationAscendingComparator() {
-		return LOC_ASCENDING;
+		return m_LocAscending;
 	}
 
 	@Override
 	public Comparator<GenomicCoordinate> getLocationDescendingComparator() {
-		return LOC_DESCENDING;
+		return m_LocDescending;
 	}
 
 	@Override
 	public Comparator<GenomicRegion> getStartAscendingComparator() {
-		return REGION_START_ASCENDING;
+		return m_RegionStartAscending;
 	}
 
 	@Override
 	public Comparator<GenomicRegion> getStartDescendingComparator() {
-		return REGION_START_DESCENDING;
+		return m_RegionStartDescending;
 	}
 
 	@Override
 	public Comparator<GenomicRegion> getEndAscendingComparator() {
-		return REGION_END_ASCENDING;
+		return m_RegionEndAscending;
 	}
 
 	@Override
 	public Comparator<GenomicRegion> getEndDescendingComparator() {
-		return REGION_END_DESCENDING;
+		return m_RegionEndDescending;
 	}
 
 	@Override
@@ -259,27 +304,33 @@ public class Genome implements GenomicContext, Serializable{
 	
 	@Override
 	public boolean hasChr(Chromosome chr){
-		return m_ChrPriority.containsKey(chr);
+		return this.indexOf(chr) >= 0;
 	}
 
 	@Override
 	public boolean hasChr(String id) {
-		for(Chromosome chr : m_Chrs){
-			if(chr.getId().equals(id)){
-				return true;
-			}
-		}
-		return false;
+		return m_Ids.containsKey(id);
 	}
 
 	@Override
 	public Chromosome getChr(String id) {
-		for(Chromosome chr : m_Chrs){
-			if(chr.getId().equals(id)){
-				return chr;
-			}
+		return m_Chrs.get(this.indexOfId(id));
+	}
+	
+	private int indexOfId(String id){
+		Integer index = m_Ids.get(id);
+		if(index == null){
+			throw new RuntimeException("Error: no chromosome with id \""+id+"\" in genome "+this);
 		}
-		throw new RuntimeException("Error: no chromosome with id \""+id+"\" in genome "+this);
+		return index;
+	}
+	
+	private int indexOfOrThrow(Chromosome chr){
+		int index = this.indexOf(chr);
+		if(index < 0){
+			throw new RuntimeException("Error: chromosome "+chr+" is not part of genome "+this);
+		}
+		return index;
 	}
 
 	@Override
@@ -305,14 +356,86 @@ public class Genome implements GenomicContext, Serializable{
 		return GenomicRegion.parseString(this, s);
 	}
 
+	/**
+	 * Returns the number of bases in this genome
+	 */
+	public long getSize(){
+		return m_Offsets[m_Offsets.length - 1];
+	}
+	
+	/**
+	 * Returns the packed form of the given location. Locations are packed into their offset from the first base of
+	 * the genome, so packed locations are ordered as the genome and comparing them, finding the distance between
+	 * them and moving them are plain arithmetic. The chromosome may be given by a Chromosome of this genome or
+	 * any Chromosome with the same id.
+	 */
+	public long pack(Chromosome chr, long baseIndex){
+		int index = this.indexOf(chr);
+		if(index < 0){
+			index = this.indexOfId(chr.getId());
+		}
+		return m_Offsets[index] + baseIndex - 1;
+	}
+	
+	public long pack(GenomicCoordinate coord){
+		return this.pack(coord.getChromosome(), coord.getBaseIndex());
+	}
+	
+	/**
+	 * Returns the index of the chromosome containing the given packed location
+	 */
+	public int indexOfPacked(long packed){
+		long[] offsets = m_Offsets;
+		if(packed < 0 || packed >= offsets[offsets.length - 1]){
+			throw new RuntimeException("Error: packed location "+packed+" is outside of genome "+this);
+		}
+		int low = 0;
+		int high = offsets.length - 2;
+		while(low < high){
+			int mid = (low + high + 1) >>> 1;
+			if(offsets[mid] <= packed){
+				low = mid;
+			}else{
+				high = mid - 1;
+			}
+		}
+		return low;
+	}
+	
+	/**
+	 * Returns the base index of the given packed location on its chromosome
+	 */
+	public long getPackedBaseIndex(long packed){
+		return packed - m_Offsets[this.indexOfPacked(packed)] + 1;
+	}
+	
+	/**
+	 * Returns the packed location of the first base of the chromosome with the given index
+	 */
+	public long getPackedStart(int chrIndex){
+		return m_Offsets[chrIndex];
+	}
+	
+	public GenomicCoordinate unpack(long packed){
+		int index = this.indexOfPacked(packed);
+		return new GenomicCoordinate(this, m_Chrs.get(index), packed - m_Offsets[index] + 1);
+	}
+
 	@Override
 	public Chromosome nextChr(Chromosome cur) {
-		return m_NextChr.get(cur);
+		if(cur == null){
+			return m_Chrs.isEmpty() ? null : m_Chrs.get(0);
+		}
+		int index = this.indexOf(cur);
+		if(index < 0 || index + 1 >= m_Chrs.size()) return null;
+		return m_Chrs.get(index + 1);
 	}
 
 	@Override
 	public Chromosome prevChr(Chromosome cur) {
-		return m_PrevChr.get(cur);
+		int index = this.indexOf(cur);
+		if(index <= 0) return null;
+		return m_Chrs.get(index - 1);
 	}
 	
 	@Override
@@ -327,7 +450,17 @@ public class Genome implements GenomicContext, Serializable{
 
 	@Override
 	public int indexOf(Chromosome chr) {
-		return m_Chrs.indexOf(chr);
+		if(chr == null) return -1;
+		int index = chr.getIndex();
+		if(index >= 0 && index < m_Chrs.size() && m_Chrs.get(index) == chr){
+			return index;
+		}
+		//an equal chromosome that is not the genome's own instance
+		Integer byId = m_Ids.get(chr.getId());
+		if(byId != null && m_Chrs.get(byId).equals(chr)){
+			return byId;
+		}
+		return -1;
 	}
 
 	@Override
@@ -80,6 +80,10 @@ public class GenomicCoordinate implements Comparable<GenomicCoordinate>, Seriali
 		if(cur.equals(end.getChromosome())){
 			return end.getBaseIndex() - start.getBaseIndex();
 		}
+		if(m_Context instanceof Genome){
+			Genome genome = (Genome) m_Context;
+			return genome.pack(end) - genome.pack(start);
+		}
 		long size = 0;
 		size += cur.getSize() - start.getBaseIndex() + 1;
 		cur = cur.nextChr();
@@ -103,6 +107,12 @@ public class GenomicCoordinate implements Comparable<GenomicCoordinate>, Seriali
 		if(m_Chr.getSize() >= 0 && newIndex > m_Chr.getSize() && m_Context == null){
 			throw new RuntimeException("Error: cannot increment to a base index larger than chromosome size without a reference genome");
 		}
+		if((newIndex > m_Chr.getSize() || newIndex < 1) && m_Context instanceof Genome){
+			Genome genome = (Genome) m_Context;
+			long packed = genome.pack(this) + numBases;
+			if(packed < 0 || packed >= genome.getSize()) return null;
+			return genome.unpack(packed);
+		}
 		if(newIndex > m_Chr.getSize()){
 			Chromosome chr = m_Chr;
 			while(newIndex > chr.getSize()){
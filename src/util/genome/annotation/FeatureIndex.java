@@ -0,0 +1,484 @@
+package util.genome.annotation;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import util.genome.Chromosome;
+import util.genome.Strand;
+import util.genome.peak.PeakGroup;
+
+/**
+ * Index of genomic features, such as the genes of a GTF or GFF annotation. Features are stored by column and
+ * sorted by chromosome and then start. For every feature the index also keeps the furthest reaching feature
+ * starting at or before it on its chromosome, so the features overlapping a region are found by a binary search
+ * on the starts and a scan back that stops as soon as no earlier feature reaches the region.
+ * <p>
+ * GTF and GFF coordinates are 1-based and inclusive. They are converted to the 0-based, half-open intervals of
+ * BED files, so features line up with peaks: a feature covers the bases from its start up to but not including its
+ * end.
+ */
+public class FeatureIndex implements Serializable{
+	private static final long serialVersionUID = 1L;
+
+	public static final String[][] FORMATS = new String[][]{
+		{"GTF (.gtf)", "gtf"},
+		{"GFF (.gff)", "gff"},
+		{"GFF3 (.gff3)", "gff3"}
+	};
+
+	public static final int NONE = -1;
+
+	//attributes naming a feature, in order of preference
+	private static final String[] NAME_ATTRIBUTES = new String[]{"gene_name", "Name", "gene_id", "ID"};
+
+	private static final Strand[] STRANDS = Strand.values();
+
+	/**
+	 * Reads the features of a GTF or GFF file. Comments, headers and lines that are not features are skipped.
+	 */
+	public static FeatureIndex parseFeatures(InputStream s) throws IOException{
+		BufferedReader reader = new BufferedReader(new InputStreamReader(s));
+		Builder features = new Builder();
+		Map<String, Chromosome> chrs = new HashMap<String, Chromosome>();
+		int[] tabs = new int[8];
+		String line;
+		while((line = reader.readLine()) != null){
+			if(line.isEmpty() || line.charAt(0) == '#'){
+				continue;
+			}
+			int found = 0;
+			for(int i=0; i<line.length() && found < tabs.length; i++){
+				if(line.charAt(i) == '\t'){
+					tabs[found++] = i;
+				}
+			}
+			if(found < tabs.length){
+				continue;
+			}
+			long start;
+			long end;
+			try{
+				start = Long.parseLong(line.substring(tabs[2] + 1, tabs[3]));
+				end = Long.parseLong(line.substring(tabs[3] + 1, tabs[4]));
+			} catch (NumberFormatException e){
+				continue;
+			}
+			String id = line.substring(0, tabs[0]);
+			Chromosome chr = chrs.get(id);
+			if(chr == null){
+				chr = new Chromosome(id);
+				chrs.put(id, chr);
+			}
+			features.add(chr, start - 1, end, Strand.parseStrand(line.substring(tabs[5] + 1, tabs[6])),
+					line.substring(tabs[1] + 1, tabs[2]), name(line, tabs[7] + 1));
+		}
+		return features.build();
+	}
+
+	/**
+	 * Returns the name of a feature from its GTF (key "value";) or GFF (key=value;) attributes
+	 */
+	private static String name(String line, int from){
+		for(String key : NAME_ATTRIBUTES){
+			int i = from;
+			while((i = line.indexOf(key, i)) >= 0){
+				int after = i + key.length();
+				boolean keyStart = i == from || line.charAt(i-1) == ';' || line.charAt(i-1) == ' ';
+				if(keyStart && after < line.length() && (line.charAt(after) == '=' || line.charAt(after) == ' ')){
+					int valStart = after + 1;
+					if(valStart < line.length() && line.charAt(valStart) == '"'){
+						valStart++;
+					}
+					int valEnd = valStart;
+					while(valEnd < line.length() && line.charAt(valEnd) != '"' && line.charAt(valEnd) != ';'){
+						valEnd++;
+					}
+					return line.substring(valStart, valEnd).trim();
+				}
+				i = after;
+			}
+		}
+		return ".";
+	}
+
+	public static class Builder{
+
+		private final Map<Chromosome, Integer> m_ChrIds = new HashMap<Chromosome, Integer>();
+		private final List<Chromosome> m_ChrDict = new ArrayList<Chromosome>();
+		private final Map<String, Integer> m_TypeIds = new HashMap<String, Integer>();
+		private final List<String> m_TypeDict = new ArrayList<String>();
+		private final Map<String, Integer> m_NameIds = new HashMap<String, Integer>();
+		private final List<String> m_NameDict = new ArrayList<String>();
+
+		private int m_Size = 0;
+		private int[] m_Chrs = new int[16];
+		private long[] m_Starts = new long[16];
+		private long[] m_Ends = new long[16];
+		private byte[] m_Strands = new byte[16];
+		private int[] m_Types = new int[16];
+		private int[] m_Names = new int[16];
+
+		private static <T> int id(T value, Map<T, Integer> ids, List<T> dict){
+			Integer id = ids.get(value);
+			if(id == null){
+				id = dict.size();
+				ids.put(value, id);
+				dict.add(value);
+			}
+			return id;
+		}
+
+		public Builder add(Chromosome chr, long start, long end, Strand strand, String type, String name){
+			if(m_Size == m_Starts.length){
+				int capacity = m_Size * 2;
+				m_Chrs = Arrays.copyOf(m_Chrs, capacity);
+				m_Starts = Arrays.copyOf(m_Starts, capacity);
+				m_Ends = Arrays.copyOf(m_Ends, capacity);
+				m_Strands = Arrays.copyOf(m_Strands, capacity);
+				m_Types = Arrays.copyOf(m_Types, capacity);
+				m_Names = Arrays.copyOf(m_Names, capacity);
+			}
+			m_Chrs[m_Size] = id(chr, m_ChrIds, m_ChrDict);
+			m_Starts[m_Size] = start;
+			m_Ends[m_Size] = end;
+			m_Strands[m_Size] = (byte) strand.ordinal();
+			m_Types[m_Size] = id(type, m_TypeIds, m_TypeDict);
+			m_Names[m_Size] = id(name, m_NameIds, m_NameDict);
+			m_Size++;
+			return this;
+		}
+
+		public int size(){
+			return m_Size;
+		}
+
+		public FeatureIndex build(){
+			int chrs = m_ChrDict.size();
+			//bucket the features by chromosome, keeping their order
+			int[] from = new int[chrs + 1];
+			for(int i=0; i<m_Size; i++){
+				from[m_Chrs[i] + 1]++;
+			}
+			for(int c=0; c<chrs; c++){
+				from[c+1] += from[c];
+			}
+			int[] next = Arrays.copyOf(from, chrs);
+			int[] order = new int[m_Size];
+			for(int i=0; i<m_Size; i++){
+				order[next[m_Chrs[i]]++] = i;
+			}
+			//annotations are usually sorted already, so only sort the chromosomes that are not
+			for(int c=0; c<chrs; c++){
+				if(!this.isSorted(order, from[c], from[c+1])){
+					this.sort(order, from[c], from[c+1]);
+				}
+			}
+			FeatureIndex index = new FeatureIndex();
+			index.m_ChrDict = m_ChrDict.toArray(new Chromosome[chrs]);
+			index.m_ChrIds = new HashMap<Chromosome, Integer>(m_ChrIds);
+			index.m_TypeDict = m_TypeDict.toArray(new String[m_TypeDict.size()]);
+			index.m_NameDict = m_NameDict.toArray(new String[m_NameDict.size()]);
+			index.m_ChrFrom = from;
+			index.m_Starts = new long[m_Size];
+			index.m_Ends = new long[m_Size];
+			index.m_Strands = new byte[m_Size];
+			index.m_Types = new int[m_Size];
+			index.m_Names = new int[m_Size];
+			index.m_Furthest = new int[m_Size];
+			for(int i=0; i<m_Size; i++){
+				int j = order[i];
+				index.m_Starts[i] = m_Starts[j];
+				index.m_Ends[i] = m_Ends[j];
+				index.m_Strands[i] = m_Strands[j];
+				index.m_Types[i] = m_Types[j];
+				index.m_Names[i] = m_Names[j];
+			}
+			for(int c=0; c<chrs; c++){
+				for(int i=from[c]; i<from[c+1]; i++){
+					boolean further = i == from[c] || index.m_Ends[i] > index.m_Ends[index.m_Furthest[i-1]];
+					index.m_Furthest[i] = further ? i : index.m_Furthest[i-1];
+				}
+			}
+			return index;
+		}
+
+		private boolean isSorted(int[] order, int from, int to){
+			for(int i=from+1; i<to; i++){
+				if(this.compare(order[i-1], order[i]) > 0){
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private int compare(int i, int j){
+			if(m_Starts[i] != m_Starts[j]){
+				return Long.compare(m_Starts[i], m_Starts[j]);
+			}
+			return Long.compare(m_Ends[i], m_Ends[j]);
+		}
+
+		private void sort(int[] order, int from, int to){
+			Integer[] sorted = new Integer[to - from];
+			for(int i=0; i<sorted.length; i++){
+				sorted[i] = order[from + i];
+			}
+			Arrays.sort(sorted, new Comparator<Integer>(){
+
+				@Override
+				public int compare(Integer o1, Integer o2) {
+					return Builder.this.compare(o1, o2);
+				}
+
+			});
+			for(int i=0; i<sorted.length; i++){
+				order[from + i] = sorted[i];
+			}
+		}
+
+	}
+
+	private Chromosome[] m_ChrDict = new Chromosome[0];
+	private Map<Chromosome, Integer> m_ChrIds = new HashMap<Chromosome, Integer>();
+	private String[] m_TypeDict = new String[0];
+	private String[] m_NameDict = new String[0];
+	//features of the chromosome with dictionary id c are [m_ChrFrom[c], m_ChrFrom[c+1])
+	private int[] m_ChrFrom = new int[]{0};
+	private long[] m_Starts = new long[0];
+	private long[] m_Ends = new long[0];
+	private byte[] m_Strands = new byte[0];
+	private int[] m_Types = new int[0];
+	private int[] m_Names = new int[0];
+	//feature with the furthest end among the features of its chromosome up to and including this one
+	private int[] m_Furthest = new int[0];
+
+	private FeatureIndex(){
+		//built by the Builder
+	}
+
+	public int size(){
+		return m_Starts.length;
+	}
+
+	public Chromosome getChrom(int index){
+		//every chromosome has features, so its range is the last one starting at or before the index
+		int c = Arrays.binarySearch(m_ChrFrom, index);
+		return m_ChrDict[c >= 0 ? c : -c - 2];
+	}
+
+	public long getStart(int index){
+		return m_Starts[index];
+	}
+
+	public long getEnd(int index){
+		return m_Ends[index];
+	}
+
+	public Strand getStrand(int index){
+		return STRANDS[m_Strands[index]];
+	}
+
+	public String getType(int index){
+		return m_TypeDict[m_Types[index]];
+	}
+
+	public String getName(int index){
+		return m_NameDict[m_Names[index]];
+	}
+
+	/**
+	 * Returns the transcription start site of the feature at the given index, its last base if it lies on the minus
+	 * strand and its start otherwise
+	 */
+	public long getTSS(int index){
+		return m_Strands[index] == Strand.MINUS.ordinal() ? m_Ends[index] - 1 : m_Starts[index];
+	}
+
+	/**
+	 * Returns the distance from the TSS of the feature at the given index to the given base in the direction of
+	 * the feature's strand, so bases upstream of the TSS are at negative distances
+	 */
+	public long distanceToTSS(int index, long position){
+		long distance = position - this.getTSS(index);
+		return m_Strands[index] == Strand.MINUS.ordinal() ? -distance : distance;
+	}
+
+	/**
+	 * Returns an index of the features of the given type, such as "gene"
+	 */
+	public FeatureIndex select(String type){
+		Builder features = new Builder();
+		for(int c=0; c<m_ChrDict.length; c++){
+			for(int i=m_ChrFrom[c]; i<m_ChrFrom[c+1]; i++){
+				if(this.getType(i).equals(type)){
+					features.add(m_ChrDict[c], m_Starts[i], m_Ends[i], this.getStrand(i), type, this.getName(i));
+				}
+			}
+		}
+		return features.build();
+	}
+
+	/**
+	 * Returns the indices of the features overlapping the region [start, end) of the given chromosome, in order of
+	 * start
+	 */
+	public int[] overlapping(Chromosome chr, long start, long end){
+		Integer c = m_ChrIds.get(chr);
+		if(c == null){
+			return new int[0];
+		}
+		int from = m_ChrFrom[c];
+		//features starting at the end of the region do not overlap it
+		int to = this.firstAfter(from, m_ChrFrom[c+1], end - 1, from);
+		int count = 0;
+		int[] found = new int[16];
+		for(int i=to-1; i>=from && m_Ends[m_Furthest[i]] > start; i--){
+			if(m_Ends[i] > start){
+				if(count == found.length){
+					found = Arrays.copyOf(found, count * 2);
+				}
+				found[count++] = i;
+			}
+		}
+		found = Arrays.copyOf(found, count);
+		for(int i=0; i<count/2; i++){
+			int swap = found[i];
+			found[i] = found[count-1-i];
+			found[count-1-i] = swap;
+		}
+		return found;
+	}
+
+	/**
+	 * Returns the index of the feature nearest the region [start, end) of the given chromosome, or {@link #NONE}
+	 * if there are no features on the chromosome. Of the features overlapping the region, the one whose TSS is
+	 * nearest the given position is returned. Ties between features that do not overlap the region go to the one
+	 * before it.
+	 */
+	public int nearest(Chromosome chr, long start, long end, long position){
+		Integer c = m_ChrIds.get(chr);
+		if(c == null){
+			return NONE;
+		}
+		return this.nearest(c, start, end, position, m_ChrFrom[c]);
+	}
+
+	/**
+	 * Returns the index of the nearest feature to each of the peaks, or {@link #NONE} for peaks on chromosomes
+	 * without features, using the peak summits as the positions (see {@link PeakGroup#getSummit(int)}). The search
+	 * for each peak starts from where the search for the previous peak ended, so peaks sorted by chromosome and
+	 * start are annotated in a single merge pass over the features.
+	 */
+	public int[] nearest(PeakGroup peaks){
+		int[] nearest = new int[peaks.size()];
+		Chromosome last = null;
+		int c = -1;
+		int hint = 0;
+		for(int i=0; i<nearest.length; i++){
+			Chromosome chr = peaks.getChrom(i);
+			if(chr != last){
+				Integer id = m_ChrIds.get(chr);
+				c = id == null ? -1 : id;
+				hint = c < 0 ? 0 : m_ChrFrom[c];
+				last = chr;
+			}
+			if(c < 0){
+				nearest[i] = NONE;
+				continue;
+			}
+			long end = peaks.getChromEnd(i);
+			hint = this.firstAfter(m_ChrFrom[c], m_ChrFrom[c+1], end - 1, hint);
+			nearest[i] = this.nearest(c, peaks.getChromStart(i), end, peaks.getSummit(i), hint);
+		}
+		return nearest;
+	}
+
+	/**
+	 * Returns the nearest feature of the chromosome with dictionary id c, searching for the first feature starting
+	 * after the region from the given index
+	 */
+	private int nearest(int c, long start, long end, long position, int hint){
+		int from = m_ChrFrom[c];
+		int to = m_ChrFrom[c+1];
+		if(from == to){
+			return NONE;
+		}
+		int next = this.firstAfter(from, to, end - 1, hint);
+		if(next == from){
+			return next;
+		}
+		int left = m_Furthest[next-1];
+		if(m_Ends[left] > start){
+			//features overlap the region, pick the one with the nearest TSS
+			int best = NONE;
+			long bestDist = Long.MAX_VALUE;
+			for(int i=next-1; i>=from && m_Ends[m_Furthest[i]] > start; i--){
+				if(m_Ends[i] > start){
+					long dist = Math.abs(this.distanceToTSS(i, position));
+					if(dist < bestDist){
+						best = i;
+						bestDist = dist;
+					}
+				}
+			}
+			return best;
+		}
+		if(next < to && m_Starts[next] - end < start - m_Ends[left]){
+			return next;
+		}
+		return left;
+	}
+
+	/**
+	 * Returns the first index in [from, to) of a feature starting after the given base, or to if there is none.
+	 * The search gallops out from the hint, so it is quick when the answer is near the hint.
+	 */
+	private int firstAfter(int from, int to, long base, int hint){
+		hint = Math.max(from, Math.min(to, hint));
+		int low;
+		int high;
+		if(hint < to && m_Starts[hint] <= base){
+			//the answer lies after the hint
+			int step = 1;
+			int last = hint;
+			int probe = hint + 1;
+			while(probe < to && m_Starts[probe] <= base){
+				last = probe;
+				step <<= 1;
+				probe = hint + step;
+			}
+			low = last + 1;
+			high = Math.min(probe, to);
+		}else{
+			//the answer lies at or before the hint
+			int step = 1;
+			high = hint;
+			int probe = hint - 1;
+			while(probe >= from && m_Starts[probe] > base){
+				high = probe;
+				step <<= 1;
+				probe = hint - step;
+			}
+			low = Math.max(probe + 1, from);
+		}
+		while(low < high){
+			int mid = (low + high) >>> 1;
+			if(m_Starts[mid] <= base){
+				low = mid + 1;
+			}else{
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+}
@@ -5,9 +5,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import util.genome.GenomicRegion;
 import util.genome.GenomicSequence;
 import util.genome.ParsingException;
@@ -109,82 +107,25 @@ public class Parser {
 	}
 
 	public static Peak parsePeak(String s) throws ParsingException{
-		try{
-			Map<String, Object> optional = new HashMap<String, Object>();
-			String chrom = "";
-			long chromStart = -1;
-			long chromEnd = -1;
-			String[] split = s.split(WHITESPACE_REGEX);
-			for(int i=1; i<=10 && i<=split.length; i++){
-				String cur = split[i-1];
-				switch(i){
-				case 1:
-					chrom = cur;
-					break;
-				case 2:
-					chromStart = Long.parseLong(cur);
-					break;
-				case 3:
-					chromEnd = Long.parseLong(cur);
-					break;
-				case 4:
-					optional.put(Peak.NAME, cur);
-					break;
-				case 5:
-					try{
-						optional.put(Peak.SCORE, Integer.parseInt(cur));
-					} catch (Exception e){
-						optional.put(Peak.QVAL, Double.parseDouble(cur));
-						return new Peak(chrom, chromStart, chromEnd, optional);
-					}
-					break;
-				case 6:
-					optional.put(Peak.STRAND, Strand.parseStrand(cur));
-					break;
-				case 7:
-					optional.put(Peak.SIGNAL_VAL, Double.parseDouble(cur));
-					break;
-				case 8:
-					optional.put(Peak.PVAL, Double.parseDouble(cur));
-					break;
-				case 9:
-					optional.put(Peak.QVAL, Double.parseDouble(cur));
-					break;
-				case 10:
-					optional.put(Peak.POINT_SOURCE, Integer.parseInt(cur));
-					break;
-				default:
-					break;
-				}
-			}
-			if(chrom.equals("") || chromStart == -1 || chromEnd == -1){
-				throw new ParsingException("Error: peaks require values for chromosome, chromosomeStart, and chromosomeEnd at the minimum");
-			}
-			return new Peak(chrom, chromStart, chromEnd, optional);
-		} catch(ParsingException e){
-			throw e;
-		} catch(Exception e){
-			throw new ParsingException(e);
-		}
+		return new PeakParser().parse(s);
 	}
 	
 	public static PeakGroup parsePeakGroup(InputStream s){
-		List<Peak> peaks = new ArrayList<Peak>();
-		BufferedReader reader = new BufferedReader(new InputStreamReader(s));
-		String line;
+		return parsePeakGroup(s, 1);
+	}
+	
+	/**
+	 * Parses the peaks of the stream, skipping lines that are not peaks. With more than one thread, chunks of
+	 * lines are parsed in parallel, which pays off for files with millions of peaks.
+	 */
+	public static PeakGroup parsePeakGroup(InputStream s, int threads){
 		try {
-			while((line = reader.readLine()) != null){
-				try {
-					peaks.add(parsePeak(line));
-				} catch (ParsingException e) {
-					//e.printStackTrace();
-				}
-			}
+			return PeakParser.parseAll(new InputStreamReader(s), threads);
 		} catch (IOException e) {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
 		}
-		return new PeakGroup(peaks);
+		return new PeakGroup();
 	}
 	
 	
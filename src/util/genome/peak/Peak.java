@@ -51,6 +51,13 @@ public class Peak implements Serializable{
 	private double m_QVal;
 	private int m_PointSource;
 	
+	/**
+	 * For subclasses that read their values from elsewhere and override every getter
+	 */
+	Peak(){
+		//no values
+	}
+	
 	Peak(GenomicRegion region, Peak peak){
 		if(!region.getStart().getChromosome().getId().equals(peak.getChrom().getId()) || region.getStart().getBaseIndex() != peak.getChromStart()
 				|| region.getEnd().getBaseIndex() != peak.getChromEnd()){
@@ -110,14 +117,24 @@ public class Peak implements Serializable{
 	
 	@Override
 	public String toString(){
-		return this.getChrom() + "\t" + this.getChromStart() + "\t" + this.getChromEnd() + "\t" +m_Name + "\t" +m_Score + "\t" +m_Strand + "\t" +m_SignalVal
-				+ "\t" + m_PVal + "\t" + m_QVal + "\t" + m_PointSource;
+		return this.appendTo(new StringBuilder()).toString();
+	}
+	
+	/**
+	 * Appends this peak, formatted as by toString, to the given builder
+	 */
+	public StringBuilder appendTo(StringBuilder s){
+		s.append(Chromosome.CHR_TAG).append(this.getChrom().getId()).append('\t').append(this.getChromStart()).append('\t').append(this.getChromEnd())
+				.append('\t').append(this.getName()).append('\t').append(this.getScore()).append('\t').append(this.getStrand())
+				.append('\t').append(this.getSignalVal()).append('\t').append(this.getPVal()).append('\t').append(this.getQVal())
+				.append('\t').append(this.getPointSource());
+		return s;
 	}
 	
 	@Override
 	public int hashCode(){
-		return new HashCodeBuilder(283, 977).append(m_Region).append(m_Name).append(m_Score).append(m_Strand)
-				.append(m_SignalVal).append(m_PVal).append(m_QVal).append(m_PointSource).toHashCode();
+		return new HashCodeBuilder(283, 977).append(this.getRegion()).append(this.getName()).append(this.getScore()).append(this.getStrand())
+				.append(this.getSignalVal()).append(this.getPVal()).append(this.getQVal()).append(this.getPointSource()).toHashCode();
 	}
 	
 	@Override
@@ -126,10 +143,10 @@ public class Peak implements Serializable{
 		if(o == this) return true;
 		if(o instanceof Peak){
 			Peak other = (Peak) o;
-			return m_Region.equals(other.m_Region)
-					&& m_Name.equals(other.m_Name) && m_Score == other.m_Score && m_Strand == other.m_Strand
-					&& m_SignalVal == other.m_SignalVal && m_PVal == other.m_PVal && m_QVal == other.m_QVal
-					&& m_PointSource == other.m_PointSource;
+			return this.getRegion().equals(other.getRegion())
+					&& this.getName().equals(other.getName()) && this.getScore() == other.getScore() && this.getStrand() == other.getStrand()
+					&& this.getSignalVal() == other.getSignalVal() && this.getPVal() == other.getPVal() && this.getQVal() == other.getQVal()
+					&& this.getPointSource() == other.getPointSource();
 		}
 		return false;
 	}
@@ -1,35 +1,315 @@
 package util.genome.peak;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.io.Writer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 
+import util.genome.Chromosome;
+import util.genome.Genome;
+import util.genome.GenomicCoordinate;
+import util.genome.GenomicRegion;
+import util.genome.Strand;
+
+/**
+ * Group of peaks stored by column. Each column is a primitive array and chromosomes and names are dictionary
+ * encoded, so a peak takes around 60 bytes. {@link #getPeak(int)} and the iterator return light Peak views of
+ * the columns, and the column getters read single values without creating a view.
+ */
 public class PeakGroup implements Serializable, Iterable<Peak>{
 	private static final long serialVersionUID = 1L;
-	
+
 	public static final String[][] FORMATS = Parser.PEAK_FORMATS;
-	
+
+	private static final Strand[] STRANDS = Strand.values();
+
 	public static PeakGroup parsePeakGroup(InputStream s){
 		return Parser.parsePeakGroup(s);
 	}
-	
-	private final List<Peak> m_Peaks = new ArrayList<Peak>();
-	private final int m_Hash;
-	
+
+	public static PeakGroup parsePeakGroup(InputStream s, int threads){
+		return Parser.parsePeakGroup(s, threads);
+	}
+
+	/**
+	 * Builds a PeakGroup by appending peaks to it
+	 */
+	public static class Builder{
+
+		//past this many distinct names, names are only dictionary encoded if most of them repeat
+		private static final int DICTIONARY_LIMIT = 1 << 16;
+
+		private final Map<Chromosome, Integer> m_ChrIds = new HashMap<Chromosome, Integer>();
+		private final List<Chromosome> m_ChrDict = new ArrayList<Chromosome>();
+		private Map<String, Integer> m_NameIds = new HashMap<String, Integer>();
+		private final List<String> m_NameDict = new ArrayList<String>();
+		private Chromosome m_LastChr = null;
+		private int m_LastChrId = -1;
+
+		private int m_Size = 0;
+		private int[] m_Chrs = new int[16];
+		private long[] m_Starts = new long[16];
+		private long[] m_Ends = new long[16];
+		private int[] m_Names = new int[16];
+		private int[] m_Scores = new int[16];
+		private byte[] m_Strands = new byte[16];
+		private double[] m_SignalVals = new double[16];
+		private double[] m_PVals = new double[16];
+		private double[] m_QVals = new double[16];
+		private int[] m_PointSources = new int[16];
+
+		private void ensureCapacity(int size){
+			if(size <= m_Chrs.length) return;
+			int capacity = Math.max(size, m_Chrs.length * 2);
+			m_Chrs = Arrays.copyOf(m_Chrs, capacity);
+			m_Starts = Arrays.copyOf(m_Starts, capacity);
+			m_Ends = Arrays.copyOf(m_Ends, capacity);
+			m_Names = Arrays.copyOf(m_Names, capacity);
+			m_Scores = Arrays.copyOf(m_Scores, capacity);
+			m_Strands = Arrays.copyOf(m_Strands, capacity);
+			m_SignalVals = Arrays.copyOf(m_SignalVals, capacity);
+			m_PVals = Arrays.copyOf(m_PVals, capacity);
+			m_QVals = Arrays.copyOf(m_QVals, capacity);
+			m_PointSources = Arrays.copyOf(m_PointSources, capacity);
+		}
+
+		private int chrId(Chromosome chr){
+			//peaks are usually grouped by chromosome
+			if(chr == m_LastChr) return m_LastChrId;
+			Integer id = m_ChrIds.get(chr);
+			if(id == null){
+				id = m_ChrDict.size();
+				m_ChrIds.put(chr, id);
+				m_ChrDict.add(chr);
+			}
+			m_LastChr = chr;
+			m_LastChrId = id;
+			return id;
+		}
+
+		private int nameId(String name){
+			if(m_NameIds == null){
+				m_NameDict.add(name);
+				return m_NameDict.size() - 1;
+			}
+			Integer id = m_NameIds.get(name);
+			if(id == null){
+				id = m_NameDict.size();
+				m_NameIds.put(name, id);
+				m_NameDict.add(name);
+				if(m_NameDict.size() > DICTIONARY_LIMIT && m_NameDict.size() > m_Size / 2){
+					//mostly distinct names, stop looking them up
+					m_NameIds = null;
+				}
+			}
+			return id;
+		}
+
+		public Builder add(Chromosome chr, long chromStart, long chromEnd, String name, int score, Strand strand, double signalVal,
+				double pVal, double qVal, int pointSource){
+			this.ensureCapacity(m_Size + 1);
+			int i = m_Size;
+			m_Chrs[i] = this.chrId(chr);
+			m_Starts[i] = chromStart;
+			m_Ends[i] = chromEnd;
+			m_Names[i] = this.nameId(name);
+			m_Scores[i] = score;
+			m_Strands[i] = (byte) strand.ordinal();
+			m_SignalVals[i] = signalVal;
+			m_PVals[i] = pVal;
+			m_QVals[i] = qVal;
+			m_PointSources[i] = pointSource;
+			m_Size++;
+			return this;
+		}
+
+		public Builder add(Peak p){
+			return this.add(p.getChrom(), p.getChromStart(), p.getChromEnd(), p.getName(), p.getScore(), p.getStrand(), p.getSignalVal(),
+					p.getPVal(), p.getQVal(), p.getPointSource());
+		}
+
+		public Builder addAll(PeakGroup peaks){
+			this.ensureCapacity(m_Size + peaks.size());
+			for(int i=0; i<peaks.size(); i++){
+				this.add(peaks.getChrom(i), peaks.getChromStart(i), peaks.getChromEnd(i), peaks.getName(i), peaks.getScore(i),
+						peaks.getStrand(i), peaks.getSignalVal(i), peaks.getPVal(i), peaks.getQVal(i), peaks.getPointSource(i));
+			}
+			return this;
+		}
+
+		public int size(){
+			return m_Size;
+		}
+
+		public PeakGroup build(){
+			PeakGroup g = new PeakGroup();
+			g.m_ChrDict = m_ChrDict.toArray(new Chromosome[m_ChrDict.size()]);
+			g.m_NameDict = m_NameDict.toArray(new String[m_NameDict.size()]);
+			g.m_Chrs = Arrays.copyOf(m_Chrs, m_Size);
+			g.m_Starts = Arrays.copyOf(m_Starts, m_Size);
+			g.m_Ends = Arrays.copyOf(m_Ends, m_Size);
+			g.m_Names = Arrays.copyOf(m_Names, m_Size);
+			g.m_Scores = Arrays.copyOf(m_Scores, m_Size);
+			g.m_Strands = Arrays.copyOf(m_Strands, m_Size);
+			g.m_SignalVals = Arrays.copyOf(m_SignalVals, m_Size);
+			g.m_PVals = Arrays.copyOf(m_PVals, m_Size);
+			g.m_QVals = Arrays.copyOf(m_QVals, m_Size);
+			g.m_PointSources = Arrays.copyOf(m_PointSources, m_Size);
+			return g;
+		}
+
+	}
+
+	/**
+	 * Peak reading its values from a row of a PeakGroup
+	 */
+	private static class View extends Peak{
+		private static final long serialVersionUID = 1L;
+
+		private final PeakGroup m_Group;
+		private final int m_Index;
+
+		private View(PeakGroup group, int index){
+			m_Group = group;
+			m_Index = index;
+		}
+
+		private Object writeReplace(){
+			//serialize the peak, not the whole group
+			return new Peak(this.getRegion(), this.getName(), this.getScore(), this.getStrand(), this.getSignalVal(), this.getPVal(),
+					this.getQVal(), this.getPointSource());
+		}
+
+		@Override
+		public GenomicRegion getRegion(){
+			return new GenomicRegion(this.getStart(), this.getEnd());
+		}
+
+		@Override
+		public GenomicCoordinate getStart(){
+			return new GenomicCoordinate(this.getChrom(), this.getChromStart());
+		}
+
+		@Override
+		public GenomicCoordinate getEnd(){
+			return new GenomicCoordinate(this.getChrom(), this.getChromEnd());
+		}
+
+		@Override
+		public Chromosome getChrom(){
+			return m_Group.getChrom(m_Index);
+		}
+
+		@Override
+		public long getChromStart(){
+			return m_Group.getChromStart(m_Index);
+		}
+
+		@Override
+		public long getChromEnd(){
+			return m_Group.getChromEnd(m_Index);
+		}
+
+		@Override
+		public String getName(){
+			return m_Group.getName(m_Index);
+		}
+
+		@Override
+		public int getScore(){
+			return m_Group.getScore(m_Index);
+		}
+
+		@Override
+		public Strand getStrand(){
+			return m_Group.getStrand(m_Index);
+		}
+
+		@Override
+		public double getSignalVal(){
+			return m_Group.getSignalVal(m_Index);
+		}
+
+		@Override
+		public double getPVal(){
+			return m_Group.getPVal(m_Index);
+		}
+
+		@Override
+		public double getQVal(){
+			return m_Group.getQVal(m_Index);
+		}
+
+		@Override
+		public int getPointSource(){
+			return m_Group.getPointSource(m_Index);
+		}
+
+	}
+
+	private Chromosome[] m_ChrDict = new Chromosome[0];
+	private String[] m_NameDict = new String[0];
+	private int[] m_Chrs = new int[0];
+	private long[] m_Starts = new long[0];
+	private long[] m_Ends = new long[0];
+	private int[] m_Names = new int[0];
+	private int[] m_Scores = new int[0];
+	private byte[] m_Strands = new byte[0];
+	private double[] m_SignalVals = new double[0];
+	private double[] m_PVals = new double[0];
+	private double[] m_QVals = new double[0];
+	private int[] m_PointSources = new int[0];
+	//peaks of groups serialized before peaks were stored by column
+	private List<Peak> m_Peaks = null;
+	private transient volatile Integer m_Hash = null;
+
 	public PeakGroup(){
-		m_Hash = this.computeHash();
+		//empty group
 	}
-	
+
 	public PeakGroup(List<Peak> peaks){
+		this.copy(peaks);
+	}
+
+	private void copy(List<Peak> peaks){
+		Builder builder = new Builder();
 		for(Peak p : peaks){
-			m_Peaks.add(p);
+			builder.add(p);
 		}
-		m_Hash = this.computeHash();
+		PeakGroup g = builder.build();
+		m_ChrDict = g.m_ChrDict;
+		m_NameDict = g.m_NameDict;
+		m_Chrs = g.m_Chrs;
+		m_Starts = g.m_Starts;
+		m_Ends = g.m_Ends;
+		m_Names = g.m_Names;
+		m_Scores = g.m_Scores;
+		m_Strands = g.m_Strands;
+		m_SignalVals = g.m_SignalVals;
+		m_PVals = g.m_PVals;
+		m_QVals = g.m_QVals;
+		m_PointSources = g.m_PointSources;
 	}
-	
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException{
+		in.defaultReadObject();
+		if(m_Peaks != null){
+			this.copy(m_Peaks);
+			m_Peaks = null;
+		}
+	}
+
 	private int computeHash(){
 		HashCodeBuilder builder = new HashCodeBuilder(349, 269);
 		for(Peak p : this){
@@ -37,21 +317,36 @@ public class PeakGroup implements Serializable, Iterable<Peak>{
 		}
 		return builder.toHashCode();
 	}
-	
+
 	@Override
 	public int hashCode(){
-		return m_Hash;
+		Integer hash = m_Hash;
+		if(hash == null){
+			hash = this.computeHash();
+			m_Hash = hash;
+		}
+		return hash;
 	}
-	
+
 	@Override
 	public String toString(){
-		String s = "";
-		for(Peak p : m_Peaks){
-			s += p.toString() + "\n";
+		StringBuilder s = new StringBuilder();
+		for(Peak p : this){
+			p.appendTo(s).append('\n');
 		}
-		return s;
+		return s.toString();
 	}
 	
+	/**
+	 * Writes these peaks to the given writer, one per line as by toString, without building the whole output
+	 */
+	public void write(Writer out) throws IOException{
+		RecordWriter records = new RecordWriter(out);
+		for(Peak p : this){
+			records.write(p);
+		}
+	}
+
 	@Override
 	public boolean equals(Object o){
 		if(o == null) return false;
@@ -67,22 +362,167 @@ public class PeakGroup implements Serializable, Iterable<Peak>{
 		}
 		return false;
 	}
-	
+
 	public boolean contains(Peak p){
-		return m_Peaks.contains(p);
+		for(int i=0; i<this.size(); i++){
+			if(p.equals(this.getPeak(i))) return true;
+		}
+		return false;
 	}
-	
+
 	public Peak getPeak(int index){
-		return m_Peaks.get(index);
+		if(index < 0 || index >= this.size()){
+			throw new IndexOutOfBoundsException("Index: "+index+", Size: "+this.size());
+		}
+		return new View(this, index);
 	}
-	
+
 	public int size(){
-		return m_Peaks.size();
+		return m_Starts.length;
+	}
+
+	public Chromosome getChrom(int index){
+		return m_ChrDict[m_Chrs[index]];
+	}
+
+	public long getChromStart(int index){
+		return m_Starts[index];
+	}
+
+	public long getChromEnd(int index){
+		return m_Ends[index];
+	}
+
+	public String getName(int index){
+		return m_NameDict[m_Names[index]];
+	}
+
+	public int getScore(int index){
+		return m_Scores[index];
+	}
+
+	public Strand getStrand(int index){
+		return STRANDS[m_Strands[index]];
+	}
+
+	public double getSignalVal(int index){
+		return m_SignalVals[index];
+	}
+
+	public double getPVal(int index){
+		return m_PVals[index];
+	}
+
+	public double getQVal(int index){
+		return m_QVals[index];
+	}
+
+	public int getPointSource(int index){
+		return m_PointSources[index];
+	}
+
+	/**
+	 * Returns the base of the point source of the peak at the given index, or its middle base if it has none
+	 */
+	public long getSummit(int index){
+		if(m_PointSources[index] >= 0){
+			return m_Starts[index] + m_PointSources[index];
+		}
+		return m_Starts[index] + (m_Ends[index] - m_Starts[index]) / 2;
+	}
+
+	/**
+	 * Returns a PeakGroup of these peaks sorted by start and then end in the order of the given genome. Peak
+	 * locations are packed once (see {@link Genome#pack(Chromosome, long)}), so comparisons are plain arithmetic.
+	 */
+	public PeakGroup sort(Genome genome){
+		int n = this.size();
+		long[] chrStarts = new long[m_ChrDict.length];
+		for(int c=0; c<chrStarts.length; c++){
+			chrStarts[c] = genome.pack(m_ChrDict[c], 1);
+		}
+		final long[] starts = new long[n];
+		final long[] ends = new long[n];
+		Integer[] order = new Integer[n];
+		for(int i=0; i<n; i++){
+			long chrStart = chrStarts[m_Chrs[i]];
+			starts[i] = chrStart + m_Starts[i] - 1;
+			ends[i] = chrStart + m_Ends[i] - 1;
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>(){
+
+			@Override
+			public int compare(Integer o1, Integer o2) {
+				if(starts[o1] != starts[o2]){
+					return Long.compare(starts[o1], starts[o2]);
+				}
+				return Long.compare(ends[o1], ends[o2]);
+			}
+
+		});
+		return this.select(order);
+	}
+
+	/**
+	 * Returns a PeakGroup of the peaks at the given indices, sharing the dictionaries of this group
+	 */
+	private PeakGroup select(Integer[] indices){
+		int n = indices.length;
+		PeakGroup g = new PeakGroup();
+		g.m_ChrDict = m_ChrDict;
+		g.m_NameDict = m_NameDict;
+		g.m_Chrs = new int[n];
+		g.m_Starts = new long[n];
+		g.m_Ends = new long[n];
+		g.m_Names = new int[n];
+		g.m_Scores = new int[n];
+		g.m_Strands = new byte[n];
+		g.m_SignalVals = new double[n];
+		g.m_PVals = new double[n];
+		g.m_QVals = new double[n];
+		g.m_PointSources = new int[n];
+		for(int i=0; i<n; i++){
+			int j = indices[i];
+			g.m_Chrs[i] = m_Chrs[j];
+			g.m_Starts[i] = m_Starts[j];
+			g.m_Ends[i] = m_Ends[j];
+			g.m_Names[i] = m_Names[j];
+			g.m_Scores[i] = m_Scores[j];
+			g.m_Strands[i] = m_Strands[j];
+			g.m_SignalVals[i] = m_SignalVals[j];
+			g.m_PVals[i] = m_PVals[j];
+			g.m_QVals[i] = m_QVals[j];
+			g.m_PointSources[i] = m_PointSources[j];
+		}
+		return g;
 	}
 
 	@Override
 	public Iterator<Peak> iterator() {
-		return m_Peaks.iterator();
+		return new Iterator<Peak>(){
+
+			private int m_Next = 0;
+
+			@Override
+			public boolean hasNext() {
+				return m_Next < size();
+			}
+
+			@Override
+			public Peak next() {
+				if(!this.hasNext()){
+					throw new NoSuchElementException();
+				}
+				return getPeak(m_Next++);
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+
+		};
 	}
-	
+
 }
@@ -0,0 +1,464 @@
+package util.genome.peak;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import util.genome.Chromosome;
+import util.genome.Strand;
+
+/**
+ * Overlap operations between two PeakGroups, and merging of the overlapping peaks of one group. The peaks of each group are split by chromosome and sorted by start
+ * and then end once, after which every operation is a single sweep over both groups, so an operation takes
+ * O((n+m) log(n+m)) time plus the size of its output. Chromosomes are swept independently and may be swept in
+ * parallel. Peak regions are half-open BED intervals, which include their start and exclude their end, so peaks
+ * that only touch, such as [100, 200) and [200, 300), do not overlap.
+ * <p>
+ * The results are in the order of the chromosomes of the first group and then by start.
+ */
+public class PeakOverlaps {
+
+	/**
+	 * How the signal, p and q values of merged peaks are combined. Unassigned values are left out, and a value is
+	 * unassigned in the merged peak if it is unassigned in every peak.
+	 */
+	public enum Aggregate{
+		MAX,
+		MEAN,
+		SUM;
+	}
+
+	/**
+	 * The peaks of one group lying on one chromosome, sorted by start and then end
+	 */
+	private static class Track{
+
+		private final PeakGroup m_Group;
+		private final int[] m_Rows;
+		private final long[] m_Starts;
+		private final long[] m_Ends;
+
+		private Track(PeakGroup group, int[] rows){
+			m_Group = group;
+			m_Rows = rows;
+			m_Starts = new long[rows.length];
+			m_Ends = new long[rows.length];
+			for(int i=0; i<rows.length; i++){
+				m_Starts[i] = group.getChromStart(rows[i]);
+				m_Ends[i] = group.getChromEnd(rows[i]);
+			}
+		}
+
+		private int size(){
+			return m_Rows.length;
+		}
+
+	}
+
+	private static final Track EMPTY = new Track(new PeakGroup(), new int[0]);
+
+	private interface Sweep{
+		public void sweep(Track a, Track b, PeakGroup.Builder out);
+	}
+
+	/**
+	 * Returns the regions where peaks of a overlap peaks of b, one for each overlapping pair. The regions keep the
+	 * values of their peak in a.
+	 */
+	public static PeakGroup intersect(PeakGroup a, PeakGroup b, int threads){
+		return run(a, b, threads, new Sweep(){
+
+			@Override
+			public void sweep(Track a, Track b, PeakGroup.Builder out) {
+				ActiveList active = new ActiveList(b);
+				for(int i=0; i<a.size(); i++){
+					long start = a.m_Starts[i];
+					long end = a.m_Ends[i];
+					int n = active.advance(start, end);
+					for(int k=0; k<n; k++){
+						int j = active.get(k);
+						add(out, a, i, Math.max(start, b.m_Starts[j]), Math.min(end, b.m_Ends[j]));
+					}
+				}
+			}
+
+		});
+	}
+
+	/**
+	 * Returns the regions of the peaks of a that are not covered by any peak of b. The regions keep the values of
+	 * their peak in a.
+	 */
+	public static PeakGroup subtract(PeakGroup a, PeakGroup b, int threads){
+		return run(a, b, threads, new Sweep(){
+
+			@Override
+			public void sweep(Track a, Track b, PeakGroup.Builder out) {
+				ActiveList active = new ActiveList(b);
+				for(int i=0; i<a.size(); i++){
+					long start = a.m_Starts[i];
+					long end = a.m_Ends[i];
+					int n = active.advance(start, end);
+					long next = start;
+					for(int k=0; k<n; k++){
+						int j = active.get(k);
+						if(b.m_Starts[j] > next){
+							add(out, a, i, next, b.m_Starts[j]);
+						}
+						next = Math.max(next, b.m_Ends[j]);
+					}
+					if(next < end){
+						add(out, a, i, next, end);
+					}
+				}
+			}
+
+		});
+	}
+
+	/**
+	 * Returns the peaks of a that overlap a peak of b once extended by the given number of bases on both sides
+	 */
+	public static PeakGroup window(PeakGroup a, PeakGroup b, final long window, int threads){
+		if(window < 0){
+			throw new RuntimeException("Error: window size "+window+" is negative");
+		}
+		return run(a, b, threads, new Sweep(){
+
+			@Override
+			public void sweep(Track a, Track b, PeakGroup.Builder out) {
+				ActiveList active = new ActiveList(b);
+				for(int i=0; i<a.size(); i++){
+					if(active.advance(a.m_Starts[i] - window, a.m_Ends[i] + window) > 0){
+						copy(out, a, i);
+					}
+				}
+			}
+
+		});
+	}
+
+	/**
+	 * Returns the closest peak of b for each peak of a that has a peak of b on its chromosome. Overlapping peaks are
+	 * closest, and ties are broken in favour of the peak upstream of the peak of a.
+	 */
+	public static PeakGroup closest(PeakGroup a, PeakGroup b, int threads){
+		return run(a, b, threads, new Sweep(){
+
+			@Override
+			public void sweep(Track a, Track b, PeakGroup.Builder out) {
+				if(b.size() == 0) return;
+				//index of the peak with the furthest end among the first k+1 peaks of b
+				int[] furthest = new int[b.size()];
+				for(int k=0; k<furthest.length; k++){
+					furthest[k] = k > 0 && b.m_Ends[furthest[k-1]] >= b.m_Ends[k] ? furthest[k-1] : k;
+				}
+				for(int i=0; i<a.size(); i++){
+					long start = a.m_Starts[i];
+					long end = a.m_Ends[i];
+					//peaks of a are not in order of end, so find the first peak of b starting at or after its end
+					int next = firstAfter(b.m_Starts, end - 1);
+					int closest;
+					if(next == 0){
+						closest = next;
+					}else{
+						int left = furthest[next-1];
+						//the furthest reaching peak starting before the end overlaps if any does
+						if(b.m_Ends[left] > start || next == b.size() || start - b.m_Ends[left] <= b.m_Starts[next] - end){
+							closest = left;
+						}else{
+							closest = next;
+						}
+					}
+					copy(out, b, closest);
+				}
+			}
+
+		});
+	}
+
+	/**
+	 * Returns the peaks merged into one peak wherever they overlap or lie within the given distance of each other.
+	 * Merged peaks span the union of their peaks' regions, take the best score and combine the signal, p and q values
+	 * as given. They keep the point source of their peak with the highest signal value and the strand of their peaks
+	 * if all share one.
+	 */
+	public static PeakGroup merge(PeakGroup peaks, final long distance, final Aggregate aggregate, int threads){
+		if(distance < 0){
+			throw new RuntimeException("Error: merge distance "+distance+" is negative");
+		}
+		return run(peaks, new PeakGroup(), threads, new Sweep(){
+
+			@Override
+			public void sweep(Track a, Track b, PeakGroup.Builder out) {
+				int from = 0;
+				while(from < a.size()){
+					long end = a.m_Ends[from];
+					int to = from + 1;
+					//the gap to the next peak is at most distance bases
+					while(to < a.size() && a.m_Starts[to] - end <= distance){
+						end = Math.max(end, a.m_Ends[to]);
+						to++;
+					}
+					addMerged(out, a, from, to, end, aggregate);
+					from = to;
+				}
+			}
+
+		});
+	}
+
+	/**
+	 * Adds the merged peak of the peaks [from, to) of the track, which end at the given end
+	 */
+	private static void addMerged(PeakGroup.Builder out, Track track, int from, int to, long end, Aggregate aggregate){
+		if(to - from == 1){
+			copy(out, track, from);
+			return;
+		}
+		PeakGroup g = track.m_Group;
+		long start = track.m_Starts[from];
+		int first = track.m_Rows[from];
+		int score = g.getScore(first);
+		Strand strand = g.getStrand(first);
+		int strongest = first;
+		double[] signalVals = new double[to - from];
+		double[] pVals = new double[to - from];
+		double[] qVals = new double[to - from];
+		for(int i=from; i<to; i++){
+			int row = track.m_Rows[i];
+			score = Math.max(score, g.getScore(row));
+			if(g.getStrand(row) != strand){
+				strand = Peak.DEFAULT_STRAND;
+			}
+			if(g.getSignalVal(row) > g.getSignalVal(strongest)){
+				strongest = row;
+			}
+			signalVals[i - from] = g.getSignalVal(row);
+			pVals[i - from] = g.getPVal(row);
+			qVals[i - from] = g.getQVal(row);
+		}
+		int pointSource = g.getPointSource(strongest);
+		if(pointSource >= 0){
+			pointSource = (int) (g.getChromStart(strongest) + pointSource - start);
+		}
+		out.add(g.getChrom(first), start, end, Peak.DEFAULT_NAME, score, strand, aggregate(aggregate, signalVals, Peak.DEFAULT_SIGNAL_VAL),
+				aggregate(aggregate, pVals, Peak.DEFAULT_PVAL), aggregate(aggregate, qVals, Peak.DEFAULT_QVAL), pointSource);
+	}
+
+	private static double aggregate(Aggregate aggregate, double[] values, double unassigned){
+		int n = 0;
+		double max = Double.NEGATIVE_INFINITY;
+		double sum = 0;
+		for(double val : values){
+			if(val != unassigned){
+				n++;
+				max = Math.max(max, val);
+				sum += val;
+			}
+		}
+		if(n == 0){
+			return unassigned;
+		}
+		switch(aggregate){
+		case MAX:
+			return max;
+		case MEAN:
+			return sum / n;
+		case SUM:
+			return sum;
+		default:
+			throw new RuntimeException("Error: unknown aggregate "+aggregate);
+		}
+	}
+
+	/**
+	 * Returns the index of the first of the sorted values greater than the given value
+	 */
+	private static int firstAfter(long[] sorted, long value){
+		int low = 0;
+		int high = sorted.length;
+		while(low < high){
+			int mid = (low + high) >>> 1;
+			if(sorted[mid] <= value){
+				low = mid + 1;
+			}else{
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * The peaks of a track that may overlap the current region, in order of start. Regions must be given in order
+	 * of start.
+	 */
+	private static class ActiveList{
+
+		private final Track m_Track;
+		private int m_Next = 0;
+		private int[] m_Active = new int[16];
+		private int m_Size = 0;
+
+		private ActiveList(Track track){
+			m_Track = track;
+		}
+
+		/**
+		 * Moves to the given region and returns the number of active peaks overlapping it, which are the first
+		 * active peaks. Peaks starting after the region may still be active for an earlier, longer region.
+		 */
+		private int advance(long start, long end){
+			//drop peaks ending at or before the start of the region, which end before every later region too
+			int kept = 0;
+			for(int k=0; k<m_Size; k++){
+				if(m_Track.m_Ends[m_Active[k]] > start){
+					m_Active[kept++] = m_Active[k];
+				}
+			}
+			m_Size = kept;
+			while(m_Next < m_Track.size() && m_Track.m_Starts[m_Next] < end){
+				if(m_Track.m_Ends[m_Next] > start){
+					if(m_Size == m_Active.length){
+						m_Active = Arrays.copyOf(m_Active, m_Size * 2);
+					}
+					m_Active[m_Size++] = m_Next;
+				}
+				m_Next++;
+			}
+			int overlapping = 0;
+			while(overlapping < m_Size && m_Track.m_Starts[m_Active[overlapping]] < end){
+				overlapping++;
+			}
+			return overlapping;
+		}
+
+		private int get(int k){
+			return m_Active[k];
+		}
+
+	}
+
+	private static void add(PeakGroup.Builder out, Track track, int i, long start, long end){
+		PeakGroup g = track.m_Group;
+		int row = track.m_Rows[i];
+		int pointSource = g.getPointSource(row);
+		if(pointSource >= 0){
+			long abs = g.getChromStart(row) + pointSource;
+			pointSource = abs >= start && abs < end ? (int) (abs - start) : Peak.DEFAULT_POINT_SOURCE;
+		}
+		out.add(g.getChrom(row), start, end, g.getName(row), g.getScore(row), g.getStrand(row), g.getSignalVal(row), g.getPVal(row),
+				g.getQVal(row), pointSource);
+	}
+
+	private static void copy(PeakGroup.Builder out, Track track, int i){
+		PeakGroup g = track.m_Group;
+		int row = track.m_Rows[i];
+		out.add(g.getChrom(row), g.getChromStart(row), g.getChromEnd(row), g.getName(row), g.getScore(row), g.getStrand(row),
+				g.getSignalVal(row), g.getPVal(row), g.getQVal(row), g.getPointSource(row));
+	}
+
+	/**
+	 * Splits the group by chromosome, in order of first appearance, with the peaks of each chromosome sorted by
+	 * start and then end
+	 */
+	private static Map<Chromosome, Track> tracks(final PeakGroup group){
+		Map<Chromosome, int[]> counts = new LinkedHashMap<Chromosome, int[]>();
+		for(int i=0; i<group.size(); i++){
+			int[] count = counts.get(group.getChrom(i));
+			if(count == null){
+				count = new int[1];
+				counts.put(group.getChrom(i), count);
+			}
+			count[0]++;
+		}
+		Map<Chromosome, Integer[]> rows = new LinkedHashMap<Chromosome, Integer[]>();
+		for(Map.Entry<Chromosome, int[]> e : counts.entrySet()){
+			rows.put(e.getKey(), new Integer[e.getValue()[0]]);
+			e.getValue()[0] = 0;
+		}
+		for(int i=0; i<group.size(); i++){
+			int[] count = counts.get(group.getChrom(i));
+			rows.get(group.getChrom(i))[count[0]++] = i;
+		}
+		Comparator<Integer> order = new Comparator<Integer>(){
+
+			@Override
+			public int compare(Integer o1, Integer o2) {
+				if(group.getChromStart(o1) != group.getChromStart(o2)){
+					return Long.compare(group.getChromStart(o1), group.getChromStart(o2));
+				}
+				return Long.compare(group.getChromEnd(o1), group.getChromEnd(o2));
+			}
+
+		};
+		Map<Chromosome, Track> tracks = new LinkedHashMap<Chromosome, Track>();
+		for(Map.Entry<Chromosome, Integer[]> e : rows.entrySet()){
+			Integer[] sorted = e.getValue();
+			Arrays.sort(sorted, order);
+			int[] unboxed = new int[sorted.length];
+			for(int i=0; i<sorted.length; i++){
+				unboxed[i] = sorted[i];
+			}
+			tracks.put(e.getKey(), new Track(group, unboxed));
+		}
+		return tracks;
+	}
+
+	private static PeakGroup run(PeakGroup a, PeakGroup b, int threads, final Sweep sweep){
+		Map<Chromosome, Track> as = tracks(a);
+		Map<Chromosome, Track> bs = tracks(b);
+		PeakGroup.Builder out = new PeakGroup.Builder();
+		if(threads <= 1 || as.size() <= 1){
+			for(Map.Entry<Chromosome, Track> e : as.entrySet()){
+				Track other = bs.containsKey(e.getKey()) ? bs.get(e.getKey()) : EMPTY;
+				sweep.sweep(e.getValue(), other, out);
+			}
+			return out.build();
+		}
+		List<Future<PeakGroup>> results = new ArrayList<Future<PeakGroup>>();
+		ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, as.size()));
+		try{
+			for(Map.Entry<Chromosome, Track> e : as.entrySet()){
+				final Track track = e.getValue();
+				final Track other = bs.containsKey(e.getKey()) ? bs.get(e.getKey()) : EMPTY;
+				results.add(pool.submit(new Callable<PeakGroup>(){
+
+					@Override
+					public PeakGroup call() throws Exception {
+						PeakGroup.Builder out = new PeakGroup.Builder();
+						sweep.sweep(track, other, out);
+						return out.build();
+					}
+
+				}));
+			}
+			for(Future<PeakGroup> result : results){
+				out.addAll(get(result));
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+		return out.build();
+	}
+
+	private static PeakGroup get(Future<PeakGroup> future){
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+}
@@ -0,0 +1,406 @@
+package util.genome.peak;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import util.genome.Chromosome;
+import util.genome.GenomicCoordinate;
+import util.genome.GenomicRegion;
+import util.genome.ParsingException;
+import util.genome.Strand;
+
+/**
+ * Parses BED and ENCODE narrowPeak lines in place from a character buffer. Columns are split at every whitespace
+ * character, numbers are parsed from the buffer without creating strings and chromosomes are interned, so a peak
+ * costs little more than the Peak itself. A fifth column that is not an integer score is the qValue of a BED5
+ * peak, which ends the peak.
+ */
+class PeakParser {
+
+	static final int CHUNK_SIZE = 1 << 20;
+
+	private static final String MINIMUM_ERROR = "Error: peaks require values for chromosome, chromosomeStart, and chromosomeEnd at the minimum";
+	private static final int MAX_COLUMNS = 10;
+	//doubles with at most this many digits and powers of ten up to 1e22 are exact
+	private static final int MAX_EXACT_DIGITS = 15;
+	private static final double[] POWERS_OF_TEN = new double[23];
+	static{
+		POWERS_OF_TEN[0] = 1;
+		for(int i=1; i<POWERS_OF_TEN.length; i++){
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i-1] * 10;
+		}
+	}
+
+	private final Map<String, Chromosome> m_Chrs;
+	private String m_LastChrId = null;
+	private Chromosome m_LastChr = null;
+	private final int[] m_Starts = new int[MAX_COLUMNS];
+	private final int[] m_Ends = new int[MAX_COLUMNS];
+	//values of the last parsed peak
+	private Chromosome m_Chr;
+	private long m_ChromStart;
+	private long m_ChromEnd;
+	private String m_Name;
+	private int m_Score;
+	private Strand m_Strand;
+	private double m_SignalVal;
+	private double m_PVal;
+	private double m_QVal;
+	private int m_PointSource;
+
+	PeakParser(){
+		this(new HashMap<String, Chromosome>());
+	}
+
+	/**
+	 * Creates a parser that interns chromosomes in the given map, which must be thread safe if it is shared
+	 */
+	PeakParser(Map<String, Chromosome> chrs){
+		m_Chrs = chrs;
+	}
+
+	private static boolean isWhitespace(char c){
+		return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+	}
+
+	private static boolean isNewline(char c){
+		return c == '\n' || c == '\r';
+	}
+
+	private static boolean isDigit(char c){
+		return c >= '0' && c <= '9';
+	}
+
+	/**
+	 * Parses a long as Long.parseLong would
+	 */
+	private static long parseLong(char[] buf, int from, int to){
+		int i = from;
+		boolean negative = false;
+		if(i < to && (buf[i] == '-' || buf[i] == '+')){
+			negative = buf[i] == '-';
+			i++;
+		}
+		if(i == to){
+			throw new NumberFormatException("For input string: \""+new String(buf, from, to - from)+"\"");
+		}
+		//accumulate negatively, as Long.MIN_VALUE has no positive counterpart
+		long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+		long min = limit / 10;
+		long value = 0;
+		for(; i<to; i++){
+			int digit = buf[i] - '0';
+			if(digit < 0 || digit > 9 || value < min){
+				throw new NumberFormatException("For input string: \""+new String(buf, from, to - from)+"\"");
+			}
+			value *= 10;
+			if(value < limit + digit){
+				throw new NumberFormatException("For input string: \""+new String(buf, from, to - from)+"\"");
+			}
+			value -= digit;
+		}
+		return negative ? value : -value;
+	}
+
+	/**
+	 * Tests whether Integer.parseInt would accept the given characters
+	 */
+	private static boolean isInt(char[] buf, int from, int to){
+		int i = from;
+		boolean negative = false;
+		if(i < to && (buf[i] == '-' || buf[i] == '+')){
+			negative = buf[i] == '-';
+			i++;
+		}
+		if(i == to) return false;
+		long value = 0;
+		for(; i<to; i++){
+			if(!isDigit(buf[i])) return false;
+			value = value * 10 + (buf[i] - '0');
+			if(value > -(long) Integer.MIN_VALUE) return false;
+		}
+		return negative || value <= Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Parses a double as Double.parseDouble would. Plain decimals of up to {@link #MAX_EXACT_DIGITS} digits are
+	 * parsed in place, as dividing their exact digits by an exact power of ten rounds correctly.
+	 */
+	private static double parseDouble(char[] buf, int from, int to){
+		int i = from;
+		boolean negative = false;
+		if(i < to && (buf[i] == '-' || buf[i] == '+')){
+			negative = buf[i] == '-';
+			i++;
+		}
+		long digits = 0;
+		int numDigits = 0;
+		int fraction = -1;
+		for(; i<to; i++){
+			char c = buf[i];
+			if(isDigit(c)){
+				digits = digits * 10 + (c - '0');
+				numDigits++;
+				if(fraction >= 0) fraction++;
+			}else if(c == '.' && fraction < 0){
+				fraction = 0;
+			}else{
+				break;
+			}
+		}
+		if(i < to || numDigits == 0 || numDigits > MAX_EXACT_DIGITS){
+			return Double.parseDouble(new String(buf, from, to - from));
+		}
+		double value = fraction > 0 ? digits / POWERS_OF_TEN[fraction] : digits;
+		return negative ? -value : value;
+	}
+
+	private static Strand parseStrand(char[] buf, int from, int to){
+		if(to - from == 1){
+			if(buf[from] == '+') return Strand.PLUS;
+			if(buf[from] == '-') return Strand.MINUS;
+		}
+		return Strand.UNKNOWN;
+	}
+
+	private Chromosome chr(char[] buf, int from, int to){
+		//peak files are usually sorted, so the chromosome is most often that of the previous peak
+		if(m_LastChrId != null && m_LastChrId.length() == to - from){
+			boolean same = true;
+			for(int i=from; i<to && same; i++){
+				same = m_LastChrId.charAt(i - from) == buf[i];
+			}
+			if(same) return m_LastChr;
+		}
+		String id = new String(buf, from, to - from);
+		Chromosome chr = m_Chrs.get(id);
+		if(chr == null){
+			chr = new Chromosome(id);
+			m_Chrs.put(id, chr);
+		}
+		m_LastChrId = id;
+		m_LastChr = chr;
+		return chr;
+	}
+
+	Peak parse(String line) throws ParsingException{
+		char[] buf = line.toCharArray();
+		return this.parse(buf, 0, buf.length);
+	}
+
+	/**
+	 * Parses the peak on the line held by buf[from, to)
+	 */
+	Peak parse(char[] buf, int from, int to) throws ParsingException{
+		this.parseValues(buf, from, to);
+		GenomicRegion region = new GenomicRegion(new GenomicCoordinate(m_Chr, m_ChromStart), new GenomicCoordinate(m_Chr, m_ChromEnd));
+		return new Peak(region, m_Name, m_Score, m_Strand, m_SignalVal, m_PVal, m_QVal, m_PointSource);
+	}
+
+	private void parseValues(char[] buf, int from, int to) throws ParsingException{
+		//trailing whitespace does not start empty columns
+		while(to > from && isWhitespace(buf[to-1])){
+			to--;
+		}
+		int columns = 0;
+		int start = from;
+		for(int i=from; i<=to && columns < MAX_COLUMNS; i++){
+			if(i == to || isWhitespace(buf[i])){
+				m_Starts[columns] = start;
+				m_Ends[columns] = i;
+				columns++;
+				start = i + 1;
+			}
+		}
+		if(columns < 3 || m_Starts[0] == m_Ends[0]){
+			throw new ParsingException(MINIMUM_ERROR);
+		}
+		try{
+			m_Chr = this.chr(buf, m_Starts[0], m_Ends[0]);
+			m_ChromStart = parseLong(buf, m_Starts[1], m_Ends[1]);
+			m_ChromEnd = parseLong(buf, m_Starts[2], m_Ends[2]);
+			if(m_ChromStart == -1 || m_ChromEnd == -1){
+				throw new ParsingException(MINIMUM_ERROR);
+			}
+			m_Name = Peak.DEFAULT_NAME;
+			m_Score = Peak.DEFAULT_SCORE;
+			m_Strand = Peak.DEFAULT_STRAND;
+			m_SignalVal = Peak.DEFAULT_SIGNAL_VAL;
+			m_PVal = Peak.DEFAULT_PVAL;
+			m_QVal = Peak.DEFAULT_QVAL;
+			m_PointSource = Peak.DEFAULT_POINT_SOURCE;
+			if(columns > 3){
+				int length = m_Ends[3] - m_Starts[3];
+				m_Name = length == 1 && buf[m_Starts[3]] == '.' ? Peak.DEFAULT_NAME : new String(buf, m_Starts[3], length);
+			}
+			if(columns > 4){
+				if(isInt(buf, m_Starts[4], m_Ends[4])){
+					m_Score = (int) parseLong(buf, m_Starts[4], m_Ends[4]);
+				}else{
+					m_QVal = parseDouble(buf, m_Starts[4], m_Ends[4]);
+					columns = 5;
+				}
+			}
+			if(columns > 5) m_Strand = parseStrand(buf, m_Starts[5], m_Ends[5]);
+			if(columns > 6) m_SignalVal = parseDouble(buf, m_Starts[6], m_Ends[6]);
+			if(columns > 7) m_PVal = parseDouble(buf, m_Starts[7], m_Ends[7]);
+			if(columns > 8) m_QVal = parseDouble(buf, m_Starts[8], m_Ends[8]);
+			if(columns > 9) m_PointSource = parseInt(buf, m_Starts[9], m_Ends[9]);
+		} catch (ParsingException e){
+			throw e;
+		} catch (Exception e){
+			throw new ParsingException(e);
+		}
+	}
+
+	private static int parseInt(char[] buf, int from, int to){
+		if(!isInt(buf, from, to)){
+			throw new NumberFormatException("For input string: \""+new String(buf, from, to - from)+"\"");
+		}
+		return (int) parseLong(buf, from, to);
+	}
+
+	/**
+	 * Parses the lines held by buf[from, to), adding their peaks to the given builder. Lines that are not peaks,
+	 * such as track lines, are skipped.
+	 */
+	void parseLines(char[] buf, int from, int to, PeakGroup.Builder peaks){
+		int lineStart = from;
+		for(int i=from; i<=to; i++){
+			if(i == to || isNewline(buf[i])){
+				if(i > lineStart){
+					try{
+						this.parseValues(buf, lineStart, i);
+						peaks.add(m_Chr, m_ChromStart, m_ChromEnd, m_Name, m_Score, m_Strand, m_SignalVal, m_PVal, m_QVal, m_PointSource);
+					} catch (ParsingException e){
+						//not a peak, skip it
+					}
+				}
+				lineStart = i + 1;
+			}
+		}
+	}
+
+	/**
+	 * Reads whole lines from a reader in chunks of about {@link #CHUNK_SIZE} characters
+	 */
+	static class Chunks{
+
+		private final Reader m_Reader;
+		private char[] m_Buf = new char[CHUNK_SIZE];
+		private int m_Length = 0;
+		private int m_End = 0;
+
+		Chunks(Reader reader){
+			m_Reader = reader;
+		}
+
+		char[] getBuffer(){
+			return m_Buf;
+		}
+
+		/**
+		 * Reads the next chunk of whole lines into getBuffer()[0, end) and returns end, or -1 once the reader
+		 * is exhausted
+		 */
+		int next() throws IOException{
+			//move the partial line following the previous chunk to the front
+			System.arraycopy(m_Buf, m_End, m_Buf, 0, m_Length - m_End);
+			m_Length -= m_End;
+			m_End = 0;
+			while(true){
+				int read = 0;
+				while(m_Length < m_Buf.length && (read = m_Reader.read(m_Buf, m_Length, m_Buf.length - m_Length)) >= 0){
+					m_Length += read;
+				}
+				if(read < 0){
+					m_End = m_Length;
+					return m_Length > 0 ? m_Length : -1;
+				}
+				for(int i=m_Length-1; i>=0; i--){
+					if(isNewline(m_Buf[i])){
+						m_End = i + 1;
+						return m_End;
+					}
+				}
+				//a line longer than the buffer
+				m_Buf = Arrays.copyOf(m_Buf, 2 * m_Buf.length);
+			}
+		}
+
+	}
+
+	static PeakGroup parseAll(Reader reader) throws IOException{
+		PeakGroup.Builder peaks = new PeakGroup.Builder();
+		PeakParser parser = new PeakParser();
+		Chunks chunks = new Chunks(reader);
+		int end;
+		while((end = chunks.next()) >= 0){
+			parser.parseLines(chunks.getBuffer(), 0, end, peaks);
+		}
+		return peaks.build();
+	}
+
+	/**
+	 * Parses chunks of the reader on the given number of threads. The peaks are kept in the order of the input
+	 * and at most two chunks per thread are held in memory at once.
+	 */
+	static PeakGroup parseAll(Reader reader, int threads) throws IOException{
+		if(threads <= 1){
+			return parseAll(reader);
+		}
+		final Map<String, Chromosome> chrs = new ConcurrentHashMap<String, Chromosome>();
+		PeakGroup.Builder peaks = new PeakGroup.Builder();
+		Deque<Future<PeakGroup>> pending = new ArrayDeque<Future<PeakGroup>>();
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try{
+			Chunks chunks = new Chunks(reader);
+			int end;
+			while((end = chunks.next()) >= 0){
+				final char[] chunk = Arrays.copyOf(chunks.getBuffer(), end);
+				pending.add(pool.submit(new Callable<PeakGroup>(){
+
+					@Override
+					public PeakGroup call() throws Exception {
+						PeakGroup.Builder peaks = new PeakGroup.Builder();
+						new PeakParser(chrs).parseLines(chunk, 0, chunk.length, peaks);
+						return peaks.build();
+					}
+
+				}));
+				if(pending.size() >= 2 * threads){
+					peaks.addAll(get(pending.poll()));
+				}
+			}
+			while(!pending.isEmpty()){
+				peaks.addAll(get(pending.poll()));
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+		return peaks.build();
+	}
+
+	private static PeakGroup get(Future<PeakGroup> future){
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+}
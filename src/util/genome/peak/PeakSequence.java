@@ -45,8 +45,15 @@ public class PeakSequence extends Peak{
 	
 	@Override
 	public String toString(){
-		return m_Sequence.toString() + "\t" + this.getName() + "\t" + this.getScore() + "\t" + this.getStrand() + "\t" + this.getSignalVal() + "\t"
-				+ this.getPVal() + "\t" + this.getQVal() + "\t" + this.getPointSource();
+		return this.appendTo(new StringBuilder()).toString();
+	}
+	
+	@Override
+	public StringBuilder appendTo(StringBuilder s){
+		s.append(m_Sequence.getSequence()).append('\t').append(m_Sequence.getRegion()).append('\t').append(this.getName())
+				.append('\t').append(this.getScore()).append('\t').append(this.getStrand()).append('\t').append(this.getSignalVal())
+				.append('\t').append(this.getPVal()).append('\t').append(this.getQVal()).append('\t').append(this.getPointSource());
+		return s;
 	}
 	
 	@Override
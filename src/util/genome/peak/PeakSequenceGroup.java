@@ -1,7 +1,9 @@
 package util.genome.peak;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.Serializable;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
@@ -52,11 +54,22 @@ public class PeakSequenceGroup implements Serializable, Iterable<PeakSequence>{
 	
 	@Override
 	public String toString(){
-		String s = "";
+		StringBuilder s = new StringBuilder();
 		for(PeakSequence ps : this){
-			s += ps + "\n";
+			ps.appendTo(s).append('\n');
+		}
+		return s.toString();
+	}
+	
+	/**
+	 * Writes these peak sequences to the given writer, one per line as by toString, without building the whole
+	 * output
+	 */
+	public void write(Writer out) throws IOException{
+		RecordWriter records = new RecordWriter(out);
+		for(PeakSequence ps : this){
+			records.write(ps);
 		}
-		return s;
 	}
 	
 	@Override
@@ -0,0 +1,30 @@
+package util.genome.peak;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes peaks one line at a time, formatting each into the same buffers
+ */
+class RecordWriter {
+
+	private final Writer m_Out;
+	private final StringBuilder m_Record = new StringBuilder();
+	private char[] m_Chars = new char[256];
+
+	RecordWriter(Writer out){
+		m_Out = out;
+	}
+
+	void write(Peak p) throws IOException{
+		m_Record.setLength(0);
+		p.appendTo(m_Record).append('\n');
+		int length = m_Record.length();
+		if(length > m_Chars.length){
+			m_Chars = new char[Math.max(length, 2 * m_Chars.length)];
+		}
+		m_Record.getChars(0, length, m_Chars, 0);
+		m_Out.write(m_Chars, 0, length);
+	}
+
+}
@@ -1,11 +1,11 @@
 package util.genome.reader;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import plugins.genome.GenomeActivator;
 import util.genome.Genome;
 import util.progress.ProgressEvent;
@@ -14,6 +14,8 @@ import jprobe.services.ErrorHandler;
 
 public abstract class AbstractGenomeReader implements GenomeReader{
 	
+	private static final Map<String, PrereadIndex> INDEX_HASH = new HashMap<String, PrereadIndex>();
+	
 	private Collection<ProgressListener> m_Listeners = new HashSet<ProgressListener>();
 	
 	protected AbstractGenomeReader(){
@@ -31,23 +33,39 @@ public abstract class AbstractGenomeReader implements GenomeReader{
 				return GENOME_HASH.get(key);
 			}
 		}
+		PrereadIndex index = this.prereadIndex(genomeFile);
+		if(index == null || Thread.interrupted()){
+			return null;
+		}
+		Genome genome = index.toGenome(genomeFile.getName());
+		synchronized(GENOME_HASH){
+			GENOME_HASH.put(key, genome);
+		}
+		return genome;
+	}
+	
+	/**
+	 * Returns the chromosome names, sizes and offsets of the given genome file. These are read from the file's
+	 * persisted pre-read index when it is up to date, so the genome file itself only needs to be pre-read once.
+	 */
+	protected PrereadIndex prereadIndex(File genomeFile){
+		String key = genomeFile.getAbsolutePath();
+		synchronized(INDEX_HASH){
+			if(INDEX_HASH.containsKey(key)){
+				return INDEX_HASH.get(key);
+			}
+		}
 		try {
 			this.notifyListeners(new ProgressEvent(this, ProgressEvent.Type.UPDATE, 0, "Prereading genome file: "+genomeFile.getPath(), true));
-			FileInputStream in = new FileInputStream(genomeFile);
-			Genome genome = new Genome(m_Listeners, genomeFile.getName(), in);
-			try {
-				in.close();
-			} catch (IOException e) {
-				//do nothing
-			}
-			if(Thread.interrupted()){
+			PrereadIndex index = PrereadIndex.load(genomeFile, m_Listeners);
+			if(Thread.currentThread().isInterrupted()){
 				return null;
 			}
-			synchronized(GENOME_HASH){
-				GENOME_HASH.put(key, genome);
+			synchronized(INDEX_HASH){
+				INDEX_HASH.put(key, index);
 			}
-			return genome;
-		} catch (FileNotFoundException e) {
+			return index;
+		} catch (IOException e) {
 			ErrorHandler.getInstance().handleException(e, GenomeActivator.getBundle());
 		}
 		return null;
@@ -2,23 +2,21 @@ package util.genome.reader;
 
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
 import java.util.Collection;
 import java.util.List;
 import jprobe.services.ErrorHandler;
 import plugins.genome.GenomeActivator;
 import util.genome.Chromosome;
 import util.genome.Genome;
-import util.genome.GenomicCoordinate;
-import util.genome.GenomicRegion;
-import util.genome.GenomicSequence;
 import util.genome.reader.query.BoundedQueryProcessor;
 import util.genome.reader.query.LocationBoundedSequenceQuery;
 import util.genome.reader.query.LocationQuery;
 import util.genome.reader.query.LocationQueryProcessor;
+import util.genome.reader.query.QueryProcessor;
 import util.genome.reader.query.SequenceQuery;
 import util.genome.reader.query.SequenceQueryProcessor;
 import util.progress.ProgressEvent;
@@ -27,11 +25,21 @@ import util.progress.ProgressListener;
 
 public class BasicGenomeReader extends AbstractGenomeReader{
 	
+	/**
+	 * LINES reads the genome line by line through a BufferedReader. BYTES scans the raw bytes of the file
+	 * through a channel and hands the query processors blocks of {@link FastaScanner#BLOCK_SIZE} bases.
+	 */
+	public enum ReadMode{
+		LINES,
+		BYTES;
+	}
+	
 	public static final int LINES_PER_NOTIFY = 10;
 	
 	private final File m_GenomeFile;
 	private final Genome m_Genome;
 	private UpdateMode m_Mode = UpdateMode.FULL;
+	private ReadMode m_ReadMode = ReadMode.BYTES;
 	
 	public BasicGenomeReader(File genomeFile){
 		m_GenomeFile = genomeFile;
@@ -75,10 +83,22 @@ public class BasicGenomeReader extends AbstractGenomeReader{
 		LocationQueryProcessor locationProcessor = new LocationQueryProcessor(locationQueries);
 		SequenceQueryProcessor sequenceProcessor = new SequenceQueryProcessor(sequenceQueries);
 		BoundedQueryProcessor boundedProcessor = new BoundedQueryProcessor(boundedQueries);
-		
+		switch(m_ReadMode){
+		case BYTES:
+			this.readBytes(locationProcessor, sequenceProcessor, boundedProcessor);
+			break;
+		default:
+			this.readLines(locationProcessor, sequenceProcessor, boundedProcessor);
+			break;
+		}
+	}
+	
+	protected void readLines(QueryProcessor locationProcessor, QueryProcessor sequenceProcessor, QueryProcessor boundedProcessor){
 		try {
-			BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(m_GenomeFile)));
-			GenomicCoordinate seqStart = m_Genome.newGenomicCoordinate(m_Genome.getFirstChr(), 1);
+			BufferedReader reader = new BufferedReader(new InputStreamReader(Channels.newInputStream(FastaScanner.openChannel(m_GenomeFile))));
+			//packed location of the next base
+			long pos = 0;
+			long size = m_Genome.getSize();
 			long count = 0;
 			int lineCount = 0;
 			String line;
@@ -86,24 +106,26 @@ public class BasicGenomeReader extends AbstractGenomeReader{
 				while((line = reader.readLine()) != null){
 					count += line.length();
 					if(m_Mode == UpdateMode.FULL && lineCount % LINES_PER_NOTIFY == 0){
-						this.notifyReadProgress(count, seqStart.getChromosome());
+						this.notifyReadProgress(count, this.chrAt(pos));
 					}
 					if(line.startsWith(">")){
 						//only reset the char count to zero
 						//preread genome knows when to advance to next chromosome already
-						if(m_Mode == UpdateMode.CHROM_ONLY && seqStart.getChromosome()!=null){
-							this.notifyReadProgress(count, seqStart.getChromosome());
+						if(m_Mode == UpdateMode.CHROM_ONLY){
+							this.notifyReadProgress(count, this.chrAt(pos));
 						}
 						lineCount = 0;
 						count = 0;
 						continue;
 					}
-					GenomicSequence seq = new GenomicSequence(line, new GenomicRegion(seqStart, seqStart.increment(line.length()-1)));
-					locationProcessor.process(seq);
-					sequenceProcessor.process(seq);
-					boundedProcessor.process(seq);
-					seqStart = seq.getEnd().increment(1);
-					if(seqStart == null) break;
+					if(pos + line.length() > size){
+						line = line.substring(0, (int) (size - pos));
+					}
+					locationProcessor.process(line, pos, m_Genome);
+					sequenceProcessor.process(line, pos, m_Genome);
+					boundedProcessor.process(line, pos, m_Genome);
+					pos += line.length();
+					if(pos >= size) break;
 					lineCount++;
 				}
 			} catch (IOException e) {
@@ -115,16 +137,112 @@ public class BasicGenomeReader extends AbstractGenomeReader{
 			} catch (IOException e) {
 				//do nothing
 			}
-		} catch (FileNotFoundException e) {
+		} catch (IOException e) {
 			ErrorHandler.getInstance().handleException(e, GenomeActivator.getBundle());
 		}
 		
 	}
 
+	protected void readBytes(final QueryProcessor... processors){
+		try {
+			SeekableByteChannel channel = FastaScanner.openChannel(m_GenomeFile);
+			try {
+				new FastaScanner(channel).scan(new FastaScanner.Handler(){
+					
+					private Chromosome m_Chr = null;
+					private long m_Count = 0;
+					//packed location of the first base of the chromosome
+					private long m_Start = 0;
+					
+					@Override
+					public boolean header(String header, long offset) {
+						if(m_Chr != null && m_Mode == UpdateMode.CHROM_ONLY){
+							notifyReadProgress(m_Count, m_Chr);
+						}
+						m_Chr = findChr(header);
+						m_Count = 0;
+						if(m_Chr == null) return false;
+						m_Start = m_Genome.pack(m_Chr, 1);
+						return true;
+					}
+					
+					@Override
+					public boolean bases(byte[] block, int length) {
+						if(m_Chr == null){
+							//bases before the first header
+							return true;
+						}
+						if(m_Chr.getSize() >= 0 && m_Count + length > m_Chr.getSize()){
+							length = (int) (m_Chr.getSize() - m_Count);
+							if(length <= 0) return true;
+						}
+						String bases = new String(block, 0, length, FastaScanner.ASCII);
+						for(QueryProcessor p : processors){
+							p.process(bases, m_Start + m_Count, m_Genome);
+						}
+						m_Count += length;
+						if(m_Mode == UpdateMode.FULL){
+							notifyReadProgress(m_Count, m_Chr);
+						}
+						return !allDone(processors);
+					}
+					
+				});
+			} catch (IOException e){
+				//do nothing
+			}
+			this.notifyCompleted();
+			try {
+				channel.close();
+			} catch (IOException e) {
+				//do nothing
+			}
+		} catch (IOException e) {
+			ErrorHandler.getInstance().handleException(e, GenomeActivator.getBundle());
+		}
+	}
+	
+	private static boolean allDone(QueryProcessor... processors){
+		for(QueryProcessor p : processors){
+			if(!p.done()) return false;
+		}
+		return true;
+	}
+	
+	private Chromosome chrAt(long packed){
+		return m_Genome.getChr(m_Genome.indexOfPacked(Math.min(packed, m_Genome.getSize() - 1)));
+	}
+
+	/**
+	 * Finds the chromosome of the pre-read genome named by the given FASTA header line. The first word of the
+	 * header is tried first, as that is how genomes name their chromosomes, then the full header for genomes
+	 * built from full header lines.
+	 * @return the chromosome or null if the header does not name a chromosome of the genome
+	 */
+	protected Chromosome findChr(String header){
+		String id = new Chromosome(Genome.chrName(header)).getId();
+		if(m_Genome.hasChr(id)){
+			return m_Genome.getChr(id);
+		}
+		id = new Chromosome(header).getId();
+		if(m_Genome.hasChr(id)){
+			return m_Genome.getChr(id);
+		}
+		return null;
+	}
+
 	@Override
 	public void setUpdateMode(UpdateMode mode) {
 		m_Mode = mode;
 	}
+	
+	public void setReadMode(ReadMode mode){
+		m_ReadMode = mode;
+	}
+	
+	public ReadMode getReadMode(){
+		return m_ReadMode;
+	}
 
 	
 	
@@ -0,0 +1,456 @@
+package util.genome.reader;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Random access to the uncompressed bytes of a BGZF (bgzip) compressed file. BGZF files are a series of gzip
+ * members of at most 64 KB each, so any byte can be read by inflating only the block that contains it. The
+ * compressed and uncompressed offsets of the blocks are read from the file's .gzi index, or found by walking
+ * the block headers and written to a .gzi index if there is none.
+ * <p>
+ * Inflated blocks are cached. When blocks are read in order, the following blocks are inflated in parallel
+ * ahead of the reader.
+ */
+public class BgzfFile implements ByteSource{
+
+	public static final String INDEX_EXTENSION = ".gzi";
+
+	private static final int HEADER_SIZE = 18;
+	private static final int TRAILER_SIZE = 8;
+	private static final int CACHE_BLOCKS = 256;
+	private static final int THREADS = Math.max(1, Runtime.getRuntime().availableProcessors());
+	private static final int READ_AHEAD = 2 * THREADS;
+
+	private static final Map<String, BgzfFile> FILE_HASH = new HashMap<String, BgzfFile>();
+
+	private static final ExecutorService INFLATERS = createInflaters();
+
+	private static ExecutorService createInflaters(){
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(THREADS, THREADS, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory(){
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "BGZF inflater");
+				t.setDaemon(true);
+				return t;
+			}
+
+		});
+		pool.allowCoreThreadTimeOut(true);
+		return pool;
+	}
+
+	/**
+	 * Returns the size of the BGZF block with the given header or -1 if it is not a BGZF block header
+	 */
+	private static int blockSize(byte[] header){
+		if(header.length < HEADER_SIZE) return -1;
+		//gzip magic, deflate and the FEXTRA flag
+		if((header[0] & 0xFF) != 0x1f || (header[1] & 0xFF) != 0x8b || header[2] != 8 || (header[3] & 4) == 0){
+			return -1;
+		}
+		ByteBuffer buf = ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN);
+		int xlen = buf.getShort(10) & 0xFFFF;
+		int pos = 12;
+		while(pos + 4 <= Math.min(12 + xlen, header.length)){
+			int slen = buf.getShort(pos + 2) & 0xFFFF;
+			if(header[pos] == 'B' && header[pos+1] == 'C' && slen == 2 && pos + 6 <= header.length){
+				return (buf.getShort(pos + 4) & 0xFFFF) + 1;
+			}
+			pos += 4 + slen;
+		}
+		return -1;
+	}
+
+	/**
+	 * Tests whether the given file starts with a BGZF block
+	 */
+	public static boolean isBgzf(File file){
+		if(!file.isFile() || file.length() < HEADER_SIZE) return false;
+		try{
+			DataInputStream in = new DataInputStream(new FileInputStream(file));
+			try{
+				byte[] header = new byte[HEADER_SIZE];
+				in.readFully(header);
+				return blockSize(header) > 0;
+			} finally {
+				in.close();
+			}
+		} catch (IOException e){
+			return false;
+		}
+	}
+
+	public static File getIndexFile(File file){
+		return new File(file.getPath() + INDEX_EXTENSION);
+	}
+
+	/**
+	 * Returns the BgzfFile of the given file. BgzfFiles are shared, so that all readers of a file share its index
+	 * and cache of inflated blocks.
+	 */
+	public static BgzfFile open(File file) throws IOException{
+		String key = file.getAbsolutePath();
+		synchronized(FILE_HASH){
+			BgzfFile bgzf = FILE_HASH.get(key);
+			if(bgzf == null || bgzf.m_Modified != file.lastModified() || bgzf.m_File.length() != file.length()){
+				bgzf = new BgzfFile(file);
+				FILE_HASH.put(key, bgzf);
+			}
+			return bgzf;
+		}
+	}
+
+	private final MappedFile m_File;
+	private final long m_Modified;
+	//compressed and uncompressed offset of every block, with the ends of the file appended
+	private final long[] m_Compressed;
+	private final long[] m_Uncompressed;
+	private final Map<Integer, FutureTask<byte[]>> m_Cache = new LinkedHashMap<Integer, FutureTask<byte[]>>(16, 0.75f, true){
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Integer, FutureTask<byte[]>> eldest){
+			return this.size() > CACHE_BLOCKS;
+		}
+	};
+	private int m_LastBlock = -1;
+
+	public BgzfFile(File file) throws IOException{
+		m_File = new MappedFile(file);
+		m_Modified = file.lastModified();
+		if(!isBgzf(file)){
+			throw new IOException("Error: file "+file.getPath()+" is not BGZF compressed");
+		}
+		long[][] offsets = null;
+		File indexFile = getIndexFile(file);
+		if(indexFile.exists() && indexFile.lastModified() >= file.lastModified()){
+			try{
+				offsets = this.readIndex(indexFile);
+			} catch (IOException e){
+				//rebuild the index
+			}
+		}
+		if(offsets == null){
+			offsets = this.walkBlocks(0, 0, 0, new long[][]{new long[1024], new long[1024]});
+			try{
+				this.writeIndex(indexFile, offsets);
+			} catch (IOException e){
+				//the index is still usable from memory
+			}
+		}
+		m_Compressed = offsets[0];
+		m_Uncompressed = offsets[1];
+	}
+
+	/**
+	 * Reads the .gzi index. As it does not record the final uncompressed size, the blocks after the last indexed
+	 * block are walked. Returns null if the index does not match the file.
+	 */
+	private long[][] readIndex(File indexFile) throws IOException{
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+		try{
+			byte[] word = new byte[8];
+			in.readFully(word);
+			long count = ByteBuffer.wrap(word).order(ByteOrder.LITTLE_ENDIAN).getLong();
+			if(count < 0 || count > indexFile.length() / 16){
+				return null;
+			}
+			long[][] offsets = new long[][]{new long[(int) count + 2], new long[(int) count + 2]};
+			for(int i=1; i<=count; i++){
+				in.readFully(word);
+				offsets[0][i] = ByteBuffer.wrap(word).order(ByteOrder.LITTLE_ENDIAN).getLong();
+				in.readFully(word);
+				offsets[1][i] = ByteBuffer.wrap(word).order(ByteOrder.LITTLE_ENDIAN).getLong();
+			}
+			int last = (int) count;
+			if(offsets[0][last] >= m_File.length()){
+				return null;
+			}
+			return this.walkBlocks(last, offsets[0][last], offsets[1][last], offsets);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Walks the block headers from the given block to the end of the file, filling in the offsets
+	 */
+	private long[][] walkBlocks(int block, long compressed, long uncompressed, long[][] offsets) throws IOException{
+		long[] comp = offsets[0];
+		long[] uncomp = offsets[1];
+		byte[] trailer = new byte[4];
+		while(compressed < m_File.length()){
+			byte[] header = m_File.read(compressed, (int) Math.min(HEADER_SIZE + 64, m_File.length() - compressed));
+			int size = blockSize(header);
+			if(size <= 0 || compressed + size > m_File.length()){
+				throw new IOException("Error: corrupt BGZF block at offset "+compressed+" of "+m_File.getFile().getPath());
+			}
+			m_File.read(compressed + size - 4, trailer, 0, 4);
+			long isize = ByteBuffer.wrap(trailer).order(ByteOrder.LITTLE_ENDIAN).getInt() & 0xFFFFFFFFL;
+			if(block + 2 > comp.length){
+				comp = Arrays.copyOf(comp, comp.length * 2);
+				uncomp = Arrays.copyOf(uncomp, uncomp.length * 2);
+			}
+			comp[block] = compressed;
+			uncomp[block] = uncompressed;
+			block++;
+			compressed += size;
+			uncompressed += isize;
+		}
+		comp[block] = compressed;
+		uncomp[block] = uncompressed;
+		return new long[][]{Arrays.copyOf(comp, block + 1), Arrays.copyOf(uncomp, block + 1)};
+	}
+
+	private void writeIndex(File indexFile, long[][] offsets) throws IOException{
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(indexFile));
+		try{
+			int blocks = offsets[0].length - 1;
+			ByteBuffer buf = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+			buf.putLong(Math.max(blocks - 1, 0));
+			out.write(buf.array(), 0, 8);
+			//the first block is always at offset 0 and is not written
+			for(int i=1; i<blocks; i++){
+				buf.clear();
+				buf.putLong(offsets[0][i]);
+				buf.putLong(offsets[1][i]);
+				out.write(buf.array());
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	public File getFile(){
+		return m_File.getFile();
+	}
+
+	/**
+	 * Returns the number of BGZF blocks, including the empty end of file block
+	 */
+	public int getNumBlocks(){
+		return m_Compressed.length - 1;
+	}
+
+	/**
+	 * Returns the uncompressed size of the file
+	 */
+	@Override
+	public long length(){
+		return m_Uncompressed[m_Uncompressed.length - 1];
+	}
+
+	/**
+	 * Returns the index of the block containing the given uncompressed offset
+	 */
+	public int indexOfBlock(long offset){
+		int index = Arrays.binarySearch(m_Uncompressed, offset);
+		if(index < 0){
+			index = -index - 2;
+		}
+		//skip empty blocks
+		while(index < m_Uncompressed.length - 2 && m_Uncompressed[index + 1] == offset){
+			index++;
+		}
+		return index;
+	}
+
+	private byte[] inflate(int block) throws IOException{
+		long start = m_Compressed[block];
+		int size = (int) (m_Compressed[block + 1] - start);
+		int isize = (int) (m_Uncompressed[block + 1] - m_Uncompressed[block]);
+		byte[] compressed = m_File.read(start, size);
+		int headerSize = 12 + (ByteBuffer.wrap(compressed).order(ByteOrder.LITTLE_ENDIAN).getShort(10) & 0xFFFF);
+		byte[] bytes = new byte[isize];
+		Inflater inflater = new Inflater(true);
+		try{
+			inflater.setInput(compressed, headerSize, size - headerSize - TRAILER_SIZE);
+			int n = 0;
+			while(n < isize){
+				int inflated = inflater.inflate(bytes, n, isize - n);
+				if(inflated == 0 && (inflater.finished() || inflater.needsInput())){
+					break;
+				}
+				n += inflated;
+			}
+			if(n != isize){
+				throw new IOException("Error: BGZF block at offset "+start+" of "+m_File.getFile().getPath()+" inflated to "+n+" bytes, expected "+isize);
+			}
+		} catch (DataFormatException e){
+			throw new IOException("Error: corrupt BGZF block at offset "+start+" of "+m_File.getFile().getPath(), e);
+		} finally {
+			inflater.end();
+		}
+		return bytes;
+	}
+
+	private FutureTask<byte[]> getTask(final int block){
+		FutureTask<byte[]> task = m_Cache.get(block);
+		if(task == null){
+			task = new FutureTask<byte[]>(new Callable<byte[]>(){
+
+				@Override
+				public byte[] call() throws Exception {
+					return inflate(block);
+				}
+
+			});
+			m_Cache.put(block, task);
+		}
+		return task;
+	}
+
+	/**
+	 * Returns the inflated bytes of the given block. If the previous block was the last one read, the blocks
+	 * following this one are submitted to be inflated in the background.
+	 */
+	public byte[] inflateBlock(int block) throws IOException{
+		FutureTask<byte[]> task;
+		synchronized(m_Cache){
+			task = this.getTask(block);
+			if(block == m_LastBlock + 1){
+				for(int next = block + 1; next <= block + READ_AHEAD && next < this.getNumBlocks(); next++){
+					if(!m_Cache.containsKey(next)){
+						INFLATERS.execute(this.getTask(next));
+					}
+				}
+			}
+			m_LastBlock = block;
+		}
+		//inflate on this thread unless an inflater thread already is
+		task.run();
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Error: interrupted while inflating block "+block+" of "+m_File.getFile().getPath());
+		} catch (ExecutionException e) {
+			synchronized(m_Cache){
+				m_Cache.remove(block);
+			}
+			if(e.getCause() instanceof IOException){
+				throw (IOException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+	}
+
+	@Override
+	public void read(long offset, byte[] dest, int destOffset, int length) throws IOException{
+		if(offset < 0 || offset + length > this.length()){
+			throw new IOException("Error: cannot read "+length+" bytes at offset "+offset+" of "+m_File.getFile().getPath()+" ("+this.length()+" uncompressed bytes)");
+		}
+		while(length > 0){
+			int block = this.indexOfBlock(offset);
+			byte[] bytes = this.inflateBlock(block);
+			int blockOffset = (int) (offset - m_Uncompressed[block]);
+			int n = Math.min(length, bytes.length - blockOffset);
+			System.arraycopy(bytes, blockOffset, dest, destOffset, n);
+			offset += n;
+			destOffset += n;
+			length -= n;
+		}
+	}
+
+	/**
+	 * Returns a read only channel over the uncompressed bytes of this file
+	 */
+	public SeekableByteChannel newChannel(){
+		return new SeekableByteChannel(){
+
+			private long m_Position = 0;
+			private boolean m_Open = true;
+
+			@Override
+			public boolean isOpen() {
+				return m_Open;
+			}
+
+			@Override
+			public void close() throws IOException {
+				m_Open = false;
+			}
+
+			@Override
+			public int read(ByteBuffer dst) throws IOException {
+				if(!m_Open) throw new ClosedChannelException();
+				if(m_Position >= length()) return -1;
+				int n = (int) Math.min(dst.remaining(), length() - m_Position);
+				if(dst.hasArray()){
+					BgzfFile.this.read(m_Position, dst.array(), dst.arrayOffset() + dst.position(), n);
+					dst.position(dst.position() + n);
+				}else{
+					byte[] bytes = new byte[n];
+					BgzfFile.this.read(m_Position, bytes, 0, n);
+					dst.put(bytes);
+				}
+				m_Position += n;
+				return n;
+			}
+
+			@Override
+			public int write(ByteBuffer src) throws IOException {
+				throw new NonWritableChannelException();
+			}
+
+			@Override
+			public long position() throws IOException {
+				return m_Position;
+			}
+
+			@Override
+			public SeekableByteChannel position(long newPosition) throws IOException {
+				m_Position = newPosition;
+				return this;
+			}
+
+			@Override
+			public long size() throws IOException {
+				return length();
+			}
+
+			@Override
+			public SeekableByteChannel truncate(long size) throws IOException {
+				throw new NonWritableChannelException();
+			}
+
+		};
+	}
+
+	/**
+	 * Returns an input stream over the uncompressed bytes of this file
+	 */
+	public InputStream newInputStream(){
+		return Channels.newInputStream(this.newChannel());
+	}
+
+}
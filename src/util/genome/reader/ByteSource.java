@@ -0,0 +1,20 @@
+package util.genome.reader;
+
+import java.io.IOException;
+
+/**
+ * Random access to the bytes of a file
+ */
+public interface ByteSource {
+
+	/**
+	 * Returns the number of bytes in this source
+	 */
+	public long length();
+
+	/**
+	 * Copies length bytes starting at the given offset into dest
+	 */
+	public void read(long offset, byte[] dest, int destOffset, int length) throws IOException;
+
+}
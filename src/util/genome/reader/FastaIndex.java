@@ -0,0 +1,317 @@
+package util.genome.reader;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import util.genome.Genome;
+
+/**
+ * Per sequence offset and line length index of a FASTA file. This is read and written in the samtools
+ * .fai format, so indexes built by other tools can be used directly.
+ */
+public class FastaIndex {
+
+	public static final String INDEX_EXTENSION = ".fai";
+
+	private static final byte HEADER = '>';
+	private static final byte NEWLINE = '\n';
+	private static final byte RETURN = '\r';
+
+	public static class Entry{
+
+		private final String m_Name;
+		private final long m_Length;
+		private final long m_Offset;
+		private final int m_LineBases;
+		private final int m_LineWidth;
+
+		public Entry(String name, long length, long offset, int lineBases, int lineWidth){
+			m_Name = name;
+			m_Length = length;
+			m_Offset = offset;
+			m_LineBases = lineBases;
+			m_LineWidth = lineWidth;
+		}
+
+		public String getName(){
+			return m_Name;
+		}
+
+		public long getLength(){
+			return m_Length;
+		}
+
+		public long getOffset(){
+			return m_Offset;
+		}
+
+		public int getLineBases(){
+			return m_LineBases;
+		}
+
+		public int getLineWidth(){
+			return m_LineWidth;
+		}
+
+		/**
+		 * Returns the byte offset in the FASTA file of the base at the given 1-based index
+		 */
+		public long offsetOf(long baseIndex){
+			long i = baseIndex - 1;
+			if(m_LineBases <= 0) return m_Offset + i;
+			return m_Offset + (i / m_LineBases) * m_LineWidth + i % m_LineBases;
+		}
+
+		/**
+		 * Returns the byte offset just past the last base of this sequence
+		 */
+		public long getEndOffset(){
+			if(m_Length == 0) return m_Offset;
+			return this.offsetOf(m_Length) + 1;
+		}
+
+		@Override
+		public String toString(){
+			return m_Name + "\t" + m_Length + "\t" + m_Offset + "\t" + m_LineBases + "\t" + m_LineWidth;
+		}
+
+	}
+
+	public static File getIndexFile(File fasta){
+		return new File(fasta.getPath() + INDEX_EXTENSION);
+	}
+
+	/**
+	 * Reads the index of the given FASTA file if there is an up to date one next to it. Otherwise, the index is
+	 * built by scanning the FASTA file and written next to it if possible.
+	 */
+	public static FastaIndex load(File fasta) throws IOException{
+		File indexFile = getIndexFile(fasta);
+		if(indexFile.exists() && indexFile.lastModified() >= fasta.lastModified()){
+			return read(indexFile);
+		}
+		FastaIndex index = build(fasta);
+		try{
+			index.write(indexFile);
+		} catch (IOException e){
+			//the index is still usable from memory
+		}
+		return index;
+	}
+
+	public static FastaIndex read(File indexFile) throws IOException{
+		List<Entry> entries = new ArrayList<Entry>();
+		BufferedReader reader = new BufferedReader(new FileReader(indexFile));
+		try{
+			String line;
+			while((line = reader.readLine()) != null){
+				if(line.trim().isEmpty()) continue;
+				String[] split = line.split("\t");
+				if(split.length < 5){
+					throw new IOException("Error: malformed index line \""+line+"\" in "+indexFile);
+				}
+				try{
+					entries.add(new Entry(split[0], Long.parseLong(split[1]), Long.parseLong(split[2]), Integer.parseInt(split[3]), Integer.parseInt(split[4])));
+				} catch (NumberFormatException e){
+					throw new IOException("Error: malformed index line \""+line+"\" in "+indexFile, e);
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		return new FastaIndex(entries);
+	}
+
+	/**
+	 * Builds the index by scanning the bytes of the FASTA file. An IOException is thrown if a sequence does not have
+	 * uniform line lengths, as it then cannot be indexed. The offsets of a BGZF compressed file are offsets into its
+	 * uncompressed bytes, as in samtools.
+	 */
+	public static FastaIndex build(File fasta) throws IOException{
+		List<Entry> entries = new ArrayList<Entry>();
+		SeekableByteChannel channel = FastaScanner.openChannel(fasta);
+		try{
+			ByteBuffer buffer = channel instanceof FileChannel ? ByteBuffer.allocateDirect(FastaScanner.BUFFER_SIZE) : ByteBuffer.allocate(FastaScanner.BUFFER_SIZE);
+			byte[] chunk = new byte[buffer.capacity()];
+			StringBuilder header = null;
+			String name = null;
+			long offset = 0;
+			long length = 0;
+			int lineBases = 0;
+			int lineWidth = 0;
+			boolean shortLine = false;
+			//bases and bytes of the line being read, which may span chunks
+			int curBases = 0;
+			int curBytes = 0;
+			boolean lineStart = true;
+			long pos = 0;
+			int read;
+			while((read = channel.read(buffer)) > 0){
+				buffer.flip();
+				buffer.get(chunk, 0, read);
+				buffer.clear();
+				int i = 0;
+				while(i < read){
+					if(header != null){
+						int eol = indexOf(chunk, i, read, NEWLINE);
+						header.append(new String(chunk, i, eol - i, FastaScanner.ASCII));
+						i = eol;
+						if(i < read){
+							i++;
+							name = parseName(header.toString());
+							header = null;
+							offset = pos + i;
+							length = 0;
+							lineBases = 0;
+							lineWidth = 0;
+							shortLine = false;
+							lineStart = true;
+						}
+						continue;
+					}
+					if(lineStart && chunk[i] == HEADER){
+						if(name != null){
+							entries.add(new Entry(name, length, offset, lineBases, lineWidth));
+						}
+						header = new StringBuilder();
+						i++;
+						continue;
+					}
+					lineStart = false;
+					int eol = indexOf(chunk, i, read, NEWLINE);
+					curBytes += eol - i;
+					curBases += eol - i;
+					if(eol > i && chunk[eol-1] == RETURN){
+						curBases--;
+					}
+					i = eol;
+					if(i < read){
+						i++;
+						curBytes++;
+						if(name == null && curBases > 0){
+							throw new IOException("Error: sequence before the first header in "+fasta);
+						}
+						if(curBases > 0){
+							if(shortLine || (lineBases > 0 && curBases > lineBases)){
+								throw new IOException("Error: sequence "+name+" in "+fasta+" does not have uniform line lengths");
+							}
+							if(lineBases == 0){
+								lineBases = curBases;
+								lineWidth = curBytes;
+							}else if(curBases < lineBases){
+								shortLine = true;
+							}
+							length += curBases;
+						}else if(length > 0){
+							shortLine = true;
+						}
+						curBases = 0;
+						curBytes = 0;
+						lineStart = true;
+					}
+				}
+				pos += read;
+			}
+			if(curBases > 0){
+				if(shortLine || (lineBases > 0 && curBases > lineBases)){
+					throw new IOException("Error: sequence "+name+" in "+fasta+" does not have uniform line lengths");
+				}
+				if(lineBases == 0){
+					lineBases = curBases;
+					lineWidth = curBytes + 1;
+				}
+				length += curBases;
+			}
+			if(header != null){
+				name = parseName(header.toString());
+				offset = pos;
+				length = 0;
+				lineBases = 0;
+				lineWidth = 0;
+			}
+			if(name != null){
+				entries.add(new Entry(name, length, offset, lineBases, lineWidth));
+			}
+		} finally {
+			channel.close();
+		}
+		return new FastaIndex(entries);
+	}
+
+	private static String parseName(String header){
+		return Genome.chrName(header);
+	}
+
+	private static int indexOf(byte[] bytes, int from, int to, byte b){
+		for(int i=from; i<to; i++){
+			if(bytes[i] == b) return i;
+		}
+		return to;
+	}
+
+	private final List<Entry> m_Entries;
+	private final Map<String, Entry> m_Names;
+
+	public FastaIndex(List<Entry> entries){
+		m_Entries = new ArrayList<Entry>(entries);
+		m_Names = new HashMap<String, Entry>();
+		for(Entry e : m_Entries){
+			m_Names.put(e.getName(), e);
+		}
+	}
+
+	public void write(File indexFile) throws IOException{
+		BufferedWriter writer = new BufferedWriter(new FileWriter(indexFile));
+		try{
+			for(Entry e : m_Entries){
+				writer.write(e.toString());
+				writer.newLine();
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	public List<Entry> getEntries(){
+		return Collections.unmodifiableList(m_Entries);
+	}
+
+	public Entry getEntry(String name){
+		return m_Names.get(name);
+	}
+
+	public Entry getEntry(int index){
+		return m_Entries.get(index);
+	}
+
+	public int size(){
+		return m_Entries.size();
+	}
+
+	/**
+	 * Creates a genome with one chromosome per indexed sequence, in file order. The chromosomes of the genome
+	 * are in the same order as the entries of this index.
+	 */
+	public Genome toGenome(String name){
+		List<String> names = new ArrayList<String>();
+		List<Integer> sizes = new ArrayList<Integer>();
+		for(Entry e : m_Entries){
+			names.add(e.getName());
+			sizes.add((int) e.getLength());
+		}
+		return new Genome(name, names, sizes);
+	}
+
+}
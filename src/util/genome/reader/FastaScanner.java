@@ -0,0 +1,170 @@
+package util.genome.reader;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Scans a FASTA file as raw bytes through a {@link SeekableByteChannel}. Newlines are dropped and the bases are
+ * handed to a {@link Handler} in contiguous blocks without being decoded. Only header lines are turned
+ * into Strings.
+ */
+public class FastaScanner {
+
+	public static final Charset ASCII = Charset.forName("ISO-8859-1");
+
+	public static final int BUFFER_SIZE = 1 << 22;
+	public static final int BLOCK_SIZE = 1 << 16;
+
+	private static final byte HEADER = '>';
+	private static final byte NEWLINE = '\n';
+	private static final byte RETURN = '\r';
+
+	public interface Handler{
+
+		/**
+		 * Called for every header line in the scanned range.
+		 * @param header - the header line, including the leading '>'
+		 * @param offset - byte offset of the line following the header
+		 * @return false if the bases of this sequence should be skipped
+		 */
+		public boolean header(String header, long offset);
+
+		/**
+		 * Called with the next block of bases of the current sequence. The array is reused by the scanner
+		 * after this call returns.
+		 * @return false if the scan should stop
+		 */
+		public boolean bases(byte[] block, int length);
+
+	}
+
+	/**
+	 * Opens a channel over the bytes of the given FASTA file. BGZF compressed files are decompressed.
+	 */
+	public static SeekableByteChannel openChannel(File fasta) throws IOException{
+		if(BgzfFile.isBgzf(fasta)){
+			return BgzfFile.open(fasta).newChannel();
+		}
+		return new FileInputStream(fasta).getChannel();
+	}
+
+	private final SeekableByteChannel m_Channel;
+	private final int m_BlockSize;
+
+	public FastaScanner(SeekableByteChannel channel){
+		this(channel, BLOCK_SIZE);
+	}
+
+	public FastaScanner(SeekableByteChannel channel, int blockSize){
+		m_Channel = channel;
+		m_BlockSize = blockSize;
+	}
+
+	public void scan(Handler handler) throws IOException{
+		this.scan(0, m_Channel.size(), true, handler);
+	}
+
+	/**
+	 * Scans the bytes [from, to) of the channel. If the range does not start at a line boundary, lineStart
+	 * should be false so that a '>' in the middle of a line is not mistaken for a header.
+	 */
+	public void scan(long from, long to, boolean lineStart, Handler handler) throws IOException{
+		int capacity = (int) Math.min(BUFFER_SIZE, Math.max(to - from, 1));
+		//file channels read fastest into direct buffers, other channels copy from arrays
+		ByteBuffer buffer = m_Channel instanceof FileChannel ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+		byte[] chunk = new byte[buffer.capacity()];
+		byte[] block = new byte[m_BlockSize];
+		byte[] header = new byte[256];
+		int blockLen = 0;
+		int headerLen = 0;
+		boolean inHeader = false;
+		boolean skip = false;
+		long pos = from;
+		while(pos < to){
+			buffer.clear();
+			if(to - pos < buffer.capacity()){
+				buffer.limit((int) (to - pos));
+			}
+			m_Channel.position(pos);
+			int read = m_Channel.read(buffer);
+			if(read < 0) break;
+			buffer.flip();
+			buffer.get(chunk, 0, read);
+			int i = 0;
+			while(i < read){
+				if(inHeader){
+					int eol = indexOfNewline(chunk, i, read);
+					int len = eol - i;
+					if(headerLen + len > header.length){
+						byte[] grown = new byte[Math.max(header.length*2, headerLen + len)];
+						System.arraycopy(header, 0, grown, 0, headerLen);
+						header = grown;
+					}
+					System.arraycopy(chunk, i, header, headerLen, len);
+					headerLen += len;
+					i = eol;
+					if(i < read){
+						inHeader = false;
+						skip = !handler.header(new String(header, 0, headerLen, ASCII).trim(), pos + i + 1);
+					}
+					continue;
+				}
+				byte b = chunk[i];
+				if(b == NEWLINE || b == RETURN){
+					lineStart = true;
+					i++;
+					continue;
+				}
+				if(lineStart && b == HEADER){
+					if(blockLen > 0 && !skip && !handler.bases(block, blockLen)){
+						return;
+					}
+					blockLen = 0;
+					headerLen = 0;
+					inHeader = true;
+					continue;
+				}
+				lineStart = false;
+				//copy the run of bases up to the end of the line
+				int eol = indexOfNewline(chunk, i, read);
+				if(skip){
+					i = eol;
+					continue;
+				}
+				while(i < eol){
+					int len = Math.min(eol - i, block.length - blockLen);
+					System.arraycopy(chunk, i, block, blockLen, len);
+					blockLen += len;
+					i += len;
+					if(blockLen == block.length){
+						if(!handler.bases(block, blockLen)){
+							return;
+						}
+						blockLen = 0;
+					}
+				}
+			}
+			pos += read;
+		}
+		if(inHeader){
+			skip = !handler.header(new String(header, 0, headerLen, ASCII).trim(), pos);
+		}else if(blockLen > 0 && !skip){
+			handler.bases(block, blockLen);
+		}
+	}
+	
+	private static int indexOfNewline(byte[] bytes, int from, int to){
+		for(int i=from; i<to; i++){
+			if(bytes[i] == NEWLINE || bytes[i] == RETURN){
+				return i;
+			}
+		}
+		return to;
+	}
+
+}
@@ -1,6 +1,8 @@
 package util.genome.reader;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 
 import util.progress.ProgressListener;
@@ -8,11 +10,27 @@ import util.progress.ProgressListener;
 public class GenomeReaderFactory {
 	
 	public static GenomeReader createGenomeReader(File genomeFile){
-		return new BasicGenomeReader(genomeFile);
+		return createGenomeReader(genomeFile, new ArrayList<ProgressListener>());
 	}
 	
+	/**
+	 * Returns a {@link TwoBitGenomeReader} if the genome file has the .2bit signature. Otherwise the genome file
+	 * is FASTA and an {@link IndexedGenomeReader} is returned if it can be indexed, or else a {@link BasicGenomeReader}
+	 * that streams through the whole file.
+	 */
 	public static GenomeReader createGenomeReader(File genomeFile, Collection<ProgressListener> listeners){
-		return new BasicGenomeReader(genomeFile, listeners);
+		if(TwoBitFile.isTwoBit(genomeFile)){
+			try {
+				return new TwoBitGenomeReader(genomeFile, listeners);
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+		try {
+			return new IndexedGenomeReader(genomeFile, listeners);
+		} catch (IOException e) {
+			return new BasicGenomeReader(genomeFile, listeners);
+		}
 	}
 	
 }
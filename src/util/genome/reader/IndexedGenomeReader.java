@@ -0,0 +1,77 @@
+package util.genome.reader;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+
+import util.genome.Chromosome;
+import util.genome.Genome;
+import util.progress.ProgressEvent;
+import util.progress.ProgressListener;
+
+/**
+ * GenomeReader that uses a {@link FastaIndex} of the genome file to read only the bases that are asked for. The
+ * FASTA file is memory mapped and regions are copied out of it directly. BGZF compressed FASTA files are read
+ * through a {@link BgzfFile}, which inflates only the blocks covering the requested regions.
+ */
+public class IndexedGenomeReader extends RandomAccessGenomeReader{
+
+	private final FastaIndex m_Index;
+	private final Genome m_Genome;
+	private final ByteSource m_File;
+
+	public IndexedGenomeReader(File genomeFile) throws IOException{
+		this(genomeFile, new ArrayList<ProgressListener>());
+	}
+
+	public IndexedGenomeReader(File genomeFile, Collection<ProgressListener> listeners) throws IOException{
+		super(genomeFile.getName(), listeners);
+		this.notifyListeners(new ProgressEvent(this, ProgressEvent.Type.UPDATE, 0, "Loading index of genome file: "+genomeFile.getPath(), true));
+		m_Index = FastaIndex.load(genomeFile);
+		m_Genome = this.loadGenome(genomeFile, m_Index);
+		m_File = BgzfFile.isBgzf(genomeFile) ? BgzfFile.open(genomeFile) : new MappedFile(genomeFile);
+	}
+
+	private Genome loadGenome(File genomeFile, FastaIndex index){
+		String key = FastaIndex.getIndexFile(genomeFile).getAbsolutePath();
+		synchronized(GENOME_HASH){
+			if(GENOME_HASH.containsKey(key)){
+				return GENOME_HASH.get(key);
+			}
+			Genome genome = index.toGenome(genomeFile.getName());
+			GENOME_HASH.put(key, genome);
+			return genome;
+		}
+	}
+
+	public FastaIndex getIndex(){
+		return m_Index;
+	}
+
+	@Override
+	public Genome getGenome() {
+		return m_Genome;
+	}
+
+	private FastaIndex.Entry getEntry(Chromosome chr){
+		return m_Index.getEntry(m_Genome.indexOf(chr));
+	}
+
+	/**
+	 * Copies the bases [start, end] of the given chromosome into dest, skipping over line breaks
+	 */
+	@Override
+	protected void readBases(Chromosome chr, long start, long end, byte[] dest, int destOffset) throws IOException{
+		FastaIndex.Entry entry = this.getEntry(chr);
+		long base = start;
+		while(base <= end){
+			long lineRemaining = entry.getLineBases() - ((base - 1) % entry.getLineBases());
+			int n = (int) Math.min(lineRemaining, end - base + 1);
+			m_File.read(entry.offsetOf(base), dest, destOffset, n);
+			destOffset += n;
+			base += n;
+		}
+	}
+
+}
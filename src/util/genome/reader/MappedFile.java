@@ -0,0 +1,79 @@
+package util.genome.reader;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Read only memory map of a file of any size. The file is mapped lazily in segments of 1 GB, so only the parts
+ * of the file that are read are mapped. Reads may be made from several threads.
+ */
+public class MappedFile implements ByteSource{
+
+	private static final long SEGMENT_SIZE = 1L << 30;
+
+	private final File m_File;
+	private final long m_Length;
+	private final MappedByteBuffer[] m_Segments;
+
+	public MappedFile(File file) throws IOException{
+		if(!file.isFile()){
+			throw new IOException("Error: file "+file.getPath()+" does not exist");
+		}
+		m_File = file;
+		m_Length = file.length();
+		m_Segments = new MappedByteBuffer[(int) (m_Length / SEGMENT_SIZE) + 1];
+	}
+
+	public File getFile(){
+		return m_File;
+	}
+
+	@Override
+	public long length(){
+		return m_Length;
+	}
+
+	private ByteBuffer getSegment(int segment) throws IOException{
+		synchronized(m_Segments){
+			if(m_Segments[segment] == null){
+				FileInputStream in = new FileInputStream(m_File);
+				try{
+					FileChannel channel = in.getChannel();
+					long start = segment * SEGMENT_SIZE;
+					m_Segments[segment] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE, m_Length - start));
+				} finally {
+					in.close();
+				}
+			}
+			return m_Segments[segment].duplicate();
+		}
+	}
+
+	@Override
+	public void read(long offset, byte[] dest, int destOffset, int length) throws IOException{
+		if(offset < 0 || offset + length > m_Length){
+			throw new IOException("Error: cannot read "+length+" bytes at offset "+offset+" of "+m_File.getPath()+" ("+m_Length+" bytes)");
+		}
+		while(length > 0){
+			ByteBuffer segment = this.getSegment((int) (offset / SEGMENT_SIZE));
+			int segOffset = (int) (offset % SEGMENT_SIZE);
+			int n = Math.min(length, segment.limit() - segOffset);
+			segment.position(segOffset);
+			segment.get(dest, destOffset, n);
+			offset += n;
+			destOffset += n;
+			length -= n;
+		}
+	}
+
+	public byte[] read(long offset, int length) throws IOException{
+		byte[] bytes = new byte[length];
+		this.read(offset, bytes, 0, length);
+		return bytes;
+	}
+
+}
@@ -0,0 +1,159 @@
+package util.genome.reader;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.nio.channels.SeekableByteChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import util.genome.Chromosome;
+import util.genome.DNASequence;
+import util.genome.Genome;
+import util.progress.ProgressEvent;
+import util.progress.ProgressListener;
+
+/**
+ * GenomeReader that keeps every chromosome of the genome in memory as a packed {@link DNASequence}. The genome
+ * file is parsed once and the packed sequences are shared by all readers of the same file for as long as memory
+ * allows, so repeated queries are served from memory instead of re-reading the file.
+ */
+public class PackedGenomeReader extends RandomAccessGenomeReader{
+
+	private static final Map<String, SoftReference<DNASequence[]>> SEQUENCE_HASH = new HashMap<String, SoftReference<DNASequence[]>>();
+	//one lock per genome file, so loading one genome does not hold up readers of another
+	private static final Map<String, Object> LOCKS = new HashMap<String, Object>();
+
+	private final Genome m_Genome;
+	private final DNASequence[] m_Sequences;
+
+	public PackedGenomeReader(File genomeFile) throws IOException{
+		this(genomeFile, new ArrayList<ProgressListener>());
+	}
+
+	public PackedGenomeReader(File genomeFile, Collection<ProgressListener> listeners) throws IOException{
+		super(genomeFile.getName(), listeners);
+		m_Genome = this.prereadGenome(genomeFile);
+		if(m_Genome == null){
+			throw new IOException("Error: unable to preread genome file: "+genomeFile.getPath());
+		}
+		m_Sequences = this.loadSequences(genomeFile);
+	}
+
+	private static Object lockFor(String key){
+		synchronized(LOCKS){
+			Object lock = LOCKS.get(key);
+			if(lock == null){
+				lock = new Object();
+				LOCKS.put(key, lock);
+			}
+			return lock;
+		}
+	}
+
+	private DNASequence[] loadSequences(File genomeFile) throws IOException{
+		String key = genomeFile.getAbsolutePath();
+		synchronized(lockFor(key)){
+			DNASequence[] seqs;
+			synchronized(SEQUENCE_HASH){
+				SoftReference<DNASequence[]> ref = SEQUENCE_HASH.get(key);
+				seqs = ref != null ? ref.get() : null;
+			}
+			if(seqs != null && seqs.length == m_Genome.getNumChrs()){
+				return seqs;
+			}
+			seqs = this.load(genomeFile);
+			synchronized(SEQUENCE_HASH){
+				SEQUENCE_HASH.put(key, new SoftReference<DNASequence[]>(seqs));
+			}
+			return seqs;
+		}
+	}
+
+	private DNASequence[] load(File genomeFile) throws IOException{
+		final Genome genome = m_Genome;
+		final DNASequence.Builder[] builders = new DNASequence.Builder[genome.getNumChrs()];
+		SeekableByteChannel channel = FastaScanner.openChannel(genomeFile);
+		try{
+			new FastaScanner(channel).scan(new FastaScanner.Handler(){
+
+				private int m_Index = -1;
+
+				@Override
+				public boolean header(String header, long offset) {
+					if(!Genome.isChrHeader(header)){
+						return false;
+					}
+					m_Index++;
+					if(m_Index >= builders.length){
+						return false;
+					}
+					builders[m_Index] = new DNASequence.Builder();
+					Chromosome chr = genome.getChr(m_Index);
+					notifyListeners(new ProgressEvent(PackedGenomeReader.this, ProgressEvent.Type.UPDATE, (int) (100.0 * m_Index / builders.length), 100,
+							"Loading "+chr+" ("+(m_Index+1)+"/"+builders.length+")"));
+					return true;
+				}
+
+				@Override
+				public boolean bases(byte[] block, int length) {
+					if(m_Index < 0) return true;
+					DNASequence.Builder builder = builders[m_Index];
+					long size = genome.getChr(m_Index).getSize();
+					if(size >= 0 && builder.length() + length > size){
+						length = (int) (size - builder.length());
+						if(length <= 0) return true;
+					}
+					builder.append(block, 0, length);
+					return !Thread.currentThread().isInterrupted();
+				}
+
+			});
+		} finally {
+			channel.close();
+		}
+		DNASequence[] seqs = new DNASequence[builders.length];
+		for(int i=0; i<seqs.length; i++){
+			//chromosomes without a sequence in the file are left null, see getSequence
+			seqs[i] = builders[i] != null ? builders[i].build() : null;
+		}
+		return seqs;
+	}
+
+	@Override
+	public Genome getGenome() {
+		return m_Genome;
+	}
+
+	/**
+	 * Returns the packed sequence of the given chromosome
+	 */
+	public DNASequence getSequence(Chromosome chr){
+		DNASequence seq = m_Sequences[m_Genome.indexOf(chr)];
+		if(seq == null){
+			throw new RuntimeException("Error: genome "+m_Genome+" has no sequence for chromosome "+chr);
+		}
+		return seq;
+	}
+
+	/**
+	 * Returns the total number of bytes used to store the genome
+	 */
+	public long getStorageSize(){
+		long size = 0;
+		for(DNASequence seq : m_Sequences){
+			if(seq != null){
+				size += seq.getStorageSize();
+			}
+		}
+		return size;
+	}
+
+	@Override
+	protected void readBases(Chromosome chr, long start, long end, byte[] dest, int destOffset){
+		this.getSequence(chr).getBases(start - 1, end, dest, destOffset);
+	}
+
+}
@@ -0,0 +1,268 @@
+package util.genome.reader;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.channels.SeekableByteChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import util.genome.Genome;
+import util.progress.ProgressEvent;
+import util.progress.ProgressListener;
+import util.progress.ProgressEvent.Type;
+
+/**
+ * The chromosome names, sizes and byte offsets found by pre-reading a genome file. This is persisted to a sidecar
+ * file next to the genome, keyed by the genome's path, size and modification time, so that the pre-read pass only
+ * has to happen once per genome file.
+ * <p>
+ * Chromosomes follow the same rules as {@link Genome#Genome(Collection, String, java.io.InputStream)}: only
+ * headers accepted by {@link Genome#isChrHeader(String)} start a chromosome, which is named by
+ * {@link Genome#chrName(String)}. The offset of a chromosome is the
+ * byte offset of the line following its header, or -1 if it is not known.
+ */
+public class PrereadIndex {
+
+	public static final String SIDECAR_EXTENSION = ".preread";
+	public static final String FAI_EXTENSION = ".fai";
+	public static final String CHROM_SIZES_EXTENSION = ".chrom.sizes";
+
+	//version 2 names chromosomes by the first word of their header instead of the whole header
+	private static final String MAGIC = "#jprobe preread index 2";
+	private static final String PATH = "path";
+	private static final String SIZE = "size";
+	private static final String MODIFIED = "modified";
+	private static final char SEP = '\t';
+
+	/**
+	 * Tests whether the given file only lists chromosome sizes (.fai or .chrom.sizes) instead of containing
+	 * the genome sequence.
+	 */
+	public static boolean isSizesFile(File f){
+		String name = f.getName();
+		return name.endsWith(FAI_EXTENSION) || name.endsWith(CHROM_SIZES_EXTENSION);
+	}
+
+	public static File getSidecarFile(File genomeFile){
+		return new File(genomeFile.getPath() + SIDECAR_EXTENSION);
+	}
+
+	private static File getCacheFile(File genomeFile){
+		File dir = new File(System.getProperty("java.io.tmpdir"), "jprobe");
+		String key = Integer.toHexString(genomeFile.getAbsolutePath().hashCode());
+		return new File(dir, genomeFile.getName() + "." + key + SIDECAR_EXTENSION);
+	}
+
+	/**
+	 * Returns the index of the given genome file. Sizes files are parsed directly. For FASTA files a persisted
+	 * index is used if it matches the genome file, otherwise the genome is pre-read and the result persisted.
+	 */
+	public static PrereadIndex load(File genomeFile, Collection<ProgressListener> listeners) throws IOException{
+		if(isSizesFile(genomeFile)){
+			return readSizes(genomeFile);
+		}
+		PrereadIndex index = readSidecar(genomeFile, getSidecarFile(genomeFile));
+		if(index == null){
+			index = readSidecar(genomeFile, getCacheFile(genomeFile));
+		}
+		if(index != null){
+			return index;
+		}
+		index = build(genomeFile, listeners);
+		if(Thread.currentThread().isInterrupted()){
+			return index;
+		}
+		try{
+			index.writeSidecar(genomeFile, getSidecarFile(genomeFile));
+		} catch (IOException e){
+			try{
+				File cache = getCacheFile(genomeFile);
+				cache.getParentFile().mkdirs();
+				index.writeSidecar(genomeFile, cache);
+			} catch (IOException e1){
+				//the index is still usable for this session
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * Pre-reads the given FASTA file by scanning its bytes
+	 */
+	public static PrereadIndex build(final File genomeFile, final Collection<ProgressListener> listeners) throws IOException{
+		final List<String> names = new ArrayList<String>();
+		final List<Long> sizes = new ArrayList<Long>();
+		final List<Long> offsets = new ArrayList<Long>();
+		final Object source = new Object();
+		SeekableByteChannel channel = FastaScanner.openChannel(genomeFile);
+		try{
+			new FastaScanner(channel).scan(new FastaScanner.Handler(){
+
+				@Override
+				public boolean header(String header, long offset) {
+					if(Genome.isChrHeader(header)){
+						names.add(Genome.chrName(header));
+						sizes.add(0L);
+						offsets.add(offset);
+						if(listeners != null){
+							for(ProgressListener l : listeners){
+								l.update(new ProgressEvent(source, Type.UPDATE, 0, "Prereading "+genomeFile.getName()+": "+header, true));
+							}
+						}
+					}
+					return true;
+				}
+
+				@Override
+				public boolean bases(byte[] block, int length) {
+					if(!sizes.isEmpty()){
+						int last = sizes.size() - 1;
+						sizes.set(last, sizes.get(last) + length);
+					}
+					return !Thread.currentThread().isInterrupted();
+				}
+
+			});
+		} finally {
+			channel.close();
+		}
+		return new PrereadIndex(names, sizes, offsets);
+	}
+
+	/**
+	 * Reads chromosome names and sizes from a samtools .fai index or a UCSC .chrom.sizes file. The .fai offsets
+	 * are kept, sizes files have none.
+	 */
+	public static PrereadIndex readSizes(File sizesFile) throws IOException{
+		List<String> names = new ArrayList<String>();
+		List<Long> sizes = new ArrayList<Long>();
+		List<Long> offsets = new ArrayList<Long>();
+		boolean fai = sizesFile.getName().endsWith(FAI_EXTENSION);
+		BufferedReader reader = new BufferedReader(new FileReader(sizesFile));
+		try{
+			String line;
+			while((line = reader.readLine()) != null){
+				line = line.trim();
+				if(line.isEmpty() || line.startsWith("#")) continue;
+				String[] split = line.split("\\s+");
+				if(split.length < 2){
+					throw new IOException("Error: malformed line \""+line+"\" in "+sizesFile);
+				}
+				try{
+					names.add(split[0]);
+					sizes.add(Long.parseLong(split[1]));
+					offsets.add(fai && split.length > 2 ? Long.parseLong(split[2]) : -1L);
+				} catch (NumberFormatException e){
+					throw new IOException("Error: malformed line \""+line+"\" in "+sizesFile, e);
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		return new PrereadIndex(names, sizes, offsets);
+	}
+
+	/**
+	 * Reads the persisted index of the genome file, returning null if there is none or if it does not match the
+	 * current path, size and modification time of the genome file.
+	 */
+	public static PrereadIndex readSidecar(File genomeFile, File sidecar){
+		if(!sidecar.exists()){
+			return null;
+		}
+		try{
+			BufferedReader reader = new BufferedReader(new FileReader(sidecar));
+			try{
+				if(!MAGIC.equals(reader.readLine())) return null;
+				if(!(PATH+SEP+genomeFile.getAbsolutePath()).equals(reader.readLine())) return null;
+				if(!(SIZE+SEP+genomeFile.length()).equals(reader.readLine())) return null;
+				if(!(MODIFIED+SEP+genomeFile.lastModified()).equals(reader.readLine())) return null;
+				List<String> names = new ArrayList<String>();
+				List<Long> sizes = new ArrayList<Long>();
+				List<Long> offsets = new ArrayList<Long>();
+				String line;
+				while((line = reader.readLine()) != null){
+					//split the numeric columns off the end of the line
+					int offsetSep = line.lastIndexOf(SEP);
+					int sizeSep = line.lastIndexOf(SEP, offsetSep - 1);
+					if(sizeSep < 0) return null;
+					names.add(line.substring(0, sizeSep));
+					sizes.add(Long.parseLong(line.substring(sizeSep + 1, offsetSep)));
+					offsets.add(Long.parseLong(line.substring(offsetSep + 1)));
+				}
+				return new PrereadIndex(names, sizes, offsets);
+			} finally {
+				reader.close();
+			}
+		} catch (Exception e){
+			return null;
+		}
+	}
+
+	private final List<String> m_Names;
+	private final List<Long> m_Sizes;
+	private final List<Long> m_Offsets;
+
+	public PrereadIndex(List<String> names, List<Long> sizes, List<Long> offsets){
+		if(names.size() != sizes.size() || names.size() != offsets.size()){
+			throw new RuntimeException("Error: unequal numbers of names, sizes and offsets. Names: "+names.size()+", Sizes: "+sizes.size()+", Offsets: "+offsets.size());
+		}
+		m_Names = new ArrayList<String>(names);
+		m_Sizes = new ArrayList<Long>(sizes);
+		m_Offsets = new ArrayList<Long>(offsets);
+	}
+
+	public void writeSidecar(File genomeFile, File sidecar) throws IOException{
+		BufferedWriter writer = new BufferedWriter(new FileWriter(sidecar));
+		try{
+			writer.write(MAGIC);
+			writer.newLine();
+			writer.write(PATH+SEP+genomeFile.getAbsolutePath());
+			writer.newLine();
+			writer.write(SIZE+SEP+genomeFile.length());
+			writer.newLine();
+			writer.write(MODIFIED+SEP+genomeFile.lastModified());
+			writer.newLine();
+			for(int i=0; i<m_Names.size(); i++){
+				writer.write(m_Names.get(i)+SEP+m_Sizes.get(i)+SEP+m_Offsets.get(i));
+				writer.newLine();
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	public Genome toGenome(String name){
+		List<Integer> sizes = new ArrayList<Integer>();
+		for(long size : m_Sizes){
+			sizes.add((int) size);
+		}
+		return new Genome(name, m_Names, sizes);
+	}
+
+	public int size(){
+		return m_Names.size();
+	}
+
+	public List<String> getNames(){
+		return Collections.unmodifiableList(m_Names);
+	}
+
+	public long getSize(int chr){
+		return m_Sizes.get(chr);
+	}
+
+	/**
+	 * Returns the byte offset of the line following the header of the given chromosome, or -1 if unknown
+	 */
+	public long getOffset(int chr){
+		return m_Offsets.get(chr);
+	}
+
+}
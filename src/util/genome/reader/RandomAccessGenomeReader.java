@@ -0,0 +1,181 @@
+package util.genome.reader;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import jprobe.services.ErrorHandler;
+import plugins.genome.GenomeActivator;
+import util.genome.Chromosome;
+import util.genome.Genome;
+import util.genome.GenomicCoordinate;
+import util.genome.GenomicRegion;
+import util.genome.GenomicSequence;
+import util.genome.reader.query.BoundedQueryProcessor;
+import util.genome.reader.query.LocationBoundedSequenceQuery;
+import util.genome.reader.query.LocationQuery;
+import util.genome.reader.query.SequenceQuery;
+import util.genome.reader.query.SequenceQueryProcessor;
+import util.progress.ProgressEvent;
+import util.progress.ProgressEvent.Type;
+import util.progress.ProgressListener;
+
+/**
+ * Base class of GenomeReaders that can read any region of the genome directly. Every LocationQuery and
+ * LocationBoundedSequenceQuery is served by reading only its region. SequenceQueries can occur anywhere, so
+ * they are processed by reading every chromosome in blocks.
+ */
+public abstract class RandomAccessGenomeReader extends AbstractGenomeReader{
+
+	public static final int QUERIES_PER_NOTIFY = 1000;
+	public static final int BLOCK_SIZE = 1 << 16;
+
+	private final String m_Name;
+	private UpdateMode m_Mode = UpdateMode.FULL;
+
+	protected RandomAccessGenomeReader(String name, Collection<ProgressListener> listeners){
+		super(listeners);
+		m_Name = name;
+	}
+
+	/**
+	 * Copies the bases [start, end] of the given chromosome into dest. Base indices start at 1.
+	 */
+	protected abstract void readBases(Chromosome chr, long start, long end, byte[] dest, int destOffset) throws IOException;
+
+	/**
+	 * Reads the sequence of the given region. Regions may span several chromosomes.
+	 */
+	public GenomicSequence readRegion(GenomicRegion region) throws IOException{
+		long size = region.getSize();
+		if(size > Integer.MAX_VALUE){
+			throw new IOException("Error: region "+region+" is too large to read into memory");
+		}
+		byte[] bases = new byte[(int) size];
+		GenomicCoordinate start = region.getStart();
+		GenomicCoordinate end = region.getEnd();
+		Chromosome chr = start.getChromosome();
+		long from = start.getBaseIndex();
+		int destOffset = 0;
+		while(true){
+			boolean last = chr.equals(end.getChromosome());
+			long to = last ? end.getBaseIndex() : chr.getSize();
+			if(to >= from){
+				this.readBases(chr, from, to, bases, destOffset);
+				destOffset += to - from + 1;
+			}
+			if(last) break;
+			chr = chr.nextChr();
+			from = 1;
+		}
+		return new GenomicSequence(new String(bases, FastaScanner.ASCII), region);
+	}
+
+	protected UpdateMode getUpdateMode(){
+		return m_Mode;
+	}
+
+	@Override
+	public void setUpdateMode(UpdateMode mode) {
+		m_Mode = mode;
+	}
+
+	private void notifyReadProgress(int percent, Chromosome chr){
+		Genome genome = this.getGenome();
+		this.notifyListeners(
+				new ProgressEvent(
+						this,
+						Type.UPDATE,
+						percent,
+						100,
+						"Reading "+m_Name+": "+chr+" ("+(genome.indexOf(chr)+1)+"/"+genome.getNumChrs()+")"
+						)
+				);
+	}
+
+	@Override
+	public void read(List<LocationQuery> locationQueries, List<SequenceQuery> sequenceQueries, List<LocationBoundedSequenceQuery> boundedQueries) {
+		try{
+			this.readLocations(locationQueries, boundedQueries);
+			if(!sequenceQueries.isEmpty()){
+				this.scan(new SequenceQueryProcessor(sequenceQueries));
+			}
+		} catch (IOException e){
+			ErrorHandler.getInstance().handleException(e, GenomeActivator.getBundle());
+		}
+		this.notifyListeners(new ProgressEvent(this, Type.COMPLETED));
+	}
+
+	private void readLocations(List<LocationQuery> locationQueries, List<LocationBoundedSequenceQuery> boundedQueries) throws IOException{
+		//read queries in genome order so that the underlying storage is visited sequentially
+		List<LocationQuery> locations = new ArrayList<LocationQuery>(locationQueries);
+		Collections.sort(locations, LocationQuery.START_COMPARATOR);
+		List<LocationBoundedSequenceQuery> bounded = new ArrayList<LocationBoundedSequenceQuery>(boundedQueries);
+		Collections.sort(bounded, LocationBoundedSequenceQuery.START_COMPARATOR);
+		int total = locations.size() + bounded.size();
+		int processed = 0;
+		Chromosome prev = null;
+		for(LocationQuery q : locations){
+			if(Thread.currentThread().isInterrupted()) return;
+			prev = this.notifyProgress(processed++, total, q.getStart().getChromosome(), prev);
+			q.process(this.readRegion(q.getRegion()));
+		}
+		//queries with overlapping regions share a single read and scan of their combined region
+		int first = 0;
+		while(first < bounded.size()){
+			if(Thread.currentThread().isInterrupted()) return;
+			GenomicCoordinate start = bounded.get(first).getStart();
+			GenomicCoordinate end = bounded.get(first).getEnd();
+			int last = first + 1;
+			while(last < bounded.size() && bounded.get(last).getStart().compareTo(end) <= 0){
+				if(bounded.get(last).getEnd().compareTo(end) > 0){
+					end = bounded.get(last).getEnd();
+				}
+				last++;
+			}
+			for(int i=first; i<last; i++){
+				prev = this.notifyProgress(processed++, total, bounded.get(i).getStart().getChromosome(), prev);
+			}
+			BoundedQueryProcessor processor = new BoundedQueryProcessor(bounded.subList(first, last));
+			processor.process(this.readRegion(new GenomicRegion(start, end)));
+			first = last;
+		}
+	}
+
+	private Chromosome notifyProgress(int processed, int total, Chromosome chr, Chromosome prev){
+		int percent = total > 0 ? (int) (100.0 * processed / total) : 100;
+		if(m_Mode == UpdateMode.FULL && processed % QUERIES_PER_NOTIFY == 0){
+			this.notifyReadProgress(percent, chr);
+		}else if(m_Mode == UpdateMode.CHROM_ONLY && !chr.equals(prev)){
+			this.notifyReadProgress(percent, chr);
+		}
+		return chr;
+	}
+
+	/**
+	 * Reads every chromosome of the genome in blocks, passing them to the given processor
+	 */
+	protected void scan(SequenceQueryProcessor processor) throws IOException{
+		Genome genome = this.getGenome();
+		for(int i=0; i<genome.getNumChrs(); i++){
+			Chromosome chr = genome.getChr(i);
+			if(chr.getSize() <= 0) continue;
+			if(m_Mode == UpdateMode.CHROM_ONLY){
+				this.notifyReadProgress((int) (100.0 * i / genome.getNumChrs()), chr);
+			}
+			for(long start = 1; start <= chr.getSize(); start += BLOCK_SIZE){
+				if(Thread.currentThread().isInterrupted()) return;
+				long end = Math.min(start + BLOCK_SIZE - 1, chr.getSize());
+				GenomicCoordinate from = genome.newGenomicCoordinate(chr, start);
+				GenomicCoordinate to = genome.newGenomicCoordinate(chr, end);
+				processor.process(this.readRegion(genome.newGenomicRegion(from, to)));
+				if(m_Mode == UpdateMode.FULL){
+					this.notifyReadProgress((int) (100.0 * end / chr.getSize()), chr);
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,278 @@
+package util.genome.reader;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import util.genome.Genome;
+
+/**
+ * Random access to the sequences of a UCSC .2bit file. The file is memory mapped. The sequence index and the
+ * size of every sequence are read when the file is opened, the N-block and mask-block tables of a sequence are
+ * read the first time bases of that sequence are requested.
+ * <p>
+ * Bases are packed 4 to a byte, first base in the most significant bits, encoded T=0, C=1, A=2, G=3. N-blocks
+ * are decoded as N and mask-blocks as lowercase bases.
+ */
+public class TwoBitFile {
+
+	public static final int SIGNATURE = 0x1A412743;
+	public static final String EXTENSION = ".2bit";
+
+	private static final byte[] BASES = new byte[]{'T', 'C', 'A', 'G'};
+	private static final int CASE_BIT = 0x20;
+	//the 4 bases encoded by each possible byte
+	private static final byte[] DECODED = createDecoded();
+
+	private static byte[] createDecoded(){
+		byte[] decoded = new byte[256 * 4];
+		for(int b=0; b<256; b++){
+			decoded[4*b] = BASES[(b >>> 6) & 0x03];
+			decoded[4*b + 1] = BASES[(b >>> 4) & 0x03];
+			decoded[4*b + 2] = BASES[(b >>> 2) & 0x03];
+			decoded[4*b + 3] = BASES[b & 0x03];
+		}
+		return decoded;
+	}
+
+	/**
+	 * Returns the byte order of the given .2bit signature or null if it is not a .2bit signature
+	 */
+	private static ByteOrder getByteOrder(byte[] signature){
+		if(ByteBuffer.wrap(signature).order(ByteOrder.BIG_ENDIAN).getInt() == SIGNATURE){
+			return ByteOrder.BIG_ENDIAN;
+		}
+		if(ByteBuffer.wrap(signature).order(ByteOrder.LITTLE_ENDIAN).getInt() == SIGNATURE){
+			return ByteOrder.LITTLE_ENDIAN;
+		}
+		return null;
+	}
+
+	/**
+	 * Tests whether the given file starts with the .2bit signature
+	 */
+	public static boolean isTwoBit(File file){
+		if(!file.isFile() || file.length() < 16) return false;
+		try {
+			InputStream in = new FileInputStream(file);
+			try{
+				byte[] signature = new byte[4];
+				int read = 0;
+				while(read < signature.length){
+					int n = in.read(signature, read, signature.length - read);
+					if(n < 0) return false;
+					read += n;
+				}
+				return getByteOrder(signature) != null;
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * A sequence of the .2bit file
+	 */
+	public class Record{
+
+		private final String m_Name;
+		private final long m_Offset;
+		private final long m_Size;
+		private int[] m_NStarts;
+		private int[] m_NSizes;
+		private int[] m_MaskStarts;
+		private int[] m_MaskSizes;
+		private long m_DnaOffset;
+
+		private Record(String name, long offset) throws IOException{
+			m_Name = name;
+			m_Offset = offset;
+			m_Size = readInt(offset) & 0xFFFFFFFFL;
+		}
+
+		public String getName(){
+			return m_Name;
+		}
+
+		public long getSize(){
+			return m_Size;
+		}
+
+		private synchronized void readTables() throws IOException{
+			if(m_NStarts != null) return;
+			long pos = m_Offset + 4;
+			int nBlocks = readInt(pos);
+			pos += 4;
+			int[] nStarts = readInts(pos, nBlocks);
+			pos += 4L * nBlocks;
+			int[] nSizes = readInts(pos, nBlocks);
+			pos += 4L * nBlocks;
+			int maskBlocks = readInt(pos);
+			pos += 4;
+			m_MaskStarts = readInts(pos, maskBlocks);
+			pos += 4L * maskBlocks;
+			m_MaskSizes = readInts(pos, maskBlocks);
+			pos += 4L * maskBlocks;
+			//skip the reserved word
+			m_DnaOffset = pos + 4;
+			m_NSizes = nSizes;
+			m_NStarts = nStarts;
+		}
+
+		/**
+		 * Writes the bases [start, end) of this sequence as ASCII characters to dest
+		 */
+		public void read(long start, long end, byte[] dest, int destOffset) throws IOException{
+			if(start < 0 || end > m_Size || start > end){
+				throw new IOException("Error: bases ["+start+", "+end+") are out of bounds for sequence "+m_Name+" of size "+m_Size);
+			}
+			if(start == end) return;
+			this.readTables();
+			long firstByte = start >>> 2;
+			long lastByte = (end - 1) >>> 2;
+			byte[] packed = m_File.read(m_DnaOffset + firstByte, (int) (lastByte - firstByte + 1));
+			int skip = (int) (start & 3);
+			int d = destOffset;
+			int length = (int) (end - start);
+			int i = 0;
+			//first partial byte
+			int b = 0;
+			while(skip > 0 && skip < 4 && i < length){
+				dest[d++] = DECODED[4 * (packed[b] & 0xFF) + skip];
+				skip++;
+				i++;
+			}
+			if(skip > 0) b++;
+			//whole bytes
+			while(length - i >= 4){
+				System.arraycopy(DECODED, 4 * (packed[b++] & 0xFF), dest, d, 4);
+				d += 4;
+				i += 4;
+			}
+			//last partial byte
+			for(int j=0; i < length; j++, i++){
+				dest[d++] = DECODED[4 * (packed[b] & 0xFF) + j];
+			}
+			applyBlocks(m_NStarts, m_NSizes, start, end, dest, destOffset, false);
+			applyBlocks(m_MaskStarts, m_MaskSizes, start, end, dest, destOffset, true);
+		}
+
+	}
+
+	/**
+	 * Applies the blocks overlapping [start, end) to dest, either replacing the bases with N or lower casing them
+	 */
+	private static void applyBlocks(int[] starts, int[] sizes, long start, long end, byte[] dest, int destOffset, boolean mask){
+		int block = Arrays.binarySearch(starts, (int) start);
+		if(block < 0){
+			block = Math.max(-block - 2, 0);
+		}
+		for(; block < starts.length && (starts[block] & 0xFFFFFFFFL) < end; block++){
+			long blockStart = starts[block] & 0xFFFFFFFFL;
+			long from = Math.max(start, blockStart);
+			long to = Math.min(end, blockStart + (sizes[block] & 0xFFFFFFFFL));
+			for(long i=from; i<to; i++){
+				int index = destOffset + (int) (i - start);
+				dest[index] = mask ? (byte) (dest[index] | CASE_BIT) : (byte) 'N';
+			}
+		}
+	}
+
+	private final MappedFile m_File;
+	private final ByteOrder m_Order;
+	private final List<Record> m_Records;
+	private final Map<String, Record> m_Names;
+
+	public TwoBitFile(File file) throws IOException{
+		m_File = new MappedFile(file);
+		if(m_File.length() < 16){
+			throw new IOException("Error: file "+file.getPath()+" is not a .2bit file");
+		}
+		m_Order = getByteOrder(m_File.read(0, 4));
+		if(m_Order == null){
+			throw new IOException("Error: file "+file.getPath()+" is not a .2bit file");
+		}
+		int version = this.readInt(4);
+		if(version != 0 && version != 1){
+			throw new IOException("Error: unsupported .2bit version "+version+" in file "+file.getPath());
+		}
+		int count = this.readInt(8);
+		List<Record> records = new ArrayList<Record>(count);
+		Map<String, Record> names = new HashMap<String, Record>();
+		long pos = 16;
+		for(int i=0; i<count; i++){
+			int nameSize = m_File.read(pos, 1)[0] & 0xFF;
+			pos += 1;
+			String name = new String(m_File.read(pos, nameSize), FastaScanner.ASCII);
+			pos += nameSize;
+			long offset;
+			if(version == 0){
+				offset = this.readInt(pos) & 0xFFFFFFFFL;
+				pos += 4;
+			}else{
+				offset = ByteBuffer.wrap(m_File.read(pos, 8)).order(m_Order).getLong();
+				pos += 8;
+			}
+			Record record = new Record(name, offset);
+			records.add(record);
+			names.put(name, record);
+		}
+		m_Records = Collections.unmodifiableList(records);
+		m_Names = names;
+	}
+
+	private int readInt(long offset) throws IOException{
+		return ByteBuffer.wrap(m_File.read(offset, 4)).order(m_Order).getInt();
+	}
+
+	private int[] readInts(long offset, int count) throws IOException{
+		if(count < 0 || 4L * count > m_File.length()){
+			throw new IOException("Error: corrupt block table in "+m_File.getFile().getPath());
+		}
+		int[] ints = new int[count];
+		ByteBuffer.wrap(m_File.read(offset, 4 * count)).order(m_Order).asIntBuffer().get(ints);
+		return ints;
+	}
+
+	public File getFile(){
+		return m_File.getFile();
+	}
+
+	public int size(){
+		return m_Records.size();
+	}
+
+	public List<Record> getRecords(){
+		return m_Records;
+	}
+
+	public Record getRecord(int index){
+		return m_Records.get(index);
+	}
+
+	public Record getRecord(String name){
+		return m_Names.get(name);
+	}
+
+	public Genome toGenome(String name){
+		List<String> names = new ArrayList<String>();
+		List<Integer> sizes = new ArrayList<Integer>();
+		for(Record r : m_Records){
+			names.add(r.getName());
+			sizes.add((int) r.getSize());
+		}
+		return new Genome(name, names, sizes);
+	}
+
+}
@@ -0,0 +1,59 @@
+package util.genome.reader;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+
+import util.genome.Chromosome;
+import util.genome.Genome;
+import util.progress.ProgressEvent;
+import util.progress.ProgressListener;
+
+/**
+ * GenomeReader for UCSC .2bit genome files. Regions are decoded directly from the file using its sequence index,
+ * so the genome never needs to be converted to FASTA.
+ */
+public class TwoBitGenomeReader extends RandomAccessGenomeReader{
+
+	private final TwoBitFile m_File;
+	private final Genome m_Genome;
+
+	public TwoBitGenomeReader(File genomeFile) throws IOException{
+		this(genomeFile, new ArrayList<ProgressListener>());
+	}
+
+	public TwoBitGenomeReader(File genomeFile, Collection<ProgressListener> listeners) throws IOException{
+		super(genomeFile.getName(), listeners);
+		this.notifyListeners(new ProgressEvent(this, ProgressEvent.Type.UPDATE, 0, "Loading index of genome file: "+genomeFile.getPath(), true));
+		m_File = new TwoBitFile(genomeFile);
+		m_Genome = this.loadGenome(genomeFile);
+	}
+
+	private Genome loadGenome(File genomeFile){
+		String key = genomeFile.getAbsolutePath();
+		synchronized(GENOME_HASH){
+			if(GENOME_HASH.containsKey(key)){
+				return GENOME_HASH.get(key);
+			}
+			Genome genome = m_File.toGenome(genomeFile.getName());
+			GENOME_HASH.put(key, genome);
+			return genome;
+		}
+	}
+
+	public TwoBitFile getTwoBitFile(){
+		return m_File;
+	}
+
+	@Override
+	public Genome getGenome() {
+		return m_Genome;
+	}
+
+	@Override
+	protected void readBases(Chromosome chr, long start, long end, byte[] dest, int destOffset) throws IOException{
+		m_File.getRecord(m_Genome.indexOf(chr)).read(start - 1, end, dest, destOffset);
+	}
+
+}
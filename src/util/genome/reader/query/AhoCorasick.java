@@ -0,0 +1,175 @@
+package util.genome.reader.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Aho-Corasick automaton matching a set of patterns in a single pass over a text. The automaton is built once
+ * as a complete transition table over the characters that occur in the patterns, so matching costs one table
+ * lookup per character no matter how many patterns there are.
+ * <p>
+ * Patterns are matched exactly, including case. Characters above 255 never occur in the scanned text, so
+ * patterns containing them are never matched.
+ */
+public class AhoCorasick {
+
+	public static final int ROOT = 0;
+
+	private static final int NONE = -1;
+
+	private final String[] m_Patterns;
+	private final int m_AlphabetSize;
+	//alphabet index of every character, 0 for characters that occur in no pattern, which lead back to the root
+	private final int[] m_Alphabet = new int[256];
+	private final int[] m_Transitions;
+	//patterns ending at each state, and the nearest proper suffix state at which a pattern ends
+	private final int[][] m_Matches;
+	private final int[] m_DictLinks;
+	private final boolean[] m_HasMatch;
+
+	/**
+	 * @param patterns - the patterns to match. The index of a pattern in this list identifies it in the matches
+	 */
+	public AhoCorasick(List<String> patterns){
+		m_Patterns = patterns.toArray(new String[patterns.size()]);
+		int size = 1;
+		for(String p : m_Patterns){
+			if(!isMatchable(p)) continue;
+			for(int i=0; i<p.length(); i++){
+				char c = p.charAt(i);
+				if(m_Alphabet[c] == 0){
+					m_Alphabet[c] = size++;
+				}
+			}
+		}
+		m_AlphabetSize = size;
+		//build the trie
+		int[] trie = new int[16 * size];
+		Arrays.fill(trie, NONE);
+		List<List<Integer>> matches = new ArrayList<List<Integer>>();
+		matches.add(null);
+		int states = 1;
+		for(int id=0; id<m_Patterns.length; id++){
+			String p = m_Patterns[id];
+			if(!isMatchable(p)) continue;
+			int state = ROOT;
+			for(int i=0; i<p.length(); i++){
+				int index = state * size + m_Alphabet[p.charAt(i)];
+				if(trie[index] == NONE){
+					if((states + 1) * size > trie.length){
+						int length = trie.length;
+						trie = Arrays.copyOf(trie, 2 * length);
+						Arrays.fill(trie, length, trie.length, NONE);
+					}
+					trie[index] = states++;
+					matches.add(null);
+				}
+				state = trie[index];
+			}
+			if(matches.get(state) == null){
+				matches.set(state, new ArrayList<Integer>());
+			}
+			matches.get(state).add(id);
+		}
+		//breadth first, complete the transitions using the failure links
+		m_Transitions = Arrays.copyOf(trie, states * size);
+		m_Matches = new int[states][];
+		m_DictLinks = new int[states];
+		int[] fail = new int[states];
+		int[] queue = new int[states];
+		int head = 0;
+		int tail = 0;
+		m_DictLinks[ROOT] = NONE;
+		for(int c=0; c<size; c++){
+			int next = m_Transitions[c];
+			if(next == NONE){
+				m_Transitions[c] = ROOT;
+			}else{
+				fail[next] = ROOT;
+				queue[tail++] = next;
+			}
+		}
+		while(head < tail){
+			int state = queue[head++];
+			int f = fail[state];
+			m_DictLinks[state] = m_Matches[f] != null ? f : m_DictLinks[f];
+			if(matches.get(state) != null){
+				m_Matches[state] = toArray(matches.get(state));
+			}
+			for(int c=0; c<size; c++){
+				int index = state * size + c;
+				int next = m_Transitions[index];
+				if(next == NONE){
+					m_Transitions[index] = m_Transitions[f * size + c];
+				}else{
+					fail[next] = m_Transitions[f * size + c];
+					queue[tail++] = next;
+				}
+			}
+		}
+		m_HasMatch = new boolean[states];
+		for(int state=0; state<states; state++){
+			m_HasMatch[state] = m_Matches[state] != null || m_DictLinks[state] != NONE;
+		}
+	}
+
+	private static boolean isMatchable(String pattern){
+		if(pattern.isEmpty()) return false;
+		for(int i=0; i<pattern.length(); i++){
+			if(pattern.charAt(i) >= 256) return false;
+		}
+		return true;
+	}
+
+	private static int[] toArray(List<Integer> list){
+		int[] array = new int[list.size()];
+		for(int i=0; i<array.length; i++){
+			array[i] = list.get(i);
+		}
+		return array;
+	}
+
+	public String getPattern(int id){
+		return m_Patterns[id];
+	}
+
+	public int getNumPatterns(){
+		return m_Patterns.length;
+	}
+
+	public int getNumStates(){
+		return m_DictLinks.length;
+	}
+
+	/**
+	 * Returns the state reached from the given state by reading the given character
+	 */
+	public int next(int state, char c){
+		if(c >= 256) return ROOT;
+		return m_Transitions[state * m_AlphabetSize + m_Alphabet[c]];
+	}
+
+	/**
+	 * Tests whether any pattern ends at the given state
+	 */
+	public boolean hasMatch(int state){
+		return m_HasMatch[state];
+	}
+
+	/**
+	 * Adds the ids of all patterns ending at the given state to matches
+	 */
+	public void getMatches(int state, List<Integer> matches){
+		if(m_Matches[state] == null){
+			state = m_DictLinks[state];
+		}
+		while(state != NONE){
+			for(int id : m_Matches[state]){
+				matches.add(id);
+			}
+			state = m_DictLinks[state];
+		}
+	}
+
+}
@@ -0,0 +1,201 @@
+package util.genome.reader.query;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import util.genome.Chromosome;
+import util.genome.GenomicSequence;
+
+/**
+ * Matches ApproximateQueries with bit-parallel dynamic programming, so each base costs a few word operations per
+ * query. Mismatch budgets use the Wu-Manber extension of Shift-And with one state word per allowed mismatch.
+ * Edit budgets use Myers' bit-vector algorithm, which tracks the vertical differences of the edit distance
+ * matrix column and the lowest distance of the target to any genomic sequence ending at the current base. The
+ * start of such a sequence is only found, by aligning backwards from its end, when it is reported.
+ */
+class ApproximateMatcher extends SequenceMatcher{
+
+	private static int window(List<ApproximateQuery> queries){
+		int window = 0;
+		for(ApproximateQuery q : queries){
+			int length = q.getTargetSequence().length();
+			if(q.getDistanceMode() == ApproximateQuery.DistanceMode.EDITS){
+				length += q.getMaxDistance();
+			}
+			window = Math.max(window, length);
+		}
+		return window;
+	}
+
+	private final List<ApproximateQuery> m_Queries;
+	private final long[][] m_Masks;
+	//MISMATCHES: the Shift-And state for each number of mismatches
+	private final long[][] m_Rows;
+	//EDITS: the positive and negative vertical differences, distance at the current and previous base and
+	//the best match found at the previous base, which is reported unless the next base ends a closer one
+	private final long[] m_Pv;
+	private final long[] m_Mv;
+	private final int[] m_Scores;
+	private final GenomicSequence[] m_Pending;
+	private final int[] m_PendingScores;
+
+	ApproximateMatcher(List<ApproximateQuery> queries){
+		super(window(queries));
+		m_Queries = new ArrayList<ApproximateQuery>(queries);
+		int n = m_Queries.size();
+		m_Masks = new long[n][256];
+		m_Rows = new long[n][];
+		m_Pv = new long[n];
+		m_Mv = new long[n];
+		m_Scores = new int[n];
+		m_Pending = new GenomicSequence[n];
+		m_PendingScores = new int[n];
+		for(int q=0; q<n; q++){
+			ApproximateQuery query = m_Queries.get(q);
+			String target = query.getTargetSequence();
+			for(int j=0; j<target.length(); j++){
+				char c = target.charAt(j);
+				if(Character.toUpperCase(c) < 256 && Character.toLowerCase(c) < 256){
+					m_Masks[q][Character.toUpperCase(c)] |= 1L << j;
+					m_Masks[q][Character.toLowerCase(c)] |= 1L << j;
+				}
+			}
+			if(query.getDistanceMode() == ApproximateQuery.DistanceMode.MISMATCHES){
+				m_Rows[q] = new long[query.getMaxDistance() + 1];
+			}
+		}
+		this.reset();
+	}
+
+	@Override
+	protected void reset() {
+		for(int q=0; q<m_Queries.size(); q++){
+			//the bases following a pending match do not end a closer one
+			if(m_Pending[q] != null){
+				m_Queries.get(q).process(m_Pending[q], m_PendingScores[q]);
+				m_Pending[q] = null;
+			}
+			if(m_Rows[q] != null){
+				for(int d=0; d<m_Rows[q].length; d++){
+					m_Rows[q][d] = 0;
+				}
+			}
+			m_Pv[q] = -1L;
+			m_Mv[q] = 0;
+			m_Scores[q] = m_Queries.get(q).getTargetSequence().length();
+		}
+	}
+
+	@Override
+	protected void scan(String seq, int from, int to, Chromosome chr, long firstIndex) {
+		for(int q=0; q<m_Queries.size(); q++){
+			if(m_Rows[q] != null){
+				this.scanMismatches(q, seq, from, to, chr, firstIndex);
+			}else{
+				this.scanEdits(q, seq, from, to, chr, firstIndex);
+			}
+		}
+	}
+
+	private void scanMismatches(int q, String seq, int from, int to, Chromosome chr, long firstIndex){
+		ApproximateQuery query = m_Queries.get(q);
+		int length = query.getTargetSequence().length();
+		long high = 1L << (length - 1);
+		long[] masks = m_Masks[q];
+		long[] rows = m_Rows[q];
+		for(int i=from; i<to; i++){
+			char c = seq.charAt(i);
+			long mask = c < 256 ? masks[c] : 0;
+			long prev = rows[0];
+			rows[0] = ((prev << 1) | 1) & mask;
+			for(int d=1; d<rows.length; d++){
+				long cur = rows[d];
+				//extend a match with d mismatches or a match with d-1 mismatches by a mismatch
+				rows[d] = (((cur << 1) | 1) & mask) | ((prev << 1) | 1);
+				prev = cur;
+			}
+			if((rows[rows.length - 1] & high) != 0){
+				int distance = 0;
+				while((rows[distance] & high) == 0){
+					distance++;
+				}
+				String bases = this.getBases(seq, from, i + 1, length);
+				query.process(newMatch(bases, chr, firstIndex + i - from), distance);
+			}
+		}
+	}
+
+	private void scanEdits(int q, String seq, int from, int to, Chromosome chr, long firstIndex){
+		ApproximateQuery query = m_Queries.get(q);
+		int max = query.getMaxDistance();
+		int last = query.getTargetSequence().length() - 1;
+		long high = 1L << last;
+		long[] masks = m_Masks[q];
+		long pv = m_Pv[q];
+		long mv = m_Mv[q];
+		int score = m_Scores[q];
+		for(int i=from; i<to; i++){
+			char c = seq.charAt(i);
+			long eq = c < 256 ? masks[c] : 0;
+			long xv = eq | mv;
+			long xh = (((eq & pv) + pv) ^ pv) | eq;
+			long ph = mv | ~(xh | pv);
+			long mh = pv & xh;
+			int prevScore = score;
+			//branch free, as the changes in the last row are unpredictable
+			score += (int) ((ph & high) >>> last) - (int) ((mh & high) >>> last);
+			//the first row of the matrix is zero, as a match may start at any base
+			ph <<= 1;
+			mh <<= 1;
+			pv = mh | ~(xv | ph);
+			mv = ph & xv;
+			if(m_Pending[q] != null){
+				if(score >= m_PendingScores[q]){
+					query.process(m_Pending[q], m_PendingScores[q]);
+				}
+				m_Pending[q] = null;
+			}
+			if(score <= max && score < prevScore){
+				m_Pending[q] = this.align(query, seq, from, i + 1, chr, firstIndex);
+				m_PendingScores[q] = score;
+			}
+		}
+		m_Pv[q] = pv;
+		m_Mv[q] = mv;
+		m_Scores[q] = score;
+	}
+
+	/**
+	 * Returns the closest match to the target of the query ending just before index end of the current run,
+	 * preferring matches of the target's length
+	 */
+	private GenomicSequence align(ApproximateQuery query, String seq, int from, int end, Chromosome chr, long firstIndex){
+		String target = query.getTargetSequence();
+		int m = target.length();
+		String window = this.getBases(seq, from, end, Math.min(m + query.getMaxDistance(), this.getAvailable(from, end)));
+		//column l holds the distances of the suffixes of the target to the last l bases of the window
+		int[] col = new int[m + 1];
+		for(int i=0; i<=m; i++){
+			col[i] = i;
+		}
+		int best = 0;
+		int bestScore = col[m];
+		for(int l=1; l<=window.length(); l++){
+			char base = window.charAt(window.length() - l);
+			int diag = col[0];
+			col[0] = l;
+			for(int i=1; i<=m; i++){
+				int up = col[i];
+				int sub = diag + (ApproximateQuery.matches(target.charAt(m - i), base) ? 0 : 1);
+				col[i] = Math.min(sub, Math.min(up, col[i-1]) + 1);
+				diag = up;
+			}
+			if(col[m] < bestScore || (col[m] == bestScore && Math.abs(l - m) < Math.abs(best - m))){
+				best = l;
+				bestScore = col[m];
+			}
+		}
+		return newMatch(window.substring(window.length() - best), chr, firstIndex + end - 1 - from);
+	}
+
+}
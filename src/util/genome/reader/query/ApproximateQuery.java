@@ -0,0 +1,95 @@
+package util.genome.reader.query;
+
+import util.genome.GenomicSequence;
+
+/**
+ * SequenceQuery that also finds genomic sequences within a given distance of its target. The distance is
+ * either the number of mismatched bases ({@link DistanceMode#MISMATCHES}) or the number of mismatched, inserted
+ * and deleted bases ({@link DistanceMode#EDITS}). Bases are compared ignoring case. Targets are matched with
+ * bit-parallel dynamic programming, so they may be at most {@link #MAX_LENGTH} bases long.
+ * <p>
+ * In EDITS mode, near-matches ending at neighbouring bases are alignments of the same site, so only the end
+ * with the lowest distance is reported.
+ */
+public abstract class ApproximateQuery extends SequenceQuery{
+	private static final long serialVersionUID = 1L;
+
+	public static final int MAX_LENGTH = 64;
+
+	public enum DistanceMode{
+		MISMATCHES,
+		EDITS;
+	}
+
+	private final int m_MaxDistance;
+	private final DistanceMode m_Mode;
+
+	protected ApproximateQuery(String targetSequence, int maxDistance, DistanceMode mode){
+		super(targetSequence);
+		if(targetSequence.isEmpty() || targetSequence.length() > MAX_LENGTH){
+			throw new RuntimeException("Error: target \""+targetSequence+"\" must be between 1 and "+MAX_LENGTH+" bases long");
+		}
+		if(maxDistance < 0 || maxDistance >= targetSequence.length()){
+			throw new RuntimeException("Error: distance "+maxDistance+" must be at least 0 and less than the length of target \""+targetSequence+"\"");
+		}
+		m_MaxDistance = maxDistance;
+		m_Mode = mode;
+	}
+
+	public int getMaxDistance(){
+		return m_MaxDistance;
+	}
+
+	public DistanceMode getDistanceMode(){
+		return m_Mode;
+	}
+
+	static boolean matches(char target, char base){
+		return Character.toUpperCase(target) == Character.toUpperCase(base);
+	}
+
+	/**
+	 * Returns the distance between the target of this query and the given bases. Bases of a different length
+	 * than the target are at distance Integer.MAX_VALUE in MISMATCHES mode.
+	 */
+	public int getDistance(String bases){
+		String target = this.getTargetSequence();
+		if(m_Mode == DistanceMode.MISMATCHES){
+			if(bases.length() != target.length()) return Integer.MAX_VALUE;
+			int mismatches = 0;
+			for(int i=0; i<bases.length(); i++){
+				if(!matches(target.charAt(i), bases.charAt(i))){
+					mismatches++;
+				}
+			}
+			return mismatches;
+		}
+		int[] prev = new int[bases.length() + 1];
+		int[] cur = new int[bases.length() + 1];
+		for(int j=0; j<prev.length; j++){
+			prev[j] = j;
+		}
+		for(int i=1; i<=target.length(); i++){
+			cur[0] = i;
+			for(int j=1; j<cur.length; j++){
+				int sub = prev[j-1] + (matches(target.charAt(i-1), bases.charAt(j-1)) ? 0 : 1);
+				cur[j] = Math.min(sub, Math.min(prev[j], cur[j-1]) + 1);
+			}
+			int[] temp = prev;
+			prev = cur;
+			cur = temp;
+		}
+		return prev[bases.length()];
+	}
+
+	@Override
+	public void process(GenomicSequence found){
+		this.process(found, this.getDistance(found.getSequence()));
+	}
+
+	/**
+	 * Called with each genomic sequence within the maximum distance of the target and its distance
+	 */
+	public abstract void process(GenomicSequence found, int distance);
+
+}
@@ -2,105 +2,211 @@ package util.genome.reader.query;
 
 import java.util.*;
 
+import util.genome.Chromosome;
+import util.genome.Genome;
 import util.genome.GenomicCoordinate;
 import util.genome.GenomicRegion;
 import util.genome.GenomicSequence;
 
+/**
+ * Finds the occurrences of the targets of LocationBoundedSequenceQueries that lie within their regions. Queries
+ * are scheduled by region: a query becomes active at the start of its region and is retired, in order of region
+ * end, once the end of its region has been read. A single {@link AhoCorasick} automaton over all targets is run
+ * over the bases while any query is active, and each occurrence is passed to the active queries with its target
+ * whose region contains it. Bases outside of every region are skipped.
+ */
 public class BoundedQueryProcessor implements QueryProcessor{
-	
-	private final Queue<LocationBoundedSequenceQuery> m_Remaining;
-	private final Queue<LocationBoundedSequenceQuery> m_Active;
-	private final Map<LocationBoundedSequenceQuery, GenomicCoordinate> m_ProcessedTo; 
-	private GenomicSequence m_Seq;
-	
-	public BoundedQueryProcessor(List<LocationBoundedSequenceQuery> queries){
-		m_Remaining = new PriorityQueue<LocationBoundedSequenceQuery>(queries.size() >= 1 ? queries.size() : 1, LocationBoundedSequenceQuery.START_COMPARATOR);
-		for(LocationBoundedSequenceQuery q : queries){
-			m_Remaining.add(q);
+
+	private static class Entry{
+
+		private final LocationBoundedSequenceQuery m_Query;
+		private final int m_Target;
+		//index of this entry in the active entries of its target
+		private int m_Slot;
+
+		private Entry(LocationBoundedSequenceQuery query, int target){
+			m_Query = query;
+			m_Target = target;
 		}
-		m_Active = new PriorityQueue<LocationBoundedSequenceQuery>(10, LocationBoundedSequenceQuery.END_COMPARATOR);
-		m_ProcessedTo = new HashMap<LocationBoundedSequenceQuery, GenomicCoordinate>();
-		m_Seq = null;
+
 	}
-	
-	private int longestQuery(){
-		int longest = 0;
-		for(LocationBoundedSequenceQuery q : m_Active){
-			if(q.getTargetSequence().length() > longest){
-				longest = q.getTargetSequence().length();
+
+	private static final Comparator<Entry> END_COMPARATOR = new Comparator<Entry>(){
+
+		@Override
+		public int compare(Entry o1, Entry o2) {
+			return LocationBoundedSequenceQuery.END_COMPARATOR.compare(o1.m_Query, o2.m_Query);
+		}
+
+	};
+
+	private final Entry[] m_Remaining;
+	private int m_NextRemaining = 0;
+	private final Queue<Entry> m_Active;
+	private final List<List<Entry>> m_ActiveByTarget;
+	private final AhoCorasick m_Automaton;
+	private final List<Integer> m_Matches = new ArrayList<Integer>();
+	private int m_State = AhoCorasick.ROOT;
+	private Chromosome m_Chr = null;
+	//base index of the next expected base on the current chromosome
+	private long m_Next = -1;
+
+	public BoundedQueryProcessor(List<LocationBoundedSequenceQuery> queries){
+		Map<String, Integer> ids = new HashMap<String, Integer>();
+		List<String> targets = new ArrayList<String>();
+		m_Remaining = new Entry[queries.size()];
+		for(int i=0; i<m_Remaining.length; i++){
+			LocationBoundedSequenceQuery q = queries.get(i);
+			Integer id = ids.get(q.getTargetSequence());
+			if(id == null){
+				id = targets.size();
+				ids.put(q.getTargetSequence(), id);
+				targets.add(q.getTargetSequence());
 			}
+			m_Remaining[i] = new Entry(q, id);
+		}
+		Arrays.sort(m_Remaining, new Comparator<Entry>(){
+
+			@Override
+			public int compare(Entry o1, Entry o2) {
+				return LocationBoundedSequenceQuery.START_COMPARATOR.compare(o1.m_Query, o2.m_Query);
+			}
+
+		});
+		m_Active = new PriorityQueue<Entry>(10, END_COMPARATOR);
+		m_ActiveByTarget = new ArrayList<List<Entry>>();
+		for(int i=0; i<targets.size(); i++){
+			m_ActiveByTarget.add(new ArrayList<Entry>());
 		}
-		return longest;
+		m_Automaton = new AhoCorasick(targets);
 	}
-	
-	private void process(LocationBoundedSequenceQuery query){
-		//get starting search location
-		GenomicCoordinate startFrom;
-		if(m_ProcessedTo.containsKey(query)){
-			startFrom = m_ProcessedTo.get(query).increment(1);
-		}else if(m_Seq.contains(query.getStart())){
-			startFrom = query.getStart();
-		}else{
-			startFrom = m_Seq.getStart();
+
+	/**
+	 * Returns the base index of the given coordinate relative to the given chromosome, Long.MIN_VALUE if it
+	 * lies on an earlier chromosome and Long.MAX_VALUE if it lies on a later one
+	 */
+	private static long indexOn(GenomicCoordinate coord, Chromosome chr){
+		if(coord.getChromosome().equals(chr)){
+			return coord.getBaseIndex();
 		}
-		//get ending search location
-		GenomicCoordinate searchTo;
-		if(m_Seq.contains(query.getEnd())){
-			searchTo = query.getEnd();
-		}else{
-			searchTo = m_Seq.getEnd();
+		return coord.getChromosome().compareTo(chr) < 0 ? Long.MIN_VALUE : Long.MAX_VALUE;
+	}
+
+	private void activate(Entry e){
+		List<Entry> active = m_ActiveByTarget.get(e.m_Target);
+		e.m_Slot = active.size();
+		active.add(e);
+		m_Active.add(e);
+	}
+
+	private void retire(Entry e){
+		List<Entry> active = m_ActiveByTarget.get(e.m_Target);
+		Entry last = active.remove(active.size() - 1);
+		if(last != e){
+			last.m_Slot = e.m_Slot;
+			active.set(e.m_Slot, last);
 		}
-		//if the query region isn't large enough to fit the target sequence, abort
-		if(startFrom.distance(searchTo) < query.getTargetSequence().length()){
-			return;
+	}
+
+	private void report(int target, Chromosome chr, long end){
+		String bases = m_Automaton.getPattern(target);
+		long start = end - bases.length() + 1;
+		GenomicSequence found = null;
+		for(Entry e : m_ActiveByTarget.get(target)){
+			//active regions end at or after the current base, but may start after the occurrence
+			if(indexOn(e.m_Query.getStart(), chr) <= start){
+				if(found == null){
+					found = new GenomicSequence(bases, new GenomicRegion(new GenomicCoordinate(chr, start), new GenomicCoordinate(chr, end)));
+				}
+				e.m_Query.process(found);
+			}
 		}
-		//search through sequences starting at start location going to end location
-		String target = query.getTargetSequence();
-		GenomicSequence search = new GenomicSequence(target, new GenomicRegion(startFrom, startFrom.increment(target.length()-1)));
-		while(search.getEnd().compareTo(searchTo) <= 0){
-			if(m_Seq.contains(search)){
-				query.process(m_Seq);
+	}
+
+	/**
+	 * Processes the bases [from, to) of seq, which lie on the given chromosome starting at the given base index
+	 */
+	private void process(String seq, int from, int to, Chromosome chr, long firstIndex){
+		long last = firstIndex + to - from - 1;
+		long index = firstIndex;
+		while(index <= last){
+			//activate the queries starting at or before the current base
+			while(m_NextRemaining < m_Remaining.length && indexOn(m_Remaining[m_NextRemaining].m_Query.getStart(), chr) <= index){
+				this.activate(m_Remaining[m_NextRemaining++]);
 			}
-			search = new GenomicSequence(target, search.getRegion().increment(1));
+			//and retire those ending before it, such as regions of chromosomes that were not read
+			while(!m_Active.isEmpty() && indexOn(m_Active.peek().m_Query.getEnd(), chr) < index){
+				this.retire(m_Active.poll());
+			}
+			long nextStart = m_NextRemaining < m_Remaining.length ? indexOn(m_Remaining[m_NextRemaining].m_Query.getStart(), chr) : Long.MAX_VALUE;
+			if(m_Active.isEmpty()){
+				//no region covers the bases before the next one starts
+				m_State = AhoCorasick.ROOT;
+				index = Math.min(nextStart, last + 1);
+				continue;
+			}
+			//scan up to the next region start or end
+			long segEnd = Math.min(last, Math.min(nextStart - 1, indexOn(m_Active.peek().m_Query.getEnd(), chr)));
+			int state = m_State;
+			for(long i=index; i<=segEnd; i++){
+				state = m_Automaton.next(state, seq.charAt((int) (from + i - firstIndex)));
+				if(m_Automaton.hasMatch(state)){
+					m_Matches.clear();
+					m_Automaton.getMatches(state, m_Matches);
+					for(int target : m_Matches){
+						this.report(target, chr, i);
+					}
+				}
+			}
+			m_State = state;
+			//retire the queries whose regions have been read
+			while(!m_Active.isEmpty() && indexOn(m_Active.peek().m_Query.getEnd(), chr) <= segEnd){
+				this.retire(m_Active.poll());
+			}
+			index = segEnd + 1;
 		}
-		//update processed to location to last search location's start
-		m_ProcessedTo.put(query, search.getStart());
 	}
-	
+
 	@Override
 	public void process(GenomicSequence next) {
-		//update the current sequence with the new sequence
-		if(m_Seq != null){
-			m_Seq = m_Seq.join(next);
-		}else{
-			m_Seq = next;
-		}
-		//move remaining queries that start in sequence to active queries
-		while(!m_Remaining.isEmpty() && m_Seq.contains(m_Remaining.peek().getStart())){
-			LocationBoundedSequenceQuery query = m_Remaining.poll();
-			m_Active.add(query);
-		}
-		//process active queries
-		for(LocationBoundedSequenceQuery query : m_Active){
-			this.process(query);
-		}
-		//remove active queries that end in the current sequence
-		while(!m_Active.isEmpty() && m_Seq.contains(m_Active.peek().getEnd())){
-			LocationBoundedSequenceQuery query = m_Active.poll();
-			m_ProcessedTo.remove(query);
+		this.process(next.getSequence(), next.getStart().getChromosome(), next.getStart().getBaseIndex());
+	}
+
+	@Override
+	public void process(String bases, long start, Genome genome){
+		int chrIndex = genome.indexOfPacked(start);
+		this.process(bases, genome.getChr(chrIndex), start - genome.getPackedStart(chrIndex) + 1);
+	}
+
+	private void process(String seq, Chromosome chr, long index){
+		if(this.done()) return;
+		if(!chr.equals(m_Chr) || index != m_Next){
+			//not a continuation of the previous block
+			m_State = AhoCorasick.ROOT;
 		}
-		//trim sequence
-		int longestQuery = this.longestQuery();
-		if(longestQuery <= 1){
-			m_Seq = null;
-		}else if(longestQuery <= m_Seq.length()){
-			m_Seq = m_Seq.subsequence(m_Seq.getEnd().decrement(longestQuery-2));
+		int from = 0;
+		while(from < seq.length()){
+			if(chr.getSize() >= 0 && index > chr.getSize()){
+				//the block continues onto the next chromosome
+				chr = chr.nextChr();
+				index = 1;
+				m_State = AhoCorasick.ROOT;
+			}
+			int to = seq.length();
+			if(chr.getSize() >= 0){
+				to = (int) Math.min(to, from + chr.getSize() - index + 1);
+			}
+			this.process(seq, from, to, chr, index);
+			index += to - from;
+			from = to;
 		}
+		m_Chr = chr;
+		m_Next = index;
 	}
 
 	@Override
 	public boolean done() {
-		return m_Remaining.isEmpty() && m_Active.isEmpty();
+		return m_NextRemaining == m_Remaining.length && m_Active.isEmpty();
 	}
 
 }
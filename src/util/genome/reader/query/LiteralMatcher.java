@@ -0,0 +1,71 @@
+package util.genome.reader.query;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import util.genome.Chromosome;
+import util.genome.GenomicSequence;
+
+/**
+ * Matches the exact target sequences of SequenceQueries. All targets are matched together by an
+ * {@link AhoCorasick} automaton, so the cost of a scan does not grow with the number of queries.
+ */
+class LiteralMatcher extends SequenceMatcher{
+
+	private final AhoCorasick m_Automaton;
+	//queries of each distinct target, by target id
+	private final List<List<SequenceQuery>> m_TargetQueries;
+	private final List<Integer> m_Found = new ArrayList<Integer>();
+	private int m_State = AhoCorasick.ROOT;
+
+	LiteralMatcher(List<SequenceQuery> queries){
+		super(0);
+		Map<String, Integer> ids = new HashMap<String, Integer>();
+		List<String> targets = new ArrayList<String>();
+		m_TargetQueries = new ArrayList<List<SequenceQuery>>();
+		for(SequenceQuery q : queries){
+			String target = q.getTargetSequence();
+			Integer id = ids.get(target);
+			if(id == null){
+				id = targets.size();
+				ids.put(target, id);
+				targets.add(target);
+				m_TargetQueries.add(new ArrayList<SequenceQuery>());
+			}
+			m_TargetQueries.get(id).add(q);
+		}
+		m_Automaton = new AhoCorasick(targets);
+	}
+
+	@Override
+	protected void reset() {
+		m_State = AhoCorasick.ROOT;
+	}
+
+	private void report(int state, Chromosome chr, long end){
+		m_Found.clear();
+		m_Automaton.getMatches(state, m_Found);
+		for(int id : m_Found){
+			GenomicSequence found = newMatch(m_Automaton.getPattern(id), chr, end);
+			for(SequenceQuery q : m_TargetQueries.get(id)){
+				q.process(found);
+			}
+		}
+	}
+
+	@Override
+	protected void scan(String seq, int from, int to, Chromosome chr, long firstIndex) {
+		AhoCorasick automaton = m_Automaton;
+		int state = m_State;
+		for(int i=from; i<to; i++){
+			state = automaton.next(state, seq.charAt(i));
+			if(automaton.hasMatch(state)){
+				this.report(state, chr, firstIndex + i - from);
+			}
+		}
+		m_State = state;
+	}
+
+}
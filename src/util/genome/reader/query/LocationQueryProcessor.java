@@ -1,72 +1,140 @@
 package util.genome.reader.query;
 
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
 import java.util.PriorityQueue;
 import java.util.Queue;
-import java.util.TreeSet;
 
-import util.genome.GenomicCoordinate;
+import util.genome.Genome;
+import util.genome.GenomicContext;
 import util.genome.GenomicSequence;
 
+/**
+ * Passes LocationQueries the sequences of their regions. Regions are compared as packed locations of the genome
+ * the blocks belong to, and only the bases from the start of the earliest region still being read are kept.
+ */
 public class LocationQueryProcessor implements QueryProcessor{
-		
-	private final Queue<LocationQuery> m_Remaining;
-	private final Queue<LocationQuery> m_Active;
-	private final TreeSet<LocationQuery> m_ActiveStarts;
-	private GenomicSequence m_Seq;
-	
+
+	private final List<LocationQuery> m_Queries;
+	private Genome m_Genome = null;
+	//queries ordered by start, with their packed starts and ends
+	private LocationQuery[] m_Sorted = new LocationQuery[0];
+	private long[] m_Starts;
+	private long[] m_Ends;
+	private boolean[] m_Done;
+	private int m_Next = 0;
+	//first query that may still be active
+	private int m_First = 0;
+	private final Queue<Integer> m_Active;
+	private final StringBuilder m_Bases = new StringBuilder();
+	private long m_BasesStart = 0;
+
 	public LocationQueryProcessor(List<LocationQuery> queries){
-		m_Remaining = new PriorityQueue<LocationQuery>(queries.size() >= 1 ? queries.size() : 1, LocationQuery.START_COMPARATOR);
-		for(LocationQuery q : queries){
-			m_Remaining.add(q);
-		}
-		m_Active = new PriorityQueue<LocationQuery>(10, LocationQuery.END_COMPARATOR);
-		m_ActiveStarts = new TreeSet<LocationQuery>(LocationQuery.START_COMPARATOR);
-		m_Seq = null;
+		m_Queries = queries;
+		m_Active = new PriorityQueue<Integer>(10, new Comparator<Integer>(){
+
+			@Override
+			public int compare(Integer o1, Integer o2) {
+				return Long.compare(m_Ends[o1], m_Ends[o2]);
+			}
+
+		});
 	}
-	
-	private GenomicCoordinate getFirstActiveStart(){
-		return m_ActiveStarts.first().getStart();
+
+	private void init(Genome genome){
+		m_Genome = genome;
+		int n = m_Queries.size();
+		final long[] starts = new long[n];
+		final long[] ends = new long[n];
+		Integer[] order = new Integer[n];
+		for(int i=0; i<n; i++){
+			starts[i] = genome.pack(m_Queries.get(i).getStart());
+			ends[i] = genome.pack(m_Queries.get(i).getEnd());
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>(){
+
+			@Override
+			public int compare(Integer o1, Integer o2) {
+				if(starts[o1] != starts[o2]){
+					return Long.compare(starts[o1], starts[o2]);
+				}
+				return Long.compare(ends[o1], ends[o2]);
+			}
+
+		});
+		m_Sorted = new LocationQuery[n];
+		m_Starts = new long[n];
+		m_Ends = new long[n];
+		m_Done = new boolean[n];
+		for(int i=0; i<n; i++){
+			m_Sorted[i] = m_Queries.get(order[i]);
+			m_Starts[i] = starts[order[i]];
+			m_Ends[i] = ends[order[i]];
+		}
 	}
-	
+
 	@Override
 	public void process(GenomicSequence next) {
-		if(m_Seq == null){
-			m_Seq = next;
-		}else{
-			m_Seq = m_Seq.join(next);
+		GenomicContext context = next.getStart().getGenomicContext();
+		if(!(context instanceof Genome)){
+			throw new RuntimeException("Error: sequence "+next.getRegion()+" does not belong to a reference genome");
+		}
+		Genome genome = (Genome) context;
+		this.process(next.getSequence(), genome.pack(next.getStart()), genome);
+	}
+
+	@Override
+	public void process(String bases, long start, Genome genome){
+		if(m_Genome == null){
+			this.init(genome);
 		}
-		//move queries that start in the region to the active queries q
-		while(!m_Remaining.isEmpty() && m_Seq.contains(m_Remaining.peek().getStart())){
-			LocationQuery cur = m_Remaining.poll();
-			m_Active.add(cur);
-			m_ActiveStarts.add(cur);
+		long end = start + bases.length() - 1;
+		if(m_Bases.length() > 0 && start != m_BasesStart + m_Bases.length()){
+			//not a continuation of the kept bases
+			m_Bases.setLength(0);
 		}
-		//process active queries that end within the current region
-		while(!m_Active.isEmpty() && m_Seq.contains(m_Active.peek().getEnd())){
-			LocationQuery cur = m_Active.poll();
-			m_ActiveStarts.remove(cur);
-			GenomicSequence subseq = m_Seq.subsequence(cur.getStart(), cur.getEnd());
-			cur.process(subseq);
+		if(m_Bases.length() == 0){
+			m_BasesStart = start;
 		}
-		//trim sequence
-		if(!m_Active.isEmpty()){
-			GenomicCoordinate firstStart = this.getFirstActiveStart();
-			if(m_Seq.contains(firstStart)){
-				m_Seq = m_Seq.subsequence(firstStart);
-			}else{
-				m_Seq = null;
+		//move queries that start in the bases to the active queries
+		while(m_Next < m_Sorted.length && m_Starts[m_Next] <= end){
+			if(m_Starts[m_Next] < m_BasesStart){
+				//the start of the region was never read
+				m_Done[m_Next++] = true;
+				continue;
 			}
-		}else{
-			m_Seq = null;
+			m_Active.add(m_Next++);
+		}
+		if(m_Active.isEmpty()){
+			m_Bases.setLength(0);
+			return;
+		}
+		m_Bases.append(bases);
+		//process active queries that end within the bases
+		while(!m_Active.isEmpty() && m_Ends[m_Active.peek()] <= end){
+			int i = m_Active.poll();
+			m_Done[i] = true;
+			LocationQuery q = m_Sorted[i];
+			String seq = m_Bases.substring((int) (m_Starts[i] - m_BasesStart), (int) (m_Ends[i] - m_BasesStart + 1));
+			q.process(new GenomicSequence(seq, q.getRegion()));
+		}
+		//trim the bases before the earliest active start
+		if(m_Active.isEmpty()){
+			m_Bases.setLength(0);
+			return;
+		}
+		while(m_Done[m_First]){
+			m_First++;
 		}
-		
-		
+		m_Bases.delete(0, (int) (m_Starts[m_First] - m_BasesStart));
+		m_BasesStart = m_Starts[m_First];
 	}
 
 	@Override
 	public boolean done() {
-		return m_Remaining.isEmpty() && m_Active.isEmpty();
+		return m_Next == m_Queries.size() && m_Active.isEmpty();
 	}
 
 }
@@ -0,0 +1,111 @@
+package util.genome.reader.query;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import util.genome.Chromosome;
+
+/**
+ * Matches MotifQueries with bit-parallel Shift-And. Bit j of the state of a motif is set when the last j+1 bases
+ * match the first j+1 positions of the motif, so one shift, or and and per base advance every partial match at
+ * once. Several motifs are packed into each 64 bit word, so short motifs share a single update per base.
+ */
+class MotifMatcher extends SequenceMatcher{
+
+	private static int longest(List<MotifQuery> queries){
+		int longest = 0;
+		for(MotifQuery q : queries){
+			longest = Math.max(longest, q.getMotif().length());
+		}
+		return longest;
+	}
+
+	private final List<MotifQuery> m_Queries;
+	//per word: bits at which motifs start and end, and the positions of each character that match
+	private final long[] m_Starts;
+	private final long[] m_Ends;
+	private final long[][] m_Masks;
+	//motifs of each word and the bit at which each ends
+	private final int[][] m_Motifs;
+	private final int[][] m_EndBits;
+	private final long[] m_States;
+
+	MotifMatcher(List<MotifQuery> queries){
+		super(longest(queries));
+		m_Queries = new ArrayList<MotifQuery>(queries);
+		//pack motifs into words in order
+		List<List<Integer>> words = new ArrayList<List<Integer>>();
+		int used = Long.SIZE;
+		for(int i=0; i<m_Queries.size(); i++){
+			int length = m_Queries.get(i).getMotif().length();
+			if(used + length > Long.SIZE){
+				words.add(new ArrayList<Integer>());
+				used = 0;
+			}
+			words.get(words.size()-1).add(i);
+			used += length;
+		}
+		m_Starts = new long[words.size()];
+		m_Ends = new long[words.size()];
+		m_Masks = new long[words.size()][256];
+		m_Motifs = new int[words.size()][];
+		m_EndBits = new int[words.size()][];
+		m_States = new long[words.size()];
+		for(int w=0; w<words.size(); w++){
+			List<Integer> motifs = words.get(w);
+			m_Motifs[w] = new int[motifs.size()];
+			m_EndBits[w] = new int[motifs.size()];
+			int bit = 0;
+			for(int k=0; k<motifs.size(); k++){
+				String motif = m_Queries.get(motifs.get(k)).getMotif();
+				m_Starts[w] |= 1L << bit;
+				for(int j=0; j<motif.length(); j++){
+					for(char base : MotifQuery.getBases(motif.charAt(j)).toCharArray()){
+						m_Masks[w][base] |= 1L << (bit + j);
+						m_Masks[w][Character.toLowerCase(base)] |= 1L << (bit + j);
+					}
+				}
+				bit += motif.length();
+				m_Ends[w] |= 1L << (bit - 1);
+				m_Motifs[w][k] = motifs.get(k);
+				m_EndBits[w][k] = bit - 1;
+			}
+		}
+	}
+
+	@Override
+	protected void reset() {
+		for(int w=0; w<m_States.length; w++){
+			m_States[w] = 0;
+		}
+	}
+
+	private void report(int word, long state, String seq, int from, int i, Chromosome chr, long firstIndex){
+		for(int k=0; k<m_Motifs[word].length; k++){
+			if((state & (1L << m_EndBits[word][k])) != 0){
+				MotifQuery q = m_Queries.get(m_Motifs[word][k]);
+				String bases = this.getBases(seq, from, i + 1, q.getMotif().length());
+				q.process(newMatch(bases, chr, firstIndex + i - from));
+			}
+		}
+	}
+
+	@Override
+	protected void scan(String seq, int from, int to, Chromosome chr, long firstIndex) {
+		for(int w=0; w<m_States.length; w++){
+			long state = m_States[w];
+			long starts = m_Starts[w];
+			long ends = m_Ends[w];
+			long[] masks = m_Masks[w];
+			for(int i=from; i<to; i++){
+				char c = seq.charAt(i);
+				state = ((state << 1) | starts) & (c < 256 ? masks[c] : 0);
+				if((state & ends) != 0){
+					this.report(w, state, seq, from, i, chr, firstIndex);
+				}
+			}
+			m_States[w] = state;
+		}
+	}
+
+}
@@ -0,0 +1,56 @@
+package util.genome.reader.query;
+
+/**
+ * SequenceQuery whose target is a degenerate motif written with IUPAC nucleotide codes, such as TGANTCA or
+ * WGATAR. A motif position matches a genomic base if the base is one of the bases of its code. Matching ignores
+ * case, and genomic bases other than A, C, G and T (such as N) match no position. Motifs are matched with
+ * bit-parallel Shift-And, so they may be at most {@link #MAX_LENGTH} bases long.
+ * <p>
+ * The GenomicSequences passed to {@link #process(util.genome.GenomicSequence)} contain the genomic bases that
+ * matched the motif.
+ */
+public abstract class MotifQuery extends SequenceQuery{
+	private static final long serialVersionUID = 1L;
+
+	public static final int MAX_LENGTH = 64;
+
+	private static final String BASES = "ACGT";
+	private static final String CODES = "ACGTURYSWKMBDHVN";
+	private static final String[] CODE_BASES = new String[]{
+		"A", "C", "G", "T", "T", "AG", "CT", "CG", "AT", "GT", "AC", "CGT", "AGT", "ACT", "ACG", "ACGT"
+	};
+
+	/**
+	 * Returns the bases matched by the given IUPAC code or null if it is not an IUPAC code
+	 */
+	public static String getBases(char code){
+		int index = CODES.indexOf(Character.toUpperCase(code));
+		return index >= 0 ? CODE_BASES[index] : null;
+	}
+
+	/**
+	 * Tests whether the given base matches the given IUPAC code
+	 */
+	public static boolean matches(char code, char base){
+		String bases = getBases(code);
+		base = Character.toUpperCase(base);
+		return bases != null && BASES.indexOf(base) >= 0 && bases.indexOf(base) >= 0;
+	}
+
+	protected MotifQuery(String motif){
+		super(motif.toUpperCase());
+		if(motif.isEmpty() || motif.length() > MAX_LENGTH){
+			throw new RuntimeException("Error: motif \""+motif+"\" must be between 1 and "+MAX_LENGTH+" bases long");
+		}
+		for(int i=0; i<motif.length(); i++){
+			if(getBases(motif.charAt(i)) == null){
+				throw new RuntimeException("Error: motif \""+motif+"\" contains \""+motif.charAt(i)+"\", which is not an IUPAC nucleotide code");
+			}
+		}
+	}
+
+	public String getMotif(){
+		return this.getTargetSequence();
+	}
+
+}
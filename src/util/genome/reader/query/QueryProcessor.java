@@ -1,10 +1,18 @@
 package util.genome.reader.query;
 
+import util.genome.Genome;
 import util.genome.GenomicSequence;
 
 public interface QueryProcessor {
 	
 	public void process(GenomicSequence next);
+	
+	/**
+	 * Processes the given bases, which start at the given packed location of the genome (see
+	 * {@link Genome#pack(util.genome.Chromosome, long)}). Readers use this to pass on blocks without creating
+	 * coordinates for them.
+	 */
+	public void process(String bases, long start, Genome genome);
 	public boolean done();
 	
 }
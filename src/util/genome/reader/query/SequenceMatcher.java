@@ -0,0 +1,81 @@
+package util.genome.reader.query;
+
+import util.genome.Chromosome;
+import util.genome.GenomicCoordinate;
+import util.genome.GenomicRegion;
+import util.genome.GenomicSequence;
+
+/**
+ * Streaming matcher used by the {@link SequenceQueryProcessor}. The processor splits the blocks it is given into
+ * runs of bases on a single chromosome and passes them to every matcher in order. Matchers keep their state
+ * between runs until they are reset, so matches may span blocks. The last bases seen are kept so that the
+ * bases of a match spanning blocks can be returned.
+ */
+abstract class SequenceMatcher {
+
+	private final char[] m_Tail;
+	private int m_TailLength = 0;
+
+	/**
+	 * @param window - length of the longest possible match
+	 */
+	protected SequenceMatcher(int window){
+		m_Tail = new char[Math.max(window - 1, 0)];
+	}
+
+	/**
+	 * Resets the matcher, as the next bases do not continue the previous ones
+	 */
+	void clear(){
+		m_TailLength = 0;
+		this.reset();
+	}
+
+	void process(String seq, int from, int to, Chromosome chr, long firstIndex){
+		this.scan(seq, from, to, chr, firstIndex);
+		//keep the last bases for matches continuing into the next run
+		int keep = Math.min(m_Tail.length, m_TailLength + to - from);
+		int fromSeq = Math.min(keep, to - from);
+		int fromTail = keep - fromSeq;
+		System.arraycopy(m_Tail, m_TailLength - fromTail, m_Tail, 0, fromTail);
+		seq.getChars(to - fromSeq, to, m_Tail, fromTail);
+		m_TailLength = keep;
+	}
+
+	/**
+	 * Returns the bases of a match of the given length ending just before index end of the current run
+	 */
+	protected String getBases(String seq, int from, int end, int length){
+		int start = end - length;
+		if(start >= from){
+			return seq.substring(start, end);
+		}
+		int fromTail = from - start;
+		StringBuilder bases = new StringBuilder(length);
+		bases.append(m_Tail, m_TailLength - fromTail, fromTail);
+		bases.append(seq, from, end);
+		return bases.toString();
+	}
+
+	/**
+	 * Returns the number of bases of the current chromosome available to a match ending just before index end
+	 * of the current run
+	 */
+	protected int getAvailable(int from, int end){
+		return m_TailLength + end - from;
+	}
+
+	protected static GenomicSequence newMatch(String bases, Chromosome chr, long end){
+		GenomicCoordinate startCoord = new GenomicCoordinate(chr, end - bases.length() + 1);
+		GenomicCoordinate endCoord = new GenomicCoordinate(chr, end);
+		return new GenomicSequence(bases, new GenomicRegion(startCoord, endCoord));
+	}
+
+	protected abstract void reset();
+
+	/**
+	 * Scans the bases [from, to) of seq. The base at from has the given base index on the chromosome.
+	 */
+	protected abstract void scan(String seq, int from, int to, Chromosome chr, long firstIndex);
+
+}
@@ -2,79 +2,99 @@ package util.genome.reader.query;
 
 import java.util.*;
 
-import util.genome.GenomicCoordinate;
-import util.genome.GenomicRegion;
+import util.genome.Chromosome;
+import util.genome.Genome;
 import util.genome.GenomicSequence;
 
+/**
+ * Finds every occurrence of the targets of the SequenceQueries in the sequence blocks it is given, in a single
+ * pass over each block. Literal targets are matched together by an {@link AhoCorasick} automaton and
+ * {@link MotifQuery} motifs by bit-parallel Shift-And, so the cost of a scan does not grow with the number of
+ * queries. {@link ApproximateQuery} near-matches are found by bit-parallel dynamic programming. Blocks that
+ * continue the previous block keep the matching state, so occurrences spanning blocks are found. Occurrences do
+ * not span chromosomes.
+ */
 public class SequenceQueryProcessor implements QueryProcessor{
-	
+
 	private final List<SequenceQuery> m_Queries;
-	private final Map<SequenceQuery, GenomicCoordinate> m_ProcessedTo;
-	private final int m_LongestQuery;
-	private GenomicSequence m_Seq;
-	
+	private final List<SequenceMatcher> m_Matchers;
+	private Chromosome m_Chr = null;
+	//base index of the next expected base on the current chromosome
+	private long m_Next = -1;
+
 	public SequenceQueryProcessor(List<SequenceQuery> queries){
 		m_Queries = new ArrayList<SequenceQuery>(queries);
-		m_ProcessedTo = new HashMap<SequenceQuery, GenomicCoordinate>();
-		m_LongestQuery = this.findLongestQuery(m_Queries);
-		m_Seq = null;
-	}
-	
-	private int findLongestQuery(List<SequenceQuery> queries){
-		int longest = 0;
-		for(SequenceQuery q : queries){
-			if(q.getTargetSequence().length() > longest){
-				longest = q.getTargetSequence().length();
+		List<SequenceQuery> literals = new ArrayList<SequenceQuery>();
+		List<MotifQuery> motifs = new ArrayList<MotifQuery>();
+		List<ApproximateQuery> approximate = new ArrayList<ApproximateQuery>();
+		for(SequenceQuery q : m_Queries){
+			if(q instanceof MotifQuery){
+				motifs.add((MotifQuery) q);
+			}else if(q instanceof ApproximateQuery){
+				approximate.add((ApproximateQuery) q);
+			}else{
+				literals.add(q);
 			}
 		}
-		return longest;
-	}
-	
-	private void process(SequenceQuery query){
-		//get starting search location
-		GenomicCoordinate startFrom;
-		if(m_ProcessedTo.containsKey(query)){
-			startFrom = m_ProcessedTo.get(query).increment(1);
-		}else{
-			startFrom = m_Seq.getStart();
+		m_Matchers = new ArrayList<SequenceMatcher>();
+		if(!literals.isEmpty()){
+			m_Matchers.add(new LiteralMatcher(literals));
 		}
-		//get ending search location
-		GenomicCoordinate searchTo = m_Seq.getEnd();
-		//if the query region isn't large enough to fit the target sequence, abort
-		if(startFrom.distance(searchTo) < query.getTargetSequence().length()){
-			return;
+		if(!motifs.isEmpty()){
+			m_Matchers.add(new MotifMatcher(motifs));
 		}
-		//search through sequences starting at start location going to end location
-		String target = query.getTargetSequence();
-		GenomicSequence search = new GenomicSequence(target, new GenomicRegion(startFrom, startFrom.increment(target.length()-1)));
-		while(search.getEnd().compareTo(searchTo) <= 0){
-			if(m_Seq.contains(search)){
-				query.process(search);
-			}
-			search = new GenomicSequence(target, search.getRegion().increment(1));
+		if(!approximate.isEmpty()){
+			m_Matchers.add(new ApproximateMatcher(approximate));
 		}
-		//update processed to location to last search location's start
-		m_ProcessedTo.put(query, search.getStart());
 	}
-	
+
 	@Override
 	public void process(GenomicSequence next) {
-		//update sequence with next sequence
-		if(m_Seq != null){
-			m_Seq.join(next);
-		}else{
-			m_Seq = next;
-		}
-		//process
-		for(SequenceQuery query : m_Queries){
-			this.process(query);
+		this.process(next.getSequence(), next.getStart().getChromosome(), next.getStart().getBaseIndex());
+	}
+
+	@Override
+	public void process(String bases, long start, Genome genome){
+		int chrIndex = genome.indexOfPacked(start);
+		this.process(bases, genome.getChr(chrIndex), start - genome.getPackedStart(chrIndex) + 1);
+	}
+
+	private void process(String seq, Chromosome chr, long index){
+		if(m_Queries.isEmpty()) return;
+		if(!chr.equals(m_Chr) || index != m_Next){
+			//not a continuation of the previous block
+			for(SequenceMatcher m : m_Matchers){
+				m.clear();
+			}
 		}
-		//trim sequence
-		if(m_LongestQuery <= 1){
-			m_Seq = null;
-		}else if(m_LongestQuery <= m_Seq.length()){
-			m_Seq = m_Seq.subsequence(m_Seq.getEnd().decrement(m_LongestQuery-2));
+		int from = 0;
+		while(from < seq.length()){
+			if(chr.getSize() >= 0 && index > chr.getSize()){
+				//the block continues onto the next chromosome
+				chr = chr.nextChr();
+				index = 1;
+				for(SequenceMatcher m : m_Matchers){
+					m.clear();
+				}
+			}
+			int to = seq.length();
+			if(chr.getSize() >= 0){
+				to = (int) Math.min(to, from + chr.getSize() - index + 1);
+			}
+			for(SequenceMatcher m : m_Matchers){
+				m.process(seq, from, to, chr, index);
+			}
+			index += to - from;
+			from = to;
+			if(chr.getSize() >= 0 && index > chr.getSize()){
+				//end of the chromosome, report matches waiting on the next base
+				for(SequenceMatcher m : m_Matchers){
+					m.clear();
+				}
+			}
 		}
+		m_Chr = chr;
+		m_Next = index;
 	}
 
 	@Override
@@ -1,10 +1,127 @@
 package util.genome.reader.threaded;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.SeekableByteChannel;
+import java.util.List;
+
+import util.genome.Chromosome;
+import util.genome.Genome;
+import util.genome.reader.FastaScanner;
+import util.genome.reader.query.BoundedQueryProcessor;
+import util.genome.reader.query.LocationBoundedSequenceQuery;
+import util.genome.reader.query.LocationQuery;
+import util.genome.reader.query.LocationQueryProcessor;
+import util.genome.reader.query.QueryProcessor;
+import util.genome.reader.query.SequenceQuery;
+import util.genome.reader.query.SequenceQueryProcessor;
+
+/**
+ * Reads a contiguous run of chromosomes of the genome file and processes the queries that fall within them
+ * using its own query processors.
+ */
 public class GenomeWorker implements Runnable{
-		
+
+	private final ThreadedGenomeReader m_Reader;
+	private final File m_GenomeFile;
+	private final Genome m_Genome;
+	private final int m_FirstChr;
+	private final int m_LastChr;
+	private final long m_From;
+	private final long m_To;
+	private final int m_BlockSize;
+	private final QueryProcessor[] m_Processors;
+	private int m_ChrIndex;
+
+	/**
+	 * @param from - byte offset of the first line after the header of the first chromosome
+	 * @param to - byte offset of the end of the last chromosome
+	 */
+	public GenomeWorker(ThreadedGenomeReader reader, File genomeFile, Genome genome, int firstChr, int lastChr, long from, long to, int blockSize,
+			List<LocationQuery> locationQueries, List<SequenceQuery> sequenceQueries, List<LocationBoundedSequenceQuery> boundedQueries){
+		m_Reader = reader;
+		m_GenomeFile = genomeFile;
+		m_Genome = genome;
+		m_FirstChr = firstChr;
+		m_LastChr = lastChr;
+		m_ChrIndex = firstChr;
+		m_From = from;
+		m_To = to;
+		m_BlockSize = blockSize;
+		m_Processors = new QueryProcessor[]{
+				new LocationQueryProcessor(locationQueries),
+				new SequenceQueryProcessor(sequenceQueries),
+				new BoundedQueryProcessor(boundedQueries)
+		};
+	}
+
+	private boolean done(){
+		for(QueryProcessor p : m_Processors){
+			if(!p.done()) return false;
+		}
+		return true;
+	}
+
+	private void completed(){
+		while(m_ChrIndex <= m_LastChr){
+			m_Reader.chromosomeCompleted(m_Genome.getChr(m_ChrIndex++));
+		}
+	}
+
 	@Override
 	public void run() {
-		//TODO
+		if(this.done()){
+			this.completed();
+			return;
+		}
+		try {
+			SeekableByteChannel channel = FastaScanner.openChannel(m_GenomeFile);
+			try{
+				new FastaScanner(channel, m_BlockSize).scan(m_From, m_To, true, new FastaScanner.Handler(){
+
+					private Chromosome m_Chr = m_Genome.getChr(m_FirstChr);
+					private long m_Count = 0;
+
+					@Override
+					public boolean header(String header, long offset) {
+						if(!Genome.isChrHeader(header)){
+							//not part of the genome, skip it
+							return false;
+						}
+						if(m_ChrIndex == m_LastChr){
+							//start of the next worker's chromosomes
+							return false;
+						}
+						m_Reader.chromosomeCompleted(m_Chr);
+						m_Chr = m_Genome.getChr(++m_ChrIndex);
+						m_Count = 0;
+						return true;
+					}
+
+					@Override
+					public boolean bases(byte[] block, int length) {
+						if(m_Chr.getSize() >= 0 && m_Count + length > m_Chr.getSize()){
+							length = (int) (m_Chr.getSize() - m_Count);
+							if(length <= 0) return true;
+						}
+						String bases = new String(block, 0, length, FastaScanner.ASCII);
+						long start = m_Genome.getPackedStart(m_ChrIndex) + m_Count;
+						for(QueryProcessor p : m_Processors){
+							p.process(bases, start, m_Genome);
+						}
+						m_Count += length;
+						m_Reader.basesRead(length);
+						return !done() && !Thread.currentThread().isInterrupted();
+					}
+
+				});
+			} finally {
+				channel.close();
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		this.completed();
 	}
 
 }
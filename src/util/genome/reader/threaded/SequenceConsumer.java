@@ -0,0 +1,59 @@
+package util.genome.reader.threaded;
+
+import java.util.List;
+
+import util.genome.GenomicSequence;
+import util.genome.reader.query.BoundedQueryProcessor;
+import util.genome.reader.query.LocationBoundedSequenceQuery;
+import util.genome.reader.query.LocationQuery;
+import util.genome.reader.query.LocationQueryProcessor;
+import util.genome.reader.query.QueryProcessor;
+import util.genome.reader.query.SequenceQuery;
+import util.genome.reader.query.SequenceQueryProcessor;
+
+/**
+ * Reads every block published to a {@link SequenceProvider} and processes its share of the queries using its own
+ * query processors.
+ */
+public class SequenceConsumer implements Runnable{
+
+	private final SequenceProvider m_Provider;
+	private final int m_Id;
+	private final QueryProcessor[] m_Processors;
+
+	public SequenceConsumer(SequenceProvider provider, int id, List<LocationQuery> locationQueries, List<SequenceQuery> sequenceQueries,
+			List<LocationBoundedSequenceQuery> boundedQueries){
+		m_Provider = provider;
+		m_Id = id;
+		m_Processors = new QueryProcessor[]{
+				new LocationQueryProcessor(locationQueries),
+				new SequenceQueryProcessor(sequenceQueries),
+				new BoundedQueryProcessor(boundedQueries)
+		};
+	}
+
+	private boolean done(){
+		for(QueryProcessor p : m_Processors){
+			if(!p.done()) return false;
+		}
+		return true;
+	}
+
+	@Override
+	public void run() {
+		try{
+			GenomicSequence block;
+			while(!this.done() && (block = m_Provider.next(m_Id)) != null){
+				for(QueryProcessor p : m_Processors){
+					p.process(block);
+				}
+			}
+		} catch (InterruptedException e){
+			Thread.currentThread().interrupt();
+		} finally {
+			//do not hold up the producer once this consumer stops reading
+			m_Provider.remove(m_Id);
+		}
+	}
+
+}
@@ -1,193 +1,169 @@
 package util.genome.reader.threaded;
 
-import util.genome.GenomicRegion;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
+import util.genome.GenomicSequence;
+
+/**
+ * Bounded single producer, multiple consumer ring buffer of sequence blocks. Every consumer sees every block
+ * in the order it was published. Each consumer tracks its own sequence number, so the producer only waits when
+ * the slowest consumer is a full buffer behind and consumers only wait when they have caught up.
+ * <p>
+ * Neither side takes a lock. Waiting threads spin briefly and then park, checking for interruption.
+ */
 public class SequenceProvider {
-	
-	private final Object m_WorkerLock = new Object();
-	private final Object m_SupplierLock = new Object();
-	
-	private volatile String m_Sequence;
-	private volatile GenomicRegion m_Region;
-	private int m_Workers;
-	private int m_ProcessingWorkers;
-	private int m_CompletedWorkers;
-	private boolean m_Updating;
-	private boolean m_Initialized;
-	private boolean m_Done;
-	
-	public SequenceProvider(int numWorkers){
-		m_Sequence = null;
-		m_Region = null;
-		m_Workers = numWorkers;
-		m_ProcessingWorkers = 0;
-		m_CompletedWorkers = numWorkers;
-		m_Updating = false;
-		m_Initialized = false;
-		m_Done = false;
+
+	public static final int DEFAULT_CAPACITY = 64;
+
+	private static final int SPINS = 100;
+	private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+	private static final long REMOVED = Long.MAX_VALUE;
+
+	private final GenomicSequence[] m_Buffer;
+	private final int m_Mask;
+	//sequence number of the last published block
+	private final AtomicLong m_Published = new AtomicLong(-1);
+	//sequence number of the last block read by each consumer
+	private final AtomicLong[] m_Consumed;
+	private volatile boolean m_Done = false;
+	private volatile boolean m_Shutdown = false;
+	private volatile int m_MaxDepth = 0;
+
+	public SequenceProvider(int numConsumers){
+		this(numConsumers, DEFAULT_CAPACITY);
 	}
-	
-	private void checkDataReadyAndWait(){
-		synchronized(m_WorkerLock){
-			while(m_Updating || !m_Initialized){
-				try {
-					this.wait();
-				} catch (InterruptedException e) {
-					// TODO Auto-generated catch block
-					e.printStackTrace();
-				}
-			}
+
+	/**
+	 * @param numConsumers - number of consumers reading from this provider
+	 * @param capacity - number of blocks the producer may run ahead of the slowest consumer, rounded up to a power of 2
+	 */
+	public SequenceProvider(int numConsumers, int capacity){
+		int size = 1;
+		while(size < capacity){
+			size <<= 1;
 		}
-	}
-	
-	public String getSequence(){
-		this.checkDataReadyAndWait();
-		return m_Sequence;
-	}
-	
-	public GenomicRegion getRegion(){
-		this.checkDataReadyAndWait();
-		return m_Region;
-	}
-	
-	public void processing(){
-		synchronized(m_WorkerLock){
-			m_ProcessingWorkers++;
-			m_WorkerLock.notifyAll();
+		m_Buffer = new GenomicSequence[size];
+		m_Mask = size - 1;
+		m_Consumed = new AtomicLong[numConsumers];
+		for(int i=0; i<numConsumers; i++){
+			m_Consumed[i] = new AtomicLong(-1);
 		}
 	}
-	
-	private boolean allWorkersProcessing(){
-		return m_ProcessingWorkers == m_Workers;
-	}
-	
-	public void processingComplete(){
-		synchronized(m_WorkerLock){
-			while(!this.allWorkersProcessing()){
-				try {
-					m_WorkerLock.wait();
-				} catch (InterruptedException e) {
-					// TODO Auto-generated catch block
-					e.printStackTrace();
-				}
-			}
-			m_CompletedWorkers++;
-			if(m_CompletedWorkers >= m_Workers){
-				m_ProcessingWorkers = 0;
-			}
+
+	private static void await(int attempt) throws InterruptedException{
+		if(Thread.interrupted()){
+			throw new InterruptedException();
 		}
-		synchronized(m_SupplierLock){
-			m_SupplierLock.notifyAll();
+		if(attempt < SPINS){
+			Thread.yield();
+		}else{
+			LockSupport.parkNanos(PARK_NANOS);
 		}
-		this.waitForNewData();
 	}
-	
-	private void waitForNewData(){
-		synchronized(m_WorkerLock){
-			while(m_CompletedWorkers != 0){
-				try {
-					m_WorkerLock.wait();
-				} catch (InterruptedException e) {
-					// TODO Auto-generated catch block
-					e.printStackTrace();
-				}
-			}
+
+	private long slowestConsumer(){
+		long min = REMOVED;
+		for(AtomicLong c : m_Consumed){
+			long seq = c.get();
+			if(seq < min) min = seq;
 		}
+		return min;
 	}
-	
-	public void workerTerminated(){
-		synchronized(m_WorkerLock){
-			while(!this.allWorkersProcessing()){
-				try {
-					m_WorkerLock.wait();
-				} catch (InterruptedException e) {
-					// TODO Auto-generated catch block
-					e.printStackTrace();
-				}
-			}
-			m_Workers--;
-			if(m_CompletedWorkers >= m_Workers){
-				m_ProcessingWorkers = 0;
-			}
+
+	/**
+	 * Publishes the next block, waiting while the buffer is full.
+	 * @return false if the provider was shut down or every consumer was removed, so the block will not be read
+	 */
+	public boolean publish(GenomicSequence block) throws InterruptedException{
+		long next = m_Published.get() + 1;
+		int attempt = 0;
+		long slowest;
+		while(next - (slowest = this.slowestConsumer()) > m_Buffer.length){
+			if(m_Shutdown) return false;
+			await(attempt++);
 		}
-		synchronized(m_SupplierLock){
-			m_SupplierLock.notifyAll();
+		if(m_Shutdown || slowest == REMOVED) return false;
+		m_Buffer[(int) (next & m_Mask)] = block;
+		m_Published.set(next);
+		int depth = (int) (next - slowest);
+		if(depth > m_MaxDepth){
+			m_MaxDepth = depth;
 		}
+		return true;
 	}
-	
-	private boolean allWorkersCompleted(){
-		synchronized(m_WorkerLock){
-			return m_CompletedWorkers >= m_Workers;
+
+	/**
+	 * Returns the next block for the given consumer, waiting until one is published.
+	 * @return the next block or null once the producer is done and the consumer has read every block, or
+	 * the provider was shut down
+	 */
+	public GenomicSequence next(int consumer) throws InterruptedException{
+		AtomicLong consumed = m_Consumed[consumer];
+		long next = consumed.get() + 1;
+		int attempt = 0;
+		while(next > m_Published.get()){
+			if(m_Shutdown) return null;
+			if(m_Done && next > m_Published.get()) return null;
+			await(attempt++);
 		}
+		if(m_Shutdown) return null;
+		int slot = (int) (next & m_Mask);
+		GenomicSequence block = m_Buffer[slot];
+		consumed.set(next);
+		return block;
 	}
-	
-	public void setData(String sequence, GenomicRegion region){
-		synchronized(m_SupplierLock){
-			while(!this.allWorkersCompleted()){
-				try {
-					m_SupplierLock.wait();
-				} catch (InterruptedException e) {
-					// TODO Auto-generated catch block
-					e.printStackTrace();
-				}
-			}
-		}
-		synchronized(m_WorkerLock){
-			m_Updating = true;
-			m_Sequence = sequence;
-			m_Region = region;
-			if(!m_Initialized){
-				m_Initialized = true;
-			}
-			m_CompletedWorkers = 0;
-			m_Updating = false;
-			m_WorkerLock.notifyAll();
-		}
+
+	/**
+	 * Removes the consumer so that the producer no longer waits for it
+	 */
+	public void remove(int consumer){
+		m_Consumed[consumer].set(REMOVED);
 	}
-	
-	public boolean done(){
-		synchronized(m_WorkerLock){
-			while(!m_Initialized){
-				try {
-					m_WorkerLock.wait();
-				} catch (InterruptedException e) {
-					// TODO Auto-generated catch block
-					e.printStackTrace();
-				}
-			}
-			return m_Done;
-		}
+
+	/**
+	 * Called by the producer once all blocks have been published. Consumers still receive the blocks
+	 * remaining in the buffer.
+	 */
+	public void setDone(){
+		m_Done = true;
 	}
-	
-	public void setDone(boolean done){
-		synchronized(m_SupplierLock){
-			while(!this.allWorkersCompleted()){
-				try {
-					m_SupplierLock.wait();
-				} catch (InterruptedException e) {
-					// TODO Auto-generated catch block
-					e.printStackTrace();
-				}
-			}
-		}
-		synchronized(m_WorkerLock){
-			m_Done = done;
-			m_CompletedWorkers = 0;
-			m_WorkerLock.notifyAll();
-		}
+
+	public boolean isDone(){
+		return m_Done;
+	}
+
+	/**
+	 * Stops the producer and all consumers without draining the buffer
+	 */
+	public void shutdown(){
+		m_Shutdown = true;
+	}
+
+	public boolean isShutdown(){
+		return m_Shutdown;
+	}
+
+	/**
+	 * Returns the number of published blocks that the slowest consumer has not read yet
+	 */
+	public int getDepth(){
+		long slowest = this.slowestConsumer();
+		if(slowest == REMOVED) return 0;
+		return (int) (m_Published.get() - slowest);
+	}
+
+	/**
+	 * Returns the largest depth the buffer reached. A max depth at capacity means the consumers are the
+	 * bottleneck, a max depth near zero means the producer is.
+	 */
+	public int getMaxDepth(){
+		return m_MaxDepth;
+	}
+
+	public int getCapacity(){
+		return m_Buffer.length;
 	}
-	
-	
-	
-	
-	
-	
-	
-	
-	
-	
-	
-	
-	
-	
+
 }
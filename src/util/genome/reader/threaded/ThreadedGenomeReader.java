@@ -1,50 +1,470 @@
 package util.genome.reader.threaded;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.util.HashMap;
+import java.io.IOException;
+import java.nio.channels.SeekableByteChannel;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
-import java.util.Map;
-import java.util.Scanner;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import jprobe.services.ErrorHandler;
 import plugins.genome.GenomeActivator;
+import util.genome.Chromosome;
 import util.genome.Genome;
+import util.genome.GenomicCoordinate;
+import util.genome.GenomicSequence;
 import util.genome.reader.AbstractGenomeReader;
+import util.genome.reader.FastaScanner;
+import util.genome.reader.PrereadIndex;
+import util.genome.reader.query.ApproximateQuery;
 import util.genome.reader.query.LocationBoundedSequenceQuery;
 import util.genome.reader.query.LocationQuery;
+import util.genome.reader.query.MotifQuery;
 import util.genome.reader.query.SequenceQuery;
 import util.progress.ProgressEvent;
+import util.progress.ProgressEvent.Type;
+import util.progress.ProgressListener;
 
+/**
+ * GenomeReader that reads the genome in parallel. In {@link SplitMode#CHROMOSOMES} mode the genome is split at
+ * chromosome boundaries using the byte offsets of the pre-read genome and each run of chromosomes is read by a
+ * {@link GenomeWorker} with its own query processors. Chromosomes are only grouped together when a query spans them.
+ * Matches of SequenceQueries spanning two chromosomes are not reported in this mode.
+ * <p>
+ * In {@link SplitMode#QUERIES} mode the calling thread reads the genome once and publishes blocks of it to a
+ * {@link SequenceProvider}. The queries are divided among {@link SequenceConsumer}s that all read every block.
+ * This suits many SequenceQueries or genomes with few, large chromosomes.
+ * <p>
+ * Query results are buffered by the workers and handed to the queries on the calling thread, so queries do not
+ * need to be thread safe. In CHROMOSOMES mode they are handed over in genome order.
+ */
 public class ThreadedGenomeReader extends AbstractGenomeReader{
 	
+	public enum SplitMode{
+		CHROMOSOMES,
+		QUERIES;
+	}
+
 	private final int PROCESSORS = Runtime.getRuntime().availableProcessors();
-	
-	private final ExecutorService m_ThreadPool;
+
+	private final File m_GenomeFile;
 	private final Genome m_Genome;
-	
+	private final PrereadIndex m_Index;
+	private final int m_Threads;
+	private UpdateMode m_Mode = UpdateMode.FULL;
+	private SplitMode m_SplitMode = SplitMode.CHROMOSOMES;
+	private int m_BlockSize = FastaScanner.BLOCK_SIZE;
+	private int m_BufferCapacity = SequenceProvider.DEFAULT_CAPACITY;
+	private int m_MaxBufferDepth = 0;
+
+	private long m_TotalBases;
+	private long m_BasesRead;
+	private int m_ChrsCompleted;
+	private int m_LastPercent;
+
 	public ThreadedGenomeReader(File genomeFile){
+		this(genomeFile, new ArrayList<ProgressListener>());
+	}
+
+	public ThreadedGenomeReader(File genomeFile, Collection<ProgressListener> listeners){
+		super(listeners);
+		m_GenomeFile = genomeFile;
+		m_Index = this.prereadIndex(genomeFile);
 		m_Genome = this.prereadGenome(genomeFile);
-		m_ThreadPool = Executors.newFixedThreadPool(PROCESSORS > 1 ? PROCESSORS -1 : 1);
+		m_Threads = PROCESSORS > 1 ? PROCESSORS - 1 : 1;
 	}
-	
+
 	@Override
 	public Genome getGenome(){
 		return m_Genome;
 	}
 
+	private class Unit{
+
+		private final int m_First;
+		private final int m_Last;
+		private final List<Runnable> m_Results = new ArrayList<Runnable>();
+		private final List<LocationQuery> m_Locations = new ArrayList<LocationQuery>();
+		private final List<SequenceQuery> m_Sequences = new ArrayList<SequenceQuery>();
+		private final List<LocationBoundedSequenceQuery> m_Bounded = new ArrayList<LocationBoundedSequenceQuery>();
+
+		private Unit(int first, int last){
+			m_First = first;
+			m_Last = last;
+		}
+
+		private void add(final LocationQuery query){
+			m_Locations.add(new LocationQuery(query.getRegion()){
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				public void process(final GenomicSequence found) {
+					m_Results.add(new Runnable(){
+						@Override
+						public void run() {
+							query.process(found);
+						}
+					});
+				}
+
+			});
+		}
+
+		private void add(final SequenceQuery query){
+			if(query instanceof MotifQuery){
+				//keep the kind of query, as it decides how the target is matched
+				m_Sequences.add(new MotifQuery(query.getTargetSequence()){
+					private static final long serialVersionUID = 1L;
+
+					@Override
+					public void process(GenomicSequence found) {
+						defer(query, found);
+					}
+
+				});
+				return;
+			}
+			if(query instanceof ApproximateQuery){
+				final ApproximateQuery approximate = (ApproximateQuery) query;
+				m_Sequences.add(new ApproximateQuery(approximate.getTargetSequence(), approximate.getMaxDistance(), approximate.getDistanceMode()){
+					private static final long serialVersionUID = 1L;
+
+					@Override
+					public void process(final GenomicSequence found, final int distance) {
+						m_Results.add(new Runnable(){
+							@Override
+							public void run() {
+								approximate.process(found, distance);
+							}
+						});
+					}
+
+				});
+				return;
+			}
+			m_Sequences.add(new SequenceQuery(query.getTargetSequence()){
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				public void process(GenomicSequence found) {
+					defer(query, found);
+				}
+
+			});
+		}
+
+		private void defer(final SequenceQuery query, final GenomicSequence found){
+			m_Results.add(new Runnable(){
+				@Override
+				public void run() {
+					query.process(found);
+				}
+			});
+		}
+
+		private void add(final LocationBoundedSequenceQuery query){
+			m_Bounded.add(new LocationBoundedSequenceQuery(query.getTargetSequence(), query.getRegion()){
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				public void process(final GenomicSequence found) {
+					m_Results.add(new Runnable(){
+						@Override
+						public void run() {
+							query.process(found);
+						}
+					});
+				}
+
+			});
+		}
+
+		private GenomeWorker createWorker(){
+			long from = m_Index.getOffset(m_First);
+			long to = m_Last + 1 < m_Index.size() ? m_Index.getOffset(m_Last + 1) : Long.MAX_VALUE;
+			return new GenomeWorker(ThreadedGenomeReader.this, m_GenomeFile, m_Genome, m_First, m_Last, from, to, m_BlockSize, m_Locations, m_Sequences, m_Bounded);
+		}
+
+	}
+
+	/**
+	 * Splits the genome into runs of chromosomes such that every query falls within a single run
+	 */
+	private List<Unit> createUnits(List<LocationQuery> locationQueries, List<LocationBoundedSequenceQuery> boundedQueries){
+		int numChrs = m_Genome.getNumChrs();
+		boolean[] joinNext = new boolean[numChrs];
+		for(LocationQuery q : locationQueries){
+			this.join(joinNext, q.getStart().getChromosome(), q.getEnd().getChromosome());
+		}
+		for(LocationBoundedSequenceQuery q : boundedQueries){
+			this.join(joinNext, q.getStart().getChromosome(), q.getEnd().getChromosome());
+		}
+		List<Unit> units = new ArrayList<Unit>();
+		int first = 0;
+		for(int i=0; i<numChrs; i++){
+			if(!joinNext[i]){
+				units.add(new Unit(first, i));
+				first = i+1;
+			}
+		}
+		return units;
+	}
+
+	private void join(boolean[] joinNext, Chromosome start, Chromosome end){
+		if(start.equals(end)) return;
+		int last = m_Genome.indexOf(end);
+		for(int i=m_Genome.indexOf(start); i<last; i++){
+			joinNext[i] = true;
+		}
+	}
+
 	@Override
 	public void read(List<LocationQuery> locationQueries, List<SequenceQuery> sequenceQueries, List<LocationBoundedSequenceQuery> boundedQueries) {
-		// TODO Auto-generated method stub
-		
+		if(m_Genome == null || m_Index == null){
+			return;
+		}
+		for(int i=0; i<m_Index.size(); i++){
+			if(m_Index.getOffset(i) < 0){
+				ErrorHandler.getInstance().handleException(new Exception("Error: "+m_GenomeFile+" does not contain the genome sequence"), GenomeActivator.getBundle());
+				return;
+			}
+		}
+		synchronized(this){
+			m_TotalBases = 0;
+			for(Chromosome chr : m_Genome.getChrs()){
+				m_TotalBases += chr.getSize();
+			}
+			m_BasesRead = 0;
+			m_ChrsCompleted = 0;
+			m_LastPercent = -1;
+		}
+		switch(m_SplitMode){
+		case QUERIES:
+			this.readQueries(locationQueries, sequenceQueries, boundedQueries);
+			break;
+		default:
+			this.readChromosomes(locationQueries, sequenceQueries, boundedQueries);
+			break;
+		}
+		this.notifyListeners(new ProgressEvent(this, Type.COMPLETED));
+	}
+	
+	private void readChromosomes(List<LocationQuery> locationQueries, List<SequenceQuery> sequenceQueries, List<LocationBoundedSequenceQuery> boundedQueries){
+		List<Unit> units = this.createUnits(locationQueries, boundedQueries);
+		Unit[] chrUnits = new Unit[m_Genome.getNumChrs()];
+		for(Unit u : units){
+			for(int i=u.m_First; i<=u.m_Last; i++){
+				chrUnits[i] = u;
+			}
+			for(SequenceQuery q : sequenceQueries){
+				u.add(q);
+			}
+		}
+		for(LocationQuery q : locationQueries){
+			chrUnits[m_Genome.indexOf(q.getStart().getChromosome())].add(q);
+		}
+		for(LocationBoundedSequenceQuery q : boundedQueries){
+			chrUnits[m_Genome.indexOf(q.getStart().getChromosome())].add(q);
+		}
+		ExecutorService pool = Executors.newFixedThreadPool(m_Threads);
+		try{
+			List<Future<?>> futures = new ArrayList<Future<?>>();
+			for(Unit u : units){
+				futures.add(pool.submit(u.createWorker()));
+			}
+			//hand results to the queries in genome order as the workers finish
+			for(int i=0; i<units.size(); i++){
+				futures.get(i).get();
+				for(Runnable result : units.get(i).m_Results){
+					result.run();
+				}
+				units.get(i).m_Results.clear();
+			}
+		} catch (InterruptedException e){
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e){
+			ErrorHandler.getInstance().handleException(new Exception(e.getCause()), GenomeActivator.getBundle());
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+	
+	private void readQueries(List<LocationQuery> locationQueries, List<SequenceQuery> sequenceQueries, List<LocationBoundedSequenceQuery> boundedQueries){
+		//deal the queries out to the consumers
+		Unit[] consumers = new Unit[m_Threads];
+		for(int i=0; i<consumers.length; i++){
+			consumers[i] = new Unit(0, m_Genome.getNumChrs() - 1);
+		}
+		for(int i=0; i<locationQueries.size(); i++){
+			consumers[i % consumers.length].add(locationQueries.get(i));
+		}
+		for(int i=0; i<sequenceQueries.size(); i++){
+			consumers[i % consumers.length].add(sequenceQueries.get(i));
+		}
+		for(int i=0; i<boundedQueries.size(); i++){
+			consumers[i % consumers.length].add(boundedQueries.get(i));
+		}
+		final SequenceProvider provider = new SequenceProvider(consumers.length, m_BufferCapacity);
+		ExecutorService pool = Executors.newFixedThreadPool(consumers.length);
+		try{
+			List<Future<?>> futures = new ArrayList<Future<?>>();
+			for(int i=0; i<consumers.length; i++){
+				Unit u = consumers[i];
+				futures.add(pool.submit(new SequenceConsumer(provider, i, u.m_Locations, u.m_Sequences, u.m_Bounded)));
+			}
+			try{
+				this.produce(provider);
+				provider.setDone();
+			} catch (InterruptedException e){
+				provider.shutdown();
+				Thread.currentThread().interrupt();
+				return;
+			}
+			for(int i=0; i<consumers.length; i++){
+				futures.get(i).get();
+				for(Runnable result : consumers[i].m_Results){
+					result.run();
+				}
+				consumers[i].m_Results.clear();
+			}
+		} catch (InterruptedException e){
+			provider.shutdown();
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e){
+			provider.shutdown();
+			ErrorHandler.getInstance().handleException(new Exception(e.getCause()), GenomeActivator.getBundle());
+		} catch (IOException e){
+			provider.shutdown();
+			ErrorHandler.getInstance().handleException(e, GenomeActivator.getBundle());
+		} finally {
+			pool.shutdownNow();
+			m_MaxBufferDepth = provider.getMaxDepth();
+		}
+	}
+	
+	/**
+	 * Scans the genome file on the calling thread, publishing it block by block to the provider
+	 */
+	private void produce(final SequenceProvider provider) throws IOException, InterruptedException{
+		SeekableByteChannel channel = FastaScanner.openChannel(m_GenomeFile);
+		try{
+			final InterruptedException[] interrupted = new InterruptedException[1];
+			new FastaScanner(channel, m_BlockSize).scan(new FastaScanner.Handler(){
+				
+				private int m_ChrIndex = -1;
+				private Chromosome m_Chr = null;
+				private long m_Count = 0;
+				
+				@Override
+				public boolean header(String header, long offset) {
+					if(!Genome.isChrHeader(header) || m_ChrIndex + 1 >= m_Genome.getNumChrs()){
+						return false;
+					}
+					if(m_Chr != null){
+						chromosomeCompleted(m_Chr);
+					}
+					m_Chr = m_Genome.getChr(++m_ChrIndex);
+					m_Count = 0;
+					return true;
+				}
+				
+				@Override
+				public boolean bases(byte[] block, int length) {
+					if(m_Chr == null) return true;
+					if(m_Chr.getSize() >= 0 && m_Count + length > m_Chr.getSize()){
+						length = (int) (m_Chr.getSize() - m_Count);
+						if(length <= 0) return true;
+					}
+					GenomicCoordinate start = m_Genome.newGenomicCoordinate(m_Chr, m_Count + 1);
+					GenomicCoordinate end = m_Genome.newGenomicCoordinate(m_Chr, m_Count + length);
+					GenomicSequence seq = new GenomicSequence(new String(block, 0, length, FastaScanner.ASCII), m_Genome.newGenomicRegion(start, end));
+					m_Count += length;
+					basesRead(length);
+					try {
+						return provider.publish(seq);
+					} catch (InterruptedException e) {
+						interrupted[0] = e;
+						return false;
+					}
+				}
+				
+			});
+			if(interrupted[0] != null){
+				throw interrupted[0];
+			}
+		} finally {
+			channel.close();
+		}
+	}
+
+	synchronized void basesRead(long bases){
+		m_BasesRead += bases;
+		if(m_Mode == UpdateMode.FULL){
+			int percent = m_TotalBases > 0 ? (int) (100.0 * m_BasesRead / m_TotalBases) : 100;
+			if(percent != m_LastPercent){
+				m_LastPercent = percent;
+				this.notifyReadProgress(percent);
+			}
+		}
+	}
+
+	synchronized void chromosomeCompleted(Chromosome chr){
+		m_ChrsCompleted++;
+		if(m_Mode == UpdateMode.CHROM_ONLY){
+			this.notifyReadProgress(m_TotalBases > 0 ? (int) (100.0 * m_BasesRead / m_TotalBases) : 100);
+		}
+	}
+
+	private void notifyReadProgress(int percent){
+		this.notifyListeners(new ProgressEvent(this, Type.UPDATE, percent, 100,
+				"Reading "+m_GenomeFile.getName()+": "+m_ChrsCompleted+"/"+m_Genome.getNumChrs()+" chromosomes"));
 	}
 
 	@Override
 	public void setUpdateMode(UpdateMode mode) {
-		// TODO Auto-generated method stub
-		
+		m_Mode = mode;
+	}
+	
+	public void setSplitMode(SplitMode mode){
+		m_SplitMode = mode;
+	}
+	
+	public SplitMode getSplitMode(){
+		return m_SplitMode;
+	}
+	
+	/**
+	 * Sets the number of bases in each block handed to the query processors
+	 */
+	public void setBlockSize(int bases){
+		m_BlockSize = bases;
+	}
+	
+	public int getBlockSize(){
+		return m_BlockSize;
+	}
+	
+	/**
+	 * Sets the number of blocks the reading thread may run ahead of the slowest consumer in QUERIES mode
+	 */
+	public void setBufferCapacity(int blocks){
+		m_BufferCapacity = blocks;
+	}
+	
+	public int getBufferCapacity(){
+		return m_BufferCapacity;
+	}
+	
+	/**
+	 * Returns the largest number of blocks that were waiting for a consumer during the last read in QUERIES mode.
+	 * This being at the capacity means the consumers are the bottleneck and larger blocks may help.
+	 */
+	public int getMaxBufferDepth(){
+		return m_MaxBufferDepth;
 	}
 
 
@@ -0,0 +1,312 @@
+package util.genome.tests;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.wiring.BundleWiring;
+
+import chiptools.jprobe.data.Peaks;
+import jprobe.CoreDataManager;
+import jprobe.save.Compression;
+import jprobe.save.LoadException;
+import jprobe.save.SaveException;
+import jprobe.save.SaveManager;
+import jprobe.services.data.Data;
+import jprobe.services.data.StoredData;
+import jprobe.services.data.StoredDataUtils;
+import plugins.testDataAndFunction.IntField;
+import plugins.testDataAndFunction.TestData;
+import util.genome.Strand;
+import util.genome.peak.Peak;
+import util.genome.peak.PeakGroup;
+
+public class CoreDataManagerTest extends junit.framework.TestCase{
+
+	private static final String TAG = "core";
+	//"JPDM"
+	private static final int MAGIC = 0x4A50444D;
+
+	private BundleContext m_Context;
+	private File m_Workspace;
+	private Random m_Random;
+
+	/**
+	 * Makes a BundleContext with a single bundle that provides every class through the loader of this test
+	 */
+	private static BundleContext newContext(){
+		final ClassLoader loader = CoreDataManagerTest.class.getClassLoader();
+		final BundleWiring wiring = (BundleWiring) Proxy.newProxyInstance(loader, new Class<?>[]{BundleWiring.class}, new InvocationHandler(){
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args){
+				return method.getName().equals("getClassLoader") ? loader : null;
+			}
+		});
+		final Bundle bundle = (Bundle) Proxy.newProxyInstance(loader, new Class<?>[]{Bundle.class}, new InvocationHandler(){
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args){
+				String name = method.getName();
+				if(name.equals("adapt")) return wiring;
+				if(name.equals("getSymbolicName")) return "test";
+				if(name.equals("hashCode")) return System.identityHashCode(proxy);
+				if(name.equals("equals")) return proxy == args[0];
+				return null;
+			}
+		});
+		return (BundleContext) Proxy.newProxyInstance(loader, new Class<?>[]{BundleContext.class}, new InvocationHandler(){
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args){
+				return method.getName().equals("getBundles") ? new Bundle[]{bundle} : null;
+			}
+		});
+	}
+
+	@Override
+	protected void setUp() throws IOException{
+		m_Context = newContext();
+		m_Workspace = File.createTempFile("workspace", ".sav");
+		m_Random = new Random(7);
+	}
+
+	@Override
+	protected void tearDown(){
+		m_Workspace.delete();
+	}
+
+	private Peaks newPeaks(int size){
+		List<Peak> peaks = new ArrayList<Peak>();
+		for(int i=0; i<size; i++){
+			long start = m_Random.nextInt(1000000);
+			peaks.add(new Peak("chr"+(1+m_Random.nextInt(5)), start, start+1+m_Random.nextInt(500), "p"+i, m_Random.nextInt(1000),
+					m_Random.nextBoolean() ? Strand.PLUS : Strand.MINUS, m_Random.nextDouble(), m_Random.nextDouble(), m_Random.nextDouble(), -1));
+		}
+		return new Peaks(new PeakGroup(peaks));
+	}
+
+	private CoreDataManager newManager(){
+		return new CoreDataManager(null, m_Context);
+	}
+
+	private static SaveManager newSaveManager(CoreDataManager data){
+		SaveManager manager = new SaveManager();
+		manager.addSaveable(data, TAG);
+		return manager;
+	}
+
+	private CoreDataManager load(boolean lazy) throws LoadException{
+		CoreDataManager data = this.newManager();
+		data.setLazyLoading(lazy);
+		newSaveManager(data).load(m_Workspace);
+		return data;
+	}
+
+	private static Map<String, PeakGroup> contents(CoreDataManager data){
+		Map<String, PeakGroup> contents = new HashMap<String, PeakGroup>();
+		for(String name : data.getDataNames()){
+			contents.put(name, ((Peaks) StoredDataUtils.unwrap(data.getData(name))).getPeaks());
+		}
+		return contents;
+	}
+
+	public void testRoundTrip() throws SaveException, LoadException{
+		for(Compression compression : Compression.values()){
+			CoreDataManager data = this.newManager();
+			data.setCompression(compression);
+			//more datasets than threads, so some wait to be written
+			for(int i=0; i<3*Runtime.getRuntime().availableProcessors()+1; i++){
+				data.addData(this.newPeaks(1 + m_Random.nextInt(2000)), "peaks"+i, null);
+			}
+			newSaveManager(data).save(m_Workspace);
+			CoreDataManager loaded = this.load(false);
+			assertEquals(compression.toString(), contents(data), contents(loaded));
+			for(Data d : loaded.getAllData()){
+				assertEquals(Peaks.class, d.getClass());
+			}
+			assertFalse(loaded.hasChanges());
+		}
+	}
+
+	public void testSaveChanges() throws SaveException, LoadException{
+		CoreDataManager data = this.newManager();
+		Peaks first = this.newPeaks(500);
+		Peaks second = this.newPeaks(500);
+		Peaks third = this.newPeaks(500);
+		data.addData(first, "first", null);
+		data.addData(second, "second", null);
+		SaveManager saves = newSaveManager(data);
+		saves.save(m_Workspace);
+		assertFalse(data.hasChanges());
+		long length = m_Workspace.length();
+		saves.saveChanges(m_Workspace);
+		assertEquals(length, m_Workspace.length());
+		
+		data.addData(third, "third", null);
+		saves.saveChanges(m_Workspace);
+		data.removeData("first", null);
+		saves.saveChanges(m_Workspace);
+		data.rename(second, "renamed", null);
+		assertTrue(data.hasChanges());
+		saves.saveChanges(m_Workspace);
+		assertFalse(data.hasChanges());
+		
+		Map<String, PeakGroup> expected = new HashMap<String, PeakGroup>();
+		expected.put("renamed", second.getPeaks());
+		expected.put("third", third.getPeaks());
+		assertEquals(expected, contents(this.load(false)));
+		CoreDataManager loaded = this.load(true);
+		assertEquals(expected, contents(loaded));
+		
+		//changes appended after loading the workspace
+		SaveManager reloaded = newSaveManager(loaded);
+		reloaded.load(m_Workspace);
+		loaded.removeData("third", null);
+		reloaded.saveChanges(m_Workspace);
+		expected.remove("third");
+		assertEquals(expected, contents(this.load(false)));
+		//compacting keeps the data and drops the changes
+		length = m_Workspace.length();
+		reloaded.compact(m_Workspace);
+		assertTrue(m_Workspace.length() < length);
+		assertEquals(expected, contents(this.load(true)));
+	}
+
+	public void testSaveEdits() throws SaveException, LoadException{
+		CoreDataManager data = this.newManager();
+		TestData test = new TestData("a", 1, 2.5);
+		data.addData(test, "test", null);
+		data.addData(this.newPeaks(100), "peaks", null);
+		SaveManager saves = newSaveManager(data);
+		saves.save(m_Workspace);
+		assertFalse(data.hasChanges());
+		test.setValue(0, 1, new IntField(5));
+		assertTrue(data.hasChanges());
+		assertTrue(data.changesSinceLastSave());
+		saves.saveChanges(m_Workspace);
+		assertFalse(data.hasChanges());
+		CoreDataManager eager = this.load(false);
+		assertEquals(2, eager.getDataNames().length);
+		assertEquals(5, ((TestData) eager.getData("test")).getInt());
+		CoreDataManager lazy = this.load(true);
+		assertEquals(2, lazy.getDataNames().length);
+		assertEquals(5, ((TestData) StoredDataUtils.unwrap(lazy.getData("test"))).getInt());
+	}
+
+	public void testSaveLazyEdits() throws SaveException, LoadException{
+		CoreDataManager data = this.newManager();
+		data.addData(new TestData("a", 1, 2.5), "test", null);
+		data.addData(this.newPeaks(100), "peaks", null);
+		newSaveManager(data).save(m_Workspace);
+		CoreDataManager lazy = this.newManager();
+		lazy.setLazyLoading(true);
+		SaveManager saves = newSaveManager(lazy);
+		saves.load(m_Workspace);
+		Data stored = lazy.getData("test");
+		assertTrue(stored instanceof StoredData);
+		assertFalse(lazy.hasChanges());
+		stored.setValue(0, 1, new IntField(5));
+		assertTrue(lazy.hasChanges());
+		saves.saveChanges(m_Workspace);
+		assertFalse(lazy.hasChanges());
+		assertEquals(5, ((TestData) this.load(false).getData("test")).getInt());
+		//edits made on the read data object are saved too
+		((TestData) StoredDataUtils.unwrap(stored)).setValue(0, 1, new IntField(7));
+		assertTrue(lazy.hasChanges());
+		saves.saveChanges(m_Workspace);
+		assertFalse(lazy.hasChanges());
+		//the stored data now points at its edited chunk, which a full save copies
+		saves.save(m_Workspace);
+		CoreDataManager eager = this.load(false);
+		assertEquals(2, eager.getDataNames().length);
+		assertEquals(7, ((TestData) eager.getData("test")).getInt());
+		assertEquals(7, ((TestData) StoredDataUtils.unwrap(this.load(true).getData("test"))).getInt());
+	}
+
+	public void testFailedSave() throws IOException{
+		CoreDataManager data = this.newManager();
+		data.addData(this.newPeaks(100), "peaks", null);
+		//a directory that is not empty cannot be saved over
+		File dir = Files.createTempDirectory("workspace").toFile();
+		File inside = new File(dir, "file");
+		inside.createNewFile();
+		try{
+			newSaveManager(data).save(dir);
+			fail("Saved over a directory");
+		} catch (SaveException e){
+			//expected
+		} finally {
+			inside.delete();
+			dir.delete();
+		}
+		assertTrue(data.hasChanges());
+	}
+
+	public void testLazyLoading() throws SaveException, LoadException{
+		CoreDataManager data = this.newManager();
+		for(int i=0; i<4; i++){
+			data.addData(this.newPeaks(1000), "peaks"+i, null);
+		}
+		newSaveManager(data).save(m_Workspace);
+		CoreDataManager eager = this.load(false);
+		CoreDataManager lazy = this.load(true);
+		for(Data d : lazy.getAllData()){
+			assertTrue(d instanceof StoredData);
+			assertFalse(((StoredData) d).isLoaded());
+			assertEquals(Peaks.class, StoredDataUtils.typeOf(d));
+		}
+		assertEquals(4, lazy.getData(Peaks.class).size());
+		StoredData stored = (StoredData) lazy.getData("peaks2");
+		Peaks peaks = (Peaks) eager.getData("peaks2");
+		assertEquals(peaks.getNumRows(), stored.getNumRows());
+		assertTrue(Arrays.equals(peaks.getHeaders(), stored.getHeaders()));
+		assertTrue(stored.isLoaded());
+		assertEquals(contents(eager), contents(lazy));
+		assertEquals(contents(data), contents(lazy));
+		assertFalse(lazy.hasChanges());
+	}
+
+	public void testReadVersion2() throws IOException{
+		Peaks peaks = this.newPeaks(300);
+		ByteArrayOutputStream chunk = new ByteArrayOutputStream();
+		ObjectOutputStream oout = new ObjectOutputStream(Compression.DEFLATE.compress(chunk));
+		oout.writeObject(peaks);
+		oout.close();
+		//records of version 2 hold an int length
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(MAGIC);
+		out.writeInt(2);
+		out.writeByte(1);
+		out.writeUTF("old");
+		out.writeUTF("test");
+		out.writeByte(Compression.DEFLATE.getId());
+		out.writeInt(chunk.size());
+		chunk.writeTo(out);
+		out.writeByte(0);
+		out.close();
+		CoreDataManager data = this.newManager();
+		data.load(new ByteArrayInputStream(bytes.toByteArray()));
+		assertEquals(1, data.getDataNames().length);
+		assertEquals(peaks.getPeaks(), ((Peaks) data.getData("old")).getPeaks());
+	}
+
+	public void testEmpty() throws SaveException, LoadException{
+		newSaveManager(this.newManager()).save(m_Workspace);
+		assertEquals(0, this.load(false).getDataNames().length);
+	}
+
+}
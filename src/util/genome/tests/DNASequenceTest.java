@@ -0,0 +1,72 @@
+package util.genome.tests;
+
+import util.genome.DNASequence;
+
+public class DNASequenceTest extends junit.framework.TestCase{
+
+	private static final String SEQ = "NNNNACTGacgtnnnnACGTRYACGTTTTGCAcccgNAT";
+
+	public void testGetBaseAt(){
+		DNASequence seq = new DNASequence(SEQ);
+		assertEquals(SEQ.length(), seq.length());
+		for(int i=0; i<SEQ.length(); i++){
+			assertEquals(SEQ.charAt(i), seq.getBaseAt(i));
+			assertEquals(Character.isLowerCase(SEQ.charAt(i)), seq.isMasked(i));
+		}
+		assertEquals(SEQ, seq.toString());
+	}
+
+	public void testSymbols(){
+		//symbols that are not letters are kept as they are, not case folded
+		String symbols = "ACGT-NN*acgt.";
+		DNASequence seq = new DNASequence(symbols);
+		for(int i=0; i<symbols.length(); i++){
+			assertEquals(symbols.charAt(i), seq.getBaseAt(i));
+		}
+		assertEquals(symbols, seq.toString());
+		assertEquals(symbols.substring(3, 10), seq.subsequence(3, 10));
+	}
+
+	public void testSubsequence(){
+		DNASequence seq = new DNASequence(SEQ);
+		for(int start=0; start<SEQ.length(); start++){
+			for(int end=start; end<=SEQ.length(); end++){
+				assertEquals(SEQ.substring(start, end), seq.subsequence(start, end));
+			}
+		}
+	}
+
+	public void testBuilder(){
+		DNASequence.Builder builder = new DNASequence.Builder();
+		StringBuilder expected = new StringBuilder();
+		for(int i=0; i<500; i++){
+			builder.append(SEQ);
+			expected.append(SEQ);
+		}
+		DNASequence seq = builder.build();
+		assertEquals(expected.toString(), seq.toString());
+		assertEquals(new DNASequence(expected.toString()), seq);
+	}
+
+	public void testStorageSize(){
+		String bases = "ACGTTGCAAAAACCCCGGGGTTTT";
+		StringBuilder expected = new StringBuilder();
+		for(int i=0; i<100; i++){
+			expected.append(bases);
+		}
+		expected.append("NNNNNNNNNN");
+		DNASequence seq = new DNASequence(expected.toString());
+		assertTrue(seq.getStorageSize() < expected.length() / 3);
+	}
+
+	public void testOutOfBounds(){
+		DNASequence seq = new DNASequence(SEQ);
+		try{
+			seq.getBaseAt(SEQ.length());
+			fail();
+		} catch (IndexOutOfBoundsException e){
+			//expected
+		}
+	}
+
+}
@@ -0,0 +1,127 @@
+package util.genome.tests;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import util.genome.Chromosome;
+import util.genome.Strand;
+import util.genome.annotation.FeatureIndex;
+import util.genome.peak.Peak;
+import util.genome.peak.PeakGroup;
+
+public class FeatureIndexTest extends junit.framework.TestCase{
+
+	private static final String GTF =
+			"##description: test annotation\n" +
+			"chr1\tHAVANA\tgene\t1001\t2000\t.\t+\t.\tgene_id \"G1.1\"; gene_type \"protein_coding\"; gene_name \"ONE\";\n" +
+			"chr1\tHAVANA\texon\t1001\t1200\t.\t+\t.\tgene_id \"G1.1\"; gene_name \"ONE\"; exon_number 1;\n" +
+			"chr1\tHAVANA\tgene\t5001\t9000\t.\t-\t.\tgene_id \"G2.1\"; gene_type \"lncRNA\";\n" +
+			"chr2\tENSEMBL\tgene\t101\t300\t.\t-\t.\tgene_id \"G3.1\"; gene_name \"THREE\";\n";
+
+	private static final String GFF =
+			"##gff-version 3\n" +
+			"chr1\t.\tgene\t5001\t9000\t.\t-\t.\tID=gene:G2;Name=TWO;biotype=lncRNA\n" +
+			"chr1\t.\tgene\t1001\t2000\t.\t+\t.\tID=gene:G1;Name=ONE\n" +
+			"##FASTA\n" +
+			">chr1\n" +
+			"ACGT\n";
+
+	public void testParse() throws IOException{
+		FeatureIndex gtf = FeatureIndex.parseFeatures(new ByteArrayInputStream(GTF.getBytes()));
+		assertEquals(4, gtf.size());
+		assertEquals(new Chromosome("chr1"), gtf.getChrom(0));
+		assertEquals(1000, gtf.getStart(0));
+		assertEquals(1200, gtf.getEnd(0));
+		assertEquals("exon", gtf.getType(0));
+		assertEquals("ONE", gtf.getName(1));
+		assertEquals("G2.1", gtf.getName(2));
+		assertEquals(Strand.MINUS, gtf.getStrand(2));
+		assertEquals(8999, gtf.getTSS(2));
+		assertEquals(new Chromosome("chr2"), gtf.getChrom(3));
+		FeatureIndex genes = gtf.select("gene");
+		assertEquals(3, genes.size());
+		FeatureIndex gff = FeatureIndex.parseFeatures(new ByteArrayInputStream(GFF.getBytes()));
+		assertEquals(2, gff.size());
+		assertEquals("ONE", gff.getName(0));
+		assertEquals("TWO", gff.getName(1));
+
+		List<Peak> peaks = new ArrayList<Peak>();
+		peaks.add(new Peak("chr1", 1400, 1600));
+		peaks.add(new Peak("chr1", 3000, 3010));
+		peaks.add(new Peak("chr1", 9100, 9200, ".", 0, Strand.UNKNOWN, 1, 1, 1, 50));
+		peaks.add(new Peak("chr3", 10, 20));
+		peaks.add(new Peak("chr2", 10, 20));
+		PeakGroup group = new PeakGroup(peaks);
+		int[] nearest = genes.nearest(group);
+		assertEquals("ONE", genes.getName(nearest[0]));
+		assertEquals(500, genes.distanceToTSS(nearest[0], group.getSummit(0)));
+		assertEquals("ONE", genes.getName(nearest[1]));
+		assertEquals("G2.1", genes.getName(nearest[2]));
+		assertEquals(-151, genes.distanceToTSS(nearest[2], group.getSummit(2)));
+		assertEquals(FeatureIndex.NONE, nearest[3]);
+		assertEquals("THREE", genes.getName(nearest[4]));
+	}
+
+	public void testAdjacent(){
+		FeatureIndex.Builder builder = new FeatureIndex.Builder();
+		Chromosome c = new Chromosome("chr1");
+		builder.add(c, 100, 200, Strand.MINUS, "gene", "A");
+		builder.add(c, 300, 400, Strand.PLUS, "gene", "B");
+		FeatureIndex index = builder.build();
+		assertEquals(199, index.getTSS(0));
+		//features are half-open, so features ending at the start or starting at the end of a region do not overlap it
+		assertEquals(0, index.overlapping(c, 200, 300).length);
+		assertEquals(1, index.overlapping(c, 199, 300).length);
+		assertEquals(1, index.overlapping(c, 200, 301).length);
+		assertEquals(0, index.nearest(c, 200, 250, 225));
+		assertEquals(1, index.nearest(c, 251, 300, 275));
+	}
+
+	public void testQueries(){
+		Random r = new Random(3);
+		FeatureIndex.Builder builder = new FeatureIndex.Builder();
+		List<long[]> features = new ArrayList<long[]>();
+		for(int i=0; i<3000; i++){
+			int chr = r.nextInt(3);
+			long start = r.nextInt(100000);
+			long end = start + (r.nextInt(20) == 0 ? r.nextInt(20000) : r.nextInt(500));
+			Strand strand = r.nextBoolean() ? Strand.PLUS : Strand.MINUS;
+			builder.add(new Chromosome("chr" + chr), start, end, strand, "gene", "g" + i);
+			features.add(new long[]{chr, start, end});
+		}
+		FeatureIndex index = builder.build();
+		assertEquals(features.size(), index.size());
+		for(int q=0; q<500; q++){
+			int chr = r.nextInt(4);
+			long start = r.nextInt(110000);
+			long end = start + r.nextInt(1000);
+			Chromosome c = new Chromosome("chr" + chr);
+			int overlapping = 0;
+			long nearestDist = Long.MAX_VALUE;
+			for(long[] f : features){
+				if(f[0] == chr){
+					if(f[1] < end && start < f[2]){
+						overlapping++;
+					}
+					nearestDist = Math.min(nearestDist, Math.max(0, Math.max(f[1] - end, start - f[2])));
+				}
+			}
+			int[] found = index.overlapping(c, start, end);
+			assertEquals(overlapping, found.length);
+			for(int i : found){
+				assertTrue(index.getStart(i) < end && start < index.getEnd(i));
+				assertEquals(c, index.getChrom(i));
+			}
+			int nearest = index.nearest(c, start, end, start);
+			if(nearestDist == Long.MAX_VALUE){
+				assertEquals(FeatureIndex.NONE, nearest);
+			}else{
+				assertEquals(nearestDist, Math.max(0, Math.max(index.getStart(nearest) - end, start - index.getEnd(nearest))));
+			}
+		}
+	}
+
+}
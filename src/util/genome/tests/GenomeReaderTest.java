@@ -0,0 +1,647 @@
+package util.genome.tests;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import util.genome.Genome;
+import util.genome.GenomicRegion;
+import util.genome.GenomicSequence;
+import util.genome.reader.BasicGenomeReader;
+import util.genome.reader.BgzfFile;
+import util.genome.reader.FastaIndex;
+import util.genome.reader.GenomeReader;
+import util.genome.reader.GenomeReaderFactory;
+import util.genome.reader.IndexedGenomeReader;
+import util.genome.reader.PackedGenomeReader;
+import util.genome.reader.TwoBitFile;
+import util.genome.reader.TwoBitGenomeReader;
+import util.genome.reader.PrereadIndex;
+import util.genome.reader.query.ApproximateQuery;
+import util.genome.reader.query.LocationBoundedSequenceQuery;
+import util.genome.reader.query.LocationQuery;
+import util.genome.reader.query.MotifQuery;
+import util.genome.reader.query.SequenceQuery;
+import util.genome.reader.threaded.ThreadedGenomeReader;
+
+public class GenomeReaderTest extends junit.framework.TestCase{
+
+	private static final String[] CHR_NAMES = new String[]{"1", "2", "3"};
+	private static final String[] CHR_SEQS = new String[]{
+		"ACTCGACTGATCGACTGACTGCGCAGGACGCGCGCGCATATATATATATTTTTGCGCGCGACGACGGACGCCCGCGCTCGATGCATGTCATCGA",
+		"TCGATCGATCGACTGACGACATCACGATGACGCGATCGCGTATCGCTGGGGGGGGGGCCCCCCCCCCAAAAAAAAAATTTTTTTTTTACGTACGTACGTAC",
+		"GGGCCCAAATTT"
+	};
+	private static final int LINE_LENGTH = 7;
+
+	private File m_GenomeFile;
+
+	protected void setUp(){
+		try {
+			m_GenomeFile = File.createTempFile("genome", ".fa");
+			m_GenomeFile.deleteOnExit();
+			FastaIndex.getIndexFile(m_GenomeFile).deleteOnExit();
+			PrereadIndex.getSidecarFile(m_GenomeFile).deleteOnExit();
+			FileWriter writer = new FileWriter(m_GenomeFile);
+			for(int i=0; i<CHR_NAMES.length; i++){
+				writer.write(">chr"+CHR_NAMES[i]+"\n");
+				String seq = CHR_SEQS[i];
+				for(int j=0; j<seq.length(); j+=LINE_LENGTH){
+					writer.write(seq.substring(j, Math.min(seq.length(), j+LINE_LENGTH))+"\n");
+				}
+			}
+			//trailing sequence that none of the queries touch
+			writer.write(">chrEnd\nA\n");
+			writer.close();
+		} catch (IOException e) {
+			fail(e.getMessage());
+		}
+	}
+
+	private List<LocationQuery> createQueries(Genome genome, final List<GenomicSequence> found){
+		List<LocationQuery> queries = new ArrayList<LocationQuery>();
+		for(int i=0; i<CHR_NAMES.length; i++){
+			int size = CHR_SEQS[i].length();
+			for(int start = 1; start <= size; start += 5){
+				int end = Math.min(size, start + 11);
+				GenomicRegion region = genome.newGenomicRegion(genome.newGenomicCoordinate(CHR_NAMES[i], start), genome.newGenomicCoordinate(CHR_NAMES[i], end));
+				queries.add(new LocationQuery(region){
+					private static final long serialVersionUID = 1L;
+
+					@Override
+					public void process(GenomicSequence seq) {
+						found.add(seq);
+					}
+
+				});
+			}
+		}
+		return queries;
+	}
+
+	private void assertReadsRegions(GenomeReader reader){
+		Genome genome = reader.getGenome();
+		List<GenomicSequence> found = new ArrayList<GenomicSequence>();
+		List<LocationQuery> queries = this.createQueries(genome, found);
+		reader.read(queries, new ArrayList<SequenceQuery>(), new ArrayList<LocationBoundedSequenceQuery>());
+		assertEquals(queries.size(), found.size());
+		for(GenomicSequence seq : found){
+			GenomicRegion region = seq.getRegion();
+			int chr = Integer.parseInt(region.getStart().getChromosome().getId()) - 1;
+			String expected = CHR_SEQS[chr].substring((int) region.getStart().getBaseIndex() - 1, (int) region.getEnd().getBaseIndex());
+			assertEquals(expected, seq.getSequence());
+		}
+	}
+
+	private void assertFindsSequences(GenomeReader reader){
+		String[] targets = new String[]{"CGCG", "GCG", "ATAT", "TTTTTTTTTTA", "AC", "GGGGGGGGGGCCCC", "GATC", "NOTFOUND"};
+		final List<String> found = new ArrayList<String>();
+		List<SequenceQuery> queries = new ArrayList<SequenceQuery>();
+		for(String target : targets){
+			queries.add(new SequenceQuery(target){
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				public void process(GenomicSequence seq) {
+					synchronized(found){
+						found.add(seq.getSequence()+"@"+seq.getRegion());
+					}
+				}
+
+			});
+		}
+		//the same target twice reports every occurrence to both queries
+		queries.add(queries.get(0));
+		reader.read(new ArrayList<LocationQuery>(), queries, new ArrayList<LocationBoundedSequenceQuery>());
+		Genome genome = reader.getGenome();
+		List<String> expected = new ArrayList<String>();
+		for(String target : targets){
+			for(int i=0; i<CHR_NAMES.length; i++){
+				String seq = CHR_SEQS[i];
+				for(int start = seq.indexOf(target); start >= 0; start = seq.indexOf(target, start + 1)){
+					GenomicRegion region = genome.newGenomicRegion(genome.newGenomicCoordinate(CHR_NAMES[i], start + 1), genome.newGenomicCoordinate(CHR_NAMES[i], start + target.length()));
+					expected.add(target+"@"+region);
+					if(target.equals(targets[0])){
+						expected.add(target+"@"+region);
+					}
+				}
+			}
+		}
+		Collections.sort(expected);
+		Collections.sort(found);
+		assertEquals(expected, found);
+	}
+
+	public void testSequenceQueries(){
+		try {
+			BasicGenomeReader lines = new BasicGenomeReader(m_GenomeFile);
+			lines.setReadMode(BasicGenomeReader.ReadMode.LINES);
+			this.assertFindsSequences(lines);
+			this.assertFindsSequences(new BasicGenomeReader(m_GenomeFile));
+			this.assertFindsSequences(new IndexedGenomeReader(m_GenomeFile));
+			this.assertFindsSequences(new PackedGenomeReader(m_GenomeFile));
+			this.assertFindsSequences(new ThreadedGenomeReader(m_GenomeFile));
+		} catch (IOException e) {
+			fail(e.getMessage());
+		}
+	}
+
+	private void assertFindsMotifs(GenomeReader reader){
+		String[] motifs = new String[]{"CGNG", "WWWW", "GAYC", "tcgrtc", "NNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNN", "BDHV", "SSSSSSSSSS"};
+		final List<String> found = new ArrayList<String>();
+		List<SequenceQuery> queries = new ArrayList<SequenceQuery>();
+		for(String motif : motifs){
+			queries.add(new MotifQuery(motif){
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				public void process(GenomicSequence seq) {
+					synchronized(found){
+						found.add(this.getMotif()+":"+seq.getSequence()+"@"+seq.getRegion());
+					}
+				}
+
+			});
+		}
+		reader.read(new ArrayList<LocationQuery>(), queries, new ArrayList<LocationBoundedSequenceQuery>());
+		Genome genome = reader.getGenome();
+		List<String> expected = new ArrayList<String>();
+		for(String motif : motifs){
+			for(int i=0; i<CHR_NAMES.length; i++){
+				String seq = CHR_SEQS[i];
+				for(int start=0; start + motif.length() <= seq.length(); start++){
+					boolean match = true;
+					for(int j=0; j<motif.length() && match; j++){
+						match = MotifQuery.matches(motif.charAt(j), seq.charAt(start + j));
+					}
+					if(match){
+						GenomicRegion region = genome.newGenomicRegion(genome.newGenomicCoordinate(CHR_NAMES[i], start + 1), genome.newGenomicCoordinate(CHR_NAMES[i], start + motif.length()));
+						expected.add(motif.toUpperCase()+":"+seq.substring(start, start + motif.length())+"@"+region);
+					}
+				}
+			}
+		}
+		Collections.sort(expected);
+		Collections.sort(found);
+		assertFalse(expected.isEmpty());
+		assertEquals(expected, found);
+	}
+
+	public void testMotifQueries(){
+		this.assertFindsMotifs(new BasicGenomeReader(m_GenomeFile));
+		ThreadedGenomeReader reader = new ThreadedGenomeReader(m_GenomeFile);
+		reader.setSplitMode(ThreadedGenomeReader.SplitMode.QUERIES);
+		reader.setBlockSize(3);
+		this.assertFindsMotifs(reader);
+		try{
+			new MotifQuery("ACGX"){
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				public void process(GenomicSequence found) {
+					//do nothing
+				}
+
+			};
+			fail();
+		} catch (RuntimeException e){
+			//expected
+		}
+	}
+
+	private static ApproximateQuery newApproximateQuery(String target, int distance, ApproximateQuery.DistanceMode mode, final List<String> found){
+		return new ApproximateQuery(target, distance, mode){
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public void process(GenomicSequence seq, int distance) {
+				assertEquals(distance, this.getDistance(seq.getSequence()));
+				synchronized(found){
+					found.add(this.getTargetSequence()+":"+distance+"@"+seq.getEnd());
+				}
+			}
+
+		};
+	}
+
+	private void assertFindsApproximate(GenomeReader reader){
+		//mutated pieces of the genome, with insertions and deletions for the EDITS queries
+		String[] targets = new String[]{"CGCGCGCATTTATATAT", "GGGGGGGGGGCCCCCCCCCC", "TTTTTTTTTTACGTACGT", "ACGACGGAGCCCGCGC", "GATCGATCTGACTGAC", "ATATATAT"};
+		int[] distances = new int[]{1, 2, 3, 2, 1, 2};
+		ApproximateQuery.DistanceMode[] modes = new ApproximateQuery.DistanceMode[]{
+			ApproximateQuery.DistanceMode.MISMATCHES, ApproximateQuery.DistanceMode.MISMATCHES, ApproximateQuery.DistanceMode.MISMATCHES,
+			ApproximateQuery.DistanceMode.EDITS, ApproximateQuery.DistanceMode.EDITS, ApproximateQuery.DistanceMode.EDITS
+		};
+		List<String> found = new ArrayList<String>();
+		List<SequenceQuery> queries = new ArrayList<SequenceQuery>();
+		for(int q=0; q<targets.length; q++){
+			queries.add(newApproximateQuery(targets[q], distances[q], modes[q], found));
+		}
+		reader.read(new ArrayList<LocationQuery>(), queries, new ArrayList<LocationBoundedSequenceQuery>());
+		Genome genome = reader.getGenome();
+		List<String> expected = new ArrayList<String>();
+		for(int q=0; q<targets.length; q++){
+			ApproximateQuery query = (ApproximateQuery) queries.get(q);
+			int m = targets[q].length();
+			for(int i=0; i<CHR_NAMES.length; i++){
+				String seq = CHR_SEQS[i];
+				int prev = m;
+				for(int end=0; end<seq.length(); end++){
+					//closest distance of the target to the bases ending at end
+					int score = Integer.MAX_VALUE;
+					if(modes[q] == ApproximateQuery.DistanceMode.MISMATCHES){
+						score = end + 1 >= m ? query.getDistance(seq.substring(end + 1 - m, end + 1)) : Integer.MAX_VALUE;
+					}else{
+						for(int l=1; l<=Math.min(m + distances[q], end + 1); l++){
+							score = Math.min(score, query.getDistance(seq.substring(end + 1 - l, end + 1)));
+						}
+					}
+					if(score <= distances[q]){
+						boolean report = true;
+						if(modes[q] == ApproximateQuery.DistanceMode.EDITS){
+							//only the closest of neighbouring ends is reported
+							int next = m;
+							for(int l=1; end + 1 < seq.length() && l<=Math.min(m + distances[q], end + 2); l++){
+								next = Math.min(next, query.getDistance(seq.substring(end + 2 - l, end + 2)));
+							}
+							report = score < prev && next >= score;
+						}
+						if(report){
+							expected.add(targets[q]+":"+score+"@"+genome.newGenomicCoordinate(CHR_NAMES[i], end + 1));
+						}
+					}
+					prev = score;
+				}
+			}
+		}
+		Collections.sort(expected);
+		Collections.sort(found);
+		assertEquals(expected, found);
+		for(String target : targets){
+			boolean hit = false;
+			for(String f : found){
+				hit |= f.startsWith(target+":");
+			}
+			assertTrue(target, hit);
+		}
+	}
+
+	public void testApproximateQueries(){
+		this.assertFindsApproximate(new BasicGenomeReader(m_GenomeFile));
+		ThreadedGenomeReader reader = new ThreadedGenomeReader(m_GenomeFile);
+		reader.setSplitMode(ThreadedGenomeReader.SplitMode.QUERIES);
+		reader.setBlockSize(3);
+		this.assertFindsApproximate(reader);
+		this.assertFindsApproximate(new ThreadedGenomeReader(m_GenomeFile));
+		try{
+			newApproximateQuery("ACGT", 4, ApproximateQuery.DistanceMode.EDITS, new ArrayList<String>());
+			fail();
+		} catch (RuntimeException e){
+			//expected
+		}
+	}
+
+	private void assertFindsBounded(GenomeReader reader){
+		Genome genome = reader.getGenome();
+		String[] targets = new String[]{"CGCG", "AT", "GGGGGGGGGGCCCC", "A", "TCGA", "NOTFOUND"};
+		//overlapping regions, regions of single bases and regions too short for their target
+		long[][] regions = new long[][]{{1, 1, 94}, {1, 25, 40}, {1, 30, 33}, {1, 31, 33}, {2, 1, 101}, {2, 40, 80}, {2, 48, 61}, {2, 70, 70}, {3, 1, 12}, {3, 5, 9}};
+		final List<String> found = new ArrayList<String>();
+		List<LocationBoundedSequenceQuery> queries = new ArrayList<LocationBoundedSequenceQuery>();
+		List<String> expected = new ArrayList<String>();
+		for(String target : targets){
+			for(long[] r : regions){
+				final String chr = CHR_NAMES[(int) r[0] - 1];
+				final GenomicRegion region = genome.newGenomicRegion(genome.newGenomicCoordinate(chr, r[1]), genome.newGenomicCoordinate(chr, r[2]));
+				queries.add(new LocationBoundedSequenceQuery(target, region){
+					private static final long serialVersionUID = 1L;
+
+					@Override
+					public void process(GenomicSequence seq) {
+						assertEquals(this.getTargetSequence(), seq.getSequence());
+						synchronized(found){
+							found.add(region+":"+seq.getSequence()+"@"+seq.getRegion());
+						}
+					}
+
+				});
+				String seq = CHR_SEQS[(int) r[0] - 1].substring((int) r[1] - 1, (int) r[2]);
+				for(int start = seq.indexOf(target); start >= 0; start = seq.indexOf(target, start + 1)){
+					GenomicRegion occurrence = genome.newGenomicRegion(genome.newGenomicCoordinate(chr, r[1] + start), genome.newGenomicCoordinate(chr, r[1] + start + target.length() - 1));
+					expected.add(region+":"+target+"@"+occurrence);
+				}
+			}
+		}
+		reader.read(new ArrayList<LocationQuery>(), new ArrayList<SequenceQuery>(), queries);
+		Collections.sort(expected);
+		Collections.sort(found);
+		assertEquals(expected, found);
+	}
+
+	public void testBoundedQueries(){
+		try {
+			BasicGenomeReader lines = new BasicGenomeReader(m_GenomeFile);
+			lines.setReadMode(BasicGenomeReader.ReadMode.LINES);
+			this.assertFindsBounded(lines);
+			this.assertFindsBounded(new BasicGenomeReader(m_GenomeFile));
+			this.assertFindsBounded(new IndexedGenomeReader(m_GenomeFile));
+			this.assertFindsBounded(new ThreadedGenomeReader(m_GenomeFile));
+			ThreadedGenomeReader reader = new ThreadedGenomeReader(m_GenomeFile);
+			reader.setSplitMode(ThreadedGenomeReader.SplitMode.QUERIES);
+			reader.setBlockSize(3);
+			this.assertFindsBounded(reader);
+		} catch (IOException e) {
+			fail(e.getMessage());
+		}
+	}
+
+	public void testLinesMode(){
+		BasicGenomeReader reader = new BasicGenomeReader(m_GenomeFile);
+		reader.setReadMode(BasicGenomeReader.ReadMode.LINES);
+		this.assertReadsRegions(reader);
+	}
+
+	public void testBytesMode(){
+		BasicGenomeReader reader = new BasicGenomeReader(m_GenomeFile);
+		reader.setReadMode(BasicGenomeReader.ReadMode.BYTES);
+		this.assertReadsRegions(reader);
+	}
+
+	public void testIndexedReader(){
+		try {
+			IndexedGenomeReader reader = new IndexedGenomeReader(m_GenomeFile);
+			this.assertReadsRegions(reader);
+		} catch (IOException e) {
+			fail(e.getMessage());
+		}
+	}
+	
+	public void testPackedReader(){
+		try {
+			PackedGenomeReader reader = new PackedGenomeReader(m_GenomeFile);
+			this.assertReadsRegions(reader);
+			Genome genome = reader.getGenome();
+			for(int i=0; i<CHR_NAMES.length; i++){
+				assertEquals(CHR_SEQS[i], reader.getSequence(genome.getChr(CHR_NAMES[i])).toString());
+			}
+		} catch (IOException e) {
+			fail(e.getMessage());
+		}
+	}
+	
+	private static byte[] littleEndian(int value){
+		return ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(value).array();
+	}
+
+	private static void writeBlocks(DataOutputStream out, List<int[]> blocks) throws IOException{
+		out.write(littleEndian(blocks.size()));
+		for(int[] b : blocks) out.write(littleEndian(b[0]));
+		for(int[] b : blocks) out.write(littleEndian(b[1]));
+	}
+
+	private static List<int[]> findBlocks(String seq, boolean mask){
+		List<int[]> blocks = new ArrayList<int[]>();
+		for(int i=0; i<seq.length(); i++){
+			char c = seq.charAt(i);
+			if(mask ? Character.isLowerCase(c) : Character.toUpperCase(c) == 'N'){
+				int[] last = blocks.isEmpty() ? null : blocks.get(blocks.size()-1);
+				if(last != null && last[0] + last[1] == i){
+					last[1]++;
+				}else{
+					blocks.add(new int[]{i, 1});
+				}
+			}
+		}
+		return blocks;
+	}
+
+	/**
+	 * Writes a little endian version 0 .2bit file
+	 */
+	private static void writeTwoBit(File file, List<String> names, List<String> seqs) throws IOException{
+		DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+		out.write(littleEndian(TwoBitFile.SIGNATURE));
+		out.write(littleEndian(0));
+		out.write(littleEndian(names.size()));
+		out.write(littleEndian(0));
+		int offset = 16;
+		for(String name : names){
+			offset += 1 + name.length() + 4;
+		}
+		for(int i=0; i<names.size(); i++){
+			out.write(names.get(i).length());
+			out.writeBytes(names.get(i));
+			out.write(littleEndian(offset));
+			String seq = seqs.get(i);
+			offset += 4 + 4 + 8 * findBlocks(seq, false).size() + 4 + 8 * findBlocks(seq, true).size() + 4 + (seq.length() + 3) / 4;
+		}
+		String codes = "TCAG";
+		for(String seq : seqs){
+			out.write(littleEndian(seq.length()));
+			writeBlocks(out, findBlocks(seq, false));
+			writeBlocks(out, findBlocks(seq, true));
+			out.write(littleEndian(0));
+			for(int i=0; i<seq.length(); i+=4){
+				int b = 0;
+				for(int j=i; j<i+4; j++){
+					int code = j < seq.length() ? Math.max(codes.indexOf(Character.toUpperCase(seq.charAt(j))), 0) : 0;
+					b = (b << 2) | code;
+				}
+				out.write(b);
+			}
+		}
+		out.close();
+	}
+
+	public void testTwoBitReader(){
+		try {
+			File file = File.createTempFile("genome", TwoBitFile.EXTENSION);
+			file.deleteOnExit();
+			List<String> names = new ArrayList<String>();
+			List<String> seqs = new ArrayList<String>();
+			for(int i=0; i<CHR_NAMES.length; i++){
+				names.add("chr"+CHR_NAMES[i]);
+				seqs.add(CHR_SEQS[i]);
+			}
+			String masked = "NNacgtNNNTTGCAacNAGcnnT";
+			names.add("chrMasked");
+			seqs.add(masked);
+			writeTwoBit(file, names, seqs);
+			assertTrue(TwoBitFile.isTwoBit(file));
+			assertFalse(TwoBitFile.isTwoBit(m_GenomeFile));
+			GenomeReader reader = GenomeReaderFactory.createGenomeReader(file);
+			assertTrue(reader instanceof TwoBitGenomeReader);
+			this.assertReadsRegions(reader);
+			TwoBitFile.Record record = ((TwoBitGenomeReader) reader).getTwoBitFile().getRecord("chrMasked");
+			for(int start=0; start<masked.length(); start++){
+				for(int end=start; end<=masked.length(); end++){
+					byte[] bases = new byte[end - start];
+					record.read(start, end, bases, 0);
+					assertEquals(masked.substring(start, end), new String(bases, "US-ASCII"));
+				}
+			}
+		} catch (IOException e) {
+			fail(e.getMessage());
+		}
+	}
+	
+	private static void writeBgzfBlock(DataOutputStream out, byte[] data, int offset, int length){
+		try {
+			Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+			deflater.setInput(data, offset, length);
+			deflater.finish();
+			byte[] compressed = new byte[length + 64];
+			int size = deflater.deflate(compressed);
+			deflater.end();
+			CRC32 crc = new CRC32();
+			crc.update(data, offset, length);
+			out.write(new byte[]{0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff, 6, 0, 'B', 'C', 2, 0});
+			out.write(ByteBuffer.allocate(2).order(ByteOrder.LITTLE_ENDIAN).putShort((short) (size + 25)).array());
+			out.write(compressed, 0, size);
+			out.write(littleEndian((int) crc.getValue()));
+			out.write(littleEndian(length));
+		} catch (IOException e) {
+			fail(e.getMessage());
+		}
+	}
+
+	/**
+	 * Compresses the given file with BGZF blocks of blockSize uncompressed bytes
+	 */
+	private static File bgzip(File file, int blockSize) throws IOException{
+		byte[] data = new byte[(int) file.length()];
+		DataInputStream in = new DataInputStream(new FileInputStream(file));
+		in.readFully(data);
+		in.close();
+		File compressed = new File(file.getPath() + ".gz");
+		compressed.deleteOnExit();
+		DataOutputStream out = new DataOutputStream(new FileOutputStream(compressed));
+		for(int i=0; i<data.length; i+=blockSize){
+			writeBgzfBlock(out, data, i, Math.min(blockSize, data.length - i));
+		}
+		//end of file marker
+		writeBgzfBlock(out, data, 0, 0);
+		out.close();
+		return compressed;
+	}
+
+	public void testBgzfReader(){
+		try {
+			File file = bgzip(m_GenomeFile, 13);
+			FastaIndex.getIndexFile(file).deleteOnExit();
+			BgzfFile.getIndexFile(file).deleteOnExit();
+			PrereadIndex.getSidecarFile(file).deleteOnExit();
+			assertTrue(BgzfFile.isBgzf(file));
+			assertFalse(BgzfFile.isBgzf(m_GenomeFile));
+			BgzfFile bgzf = new BgzfFile(file);
+			assertEquals(m_GenomeFile.length(), bgzf.length());
+			assertTrue(BgzfFile.getIndexFile(file).exists());
+			//reading the written .gzi index gives the same blocks
+			BgzfFile indexed = new BgzfFile(file);
+			assertEquals(bgzf.getNumBlocks(), indexed.getNumBlocks());
+			assertEquals(bgzf.length(), indexed.length());
+			GenomeReader reader = GenomeReaderFactory.createGenomeReader(file);
+			assertTrue(reader instanceof IndexedGenomeReader);
+			this.assertReadsRegions(reader);
+			BasicGenomeReader basic = new BasicGenomeReader(file);
+			this.assertReadsRegions(basic);
+		} catch (IOException e) {
+			fail(e.getMessage());
+		}
+	}
+	
+	public void testThreadedReader(){
+		this.assertReadsRegions(new ThreadedGenomeReader(m_GenomeFile));
+	}
+	
+	public void testThreadedQueriesMode(){
+		ThreadedGenomeReader reader = new ThreadedGenomeReader(m_GenomeFile);
+		reader.setSplitMode(ThreadedGenomeReader.SplitMode.QUERIES);
+		reader.setBlockSize(3);
+		reader.setBufferCapacity(2);
+		this.assertReadsRegions(reader);
+		assertTrue(reader.getMaxBufferDepth() <= 2);
+	}
+	
+	public void testFastaIndex(){
+		try {
+			FastaIndex index = FastaIndex.build(m_GenomeFile);
+			assertEquals(CHR_NAMES.length + 1, index.size());
+			long offset = 0;
+			for(int i=0; i<CHR_NAMES.length; i++){
+				FastaIndex.Entry entry = index.getEntry(i);
+				offset += (">chr"+CHR_NAMES[i]+"\n").length();
+				assertEquals("chr"+CHR_NAMES[i], entry.getName());
+				assertEquals(CHR_SEQS[i].length(), entry.getLength());
+				assertEquals(offset, entry.getOffset());
+				assertEquals(LINE_LENGTH, entry.getLineBases());
+				assertEquals(LINE_LENGTH + 1, entry.getLineWidth());
+				int lines = (CHR_SEQS[i].length() + LINE_LENGTH - 1) / LINE_LENGTH;
+				offset += CHR_SEQS[i].length() + lines;
+			}
+			File indexFile = FastaIndex.getIndexFile(m_GenomeFile);
+			index.write(indexFile);
+			FastaIndex read = FastaIndex.read(indexFile);
+			assertEquals(index.size(), read.size());
+			for(int i=0; i<index.size(); i++){
+				assertEquals(index.getEntry(i).toString(), read.getEntry(i).toString());
+			}
+		} catch (IOException e) {
+			fail(e.getMessage());
+		}
+	}
+
+	public void testPrereadIndex(){
+		try {
+			PrereadIndex index = PrereadIndex.load(m_GenomeFile, null);
+			assertEquals(CHR_NAMES.length + 1, index.size());
+			File sidecar = PrereadIndex.getSidecarFile(m_GenomeFile);
+			assertTrue(sidecar.exists());
+			PrereadIndex read = PrereadIndex.readSidecar(m_GenomeFile, sidecar);
+			assertNotNull(read);
+			Genome genome = read.toGenome("test");
+			for(int i=0; i<CHR_NAMES.length; i++){
+				assertEquals(">chr"+CHR_NAMES[i], read.getNames().get(i));
+				assertEquals(CHR_SEQS[i].length(), genome.getChr(CHR_NAMES[i]).getSize());
+				assertEquals(index.getOffset(i), read.getOffset(i));
+			}
+			//a modified genome file invalidates the sidecar
+			assertTrue(m_GenomeFile.setLastModified(m_GenomeFile.lastModified() + 10000));
+			assertNull(PrereadIndex.readSidecar(m_GenomeFile, sidecar));
+		} catch (IOException e) {
+			fail(e.getMessage());
+		}
+	}
+	
+	public void testChromSizes(){
+		try {
+			File sizes = File.createTempFile("genome", PrereadIndex.CHROM_SIZES_EXTENSION);
+			sizes.deleteOnExit();
+			FileWriter writer = new FileWriter(sizes);
+			for(int i=0; i<CHR_NAMES.length; i++){
+				writer.write("chr"+CHR_NAMES[i]+"\t"+CHR_SEQS[i].length()+"\n");
+			}
+			writer.close();
+			assertTrue(PrereadIndex.isSizesFile(sizes));
+			Genome genome = PrereadIndex.load(sizes, null).toGenome("test");
+			assertEquals(CHR_NAMES.length, genome.getNumChrs());
+			for(int i=0; i<CHR_NAMES.length; i++){
+				assertEquals(CHR_SEQS[i].length(), genome.getChr(CHR_NAMES[i]).getSize());
+			}
+		} catch (IOException e) {
+			fail(e.getMessage());
+		}
+	}
+
+}
@@ -0,0 +1,125 @@
+package util.genome.tests;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import util.genome.Chromosome;
+import util.genome.Genome;
+import util.genome.GenomicCoordinate;
+
+public class GenomeTest extends junit.framework.TestCase{
+
+	/**
+	 * Has the fields Genome was serialized with before chromosomes were indexed by ordinal and id
+	 */
+	private static class LegacyGenome implements Serializable{
+		private static final long serialVersionUID = 1L;
+
+		private List<Chromosome> m_Chrs;
+		private Map<Chromosome, Integer> m_ChrPriority;
+		private Map<Chromosome, Chromosome> m_NextChr;
+		private Map<Chromosome, Chromosome> m_PrevChr;
+		private final String m_Name;
+
+		LegacyGenome(String name, List<Chromosome> chrs){
+			m_Name = name;
+			m_Chrs = chrs;
+			m_ChrPriority = new HashMap<Chromosome, Integer>();
+			m_NextChr = new HashMap<Chromosome, Chromosome>();
+			m_PrevChr = new HashMap<Chromosome, Chromosome>();
+			for(int i=0; i<chrs.size(); i++){
+				m_ChrPriority.put(chrs.get(i), i);
+				if(i > 0){
+					m_NextChr.put(chrs.get(i-1), chrs.get(i));
+					m_PrevChr.put(chrs.get(i), chrs.get(i-1));
+				}
+			}
+		}
+	}
+
+	private static byte[] serialize(Object o) throws IOException{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(o);
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	private static Object deserialize(byte[] bytes) throws IOException, ClassNotFoundException{
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes));
+		try{
+			return in.readObject();
+		} finally {
+			in.close();
+		}
+	}
+
+	private static byte[] utf(String s) throws IOException{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeUTF(s);
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Renames the class of a serialized object. The stream holds no byte offsets, so the name may change length.
+	 */
+	private static byte[] renameClass(byte[] stream, String from, String to) throws IOException{
+		byte[] find = utf(from);
+		byte[] replace = utf(to);
+		for(int i=0; i+find.length<=stream.length; i++){
+			if(Arrays.equals(find, Arrays.copyOfRange(stream, i, i+find.length))){
+				ByteArrayOutputStream renamed = new ByteArrayOutputStream();
+				renamed.write(stream, 0, i);
+				renamed.write(replace);
+				renamed.write(stream, i+find.length, stream.length-i-find.length);
+				return renamed.toByteArray();
+			}
+		}
+		throw new IOException("Error: class "+from+" not found in stream");
+	}
+
+	private static void assertGenome(Genome g){
+		assertEquals(3, g.getNumChrs());
+		assertEquals(600, g.getSize());
+		assertTrue(g.hasChr("2"));
+		assertEquals(1, g.indexOf(g.getChr("2")));
+		assertEquals(300, g.getChr("3").getSize());
+		assertEquals(g.getChr(2), g.nextChr(g.getChr("2")));
+		assertTrue(g.getChrAscendingComparator().compare(g.getChr("1"), g.getChr("3")) < 0);
+		GenomicCoordinate coord = g.newGenomicCoordinate("2", 50);
+		assertEquals(150, g.pack(coord) + 1);
+		assertEquals(coord, g.unpack(g.pack(coord)));
+	}
+
+	public void testSerialize() throws IOException, ClassNotFoundException{
+		Genome g = new Genome("test", Arrays.asList("chr1", "chr2", "chr3"), Arrays.asList(100, 200, 300));
+		assertGenome(g);
+		Genome read = (Genome) deserialize(serialize(g));
+		assertEquals("test", read.toString());
+		assertGenome(read);
+	}
+
+	public void testReadLegacyGenome() throws IOException, ClassNotFoundException{
+		List<Chromosome> chrs = new ArrayList<Chromosome>();
+		chrs.add(new Chromosome("chr1", 100));
+		chrs.add(new Chromosome("chr2", 200));
+		chrs.add(new Chromosome("chr3", 300));
+		byte[] legacy = renameClass(serialize(new LegacyGenome("legacy", chrs)), LegacyGenome.class.getName(), Genome.class.getName());
+		Genome read = (Genome) deserialize(legacy);
+		assertEquals("legacy", read.toString());
+		assertGenome(read);
+	}
+
+}
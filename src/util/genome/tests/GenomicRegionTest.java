@@ -3,9 +3,12 @@ package util.genome.tests;
 import java.util.ArrayList;
 import java.util.List;
 
+import util.genome.Chromosome;
 import util.genome.Genome;
 import util.genome.GenomicCoordinate;
 import util.genome.GenomicRegion;
+import util.genome.peak.Peak;
+import util.genome.peak.PeakGroup;
 
 public class GenomicRegionTest extends junit.framework.TestCase{
 	
@@ -139,6 +142,69 @@ public class GenomicRegionTest extends junit.framework.TestCase{
 				
 	}
 	
+	public void testChrLookup(){
+		Chromosome chr2 = m_Genome.getChr("2");
+		assertEquals(1, m_Genome.indexOf(chr2));
+		assertEquals(1, m_Genome.indexOf(new Chromosome(m_Genome, "chr2", 290)));
+		assertEquals(-1, m_Genome.indexOf(new Chromosome("2")));
+		assertEquals(-1, m_Genome.indexOf(m_OtherGenome.getChr("2")));
+		assertTrue(m_Genome.hasChr("4"));
+		assertFalse(m_OtherGenome.hasChr("4"));
+		assertFalse(m_Genome.hasChr(m_OtherGenome.getChr("1")));
+		assertEquals(m_Genome.getChr(2), chr2.nextChr());
+		assertEquals(m_Genome.getChr(0), chr2.prevChr());
+		assertNull(m_Genome.getFirstChr().prevChr());
+		assertNull(m_Genome.getLastChr().nextChr());
+		assertTrue(m_Genome.getChr("1").compareTo(m_Genome.getChr("3")) < 0);
+		try{
+			m_Genome.getChr("5");
+			fail();
+		}catch(RuntimeException e){
+			//expected
+		}
+	}
+	
+	public void testPackedLocations(){
+		assertEquals(100+290+45+130, m_Genome.getSize());
+		assertEquals(0, m_Genome.pack(m_Genome.newGenomicCoordinate("1", 1)));
+		assertEquals(99, m_Genome.pack(m_Genome.newGenomicCoordinate("1", 100)));
+		assertEquals(100, m_Genome.pack(m_Genome.newGenomicCoordinate("2", 1)));
+		assertEquals(100+290+45, m_Genome.pack(m_Genome.newGenomicCoordinate("4", 1)));
+		assertEquals(0, m_Genome.indexOfPacked(99));
+		assertEquals(1, m_Genome.indexOfPacked(100));
+		assertEquals(3, m_Genome.indexOfPacked(m_Genome.getSize() - 1));
+		assertEquals(36, m_Genome.getPackedBaseIndex(m_Genome.pack(m_Genome.newGenomicCoordinate("3", 36))));
+		for(Chromosome chr : m_Genome.getChrs()){
+			for(long i=1; i<=chr.getSize(); i+=7){
+				GenomicCoordinate coord = m_Genome.newGenomicCoordinate(chr, i);
+				assertEquals(coord, m_Genome.unpack(m_Genome.pack(coord)));
+			}
+		}
+		try{
+			m_Genome.indexOfPacked(m_Genome.getSize());
+			fail();
+		}catch(RuntimeException e){
+			//expected
+		}
+		
+		GenomicCoordinate start = m_Genome.newGenomicCoordinate("1", 90);
+		assertEquals(m_Genome.newGenomicCoordinate("3", 5), start.increment(10+290+5));
+		assertEquals(start, m_Genome.newGenomicCoordinate("3", 5).increment(-(10+290+5)));
+		assertNull(start.increment((int) m_Genome.getSize()));
+		assertEquals(10+290+5, start.distance(m_Genome.newGenomicCoordinate("3", 5)));
+		
+		List<Peak> peaks = new ArrayList<Peak>();
+		peaks.add(new Peak("chr3", 5, 10));
+		peaks.add(new Peak("chr1", 50, 60));
+		peaks.add(new Peak("chr2", 1, 100));
+		peaks.add(new Peak("chr1", 50, 55));
+		PeakGroup sorted = new PeakGroup(peaks).sort(m_Genome);
+		assertEquals(peaks.get(3), sorted.getPeak(0));
+		assertEquals(peaks.get(1), sorted.getPeak(1));
+		assertEquals(peaks.get(2), sorted.getPeak(2));
+		assertEquals(peaks.get(0), sorted.getPeak(3));
+	}
+	
 	
 	
 	
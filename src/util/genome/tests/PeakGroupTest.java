@@ -0,0 +1,159 @@
+package util.genome.tests;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import chiptools.jprobe.data.Peaks;
+import jprobe.services.data.Field;
+import util.genome.ParsingException;
+import util.genome.Strand;
+import util.genome.peak.Peak;
+import util.genome.peak.PeakGroup;
+
+public class PeakGroupTest extends junit.framework.TestCase{
+
+	public void testParsePeak() throws ParsingException{
+		assertEquals(new Peak("chr1", 10, 20), Peak.parsePeak("chr1\t10\t20"));
+		assertEquals(new Peak("chr1", 10, 20), Peak.parsePeak("chr1\t10\t20\t\n"));
+		assertEquals(new Peak("chrX", 5, 95, "peak1", 850, Strand.MINUS, 7.25, 12.5, 0.001, 40),
+				Peak.parsePeak("chrX\t5\t95\tpeak1\t850\t-\t7.25\t12.5\t1e-3\t40\textra"));
+		//BED5 with a qValue in place of the score
+		assertEquals(new Peak("chr2", 1, 2, "p", Peak.DEFAULT_SCORE, Peak.DEFAULT_STRAND, Peak.DEFAULT_SIGNAL_VAL, Peak.DEFAULT_PVAL, 3.5,
+				Peak.DEFAULT_POINT_SOURCE), Peak.parsePeak("chr2 1 2 p 3.5 + 9"));
+		assertEquals(-0.1, Peak.parsePeak("chr1 1 2 . 0 . -0.1").getSignalVal());
+		assertEquals(0.3, Peak.parsePeak("chr1 1 2 . 0 . .3").getSignalVal());
+		assertEquals(123456.789012, Peak.parsePeak("chr1 1 2 . 0 . 123456.789012").getSignalVal());
+		assertEquals(Peak.parsePeak("chr1 1 2").getChrom(), Peak.parsePeak("1 1 2").getChrom());
+		String[] invalid = new String[]{"", "chr1", "chr1\t10", "\tchr1\t10\t20", "chr1  10\t20", "chr1\tten\t20",
+				"chr1\t10\t20\tname\tscore", "chr1\t10\t20\t.\t0\t.\t1\t2\t3\t4.5", "chr1\t99999999999999999999\t20"};
+		for(String s : invalid){
+			try{
+				Peak.parsePeak(s);
+				fail("Parsed invalid peak \""+s+"\"");
+			} catch (ParsingException e){
+				//expected
+			}
+		}
+	}
+
+	public void testParsePeakGroup(){
+		Random r = new Random(7);
+		StringBuilder file = new StringBuilder("track name=test\n");
+		Peak[] expected = new Peak[50000];
+		for(int i=0; i<expected.length; i++){
+			String chr = "chr" + (1 + i * 5 / expected.length);
+			long start = r.nextInt(1000000);
+			expected[i] = new Peak(chr, start, start + r.nextInt(500), "peak" + i, r.nextInt(1000), Strand.values()[r.nextInt(3)],
+					r.nextInt(10000) / 100.0, r.nextDouble() * 50, r.nextDouble(), r.nextInt(500));
+			Peak p = expected[i];
+			file.append(chr).append('\t').append(p.getChromStart()).append('\t').append(p.getChromEnd()).append('\t').append(p.getName())
+					.append('\t').append(p.getScore()).append('\t').append(p.getStrand()).append('\t').append(p.getSignalVal())
+					.append('\t').append(p.getPVal()).append('\t').append(p.getQVal()).append('\t').append(p.getPointSource())
+					.append(i % 2 == 0 ? "\n" : "\r\n");
+		}
+		byte[] bytes = file.toString().getBytes();
+		for(int threads : new int[]{1, 4}){
+			PeakGroup peaks = PeakGroup.parsePeakGroup(new ByteArrayInputStream(bytes), threads);
+			assertEquals(expected.length, peaks.size());
+			for(int i=0; i<expected.length; i++){
+				assertEquals(expected[i], peaks.getPeak(i));
+			}
+		}
+	}
+
+	public void testColumns() throws Exception{
+		List<Peak> list = new ArrayList<Peak>();
+		list.add(new Peak("chr2", 30, 40, "a", 5, Strand.PLUS, 1.5, 2.5, 3.5, 4));
+		list.add(new Peak("chr1", 10, 20));
+		list.add(new Peak("chr2", 50, 60, "a", 6, Strand.MINUS, 1, 2, 3, 7));
+		PeakGroup peaks = new PeakGroup(list);
+		assertEquals(list.size(), peaks.size());
+		int i = 0;
+		for(Peak p : peaks){
+			assertEquals(list.get(i), p);
+			assertEquals(p, list.get(i));
+			assertEquals(list.get(i).hashCode(), p.hashCode());
+			assertEquals(list.get(i).toString(), p.toString());
+			assertTrue(peaks.contains(list.get(i)));
+			i++;
+		}
+		assertEquals(list.get(2).getChrom(), peaks.getChrom(2));
+		assertEquals(50, peaks.getChromStart(2));
+		assertEquals("a", peaks.getName(2));
+		assertEquals(Strand.MINUS, peaks.getStrand(2));
+		StringWriter written = new StringWriter();
+		peaks.write(written);
+		assertEquals("chr2\t30\t40\ta\t5\t+\t1.5\t2.5\t3.5\t4\nchr1\t10\t20\t.\t0\t.\t-1.0\t-1.0\t-1.0\t-1\nchr2\t50\t60\ta\t6\t-\t1.0\t2.0\t3.0\t7\n",
+				written.toString());
+		assertEquals(peaks.toString(), written.toString());
+		assertEquals(new PeakGroup(list), peaks);
+		assertEquals(new PeakGroup(list).hashCode(), peaks.hashCode());
+		
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(peaks);
+		out.writeObject(peaks.getPeak(0));
+		out.close();
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		assertEquals(peaks, in.readObject());
+		Object peak = in.readObject();
+		assertEquals(Peak.class, peak.getClass());
+		assertEquals(list.get(0), peak);
+	}
+
+	private static Peaks copy(Peaks peaks) throws Exception{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(peaks);
+		out.close();
+		return (Peaks) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+	}
+
+	private static void assertTable(PeakGroup group, Peaks peaks){
+		Field[][] table = peaks.toTable();
+		assertEquals(group.size(), table.length);
+		for(int row=0; row<group.size(); row++){
+			assertEquals(group.getName(row), peaks.getValue(row, 3).asString());
+			assertEquals(String.valueOf(group.getChromStart(row)), peaks.getValue(row, 1).asString());
+			for(int col=0; col<peaks.getNumCols(); col++){
+				assertEquals(table[row][col].asString(), peaks.getValue(row, col).asString());
+			}
+		}
+	}
+
+	public void testPeaksTable() throws Exception{
+		List<Peak> list = new ArrayList<Peak>();
+		for(int i=0; i<20; i++){
+			list.add(new Peak("chr1", 10*i+1, 10*i+5, "p"+i, i, Strand.PLUS, i, i, i, -1));
+		}
+		PeakGroup group = new PeakGroup(list);
+		Peaks peaks = new Peaks(group, 4);
+		assertTable(group, peaks);
+		//viewed rows are kept until more than 4 other rows have been viewed
+		Field cached = peaks.getValue(0, 0);
+		for(int row=1; row<4; row++){
+			peaks.getValue(row, 0);
+		}
+		assertSame(cached, peaks.getValue(0, 0));
+		for(int row=1; row<5; row++){
+			peaks.getValue(row, 0);
+		}
+		assertNotSame(cached, peaks.getValue(0, 0));
+		//read back from a workspace, the table is still cached
+		Peaks read = copy(peaks);
+		assertTable(group, read);
+		cached = read.getValue(0, 0);
+		assertSame(cached, read.getValue(0, 0));
+		//no cache at all
+		Peaks uncached = new Peaks(group, 0);
+		assertTable(group, uncached);
+		assertNotSame(uncached.getValue(0, 0), uncached.getValue(0, 0));
+	}
+
+}
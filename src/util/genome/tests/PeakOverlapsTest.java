@@ -0,0 +1,183 @@
+package util.genome.tests;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import util.genome.Strand;
+import util.genome.peak.Peak;
+import util.genome.peak.PeakGroup;
+import util.genome.peak.PeakOverlaps;
+
+public class PeakOverlapsTest extends junit.framework.TestCase{
+
+	private static PeakGroup randomPeaks(Random r, int n){
+		List<Peak> peaks = new ArrayList<Peak>();
+		for(int i=0; i<n; i++){
+			long start = r.nextInt(5000);
+			peaks.add(new Peak("chr" + r.nextInt(3), start, start + r.nextInt(r.nextInt(10) == 0 ? 800 : 60), "p" + i, i, Strand.PLUS,
+					1, 2, 3, r.nextInt(3) - 1));
+		}
+		//in the order the results come back in, by chromosome and then start
+		Collections.sort(peaks, new Comparator<Peak>(){
+
+			@Override
+			public int compare(Peak o1, Peak o2) {
+				int chr = o1.getChrom().getId().compareTo(o2.getChrom().getId());
+				if(chr != 0) return chr;
+				if(o1.getChromStart() != o2.getChromStart()) return Long.compare(o1.getChromStart(), o2.getChromStart());
+				return Long.compare(o1.getChromEnd(), o2.getChromEnd());
+			}
+
+		});
+		return new PeakGroup(peaks);
+	}
+
+	private static boolean overlaps(Peak a, long start, long end, Peak b){
+		return a.getChrom().equals(b.getChrom()) && start < b.getChromEnd() && b.getChromStart() < end;
+	}
+
+	private static long distance(Peak a, Peak b){
+		if(overlaps(a, a.getChromStart(), a.getChromEnd(), b)) return 0;
+		return Math.max(a.getChromStart() - b.getChromEnd(), b.getChromStart() - a.getChromEnd());
+	}
+
+	private static long covered(PeakGroup peaks){
+		long bases = 0;
+		for(Peak p : peaks){
+			bases += p.getChromEnd() - p.getChromStart();
+		}
+		return bases;
+	}
+
+	public void testOperations(){
+		Random r = new Random(11);
+		PeakGroup a = randomPeaks(r, 2000);
+		PeakGroup b = randomPeaks(r, 1500);
+		for(int threads : new int[]{1, 3}){
+			long pairs = 0;
+			long overlap = 0;
+			long uncovered = 0;
+			List<Peak> near = new ArrayList<Peak>();
+			PeakGroup closest = PeakOverlaps.closest(a, b, threads);
+			int c = 0;
+			for(Peak p : a){
+				boolean[] covered = new boolean[(int) (p.getChromEnd() - p.getChromStart())];
+				boolean isNear = false;
+				long nearest = Long.MAX_VALUE;
+				for(Peak q : b){
+					if(overlaps(p, p.getChromStart(), p.getChromEnd(), q)){
+						pairs++;
+						long from = Math.max(p.getChromStart(), q.getChromStart());
+						long to = Math.min(p.getChromEnd(), q.getChromEnd());
+						overlap += to - from;
+						for(long i=from; i<to; i++){
+							covered[(int) (i - p.getChromStart())] = true;
+						}
+					}
+					isNear |= overlaps(p, p.getChromStart() - 100, p.getChromEnd() + 100, q);
+					if(p.getChrom().equals(q.getChrom())){
+						nearest = Math.min(nearest, distance(p, q));
+					}
+				}
+				for(boolean base : covered){
+					if(!base) uncovered++;
+				}
+				if(isNear){
+					near.add(p);
+				}
+				if(nearest != Long.MAX_VALUE){
+					assertEquals(nearest, distance(p, closest.getPeak(c++)));
+				}
+			}
+			assertEquals(c, closest.size());
+			PeakGroup intersect = PeakOverlaps.intersect(a, b, threads);
+			assertEquals(pairs, intersect.size());
+			assertEquals(overlap, covered(intersect));
+			assertEquals(uncovered, covered(PeakOverlaps.subtract(a, b, threads)));
+			PeakGroup window = PeakOverlaps.window(a, b, 100, threads);
+			assertEquals(near.size(), window.size());
+			for(Peak p : near){
+				assertTrue(window.contains(p));
+			}
+		}
+	}
+
+	public void testFragments(){
+		List<Peak> a = new ArrayList<Peak>();
+		a.add(new Peak("chr1", 10, 50, "a", 5, Strand.MINUS, 1, 2, 3, 35));
+		List<Peak> b = new ArrayList<Peak>();
+		b.add(new Peak("chr1", 20, 29));
+		b.add(new Peak("chr1", 25, 40));
+		b.add(new Peak("chr2", 10, 50));
+		PeakGroup subtract = PeakOverlaps.subtract(new PeakGroup(a), new PeakGroup(b), 1);
+		assertEquals(2, subtract.size());
+		assertEquals(new Peak("chr1", 10, 20, "a", 5, Strand.MINUS, 1, 2, 3, -1), subtract.getPeak(0));
+		assertEquals(new Peak("chr1", 40, 50, "a", 5, Strand.MINUS, 1, 2, 3, 5), subtract.getPeak(1));
+		PeakGroup intersect = PeakOverlaps.intersect(new PeakGroup(a), new PeakGroup(b), 1);
+		assertEquals(2, intersect.size());
+		assertEquals(new Peak("chr1", 20, 29, "a", 5, Strand.MINUS, 1, 2, 3, -1), intersect.getPeak(0));
+		assertEquals(new Peak("chr1", 25, 40, "a", 5, Strand.MINUS, 1, 2, 3, -1), intersect.getPeak(1));
+	}
+
+	public void testBookended(){
+		PeakGroup a = new PeakGroup(Collections.singletonList(new Peak("chr1", 100, 200, "a", 5, Strand.PLUS, 1, 2, 3, 50)));
+		PeakGroup b = new PeakGroup(Collections.singletonList(new Peak("chr1", 200, 300)));
+		assertEquals(0, PeakOverlaps.intersect(a, b, 1).size());
+		assertEquals(a, PeakOverlaps.subtract(a, b, 1));
+		assertEquals(0, PeakOverlaps.window(a, b, 0, 1).size());
+		assertEquals(a, PeakOverlaps.window(a, b, 1, 1));
+		assertEquals(b, PeakOverlaps.closest(a, b, 1));
+		//the last base of a is covered
+		PeakGroup last = new PeakGroup(Collections.singletonList(new Peak("chr1", 199, 300)));
+		assertEquals(new Peak("chr1", 199, 200, "a", 5, Strand.PLUS, 1, 2, 3, -1), PeakOverlaps.intersect(a, last, 1).getPeak(0));
+		assertEquals(new Peak("chr1", 100, 199, "a", 5, Strand.PLUS, 1, 2, 3, 50), PeakOverlaps.subtract(a, last, 1).getPeak(0));
+		//bookended peaks are merged, as they leave no gap
+		List<Peak> touching = new ArrayList<Peak>();
+		touching.add(a.getPeak(0));
+		touching.add(b.getPeak(0));
+		PeakGroup merged = PeakOverlaps.merge(new PeakGroup(touching), 0, PeakOverlaps.Aggregate.MAX, 1);
+		assertEquals(1, merged.size());
+		assertEquals(100, merged.getChromStart(0));
+		assertEquals(300, merged.getChromEnd(0));
+	}
+
+	public void testMerge(){
+		Random r = new Random(5);
+		PeakGroup peaks = randomPeaks(r, 3000);
+		for(int threads : new int[]{1, 3}){
+			PeakGroup merged = PeakOverlaps.merge(peaks, 10, PeakOverlaps.Aggregate.MAX, threads);
+			for(int i=1; i<merged.size(); i++){
+				if(merged.getChrom(i).equals(merged.getChrom(i-1))){
+					assertTrue(merged.getChromStart(i) - merged.getChromEnd(i-1) > 10);
+				}
+			}
+			for(Peak p : peaks){
+				int containing = 0;
+				for(Peak m : merged){
+					if(overlaps(p, p.getChromStart(), p.getChromEnd(), m)){
+						assertTrue(m.getChromStart() <= p.getChromStart() && p.getChromEnd() <= m.getChromEnd());
+						assertTrue(m.getSignalVal() >= p.getSignalVal());
+						containing++;
+					}
+				}
+				assertEquals(1, containing);
+			}
+		}
+		List<Peak> list = new ArrayList<Peak>();
+		list.add(new Peak("chr1", 10, 20, "a", 100, Strand.PLUS, 2, 4, Peak.DEFAULT_QVAL, 5));
+		list.add(new Peak("chr1", 15, 30, "b", 300, Strand.PLUS, 6, 1, Peak.DEFAULT_QVAL, 10));
+		list.add(new Peak("chr1", 36, 40, "c", 200, Strand.MINUS, Peak.DEFAULT_SIGNAL_VAL, 7, Peak.DEFAULT_QVAL, -1));
+		list.add(new Peak("chr1", 47, 50, "d", 200, Strand.MINUS, 1, 1, 1, -1));
+		PeakGroup group = new PeakGroup(list);
+		assertEquals(new Peak("chr1", 10, 40, Peak.DEFAULT_NAME, 300, Strand.UNKNOWN, 4, 4, Peak.DEFAULT_QVAL, 15),
+				PeakOverlaps.merge(group, 6, PeakOverlaps.Aggregate.MEAN, 1).getPeak(0));
+		assertEquals(new Peak("chr1", 10, 40, Peak.DEFAULT_NAME, 300, Strand.UNKNOWN, 8, 12, Peak.DEFAULT_QVAL, 15),
+				PeakOverlaps.merge(group, 6, PeakOverlaps.Aggregate.SUM, 1).getPeak(0));
+		assertEquals(list.get(3), PeakOverlaps.merge(group, 6, PeakOverlaps.Aggregate.SUM, 1).getPeak(1));
+		assertEquals(1, PeakOverlaps.merge(group, 7, PeakOverlaps.Aggregate.MAX, 1).size());
+	}
+
+}
@@ -0,0 +1,181 @@
+package util.genome.tests;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+
+import jprobe.save.LoadException;
+import jprobe.save.SaveException;
+import jprobe.save.SaveManager;
+import jprobe.services.Saveable;
+
+public class SaveManagerTest extends junit.framework.TestCase{
+
+	//"JPWS"
+	private static final int MAGIC = 0x4A505753;
+
+	private static class TextSaveable implements Saveable{
+
+		private String m_Text;
+		private int m_Loads = 0;
+
+		private TextSaveable(String text){
+			m_Text = text;
+		}
+
+		@Override
+		public void save(OutputStream out){
+			try{
+				DataOutputStream dout = new DataOutputStream(out);
+				dout.writeUTF(m_Text);
+				dout.close();
+			} catch (IOException e){
+				throw new RuntimeException(e);
+			}
+		}
+
+		@Override
+		public void load(InputStream in){
+			try{
+				m_Text = new DataInputStream(in).readUTF();
+				m_Loads++;
+			} catch (IOException e){
+				throw new RuntimeException(e);
+			}
+		}
+
+	}
+
+	private File m_Workspace;
+
+	@Override
+	protected void setUp() throws IOException{
+		m_Workspace = File.createTempFile("workspace", ".sav");
+	}
+
+	@Override
+	protected void tearDown(){
+		m_Workspace.delete();
+	}
+
+	private File save(String first, String second) throws SaveException{
+		SaveManager manager = new SaveManager();
+		manager.addSaveable(new TextSaveable(first), "first");
+		manager.addSaveable(new TextSaveable(second), "second");
+		manager.save(m_Workspace);
+		return m_Workspace;
+	}
+
+	private static String[] load(File workspace) throws LoadException{
+		SaveManager manager = new SaveManager();
+		TextSaveable first = new TextSaveable(null);
+		TextSaveable second = new TextSaveable(null);
+		manager.addSaveable(first, "first");
+		manager.addSaveable(second, "second");
+		manager.load(workspace);
+		return new String[]{first.m_Text, second.m_Text};
+	}
+
+	private static long tocOffset(File workspace) throws IOException{
+		RandomAccessFile file = new RandomAccessFile(workspace, "r");
+		try{
+			file.seek(8);
+			return file.readLong();
+		} finally {
+			file.close();
+		}
+	}
+
+	public void testRoundTrip() throws SaveException, LoadException{
+		File workspace = this.save("one", "two");
+		String[] loaded = load(workspace);
+		assertEquals("one", loaded[0]);
+		assertEquals("two", loaded[1]);
+		//chunks without a saveable are skipped
+		SaveManager manager = new SaveManager();
+		TextSaveable second = new TextSaveable(null);
+		manager.addSaveable(second, "second");
+		manager.load(workspace);
+		assertEquals("two", second.m_Text);
+	}
+
+	public void testTruncatedContents() throws IOException, SaveException, LoadException{
+		File workspace = this.save("one", "two");
+		long toc = tocOffset(workspace);
+		RandomAccessFile file = new RandomAccessFile(workspace, "rw");
+		try{
+			//cut the file in the middle of the table of contents
+			file.setLength(toc + 3);
+		} finally {
+			file.close();
+		}
+		String[] loaded = load(workspace);
+		assertEquals("one", loaded[0]);
+		assertEquals("two", loaded[1]);
+	}
+
+	public void testInterruptedSave() throws IOException, SaveException, LoadException{
+		File workspace = this.save("one", "two");
+		long toc = tocOffset(workspace);
+		RandomAccessFile file = new RandomAccessFile(workspace, "rw");
+		try{
+			//no table of contents, and a chunk whose header was written but not its bytes
+			file.seek(8);
+			file.writeLong(0);
+			file.setLength(toc - 2);
+			file.seek(toc - 2);
+			file.writeShort(5);
+			file.write("third".getBytes("UTF-8"));
+			file.writeLong(100);
+		} finally {
+			file.close();
+		}
+		String[] loaded = load(workspace);
+		assertEquals("one", loaded[0]);
+		assertEquals("two", loaded[1]);
+	}
+
+	public void testSaveChanges() throws SaveException, LoadException{
+		SaveManager manager = new SaveManager();
+		TextSaveable first = new TextSaveable("one");
+		manager.addSaveable(first, "first");
+		manager.addSaveable(new TextSaveable("two"), "second");
+		manager.save(m_Workspace);
+		long length = m_Workspace.length();
+		//saveables that did not change are not appended again
+		manager.saveChanges(m_Workspace);
+		assertEquals(length, m_Workspace.length());
+		first.m_Text = "three";
+		manager.saveChanges(m_Workspace);
+		assertTrue(m_Workspace.length() > length);
+		//only the last chunk of a saveable that is not incremental is loaded
+		SaveManager reload = new SaveManager();
+		TextSaveable loaded = new TextSaveable(null);
+		reload.addSaveable(loaded, "first");
+		reload.load(m_Workspace);
+		assertEquals("three", loaded.m_Text);
+		assertEquals(1, loaded.m_Loads);
+	}
+
+	public void testNewerVersion() throws IOException{
+		RandomAccessFile file = new RandomAccessFile(m_Workspace, "rw");
+		try{
+			file.writeInt(MAGIC);
+			file.writeInt(Integer.MAX_VALUE);
+			file.writeLong(0);
+		} finally {
+			file.close();
+		}
+		try{
+			load(m_Workspace);
+			fail("Loaded a workspace with a newer version");
+		} catch (LoadException e){
+			//expected
+		}
+	}
+
+}